@@ -0,0 +1,188 @@
+package com.example.smscallmonitor;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 数据库迁移测试 (MigrationTestHelper，从版本 1 依次迁移到最新版本，并按 app/schemas 中导出的 schema 校验结果)：
+ * 旧数据 (文本 status) 完整保留、SIM 卡文字回填到 sims 表，并对比加索引前后首页查询的耗时。
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppDatabaseMigrationTest {
+
+    private static final String TAG = "MigrationTest";
+    private static final String DB_NAME = "migration_test.db";
+    private static final int LATEST_VERSION = 6;
+    private static final int BENCHMARK_ROWS = 100_000;
+    private static final int PAGE_SIZE = 50;
+
+    // 按 1.json 建库，测试结束后关闭并删除数据库
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    // 创建版本 1 的数据库，插入 rows 条事件 (最后一条为 SENDING)，返回仍处于打开状态的数据库
+    private SupportSQLiteDatabase createV1Database(int rows) {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 1);
+        SupportSQLiteStatement insert = db.compileStatement("INSERT INTO pending_events (eventType, senderNumber, messageContent, "
+                + "eventTimestamp, simInfo, subId, status, attemptTimestamp, retryCount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                insert.clearBindings();
+                insert.bindString(1, i % 2 == 0 ? "SMS" : "CALL");
+                insert.bindString(2, "1380000" + i);
+                insert.bindString(3, "内容 " + i);
+                insert.bindLong(4, 1_700_000_000_000L + i);
+                insert.bindString(5, "SIM1 (Operator, ID:1)");
+                insert.bindLong(6, 1);
+                insert.bindString(7, i == rows - 1 ? "SENDING" : "PENDING");
+                insert.bindLong(8, 0L);
+                insert.bindLong(9, i % 3);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return db;
+    }
+
+    // 依次执行全部迁移，并校验结果与最新版本的 schema 一致 (包括索引，且没有残留的表)。
+    // 之后的断言直接在返回的数据库上执行 SQL，不通过 Room 重新打开 (只依赖表结构，不依赖 identityHash)
+    private SupportSQLiteDatabase migrateToLatest() {
+        return helper.runMigrationsAndValidate(DB_NAME, LATEST_VERSION, true, AppDatabase.MIGRATIONS);
+    }
+
+    @Test
+    public void migrate1To2_preservesRowsAndConvertsStatus() {
+        createV1Database(5).close();
+        SupportSQLiteDatabase db = migrateToLatest();
+
+        try (Cursor c = db.query("SELECT status, COUNT(*) FROM pending_events GROUP BY status ORDER BY status")) {
+            assertTrue(c.moveToNext());
+            assertEquals(PendingEvent.STATUS_PENDING, c.getInt(0));
+            assertEquals(4, c.getInt(1));
+            assertTrue(c.moveToNext());
+            assertEquals(PendingEvent.STATUS_SENDING, c.getInt(0));
+            assertEquals(1, c.getInt(1));
+            assertFalse(c.moveToNext());
+        }
+
+        try (Cursor c = db.query("SELECT eventType, senderNumber, messageContent, eventTimestamp, subId, "
+                + "deliveredChannels, nextAttemptAt, leaseOwner, leaseExpiresAt FROM pending_events WHERE id = 1")) {
+            assertTrue(c.moveToNext());
+            assertEquals("SMS", c.getString(0));
+            assertEquals("13800000", c.getString(1));
+            assertEquals("内容 0", c.getString(2));
+            assertEquals(1_700_000_000_000L, c.getLong(3));
+            assertEquals(1, c.getInt(4));
+            assertEquals(0, c.getInt(5)); // 版本 3 新增的列，旧事件尚未通过任何渠道送达
+            assertEquals(0, c.getLong(6)); // 版本 4 新增的列，旧事件立即可以补发
+            assertTrue(c.isNull(7)); // 版本 5 新增的列，旧事件都未被认领，迁移后可以直接认领
+            assertEquals(0, c.getLong(8));
+        }
+        try (Cursor c = db.query("SELECT label FROM sims WHERE subId = 1")) {
+            assertTrue(c.moveToNext());
+            assertEquals("SIM1 (Operator, ID:1)", c.getString(0)); // 版本 6: SIM 卡文字移到 sims 表
+        }
+
+        // 迁移后新写入的事件 id 继续递增，不与旧数据冲突
+        SupportSQLiteStatement insert = db.compileStatement("INSERT INTO pending_events (eventType, senderNumber, "
+                + "messageContent, eventTimestamp, subId, status, attemptTimestamp, retryCount) VALUES ('SMS', '10086', 'new', 1, 1, 0, 0, 0)");
+        assertEquals(6, insert.executeInsert());
+    }
+
+    @Test
+    public void migrate5To6_backfillsSimsWithLatestLabelAndJoinsThem() {
+        SupportSQLiteDatabase v1 = createV1Database(5); // id 1..5，时间戳递增，id 5 为 SENDING
+        v1.execSQL("UPDATE pending_events SET subId = 2, simInfo = 'SIM2 (Old, ID:2)' WHERE id IN (2, 3)");
+        v1.execSQL("UPDATE pending_events SET simInfo = 'SIM2 (New, ID:2)' WHERE id = 3"); // 同一张卡最近一个事件的文字
+        v1.close();
+        SupportSQLiteDatabase db = migrateToLatest();
+
+        try (Cursor c = db.query("SELECT subId, label, displayName, slotIndex, lastSeenAt FROM sims ORDER BY subId")) {
+            assertEquals(2, c.getCount());
+            c.moveToPosition(1);
+            assertEquals(2, c.getInt(0));
+            assertEquals("SIM2 (New, ID:2)", c.getString(1));
+            assertTrue(c.isNull(2));
+            assertEquals(-1, c.getInt(3)); // 卡槽未知，服务刷新 SIM 卡时补全
+            assertEquals(1_700_000_000_002L, c.getLong(4));
+        }
+
+        // 补发时按 subId 连接查询 SIM 卡文字 (与 PendingEventDao.getLeasedEvents 相同的连接)
+        try (Cursor c = db.query("SELECT sims.label FROM pending_events LEFT JOIN sims ON sims.subId = pending_events.subId "
+                + "WHERE pending_events.status = " + PendingEvent.STATUS_PENDING
+                + " ORDER BY pending_events.eventTimestamp ASC, pending_events.id ASC")) {
+            assertEquals(4, c.getCount());
+            c.moveToNext();
+            assertEquals("SIM1 (Operator, ID:1)", c.getString(0));
+            c.moveToNext();
+            assertEquals("SIM2 (New, ID:2)", c.getString(0));
+            c.moveToNext();
+            assertEquals("SIM2 (New, ID:2)", c.getString(0));
+        }
+    }
+
+    @Test
+    public void migrate1To2_createsStatusTimestampIndex() {
+        createV1Database(1).close();
+        SupportSQLiteDatabase db = migrateToLatest(); // 校验时已检查索引定义，这里再确认查询实际使用它
+
+        try (Cursor c = db.query("EXPLAIN QUERY PLAN SELECT * FROM pending_events WHERE status = 0 ORDER BY eventTimestamp ASC")) {
+            StringBuilder plan = new StringBuilder();
+            while (c.moveToNext()) {
+                plan.append(c.getString(c.getColumnCount() - 1)).append('\n');
+            }
+            assertTrue("Query plan should use the index: " + plan,
+                    plan.toString().contains("index_pending_events_status_eventTimestamp"));
+            assertFalse("Query plan should not sort: " + plan, plan.toString().contains("TEMP B-TREE"));
+        }
+    }
+
+    // 大表上 "取最早的一页待发送事件" 的耗时: 版本 1 (全表扫描 + 排序) 对比迁移后 (索引)
+    @Test
+    public void benchmark_firstPageQuery_beforeAndAfterIndex() {
+        SupportSQLiteDatabase v1 = createV1Database(BENCHMARK_ROWS);
+        long v1Ms = timeFirstPage(v1, "'PENDING'");
+        v1.close();
+
+        long v2Ms = timeFirstPage(migrateToLatest(), String.valueOf(PendingEvent.STATUS_PENDING));
+
+        Log.i(TAG, ">>> First page of " + PAGE_SIZE + " from " + BENCHMARK_ROWS + " rows: v1 (no index) "
+                + v1Ms + "ms, v2 (indexed) " + v2Ms + "ms");
+        assertTrue("Indexed query should not be slower than a full scan", v2Ms <= v1Ms);
+    }
+
+    // 多次执行取中位数 (毫秒)
+    private static long timeFirstPage(SupportSQLiteDatabase db, String statusLiteral) {
+        String sql = "SELECT * FROM pending_events WHERE status = " + statusLiteral
+                + " ORDER BY eventTimestamp ASC LIMIT " + PAGE_SIZE;
+        long[] samples = new long[5];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            try (Cursor c = db.query(sql)) {
+                int n = 0;
+                while (c.moveToNext()) n++;
+                assertEquals(PAGE_SIZE, n);
+            }
+            samples[i] = (System.nanoTime() - start) / 1_000_000L;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.Configuration;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.TestDriver;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * DrainScheduler 的设备测试 (WorkManager 测试驱动)：队列为空时不安排任务，有积压时只安排一个等待网络的任务，
+ * 积压补发完后任务链结束。
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrainSchedulerInstrumentedTest {
+
+    private Context context;
+    private AppDatabase db;
+    private PendingEventDao dao;
+    private WorkManager workManager;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Configuration config = new Configuration.Builder()
+                .setMinimumLoggingLevel(Log.DEBUG)
+                .setExecutor(new SynchronousExecutor())
+                .build();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, config);
+        workManager = WorkManager.getInstance(context);
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        dao = db.pendingEventDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private List<WorkInfo> activeDrainWork() throws Exception {
+        List<WorkInfo> active = new ArrayList<>();
+        for (WorkInfo info : workManager.getWorkInfosForUniqueWork(DrainScheduler.UNIQUE_WORK_NAME).get()) {
+            if (!info.getState().isFinished()) active.add(info);
+        }
+        return active;
+    }
+
+    @Test
+    public void emptyQueue_schedulesNothing() throws Exception {
+        DrainScheduler.schedule(context, dao);
+        assertTrue(activeDrainWork().isEmpty());
+    }
+
+    @Test
+    public void backlog_schedulesOneWorkWaitingForNetwork() throws Exception {
+        dao.insert(new PendingEvent("SMS", "10086", "msg 1", 1_000L, "SIM1", 1));
+        DrainScheduler.schedule(context, dao);
+        dao.insert(new PendingEvent("SMS", "10086", "msg 2", 2_000L, "SIM1", 1));
+        DrainScheduler.schedule(context, dao); // 每个事件都会调用，但始终只有一个任务
+
+        List<WorkInfo> active = activeDrainWork();
+        assertEquals(1, active.size());
+        assertEquals(WorkInfo.State.ENQUEUED, active.get(0).getState()); // 网络约束未满足，不会运行
+    }
+
+    @Test
+    public void drainedQueue_cancelsScheduledWork() throws Exception {
+        int id = (int) dao.insert(new PendingEvent("SMS", "10086", "msg", 1_000L, "SIM1", 1));
+        DrainScheduler.schedule(context, dao);
+        assertEquals(1, activeDrainWork().size());
+
+        dao.deleteEventsByIds(new int[]{id});
+        DrainScheduler.schedule(context, dao);
+        assertTrue(activeDrainWork().isEmpty());
+    }
+
+    @Test
+    public void worker_succeedsAndEndsChainWhenNothingIsDue() throws Exception {
+        // Worker 使用应用的数据库，先清空，保证没有需要补发的事件 (不会真的发邮件)
+        AppDatabase.getDatabase(context).clearAllTables();
+        OneTimeWorkRequest request = DrainScheduler.buildRequest(0);
+        workManager.enqueueUniqueWork(DrainScheduler.UNIQUE_WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+
+        TestDriver driver = WorkManagerTestInitHelper.getTestDriver(context);
+        assertNotNull(driver);
+        driver.setAllConstraintsMet(request.getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED, workManager.getWorkInfoById(request.getId()).get().getState());
+        assertTrue(activeDrainWork().isEmpty()); // 没有退避中的事件，不追加后续任务
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventJournal 的设备测试：进程崩溃后事件不丢失、分组写入，以及热路径上单行写入的耗时和分组提交的吞吐量 / p99 延迟。
+ */
+@RunWith(AndroidJUnit4.class)
+public class EventJournalTest {
+
+    private static final String DB_NAME = "event_journal_test.db";
+
+    private Context context;
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        db = openDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    private AppDatabase openDatabase() {
+        return AppDatabase.configure(Room.databaseBuilder(context, AppDatabase.class, DB_NAME)).build();
+    }
+
+    // 认领所有待补发的事件 (包括退避中的)，用于读回数据库中的状态
+    private List<PendingEvent> claimAllPending() {
+        return db.pendingEventDao().claimPendingEvents("test", Long.MAX_VALUE, System.currentTimeMillis(), 60_000L, 100);
+    }
+
+    private static PendingEvent sms(int i) {
+        return new PendingEvent("SMS", "10086", "验证码 " + i, System.currentTimeMillis(), "SIM1 (Operator, ID:1)", 1);
+    }
+
+    @Test
+    public void journaledEvents_surviveCrashAndAreRecovered() {
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        List<PendingEvent> inFlight = Arrays.asList(sms(1), sms(2), sms(3));
+        for (PendingEvent event : inFlight) {
+            assertTrue(journal.journal(event));
+            assertTrue(event.id > 0);
+        }
+        // 正在发送中的事件不会被补发任务取走
+        assertEquals(0, db.pendingEventDao().getPendingEventCount(PendingEvent.STATUS_PENDING));
+
+        // 模拟进程在发送过程中被杀: 不调用 markSent/markFailed，直接关闭并重新打开数据库
+        db.close();
+        db = openDatabase();
+
+        EventJournal recovered = new EventJournal(db.pendingEventDao());
+        assertEquals(3, recovered.recoverInFlight());
+        assertEquals(3, db.pendingEventDao().getPendingEventCount(PendingEvent.STATUS_PENDING));
+    }
+
+    @Test
+    public void markSent_deletesAndMarkFailed_makesPending() {
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        PendingEvent sent = sms(1);
+        PendingEvent failed = sms(2);
+        journal.journal(sent);
+        journal.journal(failed);
+
+        journal.markSent(Collections.singletonList(sent));
+        journal.markFailed(Collections.singletonList(failed));
+
+        List<PendingEvent> pending = claimAllPending();
+        assertEquals(1, pending.size());
+        assertEquals(failed.id, pending.get(0).id);
+        assertEquals(1, pending.get(0).retryCount);
+    }
+
+    @Test
+    public void markFailed_persistsChannelsAlreadyDelivered() {
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        PendingEvent emailOnly = sms(1);
+        PendingEvent nothing = sms(2);
+        journal.journal(emailOnly);
+        journal.journal(nothing);
+        emailOnly.deliveredChannels = DeliveryChannel.BIT_EMAIL; // 邮件成功、GV 失败
+
+        journal.markFailed(Arrays.asList(emailOnly, nothing));
+
+        List<PendingEvent> pending = claimAllPending();
+        assertEquals(2, pending.size());
+        for (PendingEvent event : pending) {
+            int expected = event.id == emailOnly.id ? DeliveryChannel.BIT_EMAIL : 0;
+            assertEquals(expected, event.deliveredChannels);
+            assertEquals(1, event.retryCount);
+        }
+    }
+
+    @Test
+    public void markDeferred_persistsChannelsWithoutCountingAnAttempt() {
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        PendingEvent event = sms(1);
+        journal.journal(event);
+        event.deliveredChannels = DeliveryChannel.BIT_EMAIL; // 邮件成功，GV 被熔断拒绝 (没有尝试)
+
+        journal.markDeferred(Collections.singletonList(event));
+
+        assertEquals(1, db.pendingEventDao().getDuePendingEventCount(PendingEvent.STATUS_PENDING, System.currentTimeMillis()));
+        PendingEvent stored = claimAllPending().get(0);
+        assertEquals(DeliveryChannel.BIT_EMAIL, stored.deliveredChannels);
+        assertEquals(0, stored.retryCount);
+    }
+
+    @Test
+    public void markFailed_backsOffAndDeadLettersAfterMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(60_000L, 3_600_000L, 3, new Random(1));
+        EventJournal journal = new EventJournal(db.pendingEventDao(), policy);
+        PendingEvent event = sms(1);
+        journal.journal(event);
+
+        long before = System.currentTimeMillis();
+        journal.markFailed(Collections.singletonList(event));
+        PendingEvent stored = claimAllPending().get(0);
+        assertEquals(1, stored.retryCount);
+        assertTrue(stored.nextAttemptAt >= before + 30_000L); // 第一次失败退避 [30s, 60s]
+        assertEquals(0, db.pendingEventDao().getDuePendingEventCount(PendingEvent.STATUS_PENDING, before));
+
+        journal.markFailed(Collections.singletonList(stored)); // 第 2 次
+        stored = claimAllPending().get(0);
+        journal.markFailed(Collections.singletonList(stored)); // 第 3 次: 达到上限
+        assertEquals(0, db.pendingEventDao().getPendingEventCount(PendingEvent.STATUS_PENDING));
+        assertEquals(1, db.pendingEventDao().getPendingEventCount(PendingEvent.STATUS_DEAD));
+    }
+
+    @Test
+    public void journalInsert_staysSubMillisecond() {
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        for (int i = 0; i < 50; i++) { // 预热
+            journal.journal(sms(i));
+        }
+        int n = 500;
+        long[] nanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            PendingEvent event = sms(i);
+            long start = System.nanoTime();
+            journal.journal(event);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        double medianMs = nanos[n / 2] / 1e6;
+        double p99Ms = nanos[(int) (n * 0.99)] / 1e6;
+        System.out.println("EventJournal insert: median=" + medianMs + "ms, p99=" + p99Ms + "ms");
+        assertTrue("median insert " + medianMs + "ms", medianMs < 1.0);
+    }
+
+    @Test
+    public void journalAll_writesGroupInOneTransactionAndAssignsIds() {
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        List<PendingEvent> group = Arrays.asList(sms(1), sms(2), sms(3));
+        assertTrue(journal.journalAll(group));
+        for (PendingEvent event : group) {
+            assertTrue(event.id > 0);
+            assertEquals(PendingEvent.STATUS_SENDING, event.status);
+        }
+        assertTrue(group.get(0).id < group.get(1).id && group.get(1).id < group.get(2).id); // 按到达顺序
+        assertEquals(3, journal.recoverInFlight());
+
+        // SIM 卡文字只在 sims 表中保存一份，补发时连接查询
+        assertEquals(1, db.simCardDao().getAll().size());
+        List<PendingEvent> claimed = db.pendingEventDao().claimPendingEvents("test", Long.MAX_VALUE, System.currentTimeMillis(), 60_000L, 10);
+        assertEquals(3, claimed.size());
+        for (PendingEvent event : claimed) {
+            assertEquals("SIM1 (Operator, ID:1)", event.simLabel);
+        }
+        assertTrue(journal.journalAll(Collections.emptyList()));
+    }
+
+    @Test
+    public void journal_updatesSimLabelButKeepsSlotAndColor() {
+        db.simCardDao().upsertAll(Collections.singletonList(
+                new SimCard(1, "SIM1 (Operator, ID:1)", "SIM1", 0, 0xFF00FF00, 1_000L)));
+        EventJournal journal = new EventJournal(db.pendingEventDao());
+        assertTrue(journal.journal(new PendingEvent("SMS", "10086", "msg", 2_000L, "SIM1 (New Operator, ID:1)", 1)));
+
+        SimCard card = db.simCardDao().get(1);
+        assertEquals("SIM1 (New Operator, ID:1)", card.label); // 运营商名称变化后邮件中显示新的文字
+        assertEquals("SIM1", card.displayName);
+        assertEquals(0, card.slotIndex);
+        assertEquals(0xFF00FF00, card.color);
+        assertTrue(card.lastSeenAt > 1_000L);
+    }
+
+    // --- 基准: 1、10、100 个事件/秒和短信轰炸 (不限速) 时的写入吞吐量和 p99 延迟 (到达 -> 提交) ---
+    //     改造前: TRUNCATE 日志 (低内存设备上 Room AUTOMATIC 的结果)，每个事件一个事务
+    //     改造后: WAL + synchronous = NORMAL，JOURNAL_GROUP_WINDOW_MS 内到达的事件一个事务
+
+    private static final String BASELINE_DB_NAME = "event_journal_baseline_test.db";
+    private static final long RATE_DURATION_MS = 5_000; // 每个速率运行 5 秒
+    private static final int FLOOD_EVENTS = 2_000;
+
+    @Test
+    public void benchmark_insertRateAndP99Latency() throws Exception {
+        context.deleteDatabase(BASELINE_DB_NAME);
+        AppDatabase baseline = Room.databaseBuilder(context, AppDatabase.class, BASELINE_DB_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.TRUNCATE).build();
+        try {
+            double baselineFlood = 0, groupedFlood = 0;
+            for (int rate : new int[]{1, 10, 100, 0}) {
+                int count = rate == 0 ? FLOOD_EVENTS : (int) (rate * RATE_DURATION_MS / 1000);
+                double before = insertAtRate(baseline, false, rate, count);
+                double after = insertAtRate(db, true, rate, count);
+                if (rate == 0) {
+                    baselineFlood = before;
+                    groupedFlood = after;
+                }
+            }
+            assertTrue("grouped flood " + groupedFlood + "/s vs per-event " + baselineFlood + "/s", groupedFlood > baselineFlood);
+        } finally {
+            baseline.close();
+            context.deleteDatabase(BASELINE_DB_NAME);
+        }
+    }
+
+    /**
+     * 按固定速率 (0 表示不限速) 产生 count 个事件，在单个写入线程上写入 (与 JOURNAL 通道相同)，输出吞吐量和延迟
+     * @return 每秒写入的事件数
+     */
+    private double insertAtRate(AppDatabase database, boolean grouped, int eventsPerSecond, int count) throws Exception {
+        EventJournal journal = new EventJournal(database.pendingEventDao());
+        List<PendingEvent> events = new ArrayList<>(count);
+        Map<PendingEvent, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            PendingEvent event = sms(i);
+            events.add(event);
+            index.put(event, i);
+        }
+        long[] arrivedAt = new long[count];
+        long[] latencies = new long[count];
+        long[] lastCommitAt = new long[1];
+        int[] transactions = new int[1];
+        CountDownLatch committed = new CountDownLatch(count);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        EventBatcher groups = new EventBatcher(IConstants.JOURNAL_GROUP_MAX_EVENTS, IConstants.JOURNAL_GROUP_WINDOW_MS,
+                IConstants.JOURNAL_GROUP_WINDOW_MS, group -> writer.execute(() -> {
+                    journal.journalAll(group.events);
+                    long now = System.nanoTime();
+                    transactions[0]++;
+                    lastCommitAt[0] = now;
+                    for (PendingEvent event : group.events) {
+                        int i = index.get(event);
+                        latencies[i] = now - arrivedAt[i];
+                        committed.countDown();
+                    }
+                }));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (eventsPerSecond > 0) {
+                long wait = start + i * 1_000_000_000L / eventsPerSecond - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+            int n = i;
+            PendingEvent event = events.get(i);
+            arrivedAt[i] = System.nanoTime();
+            if (grouped) {
+                groups.add(event);
+            } else {
+                writer.execute(() -> {
+                    journal.journal(event);
+                    long now = System.nanoTime();
+                    transactions[0]++;
+                    lastCommitAt[0] = now;
+                    latencies[n] = now - arrivedAt[n];
+                    committed.countDown();
+                });
+            }
+        }
+        assertTrue(committed.await(60, TimeUnit.SECONDS));
+        groups.shutdown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(10, TimeUnit.SECONDS)); // 之后读取写入线程的结果
+
+        double seconds = (lastCommitAt[0] - start) / 1e9;
+        double perSecond = count / seconds;
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.US,
+                "%-9s rate=%-5s events=%5d transactions=%5d inserts/s=%8.1f p50=%6.2fms p99=%6.2fms",
+                grouped ? "grouped" : "per-event", eventsPerSecond == 0 ? "flood" : String.valueOf(eventsPerSecond),
+                count, transactions[0], perSecond, latencies[count / 2] / 1e6, latencies[(int) (count * 0.99)] / 1e6));
+        database.pendingEventDao().updateStatus(PendingEvent.STATUS_SENDING, PendingEvent.STATUS_PENDING);
+        assertEquals(count, database.pendingEventDao().getPendingEventCount(PendingEvent.STATUS_PENDING));
+        database.clearAllTables();
+        return perSecond;
+    }
+}
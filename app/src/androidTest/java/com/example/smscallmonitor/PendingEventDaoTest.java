@@ -0,0 +1,261 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * PendingEventDao 的设备测试：退避中的事件到期前不会被认领；
+ * 多个补发任务同时认领时，每个事件只会被成功发送一次；按 ID 的批量操作在 5 万条以上时分块执行 (输出耗时)。
+ */
+@RunWith(AndroidJUnit4.class)
+public class PendingEventDaoTest {
+
+    private AppDatabase db;
+    private PendingEventDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        dao = db.pendingEventDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void eventsInBackoffAreSkippedUntilDue() {
+        long now = 1_000_000L;
+        PendingEvent due = new PendingEvent("SMS", "10086", "due", 1_000L, "SIM1", 1);
+        PendingEvent backingOff = new PendingEvent("SMS", "10086", "later", 2_000L, "SIM1", 1);
+        backingOff.nextAttemptAt = now + 60_000L;
+        PendingEvent dead = new PendingEvent("SMS", "10086", "dead", 3_000L, "SIM1", 1);
+        dead.status = PendingEvent.STATUS_DEAD;
+        dao.insert(due);
+        dao.insert(backingOff);
+        dao.insert(dead);
+
+        assertEquals(1, dao.getDuePendingEventCount(PendingEvent.STATUS_PENDING, now));
+        List<PendingEvent> claimed = dao.claimPendingEvents("A", now, now, 60_000L, 10);
+        assertEquals(1, claimed.size());
+        assertEquals("due", claimed.get(0).messageContent);
+        // 退避时间过后可以补发，死信永远不会被认领
+        List<PendingEvent> later = dao.claimPendingEvents("B", now + 60_000L, now + 60_000L, 60_000L, 10);
+        assertEquals(1, later.size());
+        assertEquals("later", later.get(0).messageContent);
+    }
+
+    @Test
+    public void claim_isExclusiveUntilLeaseExpires() {
+        for (int i = 0; i < 8; i++) {
+            dao.insert(new PendingEvent("SMS", "10086", "msg " + i, 1_000L + i, "SIM1", 1));
+        }
+        long now = 1_000_000L, leaseMs = 60_000L;
+
+        List<PendingEvent> a = dao.claimPendingEvents("A", now, now, leaseMs, 5);
+        List<PendingEvent> b = dao.claimPendingEvents("B", now, now, leaseMs, 5);
+        assertEquals(5, a.size());
+        assertEquals(3, b.size());
+        assertEquals(1_000L, a.get(0).eventTimestamp); // 按时间顺序认领
+        assertEquals(1_005L, b.get(0).eventTimestamp);
+        assertTrue(dao.claimPendingEvents("C", now, now, leaseMs, 5).isEmpty());
+        assertEquals(0, dao.getDuePendingEventCount(PendingEvent.STATUS_PENDING, now)); // 已被认领的不计入
+
+        // 只有认领者才能放弃认领
+        int[] bIds = IdArray.of(b);
+        assertEquals(0, dao.releaseLeases(bIds, "A"));
+        assertEquals(3, dao.releaseLeases(bIds, "B"));
+        assertEquals(3, dao.claimPendingEvents("C", now, now, leaseMs, 5).size());
+
+        // A 的认领过期后 (例如进程在发送中被杀) 可以被重新认领
+        assertTrue(dao.claimPendingEvents("D", now, now + leaseMs - 1, leaseMs, 10).isEmpty());
+        assertEquals(8, dao.claimPendingEvents("D", now, now + 2 * leaseMs, leaseMs, 10).size());
+    }
+
+    @Test
+    public void failedEvents_releaseLeaseAndBackOff() {
+        dao.insert(new PendingEvent("SMS", "10086", "msg", 1_000L, "SIM1", 1));
+        long now = 1_000_000L;
+        List<PendingEvent> claimed = dao.claimPendingEvents("A", now, now, 60_000L, 10);
+        dao.markEventsFailedByIds(IdArray.of(claimed), PendingEvent.STATUS_PENDING, 0, now, now + 30_000L);
+        assertTrue(dao.claimPendingEvents("B", now, now, 60_000L, 10).isEmpty()); // 退避中
+        List<PendingEvent> retried = dao.claimPendingEvents("B", now + 30_000L, now + 30_000L, 60_000L, 10);
+        assertEquals(1, retried.size());
+        assertEquals("B", retried.get(0).leaseOwner);
+    }
+
+    // 压力测试: 多个线程同时认领、发送 (随机失败后立即可重试)、删除，每个事件恰好成功一次
+    @Test
+    public void concurrentDrainers_deliverEachEventExactlyOnce() throws Exception {
+        int total = 1_000, drainers = 8;
+        List<PendingEvent> events = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            events.add(new PendingEvent("SMS", "10086", "msg " + i, 1_000L + i, "SIM1", 1));
+        }
+        db.runInTransaction(() -> {
+            for (PendingEvent e : events) dao.insert(e);
+        });
+
+        ConcurrentHashMap<Integer, AtomicInteger> successes = new ConcurrentHashMap<>();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(drainers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < drainers; t++) {
+            String owner = "drainer-" + t;
+            Random random = new Random(t);
+            futures.add(pool.submit(() -> {
+                start.await();
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    List<PendingEvent> page = dao.claimPendingEvents(owner, Long.MAX_VALUE, now, 60_000L, 7);
+                    if (page.isEmpty()) break;
+                    for (PendingEvent e : page) {
+                        assertEquals(owner, e.leaseOwner);
+                    }
+                    int[] ids = IdArray.of(page);
+                    if (random.nextInt(5) == 0) {
+                        failures.incrementAndGet();
+                        dao.markEventsFailedByIds(ids, PendingEvent.STATUS_PENDING, 0, now, 0); // 立即可重试
+                    } else {
+                        for (int id : ids) {
+                            successes.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+                        }
+                        dao.deleteEventsByIds(ids);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(total, successes.size());
+        for (AtomicInteger count : successes.values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(0, dao.getPendingEventCount(PendingEvent.STATUS_PENDING));
+        assertTrue("Expected some simulated failures", failures.get() > 0);
+    }
+
+    // --- 批量操作 ---
+
+    private static final int BULK_ROWS = 50_000;
+
+    // 在一个事务中插入 count 条待补发事件，返回按插入顺序的 ID
+    private int[] insertPending(int count) {
+        int[] ids = new int[count];
+        db.runInTransaction(() -> {
+            for (int i = 0; i < count; i++) {
+                ids[i] = (int) dao.insert(new PendingEvent("SMS", "10086", "msg " + i, 1_000L + i, "SIM1", 1));
+            }
+        });
+        return ids;
+    }
+
+    private static void printTiming(String operation, int rows, long startNanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        System.out.println(String.format(Locale.US, "%-30s %6d rows %6d ms", operation, rows, ms));
+    }
+
+    // 单条 IN (:ids) 超过 SQLite 的绑定变量上限 (999) 会失败，分块后在一个事务中完成
+    @Test
+    public void bulkOperations_handleIdsBeyondBindVariableLimit() {
+        int[] ids = insertPending(BULK_ROWS);
+        long now = 1_000_000L;
+
+        long start = System.nanoTime();
+        assertEquals(BULK_ROWS, dao.markEventsFailedByIds(ids, PendingEvent.STATUS_PENDING, 0, now, now + 30_000L));
+        printTiming("markEventsFailedByIds", BULK_ROWS, start);
+        assertEquals(0, dao.getDuePendingEventCount(PendingEvent.STATUS_PENDING, now)); // 全部退避中
+
+        start = System.nanoTime();
+        assertEquals(BULK_ROWS, dao.updateStatusByIds(ids, PendingEvent.STATUS_SENDING));
+        printTiming("updateStatusByIds", BULK_ROWS, start);
+        assertEquals(0, dao.getPendingEventCount(PendingEvent.STATUS_PENDING));
+        assertEquals(BULK_ROWS, dao.updateStatus(PendingEvent.STATUS_SENDING, PendingEvent.STATUS_PENDING));
+
+        start = System.nanoTime();
+        assertEquals(BULK_ROWS, dao.deleteEventsByIds(ids));
+        printTiming("deleteEventsByIds", BULK_ROWS, start);
+        assertEquals(0, dao.getPendingEventCount(PendingEvent.STATUS_PENDING));
+    }
+
+    @Test
+    public void releaseLeases_largeClaim() {
+        int[] ids = insertPending(BULK_ROWS);
+        long now = 1_000_000L;
+        assertEquals(BULK_ROWS, dao.claimPendingEvents("A", now, now, 60_000L, BULK_ROWS).size());
+
+        assertEquals(0, dao.releaseLeases(ids, "B")); // 其他补发任务不能放弃 A 的认领
+        long start = System.nanoTime();
+        assertEquals(BULK_ROWS, dao.releaseLeases(ids, "A"));
+        printTiming("releaseLeases", BULK_ROWS, start);
+        assertEquals(BULK_ROWS, dao.getDuePendingEventCount(PendingEvent.STATUS_PENDING, now));
+    }
+
+    // 水位线删除只删除本次认领的、按 (eventTimestamp, id) 排在水位线 (含) 之前的事件
+    @Test
+    public void watermarkDelete_removesOnlyOwnLeasedEventsThroughWatermark() {
+        long now = 1_000_000L;
+        PendingEvent backingOff = new PendingEvent("SMS", "10086", "later", 500L, "SIM1", 1);
+        backingOff.nextAttemptAt = now + 60_000L;
+        dao.insert(backingOff); // 时间戳最早，但退避中，不会被认领
+        for (int i = 0; i < 9; i++) {
+            dao.insert(new PendingEvent("SMS", "10086", "msg " + i, 1_000L + i / 3, "SIM1", 1)); // 每 3 条共用同一时间戳
+        }
+        List<PendingEvent> a = dao.claimPendingEvents("A", now, now, 60_000L, 5);
+        List<PendingEvent> b = dao.claimPendingEvents("B", now, now, 60_000L, 5);
+        assertEquals(4, b.size());
+
+        PendingEvent mark = a.get(3); // 与 a.get(4) 时间戳相同，按 id 区分
+        assertEquals(4, dao.deleteLeasedEventsThrough("A", PendingEvent.STATUS_PENDING, mark.eventTimestamp, mark.id));
+        PendingEvent lastB = b.get(b.size() - 1);
+        // 水位线越过 B 认领的事件，也只删除 A 剩下的 1 条
+        assertEquals(1, dao.deleteLeasedEventsThrough("A", PendingEvent.STATUS_PENDING, lastB.eventTimestamp, lastB.id));
+        assertEquals(5, dao.getPendingEventCount(PendingEvent.STATUS_PENDING)); // B 的 4 条和退避中的 1 条
+    }
+
+    // 整页送达后按水位线删除 (不绑定 ID) 与按 ID 分块删除的耗时对比
+    @Test
+    public void bulkDelete_watermarkVersusIds() {
+        long now = 1_000_000L;
+        insertPending(BULK_ROWS);
+        List<PendingEvent> claimed = dao.claimPendingEvents("A", now, now, 60_000L, BULK_ROWS);
+        PendingEvent last = claimed.get(claimed.size() - 1);
+        long start = System.nanoTime();
+        assertEquals(BULK_ROWS, dao.deleteLeasedEventsThrough("A", PendingEvent.STATUS_PENDING, last.eventTimestamp, last.id));
+        printTiming("deleteLeasedEventsThrough", BULK_ROWS, start);
+
+        int[] ids = insertPending(BULK_ROWS);
+        start = System.nanoTime();
+        assertEquals(BULK_ROWS, dao.deleteEventsByIds(ids));
+        printTiming("deleteEventsByIds", BULK_ROWS, start);
+        assertEquals(0, dao.getPendingEventCount(PendingEvent.STATUS_PENDING));
+    }
+}
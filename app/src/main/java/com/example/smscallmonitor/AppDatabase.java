@@ -1,36 +1,142 @@
 package com.example.smscallmonitor;
 
 import android.content.Context;
-import android.util.Log; // 引入 Log
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
-// 不需要迁移，因为这是第一个 Room 版本
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-// 定义数据库实体和版本号 (版本号从 1 开始)
-@Database(entities = {PendingEvent.class}, version = 1, exportSchema = false)
+// 定义数据库实体和版本号
+// 版本 2: status 由文本改为整数，新增 (status, eventTimestamp) 复合索引
+// 版本 3: 新增 deliveredChannels (每个事件已送达的渠道)
+// 版本 4: 新增 nextAttemptAt (重试退避)，status 新增 STATUS_DEAD
+// 版本 5: 新增 leaseOwner / leaseExpiresAt (补发任务认领事件，见 PendingEventDao.claimPendingEvents)
+// 版本 6: 新增 sims 表 (每张 SIM 卡一行)，pending_events 删除 simInfo 列 (只保留 subId)
+// 导出的 schema JSON 位于 app/schemas (见 build.gradle 中的 room.schemaLocation)
+@Database(entities = {PendingEvent.class, SimCard.class}, version = 6, exportSchema = true)
 public abstract class AppDatabase extends RoomDatabase {
 
+    private static final String TAG = "AppDatabase";
+
     public abstract PendingEventDao pendingEventDao(); // 提供 PendingEventDao
 
+    public abstract SimCardDao simCardDao(); // 提供 SimCardDao
+
     private static volatile AppDatabase INSTANCE;
 
+    // --- 版本 1 -> 2: status TEXT -> INTEGER，并添加复合索引 ---
+    // SQLite 不支持修改列类型，只能新建表、复制数据、再替换
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `pending_events_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`eventType` TEXT, `senderNumber` TEXT, `messageContent` TEXT, `eventTimestamp` INTEGER NOT NULL, "
+                    + "`simInfo` TEXT, `subId` INTEGER NOT NULL, `status` INTEGER NOT NULL, "
+                    + "`attemptTimestamp` INTEGER NOT NULL, `retryCount` INTEGER NOT NULL)");
+            // 旧版本只有 "PENDING"；"SENDING" 是开发中的中间状态，一并映射
+            db.execSQL("INSERT INTO `pending_events_new` (`id`, `eventType`, `senderNumber`, `messageContent`, `eventTimestamp`, "
+                    + "`simInfo`, `subId`, `status`, `attemptTimestamp`, `retryCount`) "
+                    + "SELECT `id`, `eventType`, `senderNumber`, `messageContent`, `eventTimestamp`, `simInfo`, `subId`, "
+                    + "CASE `status` WHEN 'SENDING' THEN " + PendingEvent.STATUS_SENDING + " ELSE " + PendingEvent.STATUS_PENDING + " END, "
+                    + "`attemptTimestamp`, `retryCount` FROM `pending_events`");
+            db.execSQL("DROP TABLE `pending_events`");
+            db.execSQL("ALTER TABLE `pending_events_new` RENAME TO `pending_events`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_pending_events_status_eventTimestamp` ON `pending_events` (`status`, `eventTimestamp`)");
+        }
+    };
+
+    // --- 版本 2 -> 3: 新增 deliveredChannels，旧事件视为尚未通过任何渠道送达 ---
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `pending_events` ADD COLUMN `deliveredChannels` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // --- 版本 3 -> 4: 新增 nextAttemptAt，旧事件立即可以补发 ---
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `pending_events` ADD COLUMN `nextAttemptAt` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // --- 版本 4 -> 5: 新增认领列，旧事件都未被认领 ---
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `pending_events` ADD COLUMN `leaseOwner` TEXT");
+            db.execSQL("ALTER TABLE `pending_events` ADD COLUMN `leaseExpiresAt` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // --- 版本 5 -> 6: SIM 卡信息移到 sims 表 ---
+    // 每个 subId 取最近一个事件的 simInfo 作为显示文字 (SQLite 中与 MAX() 一起查询的列取自 MAX 所在的行)，
+    // 卡槽、颜色未知，服务下次刷新 SIM 卡时补全。SQLite 3.35 以前不支持 DROP COLUMN，只能新建表、复制数据、再替换
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sims` (`subId` INTEGER NOT NULL, `label` TEXT, `displayName` TEXT, "
+                    + "`slotIndex` INTEGER NOT NULL, `color` INTEGER NOT NULL, `lastSeenAt` INTEGER NOT NULL, PRIMARY KEY(`subId`))");
+            db.execSQL("INSERT OR IGNORE INTO `sims` (`subId`, `label`, `displayName`, `slotIndex`, `color`, `lastSeenAt`) "
+                    + "SELECT `subId`, `simInfo`, NULL, -1, 0, MAX(`eventTimestamp`) FROM `pending_events` GROUP BY `subId`");
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `pending_events_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`eventType` TEXT, `senderNumber` TEXT, `messageContent` TEXT, `eventTimestamp` INTEGER NOT NULL, "
+                    + "`subId` INTEGER NOT NULL, `status` INTEGER NOT NULL, `attemptTimestamp` INTEGER NOT NULL, "
+                    + "`retryCount` INTEGER NOT NULL, `deliveredChannels` INTEGER NOT NULL DEFAULT 0, "
+                    + "`nextAttemptAt` INTEGER NOT NULL DEFAULT 0, `leaseOwner` TEXT, `leaseExpiresAt` INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("INSERT INTO `pending_events_new` (`id`, `eventType`, `senderNumber`, `messageContent`, `eventTimestamp`, "
+                    + "`subId`, `status`, `attemptTimestamp`, `retryCount`, `deliveredChannels`, `nextAttemptAt`, `leaseOwner`, `leaseExpiresAt`) "
+                    + "SELECT `id`, `eventType`, `senderNumber`, `messageContent`, `eventTimestamp`, "
+                    + "`subId`, `status`, `attemptTimestamp`, `retryCount`, `deliveredChannels`, `nextAttemptAt`, `leaseOwner`, `leaseExpiresAt` "
+                    + "FROM `pending_events`");
+            db.execSQL("DROP TABLE `pending_events`");
+            db.execSQL("ALTER TABLE `pending_events_new` RENAME TO `pending_events`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_pending_events_status_eventTimestamp` ON `pending_events` (`status`, `eventTimestamp`)");
+        }
+    };
+
+    // 按版本顺序排列的全部迁移 (getDatabase 和迁移测试共用)
+    static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6};
+
+    // 每次打开数据库时设置 synchronous = NORMAL (连接级设置，写入都在主连接上)
+    static final Callback SYNCHRONOUS_NORMAL = new Callback() {
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+    };
+
+    /**
+     * 日志模式和同步设置 (getDatabase 和基准测试共用):
+     * - WAL: 写入追加到 -wal 文件，补发任务读取时不阻塞新事件的写入；
+     *   Room 默认的 AUTOMATIC 在低内存设备上会退回 TRUNCATE (每次提交都重写回滚日志)，这里固定使用 WAL
+     * - synchronous = NORMAL: 提交时不再 fsync，只在检查点时 fsync。进程被杀不会丢失已提交的事件，
+     *   断电时可能丢失最后几次提交，但数据库不会损坏
+     */
+    static Builder<AppDatabase> configure(Builder<AppDatabase> builder) {
+        return builder.setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                .addCallback(SYNCHRONOUS_NORMAL);
+    }
+
     // 获取数据库实例的静态方法
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) { // 同步锁，防止多线程问题
                 if (INSTANCE == null) {
-                    Log.d("AppDatabase", ">>> Creating new database instance..."); // 添加日志
-                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
-                                    AppDatabase.class, "event_monitor_database") // 数据库文件名
-                            // 因为是版本 1，不需要迁移
-                            // 如果以后升级结构，再添加 .addMigrations(...)
-                            // 或者在开发时使用 .fallbackToDestructiveMigration() (会丢失数据)
+                    AppLog.d(TAG, ">>> Creating new database instance..."); // 添加日志
+                    INSTANCE = configure(Room.databaseBuilder(context.getApplicationContext(),
+                                    AppDatabase.class, "event_monitor_database")) // 数据库文件名
+                            // 升级结构时在 MIGRATIONS 中追加迁移，不使用 fallbackToDestructiveMigration (会丢失待发送的事件)
+                            .addMigrations(MIGRATIONS)
                             .build();
-                    Log.d("AppDatabase", ">>> Database instance created."); // 添加日志
+                    AppLog.d(TAG, ">>> Database instance created."); // 添加日志
                 }
             }
         }
         return INSTANCE;
     }
-}
\ No newline at end of file
+}
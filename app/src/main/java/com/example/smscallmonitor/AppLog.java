@@ -0,0 +1,247 @@
+package com.example.smscallmonitor;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+// 日志门面：热路径 (每条短信、每个来电状态、每个事件) 上的日志先检查级别再拼接字符串。
+// - 参数化消息: AppLog.d(TAG, ">>> SMS from {#} on SubId {}", sender, subId)，只有在级别开启时才替换占位符
+// - 延迟消息: AppLog.d(TAG, () -> ...)，拼接代价较大时使用 (只有级别开启时才调用)
+// - release 构建 (BuildConfig.DEBUG == false) 中 d() 直接返回
+// - INFO 及以上的日志同时记入固定大小的环形缓冲区，诊断时可通过 dump() 查看最近的事件
+// 电话号码使用 "{#}" 占位符 (格式化时调用 maskNumber() 打码)，日志中不出现完整号码。
+public final class AppLog {
+
+    // 调试日志总开关 (release 构建为 false)
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static volatile int minLevel = DEBUG ? Log.DEBUG : Log.INFO; // 低于此级别的日志直接丢弃
+
+    private static final Entry[] entries = new Entry[IConstants.LOG_BUFFER_CAPACITY]; // 环形缓冲区
+    private static int count; // 缓冲区中的记录数
+    private static int next; // 下一个写入位置
+
+    // 缓冲区中的一条记录
+    public static final class Entry {
+        public final long timeMs; // System.currentTimeMillis
+        public final int level; // Log.INFO / Log.WARN / Log.ERROR
+        public final String tag;
+        public final String message;
+
+        Entry(long timeMs, int level, String tag, String message) {
+            this.timeMs = timeMs;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+        }
+    }
+
+    private AppLog() {}
+
+    /**
+     * 该级别的日志是否会输出。不使用 Log.isLoggable(tag, level)：它每次都要读系统属性，比拼接一条消息还慢。
+     */
+    public static boolean isLoggable(int level) {
+        return level >= minLevel && (DEBUG || level > Log.DEBUG);
+    }
+
+    public static boolean isDebugEnabled() {
+        return isLoggable(Log.DEBUG);
+    }
+
+    /**
+     * 修改最低级别 (调试用；release 构建中 DEBUG 级别始终关闭)
+     */
+    public static void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    // --- DEBUG ---
+
+    public static void d(String tag, String message) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, tag, message);
+    }
+
+    public static void d(String tag, String format, Object arg1) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, tag, format(format, arg1, null, null, 1));
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, tag, format(format, arg1, arg2, null, 2));
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, tag, format(format, arg1, arg2, arg3, 3));
+    }
+
+    public static void d(String tag, Supplier<String> message) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, tag, message.get());
+    }
+
+    // --- INFO ---
+
+    public static void i(String tag, String message) {
+        if (isLoggable(Log.INFO)) log(Log.INFO, tag, message);
+    }
+
+    public static void i(String tag, String format, Object arg1) {
+        if (isLoggable(Log.INFO)) log(Log.INFO, tag, format(format, arg1, null, null, 1));
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.INFO)) log(Log.INFO, tag, format(format, arg1, arg2, null, 2));
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.INFO)) log(Log.INFO, tag, format(format, arg1, arg2, arg3, 3));
+    }
+
+    public static void i(String tag, Supplier<String> message) {
+        if (isLoggable(Log.INFO)) log(Log.INFO, tag, message.get());
+    }
+
+    // --- WARN / ERROR ---
+
+    public static void w(String tag, String message) {
+        if (isLoggable(Log.WARN)) log(Log.WARN, tag, message);
+    }
+
+    public static void w(String tag, String format, Object arg1) {
+        if (isLoggable(Log.WARN)) log(Log.WARN, tag, format(format, arg1, null, null, 1));
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.WARN)) log(Log.WARN, tag, format(format, arg1, arg2, null, 2));
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.WARN)) log(Log.WARN, tag, format(format, arg1, arg2, arg3, 3));
+    }
+
+    public static void e(String tag, String message) {
+        if (isLoggable(Log.ERROR)) log(Log.ERROR, tag, message);
+    }
+
+    public static void e(String tag, String format, Object arg1) {
+        if (isLoggable(Log.ERROR)) log(Log.ERROR, tag, format(format, arg1, null, null, 1));
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.ERROR)) log(Log.ERROR, tag, format(format, arg1, arg2, null, 2));
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.ERROR)) log(Log.ERROR, tag, format(format, arg1, arg2, arg3, 3));
+    }
+
+    public static void e(String tag, String message, Throwable tr) {
+        if (isLoggable(Log.ERROR)) {
+            Log.e(tag, message, tr);
+            record(Log.ERROR, tag, tr != null ? message + ": " + tr : message);
+        }
+    }
+
+    public static void e(String tag, String format, Object arg1, Throwable tr) {
+        if (isLoggable(Log.ERROR)) e(tag, format(format, arg1, null, null, 1), tr);
+    }
+
+    private static void log(int level, String tag, String message) {
+        Log.println(level, tag, message);
+        if (level >= Log.INFO) record(level, tag, message);
+    }
+
+    /**
+     * 依次把格式中的 "{}" 替换为参数、"{#}" 替换为打码后的电话号码 (多余的占位符原样保留)
+     */
+    static String format(String format, Object arg1, Object arg2, Object arg3, int argCount) {
+        StringBuilder sb = new StringBuilder(format.length() + 32);
+        int start = 0;
+        for (int arg = 0; arg < argCount; arg++) {
+            int index = nextPlaceholder(format, start);
+            if (index < 0) break;
+            Object value = arg == 0 ? arg1 : arg == 1 ? arg2 : arg3;
+            sb.append(format, start, index);
+            if (format.charAt(index + 1) == '#') {
+                sb.append(maskNumber(value != null ? value.toString() : null));
+                start = index + 3;
+            } else {
+                sb.append(value);
+                start = index + 2;
+            }
+        }
+        return sb.append(format, start, format.length()).toString();
+    }
+
+    // 下一个 "{}" 或 "{#}" 的位置，没有时返回 -1
+    private static int nextPlaceholder(String format, int from) {
+        for (int index = format.indexOf('{', from); index >= 0; index = format.indexOf('{', index + 1)) {
+            if (format.startsWith("}", index + 1) || format.startsWith("#}", index + 1)) return index;
+        }
+        return -1;
+    }
+
+    // --- 电话号码打码 ---
+
+    /**
+     * 日志中显示的电话号码: 11 位及以上保留前 3 位和后 4 位 ("138****5678")，较短的号码只保留后 4 位；
+     * 6 位及以下的服务号码 (10086、95588 等) 不打码。
+     */
+    public static String maskNumber(String number) {
+        if (number == null || number.length() <= 6) return number;
+        int length = number.length();
+        int keepHead = length >= 11 ? 3 : 0;
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(number, 0, keepHead);
+        for (int i = keepHead; i < length - 4; i++) sb.append('*');
+        return sb.append(number, length - 4, length).toString();
+    }
+
+    // --- 最近事件缓冲区 ---
+
+    private static synchronized void record(int level, String tag, String message) {
+        entries[next] = new Entry(System.currentTimeMillis(), level, tag, message);
+        next = (next + 1) % entries.length;
+        count = Math.min(count + 1, entries.length);
+    }
+
+    /**
+     * 缓冲区中的记录，从旧到新
+     */
+    public static synchronized Entry[] getRecent() {
+        Entry[] result = new Entry[count];
+        int first = (next - count + entries.length) % entries.length;
+        for (int i = 0; i < count; i++) {
+            result[i] = entries[(first + i) % entries.length];
+        }
+        return result;
+    }
+
+    public static synchronized void clearRecent() {
+        count = 0;
+        next = 0;
+        Arrays.fill(entries, null);
+    }
+
+    /**
+     * 最近的记录 (写入日志或诊断报告用)
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder("Recent log events:");
+        for (Entry entry : getRecent()) {
+            sb.append('\n').append(TimeUtil.formatMillis(entry.timeMs))
+                    .append(' ').append(levelName(entry.level))
+                    .append('/').append(entry.tag).append(": ").append(entry.message);
+        }
+        return sb.toString();
+    }
+
+    private static char levelName(int level) {
+        switch (level) {
+            case Log.ERROR: return 'E';
+            case Log.WARN: return 'W';
+            case Log.INFO: return 'I';
+            default: return 'D';
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.smscallmonitor;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// 批量发送的统计：批大小分布和事件从进入批处理到发送完成的端到端延迟，
+// 用于调整 EventBatcher 的窗口参数
+public class BatchMetrics {
+
+    private static final int LATENCY_SAMPLES = 256; // 保留最近多少个延迟样本用于计算分位数
+
+    private long batchCount; // 已发送的批次数
+    private long eventCount; // 已发送的事件总数
+    private int maxBatchSize; // 最大批次
+    private final long[] latencySamples = new long[LATENCY_SAMPLES]; // 环形缓冲区
+    private int latencySampleCount; // 缓冲区中有效样本数
+    private int latencyNext; // 下一个写入位置
+
+    /**
+     * 记录一个已成功发送的批次
+     * @param batch 批次
+     * @param sentAtMs 发送完成的时间 (与 Batch.enqueuedAtMs 同一时钟)
+     */
+    public synchronized void recordSent(EventBatcher.Batch batch, long sentAtMs) {
+        int size = batch.events.size();
+        batchCount++;
+        eventCount += size;
+        maxBatchSize = Math.max(maxBatchSize, size);
+        for (long enqueuedAt : batch.enqueuedAtMs) {
+            latencySamples[latencyNext] = sentAtMs - enqueuedAt;
+            latencyNext = (latencyNext + 1) % LATENCY_SAMPLES;
+            latencySampleCount = Math.min(latencySampleCount + 1, LATENCY_SAMPLES);
+        }
+    }
+
+    public synchronized long getBatchCount() { return batchCount; }
+
+    public synchronized long getEventCount() { return eventCount; }
+
+    public synchronized double getAverageBatchSize() {
+        return batchCount == 0 ? 0 : (double) eventCount / batchCount;
+    }
+
+    /**
+     * 最近样本中端到端延迟的分位数 (毫秒)，没有样本时返回 -1
+     * @param percentile 0-100
+     */
+    public synchronized long getLatencyPercentileMs(int percentile) {
+        if (latencySampleCount == 0) return -1;
+        long[] sorted = Arrays.copyOf(latencySamples, latencySampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "batches=%d, events=%d, avgBatch=%.2f, maxBatch=%d, latency p50=%dms p95=%dms",
+                batchCount, eventCount, getAverageBatchSize(), maxBatchSize,
+                getLatencyPercentileMs(50), getLatencyPercentileMs(95));
+    }
+}
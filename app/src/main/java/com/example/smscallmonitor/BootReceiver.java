@@ -1,7 +1,6 @@
 package com.example.smscallmonitor;
 import android.content.*;
 import android.os.Build;
-import android.util.Log; // Import Log
 import androidx.core.content.ContextCompat;
 
 public class BootReceiver extends BroadcastReceiver {
@@ -11,7 +10,7 @@ public class BootReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         // Check the action matches BOOT_COMPLETED
         if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            Log.d(TAG, "Boot completed. Starting MonitorService."); // Log action
+            AppLog.d(TAG, "Boot completed. Starting MonitorService."); // Log action
 
             Intent serviceIntent = new Intent(context, MonitorService.class);
             // Add action to tell the service to start monitoring
@@ -24,7 +23,7 @@ public class BootReceiver extends BroadcastReceiver {
                 context.startService(serviceIntent);
             }
         } else {
-            Log.w(TAG, "Received unexpected intent action: " + intent.getAction());
+            AppLog.w(TAG, "Received unexpected intent action: {}", intent.getAction());
         }
     }
 }
\ No newline at end of file
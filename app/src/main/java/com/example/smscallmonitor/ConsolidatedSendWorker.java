@@ -2,6 +2,8 @@ package com.example.smscallmonitor;
 
 import android.Manifest; // 需要 Manifest 权限检查
 import android.app.AlarmManager;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
@@ -9,16 +11,18 @@ import android.content.pm.PackageManager; // 需要 PackageManager
 import android.net.ConnectivityManager;
 import android.net.wifi.WifiManager;
 import android.os.Build; // 需要 Build 版本判断
-import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.work.ForegroundInfo;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
-// Worker 类，用于周期性执行合并发送任务
+// Worker 类，用于补发数据库中积压的事件。由 DrainScheduler 在有积压时安排 (一次性任务，要求网络已连接)
 public class ConsolidatedSendWorker extends Worker {
 
     private static final String TAG = "ConsolidatedSendWorker"; // 日志 TAG
+    private static final int NOTIFICATION_ID = 2; // 加急任务在 Android 12 以下以前台服务运行时的通知 (MonitorService 使用 1)
     private PendingEventDao pendingEventDao; // 数据库访问对象
     private WifiManager wifiManager; // Wi-Fi 管理器
     private ConnectivityManager connectivityManager; // 网络连接管理器
@@ -35,13 +39,13 @@ public class ConsolidatedSendWorker extends Worker {
         pendingEventDao = AppDatabase.getDatabase(applicationContext).pendingEventDao();
         wifiManager = (WifiManager) applicationContext.getSystemService(Context.WIFI_SERVICE);
         connectivityManager = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
-        Log.d(TAG, ">>> ConsolidatedSendWorker initialized."); // 初始化日志
+        AppLog.d(TAG, ">>> ConsolidatedSendWorker initialized."); // 初始化日志
 
         // --- 初始化 AlarmManager (保持不变) ---
         // 1. 获取 AlarmManager
         alarmManager = (AlarmManager) applicationContext.getSystemService(Context.ALARM_SERVICE);
         if (alarmManager == null) {
-            Log.e(TAG, ">>> Cannot schedule Wi-Fi off: AlarmManager service not available.");
+            AppLog.e(TAG, ">>> Cannot schedule Wi-Fi off: AlarmManager service not available.");
             return;
         }
 
@@ -63,7 +67,7 @@ public class ConsolidatedSendWorker extends Worker {
     @NonNull
     @Override
     public Result doWork() { // Worker 的核心工作方法
-        Log.i(TAG, ">>> ConsolidatedSendWorker started work execution."); // 开始工作日志
+        AppLog.i(TAG, ">>> ConsolidatedSendWorker started work execution."); // 开始工作日志
 
         // 调用封装好的核心发送逻辑
         boolean success = EventSendHelper.performConsolidatedSend(applicationContext, pendingEventDao, wifiManager, connectivityManager);
@@ -71,12 +75,27 @@ public class ConsolidatedSendWorker extends Worker {
 
         // 根据发送逻辑的返回值，决定 Worker 的结果
         if (success) {
-            Log.i(TAG, ">>> Consolidated send attempt finished successfully (or no events). Worker returning SUCCESS.");
+            // 已到期的事件都发完了；还有退避中的事件时在本任务之后追加一个延迟任务，否则任务链到此结束
+            DrainScheduler.scheduleFollowUp(applicationContext, pendingEventDao);
+            AppLog.i(TAG, ">>> Consolidated send attempt finished successfully (or no events). Worker returning SUCCESS.");
             return Result.success(); // 返回成功状态
         } else {
-            Log.w(TAG, ">>> Consolidated send attempt finished failed. Worker returning SUCCESS to avoid RETRY.");
-            return Result.success();
-//            return Result.retry(); // 告知 WorkManager 需要稍后重试
+            AppLog.w(TAG, ">>> Consolidated send attempt failed (attempt {}). Worker returning RETRY.", getRunAttemptCount());
+            return Result.retry(); // 告知 WorkManager 按指数退避稍后重试
         }
     }
+
+    // 加急任务在 Android 12 以下以前台服务运行，需要提供通知
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = applicationContext.getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.createNotificationChannel(new NotificationChannel("channel", "监控服务", NotificationManager.IMPORTANCE_LOW));
+            }
+        }
+        return new ForegroundInfo(NOTIFICATION_ID, new NotificationCompat.Builder(applicationContext, "channel")
+                .setContentTitle("正在补发短信/来电通知").setSmallIcon(R.mipmap.ic_launcher).build());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.example.smscallmonitor;
+
+// 有上限、自动过期的去重缓存：用于未接来电去抖动和短信重复投递去重。
+// 键是 64 位哈希 (见 callKey / smsKey)，按插入顺序存放在固定大小的 long 环形数组里:
+// 不创建字符串或装箱对象，超过 ttlMs 的记录视为不存在，写满后覆盖最旧的记录，内存占用固定。
+public class DedupCache {
+
+    private final long ttlMs; // 记录的有效期
+    private final long[] keys; // 环形缓冲区: 键
+    private final long[] times; // 环形缓冲区: 记录时间 (与 keys 下标对应)
+    private int count; // 缓冲区中的记录数 (含已过期但尚未覆盖的)
+    private int next; // 下一个写入位置
+
+    /**
+     * @param ttlMs 记录的有效期，超过后同一个键会被重新接受
+     * @param capacity 最多保留的记录数，超出后覆盖最旧的记录
+     */
+    public DedupCache(long ttlMs, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.ttlMs = ttlMs;
+        this.keys = new long[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * 检查并记录一个键。
+     * @param now 当前时间 (毫秒)
+     * @return true 如果有效期内没有见过这个键 (并记录下来)，false 如果是重复的
+     */
+    public synchronized boolean firstSeen(long key, long now) {
+        if (contains(key, now)) {
+            return false;
+        }
+        keys[next] = key;
+        times[next] = now;
+        next = (next + 1) % keys.length;
+        count = Math.min(count + 1, keys.length);
+        return true;
+    }
+
+    /**
+     * 有效期内是否见过这个键 (不记录)
+     */
+    public synchronized boolean contains(long key, long now) {
+        // 从最新的记录往回找，记录按时间顺序写入，遇到过期的就可以停止
+        for (int i = 0, index = next; i < count; i++) {
+            index = (index == 0 ? keys.length : index) - 1;
+            if (now - times[index] > ttlMs) {
+                break;
+            }
+            if (keys[index] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 有效期内的记录数
+     */
+    public synchronized int size(long now) {
+        int live = 0;
+        for (int i = 0, index = next; i < count; i++) {
+            index = (index == 0 ? keys.length : index) - 1;
+            if (now - times[index] > ttlMs) break;
+            live++;
+        }
+        return live;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public synchronized void clear() {
+        count = 0;
+        next = 0;
+    }
+
+    // --- 键 ---
+
+    /**
+     * 未接来电的键: SIM 卡 + 规范化后的号码 (只保留数字，忽略空格、横线和 "+")
+     */
+    public static long callKey(int subId, String number) {
+        long h = hashDigits(FNV_OFFSET, number);
+        return mix(h ^ subId);
+    }
+
+    /**
+     * 短信的键: 发件人 (规范化) + 短信中心时间戳 + 内容。系统重复投递的同一条短信三者都相同。
+     */
+    public static long smsKey(String sender, long timestamp, String body) {
+        long h = hashDigits(FNV_OFFSET, sender);
+        h = (h ^ timestamp) * FNV_PRIME;
+        if (body != null) {
+            for (int i = 0; i < body.length(); i++) {
+                h = (h ^ body.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return mix(h);
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L; // 64 位 FNV-1a
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long hashDigits(long h, String number) {
+        if (number == null) return h;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                h = (h ^ c) * FNV_PRIME;
+            }
+        }
+        return h;
+    }
+
+    // 最后再打散一次 (splitmix64 的收尾步骤)，让相近的输入得到差别很大的键
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
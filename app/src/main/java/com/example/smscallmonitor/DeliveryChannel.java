@@ -0,0 +1,75 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+
+import java.util.List;
+
+// 通知渠道 (邮件、Google Voice ...)。每个渠道有一个固定的位 (bit)，
+// 事件已经通过哪些渠道送达记录在 PendingEvent.deliveredChannels 中，重试时只补发尚未送达的渠道。
+public interface DeliveryChannel {
+
+    /**
+     * 渠道的位标记 (1, 2, 4 ...)，写入数据库，不能更改已有渠道的值
+     */
+    int bit();
+
+    /**
+     * 渠道名称 (日志用)
+     */
+    String name();
+
+    /**
+     * 用户是否开启了这个渠道 (关闭的渠道不发送，也不要求送达)
+     */
+    boolean isEnabled(Context context);
+
+    /**
+     * 把一批事件通过此渠道发送出去 (在渠道自己的线程上调用)
+     * @param subject 邮件主题 (渠道可以忽略)
+     * @return 发送结果 (SendResult.isSuccess() 为 true 表示成功)
+     */
+    SendResult deliver(Context context, String subject, List<PendingEvent> events);
+
+    /**
+     * 中止正在进行的 deliver (DeliveryDispatcher 超时后在其他线程上调用，发送线程已被中断)。
+     * 中止后 deliver 不能再把邮件发出去，否则重试时会重复通知。
+     */
+    void abort();
+
+    // --- 内置渠道 ---
+
+    int BIT_EMAIL = 1;
+    int BIT_GOOGLE_VOICE = 1 << 1;
+
+    /**
+     * 邮件 (HTML 正文)
+     */
+    class Email implements DeliveryChannel {
+        @Override public int bit() { return BIT_EMAIL; }
+        @Override public String name() { return EmailSender.CHANNEL_EMAIL; }
+        @Override public boolean isEnabled(Context context) { return SettingsValues.isEmailNotificationEnabled(context); }
+
+        @Override
+        public SendResult deliver(Context context, String subject, List<PendingEvent> events) {
+            return EmailSender.sendEmail(context, subject, EventEmailRenderer.htmlBody(events));
+        }
+
+        @Override public void abort() { EmailSender.abort(EmailSender.CHANNEL_EMAIL); }
+    }
+
+    /**
+     * Google Voice (通过邮件转短信，纯文本正文)
+     */
+    class GoogleVoice implements DeliveryChannel {
+        @Override public int bit() { return BIT_GOOGLE_VOICE; }
+        @Override public String name() { return EmailSender.CHANNEL_GV; }
+        @Override public boolean isEnabled(Context context) { return SettingsValues.isGVNotificationEnabled(context); }
+
+        @Override
+        public SendResult deliver(Context context, String subject, List<PendingEvent> events) {
+            return EmailSender.sendGv(context, EventEmailRenderer.plainTextBody(events));
+        }
+
+        @Override public void abort() { EmailSender.abort(EmailSender.CHANNEL_GV); }
+    }
+}
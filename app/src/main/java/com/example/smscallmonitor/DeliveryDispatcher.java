@@ -0,0 +1,225 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 多渠道并行发送：每个渠道有自己的单线程、有界队列的执行器，各渠道同时发送，
+// 慢的渠道 (如 SMTP 往返) 不会拖慢其他渠道。每个事件只发送尚未送达的渠道，
+// 成功的渠道记入 event.deliveredChannels，由调用方写回数据库。
+public class DeliveryDispatcher {
+
+    private static final String TAG = "DeliveryDispatcher"; // 日志 TAG
+
+    /**
+     * 一次分发的结果
+     */
+    public static final class Result {
+        public final int requiredMask; // 本次需要送达的渠道 (已开启的渠道)
+        public final int attemptedMask; // 实际尝试发送的渠道 (有未送达事件的渠道)
+        public final int failedMask; // 发送失败 (或超时、队列已满) 的渠道
+        public final int succeededMask; // 至少有一部分事件发送成功的渠道 (拆分发送时可能与 failedMask 重叠)
+        public final List<SendResult> failures; // 失败渠道各自的结果 (失败类型、各阶段耗时)
+
+        Result(int requiredMask, int attemptedMask, int failedMask, int succeededMask, List<SendResult> failures) {
+            this.requiredMask = requiredMask;
+            this.attemptedMask = attemptedMask;
+            this.failedMask = failedMask;
+            this.succeededMask = succeededMask;
+            this.failures = failures;
+        }
+
+        /**
+         * 对同一批事件重试后的结果: 失败以重试为准，成功的渠道两次合计
+         */
+        Result thenRetried(Result retry) {
+            return new Result(retry.requiredMask, attemptedMask | retry.attemptedMask, retry.failedMask,
+                    succeededMask | retry.succeededMask, retry.failures);
+        }
+
+        /**
+         * 拆分成两部分分别发送后的合并结果
+         */
+        Result combinedWith(Result other) {
+            List<SendResult> all = new ArrayList<>(failures);
+            all.addAll(other.failures);
+            return new Result(requiredMask | other.requiredMask, attemptedMask | other.attemptedMask,
+                    failedMask | other.failedMask, succeededMask | other.succeededMask, all);
+        }
+
+        /**
+         * 综合各失败渠道的建议: 需要拆分 > 稍后重试 > 快速重试
+         */
+        public SendResult.RetryAdvice retryAdvice() {
+            SendResult.RetryAdvice advice = SendResult.RetryAdvice.NONE;
+            for (SendResult failure : failures) {
+                SendResult.RetryAdvice a = failure.retryAdvice();
+                if (a == SendResult.RetryAdvice.SPLIT) return a;
+                if (a == SendResult.RetryAdvice.DEFERRED || advice == SendResult.RetryAdvice.NONE) advice = a;
+            }
+            return advice;
+        }
+
+        /**
+         * 是否所有尝试的渠道都成功了
+         */
+        public boolean isAllDelivered() {
+            return failedMask == 0;
+        }
+
+        /**
+         * 失败的渠道是否都只是因为 SMTP 熔断而没有尝试 (例如半开状态下另一个渠道正在试探)，这种失败不计入尝试次数
+         */
+        public boolean isOnlyCircuitOpen() {
+            if (failures.isEmpty()) return false;
+            for (SendResult failure : failures) {
+                if (failure.kind != SendResult.Kind.CIRCUIT_OPEN) return false;
+            }
+            return true;
+        }
+
+        /**
+         * 是否至少有一个渠道成功了 (或本来就没有需要发送的)
+         */
+        public boolean isAnyDelivered() {
+            return attemptedMask == 0 || succeededMask != 0;
+        }
+
+        /**
+         * 事件是否已通过所有需要的渠道送达 (可以删除)
+         */
+        public boolean isComplete(PendingEvent event) {
+            return (event.deliveredChannels & requiredMask) == requiredMask;
+        }
+    }
+
+    private static volatile DeliveryDispatcher defaultInstance;
+
+    private final List<DeliveryChannel> channels;
+    private final ThreadPoolExecutor[] executors; // 与 channels 一一对应
+    private final long sendTimeoutMs;
+
+    public DeliveryDispatcher(List<DeliveryChannel> channels, int queueCapacity, long sendTimeoutMs) {
+        this.channels = new ArrayList<>(channels);
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.executors = new ThreadPoolExecutor[this.channels.size()];
+        for (int i = 0; i < executors.length; i++) {
+            String threadName = "delivery-" + this.channels.get(i).name();
+            executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), r -> {
+                        Thread t = new Thread(r, threadName);
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * 应用使用的默认分发器 (邮件 + Google Voice)
+     */
+    public static DeliveryDispatcher getDefault() {
+        if (defaultInstance == null) {
+            synchronized (DeliveryDispatcher.class) {
+                if (defaultInstance == null) {
+                    defaultInstance = new DeliveryDispatcher(
+                            Arrays.asList(new DeliveryChannel.Email(), new DeliveryChannel.GoogleVoice()),
+                            IConstants.DELIVERY_QUEUE_CAPACITY, IConstants.DELIVERY_SEND_TIMEOUT_MS);
+                }
+            }
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * 通过所有已开启的渠道并行发送，阻塞直到各渠道完成 (或超时)。
+     * 成功的渠道会在对应事件的 deliveredChannels 上置位。不操作数据库。
+     * @param subject 邮件主题
+     * @param events 要发送的事件 (每个渠道只发送其中尚未通过该渠道送达的事件)
+     */
+    public Result deliver(Context context, String subject, List<PendingEvent> events) {
+        int requiredMask = 0;
+        int attemptedMask = 0;
+        List<List<PendingEvent>> pendingPerChannel = new ArrayList<>(channels.size());
+        List<Future<SendResult>> futures = new ArrayList<>(channels.size());
+
+        // 1. 各渠道同时开始发送
+        for (int i = 0; i < channels.size(); i++) {
+            DeliveryChannel channel = channels.get(i);
+            List<PendingEvent> pending = new ArrayList<>();
+            Future<SendResult> future = null;
+            if (channel.isEnabled(context)) {
+                requiredMask |= channel.bit();
+                for (PendingEvent event : events) {
+                    if ((event.deliveredChannels & channel.bit()) == 0) pending.add(event);
+                }
+                if (!pending.isEmpty()) {
+                    attemptedMask |= channel.bit();
+                    try {
+                        future = executors[i].submit(() -> channel.deliver(context, subject, pending));
+                    } catch (RejectedExecutionException e) {
+                        AppLog.w(TAG, ">>> Channel {} queue is full, leaving {} event(s) for retry.", channel.name(), pending.size());
+                    }
+                }
+            }
+            pendingPerChannel.add(pending);
+            futures.add(future);
+        }
+
+        // 2. 等待各渠道结果，成功的渠道置位
+        int failedMask = 0;
+        List<SendResult> failures = new ArrayList<>(0);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        for (int i = 0; i < channels.size(); i++) {
+            DeliveryChannel channel = channels.get(i);
+            List<PendingEvent> pending = pendingPerChannel.get(i);
+            if (pending.isEmpty()) continue;
+            SendResult sendResult = awaitDelivered(channel, futures.get(i), deadline);
+            if (sendResult.isSuccess()) {
+                for (PendingEvent event : pending) {
+                    event.deliveredChannels |= channel.bit();
+                }
+            } else {
+                failedMask |= channel.bit();
+                failures.add(sendResult);
+            }
+        }
+
+        AppLog.i(TAG, ">>> Delivered {} event(s): required={}, attempted={}", events.size(), requiredMask, attemptedMask);
+        if (failedMask != 0) {
+            AppLog.w(TAG, ">>> Failed channels {}: {}", failedMask, failures);
+        }
+        return new Result(requiredMask, attemptedMask, failedMask, attemptedMask & ~failedMask, failures);
+    }
+
+    // 等待一个渠道的发送结果。超时时取消并中止该渠道的发送，确保按失败处理的事件不会在之后被发出 (重试时才不会重复通知)
+    private static SendResult awaitDelivered(DeliveryChannel channel, Future<SendResult> future, long deadlineNanos) {
+        if (future == null) { // 队列已满，未提交
+            return SendResult.failure(SendResult.Kind.UNKNOWN, channel.name() + " queue full");
+        }
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            SendResult result = future.get(remaining, TimeUnit.NANOSECONDS);
+            return result != null ? result : SendResult.failure(SendResult.Kind.UNKNOWN, channel.name() + " returned no result");
+        } catch (TimeoutException e) {
+            AppLog.w(TAG, ">>> Channel {} did not finish in time, aborting and treating as failed.", channel.name());
+            future.cancel(true); // 中断发送线程: 尚未写出的邮件不再发送，失败后不重连重发
+            channel.abort(); // 关闭该渠道的连接，阻塞在 socket 上的发送立即失败
+            return SendResult.failure(SendResult.Kind.UNKNOWN, channel.name() + " did not finish in time"); // 渠道线程仍被占用，不宜快速重试
+        } catch (ExecutionException e) {
+            AppLog.e(TAG, ">>> Channel {} threw an exception.", channel.name(), e.getCause());
+            return SendResult.failure(SendResult.Kind.UNKNOWN, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // 重新设置中断状态
+            return SendResult.failure(SendResult.Kind.UNKNOWN, "interrupted");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// 补发任务 (ConsolidatedSendWorker) 的调度：只在数据库中有待补发的事件时安排一次性任务，并要求网络已连接，
+// 所以队列为空时不会唤醒设备，断网期间积压的事件在网络恢复后立即补发 (不再等最多 30 分钟的周期)。
+//   - 有已到重试时间的事件: 加急 (expedited) 任务，配额用完时按普通任务执行
+//   - 只有退避中的事件: 普通任务，延迟到最早的 nextAttemptAt
+//   - 没有待补发的事件: 取消已安排但尚未开始的任务
+// 正在运行的补发 (以及排在它后面的后续任务) 不会被取消或替换，见 policyFor。
+// 真正的发送失败由 Worker 返回 Result.retry()，按 WorkManager 的指数退避重试。
+public class DrainScheduler {
+
+    private static final String TAG = "DrainScheduler"; // 日志 TAG
+
+    static final String UNIQUE_WORK_NAME = "ConsolidatedDrainWork"; // 补发任务的唯一名称
+    static final String LEGACY_PERIODIC_WORK_NAME = "ConsolidatedSendWork"; // 旧版本的周期性任务 (每 30 分钟)
+
+    private DrainScheduler() {}
+
+    /**
+     * 根据数据库中的积压安排 (或取消) 补发任务。已安排但尚未开始的任务按最新的积压重新计算；
+     * 有补发正在运行时只在它之后追加一个任务，不会取消它。需在后台线程调用 (会同步查询任务状态)。
+     */
+    public static void schedule(Context context, PendingEventDao dao) {
+        schedule(context, dao, null, true);
+    }
+
+    /**
+     * 补发任务结束时调用: 还有退避中的事件时，在当前任务之后追加一个延迟任务；没有时什么也不做 (任务链自然结束)。
+     */
+    static void scheduleFollowUp(Context context, PendingEventDao dao) {
+        schedule(context, dao, ExistingWorkPolicy.APPEND_OR_REPLACE, false);
+    }
+
+    // policy 为 null 时按当前任务状态决定 (policyFor)
+    private static void schedule(Context context, PendingEventDao dao, ExistingWorkPolicy policy, boolean cancelWhenEmpty) {
+        long now = System.currentTimeMillis();
+        long delayMs;
+        try {
+            delayMs = initialDelayMs(dao.getEarliestNextAttemptAt(PendingEvent.STATUS_PENDING), now);
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> Error reading pending backlog: {}", e.getMessage());
+            return;
+        }
+        WorkManager workManager = WorkManager.getInstance(context);
+        if (delayMs < 0 && !cancelWhenEmpty) return;
+        if (policy == null) {
+            Set<WorkInfo.State> states = activeStates(workManager);
+            if (states == null) return;
+            if (delayMs < 0) {
+                if (isStarted(states)) {
+                    AppLog.d(TAG, ">>> No pending events, drain work already running, leaving it.");
+                } else if (!states.isEmpty()) {
+                    workManager.cancelUniqueWork(UNIQUE_WORK_NAME); // 只有尚未开始的任务
+                    AppLog.d(TAG, ">>> No pending events, drain work cancelled.");
+                }
+                return;
+            }
+            policy = policyFor(states);
+            if (policy == ExistingWorkPolicy.KEEP) {
+                AppLog.d(TAG, ">>> Drain work running with a follow-up already queued, keeping it.");
+                return;
+            }
+        }
+        workManager.enqueueUniqueWork(UNIQUE_WORK_NAME, policy, buildRequest(delayMs));
+        AppLog.i(TAG, ">>> Drain work enqueued ({}, delay {}ms).", delayMs == 0 ? "expedited" : "delayed", delayMs);
+    }
+
+    // 补发任务中尚未结束的任务状态，查询失败时为 null
+    private static Set<WorkInfo.State> activeStates(WorkManager workManager) {
+        Set<WorkInfo.State> states = EnumSet.noneOf(WorkInfo.State.class);
+        try {
+            List<WorkInfo> infos = workManager.getWorkInfosForUniqueWork(UNIQUE_WORK_NAME).get();
+            for (WorkInfo info : infos) {
+                if (!info.getState().isFinished()) states.add(info.getState());
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> Error reading drain work state: {}", e.getMessage());
+            return null;
+        }
+        return states;
+    }
+
+    // 任务链中已有任务开始运行 (BLOCKED 表示排在一个正在运行的任务之后)
+    private static boolean isStarted(Set<WorkInfo.State> states) {
+        return states.contains(WorkInfo.State.RUNNING) || states.contains(WorkInfo.State.BLOCKED);
+    }
+
+    /**
+     * 有新积压时如何安排补发任务
+     * @param states 补发任务中尚未结束的任务状态
+     * @return 没有任务或只有尚未开始的任务: REPLACE (按最新的积压重新计算延迟)；
+     *         正在运行、后面还没有任务: APPEND_OR_REPLACE (运行中的任务最后一次认领之后到达的事件由追加的任务补发)；
+     *         正在运行、后面已有任务: KEEP (后续任务开始时会认领所有已到期的事件)
+     */
+    static ExistingWorkPolicy policyFor(Set<WorkInfo.State> states) {
+        if (!isStarted(states)) return ExistingWorkPolicy.REPLACE;
+        return states.contains(WorkInfo.State.BLOCKED) ? ExistingWorkPolicy.KEEP : ExistingWorkPolicy.APPEND_OR_REPLACE;
+    }
+
+    /**
+     * 补发任务的请求: 要求网络已连接，失败时指数退避；立即执行的任务为加急任务 (加急任务不能设置延迟)
+     */
+    static OneTimeWorkRequest buildRequest(long delayMs) {
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(ConsolidatedSendWorker.class)
+                .setConstraints(new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, IConstants.DRAIN_BACKOFF_DELAY_MS, TimeUnit.MILLISECONDS);
+        if (delayMs > 0) {
+            builder.setInitialDelay(delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 补发任务的延迟
+     * @param earliestNextAttemptAt 待补发事件中最早的 nextAttemptAt，没有待补发事件时为 null
+     * @return -1 表示不需要补发任务，0 表示立即执行，否则为需要等待的毫秒数
+     */
+    static long initialDelayMs(Long earliestNextAttemptAt, long now) {
+        if (earliestNextAttemptAt == null) return -1;
+        return Math.max(0, earliestNextAttemptAt - now);
+    }
+
+    /**
+     * 取消旧版本安排的周期性补发任务 (升级后第一次启动服务时)
+     */
+    public static void cancelLegacyPeriodicWork(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(LEGACY_PERIODIC_WORK_NAME);
+    }
+}
@@ -2,9 +2,8 @@ package com.example.smscallmonitor;
 
 import android.content.Context; // 需要 Context
 import android.content.SharedPreferences; // 需要 SharedPreferences
-import android.util.Log; // 使用 Android Log
 
-import java.util.Properties;
+import javax.activation.DataHandler;
 import javax.mail.*;
 import javax.mail.internet.*;
 
@@ -12,69 +11,120 @@ import javax.mail.internet.*;
 public class EmailSender {
 
     private static final String TAG = "EmailSender"; // 日志 TAG
+    static final String CHANNEL_EMAIL = "email"; // 连接池中的渠道名称 (与 DeliveryChannel.name() 一致)
+    static final String CHANNEL_GV = "gv";
     // 硬编码的发件人凭证，极不安全，仅用于示例！实际应用必须安全存储或让用户输入
 
+    // SMTP 熔断器 (邮件和 Google Voice 使用同一个发件账号，共用一个)
+    private static final SmtpCircuitBreaker circuitBreaker = new SmtpCircuitBreaker(
+            IConstants.SMTP_CIRCUIT_FAILURE_THRESHOLD, IConstants.SMTP_CIRCUIT_OPEN_MS,
+            IConstants.SMTP_CIRCUIT_MAX_OPEN_MS, IConstants.SMTP_CIRCUIT_AUTH_OPEN_MS);
+
     /**
      * 发送邮件的方法
      * @param subject 邮件主题
-     * @param body 邮件正文 (HTML 格式)
-     * @return true 如果邮件发送尝试成功 (不保证送达)，false 如果在发送过程中发生错误
+     * @param body 邮件正文 (HTML 格式，见 EventEmailRenderer.htmlBody)
+     * @return 发送结果 (成功、跳过或失败类型，见 SendResult)
      */
-    public static boolean sendEmail(Context context, String subject, String body) {
+    public static SendResult sendEmail(Context context, String subject, DataHandler body) {
         if(!SettingsValues.isEmailNotificationEnabled(context)) {
-            return true;
+            return SendResult.skipped();
         }
         String recipients = SettingsValues.getEmailRecipients(context);
         String emailSender = SettingsValues.getEmailSender(context);
         String passwd = SettingsValues.getSenderPasswd(context);
-        return send(subject, body, recipients, emailSender, passwd);
+        return send(CHANNEL_EMAIL, subject, body, recipients, emailSender, passwd);
     }
     /**
      * 发送邮件到GoogleVoice的方法
-     * @param body 邮件正文（纯文本）
-     * @return true 如果邮件发送尝试成功 (不保证送达)，false 如果在发送过程中发生错误
+     * @param body 邮件正文（纯文本，见 EventEmailRenderer.plainTextBody）
+     * @return 发送结果 (成功、跳过或失败类型，见 SendResult)
      */
-    public static boolean sendGv(Context context, String body) {
+    public static SendResult sendGv(Context context, DataHandler body) {
         if(!SettingsValues.isGVNotificationEnabled(context)) {
-            return true;
+            return SendResult.skipped();
         }
         String subject = "Re: New text message from";
         String recipients = SettingsValues.getGVRecipients(context);
         String emailSender = SettingsValues.getEmailSender(context);
         String passwd = SettingsValues.getSenderPasswd(context);
-        return send(subject, body, recipients, emailSender, passwd);
+        return send(CHANNEL_GV, subject, body, recipients, emailSender, passwd);
+    }
+
+    /**
+     * SMTP 是否处于熔断中 (认证失败或连续网络错误)。熔断时不必为发送打开网络，事件留给之后的补发。
+     */
+    public static boolean isCircuitOpen(Context context) {
+        String sender = SettingsValues.getEmailSender(context);
+        String passwd = SettingsValues.getSenderPasswd(context);
+        return circuitBreaker.isOpen(credentialsKey(sender, passwd), now());
+    }
+
+    /**
+     * 预先建立 SMTP 连接 (NetworkWarmer 在网络预热完成后调用)。未开启任何渠道、未配置凭证或熔断中时不连接。
+     * 预热失败不计入熔断器，真正发送时再按结果处理。需在后台线程调用。
+     */
+    public static void warmUpConnection(Context context) {
+        boolean email = SettingsValues.isEmailNotificationEnabled(context);
+        boolean gv = SettingsValues.isGVNotificationEnabled(context);
+        if (!email && !gv) {
+            return;
+        }
+        String sender = SettingsValues.getEmailSender(context);
+        String passwd = SettingsValues.getSenderPasswd(context);
+        if (null == sender || "".equals(sender) || null == passwd || "".equals(passwd)) {
+            return;
+        }
+        if (circuitBreaker.isOpen(credentialsKey(sender, passwd), now())) {
+            AppLog.d(TAG, "SMTP circuit is open, skipping connection warm-up.");
+            return;
+        }
+        SmtpConnectionPool pool = SmtpConnectionPool.getGmailPool();
+        if (email && pool.warmUp(CHANNEL_EMAIL, sender, passwd)) {
+            AppLog.i(TAG, "SMTP connection warmed up for {}.", CHANNEL_EMAIL);
+        }
+        if (gv && pool.warmUp(CHANNEL_GV, sender, passwd)) {
+            AppLog.i(TAG, "SMTP connection warmed up for {}.", CHANNEL_GV);
+        }
+    }
+
+    /**
+     * 中止渠道上正在进行的发送 (关闭该渠道的 SMTP 连接)，其他渠道不受影响
+     */
+    public static void abort(String channel) {
+        SmtpConnectionPool.getGmailPool().abort(channel);
+    }
+
+    private static String credentialsKey(String sender, String passwd) {
+        return sender + "\n" + passwd;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000L; // 单调时钟
     }
 
     /**
      * 发送邮件的方法
+     * @param channel 渠道名称 (CHANNEL_EMAIL / CHANNEL_GV)，每个渠道使用连接池中自己的连接
      * @param subject 邮件主题
-     * @param body 邮件正文
+     * @param body 邮件正文 (发送时才写出，正文的 Content-Type 由 body 决定)
      * @param recipient 收件人
-     * @return true 如果邮件发送尝试成功 (不保证送达)，false 如果在发送过程中发生错误
+     * @return 发送结果: 成功 (不保证送达)、未配置时跳过，或失败的类型、SMTP 返回码和各阶段耗时
      */
-    public static boolean send(String subject, String body, String recipient, String sender, String passwd) {
-        if(null == recipient || "".equals(recipient) || null == body || "".equals(body) || null == sender || "".equals(sender) || null == passwd || "".equals(passwd)) {
-            return true;
+    public static SendResult send(String channel, String subject, DataHandler body, String recipient, String sender, String passwd) {
+        if(null == recipient || "".equals(recipient) || null == body || null == sender || "".equals(sender) || null == passwd || "".equals(passwd)) {
+            return SendResult.skipped();
+        }
+        String credentials = credentialsKey(sender, passwd);
+        if (!circuitBreaker.allowRequest(credentials, now())) {
+            AppLog.w(TAG, "SMTP circuit is open, skipping send. Subject: {}", subject);
+            return SendResult.circuitOpen();
         }
-        // SMTP 服务器配置 (Gmail)
-        Properties props = new Properties();
-        props.put("mail.smtp.auth", "true"); // 需要认证
-        props.put("mail.smtp.starttls.enable", "true"); // 启用 STARTTLS 加密
-        props.put("mail.smtp.host", "smtp.gmail.com"); // Gmail SMTP 服务器地址
-        props.put("mail.smtp.port", "587"); // Gmail SMTP TLS 端口
-        // 添加超时设置，防止长时间阻塞 (单位：毫秒)
-        props.put("mail.smtp.connectiontimeout", "20000"); // 连接超时 20 秒
-        props.put("mail.smtp.timeout", "20000");           // 读取/写入超时 20 秒
-        Log.d(TAG, "SMTP Properties configured for gmail."); // 配置完成日志
-
-        // 创建邮件 Session，提供认证信息
-        Session session = Session.getInstance(props,
-                new javax.mail.Authenticator() { // 匿名内部类实现认证器
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        // 返回发件人用户名和密码 (或应用专用密码)
-                        return new PasswordAuthentication(sender, passwd);
-                    }
-                });
+        SendResult.Timings timings = new SendResult.Timings();
+        long start = now();
+        // 从连接池获取凭证对应的 Session (Gmail)，同一渠道的多封邮件复用同一个已认证的连接
+        SmtpConnectionPool pool = SmtpConnectionPool.getGmailPool();
+        Session session = pool.getSession(sender, passwd);
 
         try {
             // 创建 MimeMessage 对象
@@ -86,34 +136,43 @@ public class EmailSender {
                     InternetAddress.parse(recipient));
             // 设置邮件主题
             message.setSubject(subject);
-            // 设置邮件内容为 HTML 格式，并指定 UTF-8 编码
-            message.setContent(body, "text/html;charset=UTF-8");
+            // 设置邮件内容: 正文在写出邮件时直接渲染进 SMTP 连接，不生成完整的字符串
+            message.setDataHandler(body);
+            // 显式指定 base64 传输编码 (必须在 setDataHandler 之后)，
+            // 否则 JavaMail 会在发送前把正文完整渲染一遍来判断该用哪种编码
+            message.setHeader("Content-Transfer-Encoding", "base64");
 
             // 记录尝试发送邮件的日志
-            Log.d(TAG, "Attempting to send email via Transport.send(). Subject: " + subject);
-            // 执行发送操作
-            Transport.send(message);
-            // 如果 Transport.send() 没有抛出异常，认为发送尝试成功
-            Log.i(TAG, "✅ Email sent successfully (Transport.send completed)! Subject: " + subject); // 记录成功日志
-            return true; // 返回 true 表示发送尝试成功
-
-        } catch (AuthenticationFailedException e) {
-            // 处理认证失败异常 (通常是用户名或密码错误)
-            Log.e(TAG, "❌ Email sending failed: Authentication Error - Check sender credentials or App Password settings. " + e.getMessage());
-            return false; // 返回 false 表示失败
-        } catch (MessagingException e) {
-            // 处理其他邮件相关的异常 (网络问题、地址格式错误、服务器拒绝等)
-            Log.e(TAG, "❌ Email sending failed: Messaging Error - " + e.getMessage());
-            // 可以检查 e.getCause() 来获取更底层的异常信息，例如网络异常
-            Throwable cause = e.getCause();
-            if (cause != null) {
-                Log.e(TAG, "   Cause: " + cause.getClass().getName() + " - " + cause.getMessage());
-            }
-            return false; // 返回 false 表示失败
+            AppLog.d(TAG, "Attempting to send email via pooled SMTP connection. Subject: {}", subject);
+            // 执行发送操作 (连接不存在或失效时才会重新握手)
+            pool.send(message, channel, sender, passwd, timings);
+            timings.totalMs = now() - start;
+            // 如果 send() 没有抛出异常，认为发送尝试成功
+            AppLog.i(TAG, "✅ Email sent successfully (pooled transport)! Subject: {} [{}]", subject, timings); // 记录成功日志
+            circuitBreaker.recordSuccess();
+            return SendResult.success(timings);
+
         } catch (Exception e) {
-            // 捕获其他所有未预料到的异常，确保程序不会崩溃
-            Log.e(TAG, "❌ Unexpected error during email sending: " + e.getMessage(), e); // 记录完整异常堆栈
-            return false; // 返回 false 表示失败
+            // 按异常类型归类 (认证、DNS、TLS、超时、4xx、5xx、邮件过大 ...)，调用方据此决定如何重试
+            timings.totalMs = now() - start;
+            SendResult result = SendResult.classify(e, timings);
+            AppLog.e(TAG, "❌ Email sending failed: {}", result);
+            switch (result.kind) {
+                case AUTH_FAILURE:
+                    // 通常是用户名或密码错误: 重试没有意义，直到凭证改变
+                    AppLog.e(TAG, "   Check sender credentials or App Password settings.");
+                    circuitBreaker.recordAuthFailure(credentials, now());
+                    break;
+                case PERMANENT_5XX:
+                case MESSAGE_TOO_LARGE:
+                    // 服务器可达、认证正常，只是拒绝了这封邮件，不算 SMTP 故障
+                    circuitBreaker.recordSuccess();
+                    break;
+                default:
+                    circuitBreaker.recordTransientFailure(now());
+                    break;
+            }
+            return result;
         }
     } // send 方法结束
 
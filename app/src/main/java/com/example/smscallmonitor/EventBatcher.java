@@ -0,0 +1,150 @@
+package com.example.smscallmonitor;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 微批处理：把短时间内连续到达的事件 (如分段短信、验证码轰炸) 合并成一批，只发一封邮件。
+// 满足以下任一条件即发送：
+//   1. 批内事件数达到 maxBatchSize
+//   2. 距离最后一个事件已安静 quietWindowMs (突发结束)
+//   3. 批内最早的事件已等待 maxLatencyMs (最大延迟保证，持续不断的事件流也不会无限拖延)
+public class EventBatcher {
+
+    private static final String TAG = "EventBatcher"; // 日志 TAG
+
+    /**
+     * 一批待发送的事件，以及每个事件进入批处理的时间 (用于统计端到端延迟)
+     */
+    public static final class Batch {
+        public final List<PendingEvent> events;
+        public final long[] enqueuedAtMs; // 与 events 一一对应 (单调时钟毫秒)
+
+        Batch(List<PendingEvent> events, long[] enqueuedAtMs) {
+            this.events = events;
+            this.enqueuedAtMs = enqueuedAtMs;
+        }
+    }
+
+    /**
+     * 批次就绪时的回调 (在批处理的定时线程上调用，耗时操作应转交其他线程)
+     */
+    public interface FlushHandler {
+        void onFlush(Batch batch);
+    }
+
+    private final int maxBatchSize;
+    private final long quietWindowMs;
+    private final long maxLatencyMs;
+    private final FlushHandler handler;
+    private final ScheduledExecutorService timer;
+
+    private List<PendingEvent> pendingEvents = new ArrayList<>();
+    private List<Long> pendingEnqueuedAt = new ArrayList<>();
+    private long firstEnqueuedAt; // 当前批次第一个事件的入队时间
+    private ScheduledFuture<?> flushFuture; // 当前安排的定时发送
+    private boolean shutdown = false;
+
+    public EventBatcher(int maxBatchSize, long quietWindowMs, long maxLatencyMs, FlushHandler handler) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.quietWindowMs = quietWindowMs;
+        this.maxLatencyMs = Math.max(quietWindowMs, maxLatencyMs);
+        this.handler = handler;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 加入一个新事件
+     * @return false 如果批处理器已关闭 (调用方需自行处理该事件)
+     */
+    public boolean add(PendingEvent event) {
+        Batch ready = null;
+        synchronized (this) {
+            if (shutdown) return false;
+            long now = now();
+            if (pendingEvents.isEmpty()) {
+                firstEnqueuedAt = now;
+            }
+            pendingEvents.add(event);
+            pendingEnqueuedAt.add(now);
+
+            if (pendingEvents.size() >= maxBatchSize) {
+                ready = takeBatch(); // 数量已满，立即发送
+            } else {
+                // 重新计时: 安静窗口到期时发送，但不超过最早事件的最大延迟
+                long delay = Math.min(quietWindowMs, firstEnqueuedAt + maxLatencyMs - now);
+                if (flushFuture != null) flushFuture.cancel(false);
+                flushFuture = timer.schedule(this::flushNow, Math.max(0, delay), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            AppLog.d(TAG, ">>> Batch full ({} events), flushing immediately.", ready.events.size());
+            dispatch(ready);
+        }
+        return true;
+    }
+
+    /**
+     * 立即发送当前已缓存的事件 (如果有)
+     */
+    public void flushNow() {
+        Batch ready;
+        synchronized (this) {
+            ready = takeBatch();
+        }
+        if (ready != null) {
+            dispatch(ready);
+        }
+    }
+
+    /**
+     * 关闭批处理器，返回尚未发送的事件 (调用方负责保存)
+     */
+    public List<PendingEvent> shutdown() {
+        Batch remaining;
+        synchronized (this) {
+            shutdown = true;
+            remaining = takeBatch();
+        }
+        timer.shutdownNow();
+        return remaining != null ? remaining.events : Collections.emptyList();
+    }
+
+    // 取出当前批次并重置 (调用方需持有 this 的锁)
+    private Batch takeBatch() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        if (pendingEvents.isEmpty()) return null;
+        long[] enqueuedAt = new long[pendingEnqueuedAt.size()];
+        for (int i = 0; i < enqueuedAt.length; i++) {
+            enqueuedAt[i] = pendingEnqueuedAt.get(i);
+        }
+        Batch batch = new Batch(pendingEvents, enqueuedAt);
+        pendingEvents = new ArrayList<>();
+        pendingEnqueuedAt = new ArrayList<>();
+        return batch;
+    }
+
+    private void dispatch(Batch batch) {
+        try {
+            handler.onFlush(batch);
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> Exception in batch flush handler.", e);
+        }
+    }
+
+    static long now() {
+        return System.nanoTime() / 1_000_000L;
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.smscallmonitor;
+
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+
+// 邮件正文渲染器：把事件列表直接写入 Writer，不先拼成完整的字符串。
+// 发送时通过 StreamingBody 让 JavaMail 在写出邮件的同时渲染正文 (经 base64 编码后直接进入 SMTP 连接)，
+// 除事件列表本身外，内存中只有当前正在渲染的一个事件。
+public class EventEmailRenderer {
+
+    private static final String TAG = "EventEmailRenderer"; // 日志 TAG
+    public static final String HTML_CONTENT_TYPE = "text/html; charset=UTF-8";
+    public static final String PLAIN_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+    /**
+     * 把正文写入 Writer 的渲染函数
+     */
+    public interface BodyWriter {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    // --- 供 EmailSender 使用的流式正文 ---
+
+    /**
+     * HTML 正文 (每个事件一个独立的两列表格)
+     */
+    public static StreamingBody htmlBody(List<PendingEvent> events) {
+        return new StreamingBody(out -> writeHtml(events, out), HTML_CONTENT_TYPE);
+    }
+
+    /**
+     * 纯文本正文 (用于 Google Voice)
+     */
+    public static StreamingBody plainTextBody(List<PendingEvent> events) {
+        return new StreamingBody(out -> writePlainText(events, out), PLAIN_CONTENT_TYPE);
+    }
+
+    /**
+     * 流式邮件正文。JavaMail 写出邮件时调用 writeTo(OutputStream)，正文在此时才渲染，
+     * 直接写入 (已套上传输编码的) 输出流。每次写出都会重新渲染，SMTP 重连重发也没问题。
+     * 使用时需显式设置 Content-Transfer-Encoding，否则 JavaMail 会先完整渲染一遍来选择编码。
+     */
+    public static class StreamingBody extends DataHandler {
+        private final BodyWriter bodyWriter;
+        private final String contentType;
+
+        StreamingBody(BodyWriter bodyWriter, String contentType) {
+            super(new RenderedDataSource(bodyWriter, contentType));
+            this.bodyWriter = bodyWriter;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void writeTo(OutputStream os) throws IOException {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new NonClosingOutputStream(os), StandardCharsets.UTF_8));
+            bodyWriter.writeTo(out);
+            out.flush();
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    // getInputStream 的兜底实现 (只有调用 getContent()/getInputStream() 时才会用到，会完整渲染到内存)
+    private static class RenderedDataSource implements DataSource {
+        private final BodyWriter bodyWriter;
+        private final String contentType;
+
+        RenderedDataSource(BodyWriter bodyWriter, String contentType) {
+            this.bodyWriter = bodyWriter;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+            bodyWriter.writeTo(out);
+            out.flush();
+            return new ByteArrayInputStream(bytes.toByteArray());
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Read-only data source");
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getName() {
+            return null;
+        }
+    }
+
+    // 写完正文后 JavaMail 还要继续写其他部分，不能让 Writer 关闭底层流
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) { super(out); }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len); // FilterOutputStream 默认逐字节写，这里直接批量写
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    // --- 渲染 ---
+
+    /**
+     * [内联样式 + SIM颜色] 将事件列表渲染为 HTML 邮件正文，每个事件一个独立的、两列的表格。
+     * 静态片段来自 HtmlTemplate，这里只写入动态字段。
+     * @param events 待渲染的事件列表 (可以包含一个或多个事件)
+     * @param out 输出目标
+     */
+    public static void writeHtml(List<PendingEvent> events, Writer out) throws IOException {
+        if (events == null || events.isEmpty()) {
+            AppLog.w(TAG, ">>> writeHtml called with empty or null list.");
+            out.write(HtmlTemplate.EMPTY_DOCUMENT);
+            return;
+        }
+
+        out.write(HtmlTemplate.DOCUMENT_START);
+
+        // 根据事件数量调整主标题
+        if (events.size() == 1) {
+            String eventType = events.get(0).eventType;
+            out.write("SMS".equalsIgnoreCase(eventType) ? HtmlTemplate.TITLE_SMS
+                    : ("CALL".equalsIgnoreCase(eventType) ? HtmlTemplate.TITLE_CALL : HtmlTemplate.TITLE_OTHER));
+        } else {
+            out.write(HtmlTemplate.TITLE_REPORT_START);
+            HtmlTemplate.writeInt(out, events.size()); // 在标题中显示事件数量
+            out.write(HtmlTemplate.TITLE_REPORT_END);
+        }
+        out.write(HtmlTemplate.REPORT_TIME_START);
+        out.write(TimeUtil.getCurrentFormattedTime());
+        out.write(HtmlTemplate.REPORT_TIME_END);
+
+        SimLabels simLabels = new SimLabels(true);
+        for (int i = 0; i < events.size(); i++) {
+            writeHtmlEvent(events.get(i), simLabels, out);
+        }
+
+        out.write(HtmlTemplate.DOCUMENT_END);
+    }
+
+    // 单个事件的表格
+    private static void writeHtmlEvent(PendingEvent event, SimLabels simLabels, Writer out) throws IOException {
+        boolean isSms = "SMS".equalsIgnoreCase(event.eventType);
+        boolean isCall = !isSms && "CALL".equalsIgnoreCase(event.eventType);
+
+        out.write(HtmlTemplate.TABLE_START);
+
+        out.write(HtmlTemplate.ROW_TIME_START);
+        out.write(TimeUtil.formatMillis(event.eventTimestamp));
+        out.write(HtmlTemplate.ROW_END);
+
+        out.write(isSms ? HtmlTemplate.ROW_TYPE_SMS : (isCall ? HtmlTemplate.ROW_TYPE_CALL : HtmlTemplate.ROW_TYPE_OTHER));
+
+        out.write(HtmlTemplate.ROW_NUMBER_START);
+        HtmlTemplate.writeEscaped(out, event.senderNumber);
+        out.write(HtmlTemplate.ROW_END);
+
+        if (!isSms) {
+            out.write(HtmlTemplate.ROW_CONTENT_NONE);
+        } else if (event.messageContent == null) {
+            out.write(HtmlTemplate.ROW_CONTENT_EMPTY);
+        } else {
+            out.write(HtmlTemplate.ROW_CONTENT_START);
+            HtmlTemplate.writeEscaped(out, event.messageContent);
+            out.write(HtmlTemplate.ROW_END);
+        }
+
+        out.write(HtmlTemplate.simRowStart(event.subId));
+        out.write(simLabels.get(event));
+        out.write(HtmlTemplate.ROW_END);
+
+        out.write(HtmlTemplate.TABLE_END);
+    }
+
+    /**
+     * 将事件列表渲染为纯文本内容
+     */
+    public static void writePlainText(List<PendingEvent> events, Writer out) throws IOException {
+        if (events == null || events.isEmpty()) {
+            AppLog.w(TAG, ">>> writePlainText called with empty or null list.");
+            out.write("本次报告无待处理事件。");
+            return;
+        }
+
+        String newMessage = "  ////  ";
+        String newLine = "  | ";
+
+        // 根据事件数量调整主标题
+        if (events.size() == 1) {
+            PendingEvent singleEvent = events.get(0);
+            String eventTypeDisplay = "SMS".equalsIgnoreCase(singleEvent.eventType) ? "短信" : ("CALL".equalsIgnoreCase(singleEvent.eventType) ? "未接来电" : "事件");
+            out.write(eventTypeDisplay);
+            out.write(newMessage);
+        } else {
+            out.write("短信/来电 事件报告 (");
+            HtmlTemplate.writeInt(out, events.size()); // 在标题中显示事件数量
+            out.write("条)");
+            out.write(newMessage);
+        }
+
+        SimLabels simLabels = new SimLabels(false); // 纯文本不做 HTML 转义
+        for (int i = 0; i < events.size(); i++) {
+            PendingEvent event = events.get(i);
+
+            HtmlTemplate.writeInt(out, i + 1);
+            out.write(".时间: ");
+            out.write(TimeUtil.formatMillis(event.eventTimestamp));
+            out.write(newLine);
+
+            String typeStr;
+            if ("SMS".equalsIgnoreCase(event.eventType)) { typeStr = "收到短信"; }
+            else if ("CALL".equalsIgnoreCase(event.eventType)) { typeStr = "未接来电"; }
+            else { typeStr = "未知类型"; }
+            out.write("类型: ");
+            out.write(typeStr);
+            out.write(newLine);
+
+            out.write("号码: ");
+            out.write(String.valueOf(event.senderNumber));
+            out.write(newLine);
+
+            out.write("内容: ");
+            if ("SMS".equalsIgnoreCase(event.eventType)) {
+                if (event.messageContent != null) out.write(event.messageContent);
+                else out.write("(内容为空)");
+            } else {
+                out.write("(无)");
+            }
+            out.write(newLine);
+
+            out.write("SIM卡: ");
+            out.write(simLabels.get(event));
+            out.write(newMessage);
+        }
+    }
+
+    /**
+     * 一封邮件中每张 SIM 卡的文字 (simLabel + " (ID:subId)"，HTML 正文中 simLabel 经过转义)，同一张卡只生成一次。
+     * 一封邮件通常只涉及一两张卡，线性查找即可。
+     */
+    static final class SimLabels {
+        private final boolean escapeHtml;
+        private int[] subIds = new int[2];
+        private String[] labels = new String[2]; // 未转义的 simLabel，同一 subId 的文字不同时 (例如旧数据) 分别生成
+        private String[] rendered = new String[2];
+        private int size;
+
+        SimLabels(boolean escapeHtml) {
+            this.escapeHtml = escapeHtml;
+        }
+
+        String get(PendingEvent event) {
+            for (int i = 0; i < size; i++) {
+                if (subIds[i] == event.subId && Objects.equals(labels[i], event.simLabel)) return rendered[i];
+            }
+            if (size == subIds.length) {
+                subIds = Arrays.copyOf(subIds, size * 2);
+                labels = Arrays.copyOf(labels, size * 2);
+                rendered = Arrays.copyOf(rendered, size * 2);
+            }
+            String label = event.simLabel == null ? HtmlTemplate.UNKNOWN_SIM
+                    : (escapeHtml ? HtmlTemplate.escape(event.simLabel) : event.simLabel);
+            String text = label
+                    + HtmlTemplate.SIM_ID_START + event.subId + HtmlTemplate.SIM_ID_END;
+            subIds[size] = event.subId;
+            labels[size] = event.simLabel;
+            rendered[size] = text;
+            size++;
+            return text;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 渲染为字符串 (测试和日志用，发送时请使用 htmlBody)
+     */
+    public static String renderHtml(List<PendingEvent> events) {
+        StringWriter out = new StringWriter();
+        try {
+            writeHtml(events, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter 不会抛出 IOException
+        }
+        return out.toString();
+    }
+
+    /**
+     * 渲染为字符串 (测试和日志用，发送时请使用 plainTextBody)
+     */
+    public static String renderPlainText(List<PendingEvent> events) {
+        StringWriter out = new StringWriter();
+        try {
+            writePlainText(events, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
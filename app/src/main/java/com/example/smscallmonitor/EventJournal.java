@@ -0,0 +1,163 @@
+package com.example.smscallmonitor;
+
+
+import java.util.Collections;
+import java.util.List;
+
+// 事件日志 (write-ahead)：每个新事件在尝试发送之前先写入 pending_events，
+// 发送成功后删除，失败后转为 PENDING 交给补发任务。进程被杀也不会丢事件。
+public class EventJournal {
+
+    private static final String TAG = "EventJournal"; // 日志 TAG
+
+    private final PendingEventDao dao;
+    private final RetryPolicy retryPolicy;
+
+    public EventJournal(PendingEventDao dao) {
+        this(dao, RetryPolicy.getDefault());
+    }
+
+    public EventJournal(PendingEventDao dao, RetryPolicy retryPolicy) {
+        this.dao = dao;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * 把新事件写入数据库，状态为 SENDING (立即发送路径正在处理，补发任务不会取走)。
+     * 写入成功后 event.id 会被设置为数据库主键。需在后台线程调用。
+     * @return true 如果写入成功
+     */
+    public boolean journal(PendingEvent event) {
+        return journalAll(Collections.singletonList(event));
+    }
+
+    /**
+     * 在一个事务中写入一组新事件 (分组提交，几毫秒内到达的事件只提交一次)，状态为 SENDING。
+     * 写入成功后每个 event.id 会被设置为数据库主键；失败时 id 保持 0 (markFailed 会补写)。需在后台线程调用。
+     * @return true 如果写入成功
+     */
+    public boolean journalAll(List<PendingEvent> events) {
+        return insert(events, PendingEvent.STATUS_SENDING);
+    }
+
+    /**
+     * 服务未运行时写入新事件，状态为 PENDING (由服务启动后的补发或补发任务取走，立即发送路径不处理)。
+     * 需在后台线程调用。
+     * @return true 如果写入成功
+     */
+    public boolean journalPending(PendingEvent event) {
+        return insert(Collections.singletonList(event), PendingEvent.STATUS_PENDING);
+    }
+
+    private boolean insert(List<PendingEvent> events, int status) {
+        if (events.isEmpty()) return true;
+        try {
+            for (PendingEvent event : events) {
+                event.status = status;
+            }
+            long[] ids = dao.insertAllWithSims(events, System.currentTimeMillis()); // 同时保证 sims 表中有这些 SIM 卡
+            for (int i = 0; i < ids.length; i++) {
+                events.get(i).id = (int) ids[i];
+            }
+            return true;
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> CRITICAL: Failed to journal {} event(s).", events.size(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 发送成功：删除对应的记录
+     */
+    public void markSent(List<PendingEvent> events) {
+        int[] ids = IdArray.of(events);
+        if (ids.length == 0) return;
+        try {
+            dao.deleteEventsByIds(ids);
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> Error deleting sent events from DB: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 发送失败 (或只有部分渠道成功)：转为 PENDING，记录已送达的渠道、尝试信息和按重试策略退避后的下次尝试时间，
+     * 交给补发任务处理；尝试次数达到上限的事件转为 STATUS_DEAD。
+     * 没有写入成功的事件 (id 为 0) 会在这里补写。
+     */
+    public void markFailed(List<PendingEvent> events) {
+        long now = System.currentTimeMillis();
+        try {
+            for (RetryPolicy.FailureGroup group : RetryPolicy.groupFailures(events)) {
+                if (retryPolicy.isExhausted(group.attempts)) {
+                    AppLog.e(TAG, ">>> Giving up on {} event(s) after {} attempts, moving to dead letter: IDs {}", group.ids.size(), group.attempts, group.ids);
+                    dao.markEventsFailedByIds(group.ids.toArray(), PendingEvent.STATUS_DEAD, group.deliveredChannels, now, 0);
+                } else {
+                    dao.markEventsFailedByIds(group.ids.toArray(), PendingEvent.STATUS_PENDING, group.deliveredChannels, now,
+                            retryPolicy.nextAttemptAt(group.attempts, now));
+                }
+            }
+            for (PendingEvent event : events) {
+                if (event.id == 0) { // 之前写入失败，这里再尝试一次
+                    event.status = PendingEvent.STATUS_PENDING;
+                    event.attemptTimestamp = now;
+                    event.retryCount = 1;
+                    event.nextAttemptAt = retryPolicy.nextAttemptAt(1, now);
+                    event.id = (int) dao.insertAllWithSims(Collections.singletonList(event), now)[0];
+                }
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> CRITICAL: Failed to mark events as pending after send failure.", e);
+        }
+    }
+
+    /**
+     * 因 SMTP 熔断没有真正尝试的渠道 (例如半开状态下另一个渠道正在试探)：转为 PENDING，记录已送达的渠道，
+     * 不计入尝试次数，也不推迟下次尝试时间。没有写入成功的事件 (id 为 0) 会在这里补写。
+     */
+    public void markDeferred(List<PendingEvent> events) {
+        try {
+            for (RetryPolicy.FailureGroup group : RetryPolicy.groupFailures(events)) {
+                dao.markEventsDeferredByIds(group.ids.toArray(), group.deliveredChannels);
+            }
+            for (PendingEvent event : events) {
+                if (event.id == 0) { // 之前写入失败，这里再尝试一次
+                    event.status = PendingEvent.STATUS_PENDING;
+                    event.id = (int) dao.insertAllWithSims(Collections.singletonList(event), System.currentTimeMillis())[0];
+                }
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> CRITICAL: Failed to mark events as pending while the SMTP circuit is open.", e);
+        }
+    }
+
+    /**
+     * 放弃立即发送 (例如服务停止时批处理器中尚未发出的事件)：转为 PENDING，不计入尝试次数
+     */
+    public void release(List<PendingEvent> events) {
+        int[] ids = IdArray.of(events);
+        if (ids.length == 0) return;
+        try {
+            dao.updateStatusByIds(ids, PendingEvent.STATUS_PENDING);
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> Error releasing unsent events: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 崩溃恢复：上次进程退出时仍处于 SENDING 的记录 (发送结果未知) 重新转为 PENDING。
+     * 需在任何立即发送开始之前调用 (服务启动时)。
+     * @return 恢复的记录数
+     */
+    public int recoverInFlight() {
+        try {
+            int recovered = dao.updateStatus(PendingEvent.STATUS_SENDING, PendingEvent.STATUS_PENDING);
+            if (recovered > 0) {
+                AppLog.w(TAG, ">>> Recovered {} in-flight event(s) from a previous run.", recovered);
+            }
+            return recovered;
+        } catch (Exception e) {
+            AppLog.e(TAG, ">>> Error recovering in-flight events: {}", e.getMessage());
+            return 0;
+        }
+    }
+}
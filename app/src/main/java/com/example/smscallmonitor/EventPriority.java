@@ -0,0 +1,61 @@
+package com.example.smscallmonitor;
+
+import java.util.List;
+import java.util.Locale;
+
+// 事件的调度优先级：未接来电和验证码短信时效性最强，优先发送 (WorkScheduler.PRIORITY_HIGH)，
+// 其他短信为普通优先级，补发等后台任务为低优先级。
+public final class EventPriority {
+
+    private EventPriority() {}
+
+    // 验证码短信的关键字 (小写比较)
+    private static final String[] OTP_KEYWORDS = {
+            "验证码", "校验码", "动态码", "动态密码", "确认码", "code", "otp", "passcode"
+    };
+    private static final int OTP_MIN_DIGITS = 4;
+    private static final int OTP_MAX_DIGITS = 8;
+
+    /**
+     * 单个事件的优先级
+     */
+    public static int of(PendingEvent event) {
+        if ("CALL".equals(event.eventType)) return WorkScheduler.PRIORITY_HIGH;
+        if ("SMS".equals(event.eventType) && isOneTimePassword(event.messageContent)) return WorkScheduler.PRIORITY_HIGH;
+        return WorkScheduler.PRIORITY_NORMAL;
+    }
+
+    /**
+     * 一批事件的优先级 (取其中最高的)
+     */
+    public static int of(List<PendingEvent> events) {
+        int priority = WorkScheduler.PRIORITY_NORMAL;
+        for (PendingEvent event : events) {
+            priority = Math.min(priority, of(event));
+        }
+        return priority;
+    }
+
+    /**
+     * 短信内容是否像验证码: 含有关键字，并且含有一段 4-8 位的连续数字
+     */
+    static boolean isOneTimePassword(String content) {
+        if (content == null || content.isEmpty()) return false;
+        String lower = content.toLowerCase(Locale.ROOT);
+        boolean hasKeyword = false;
+        for (String keyword : OTP_KEYWORDS) {
+            if (lower.contains(keyword)) { hasKeyword = true; break; }
+        }
+        if (!hasKeyword) return false;
+        int run = 0;
+        for (int i = 0; i <= content.length(); i++) {
+            if (i < content.length() && content.charAt(i) >= '0' && content.charAt(i) <= '9') {
+                run++;
+            } else {
+                if (run >= OTP_MIN_DIGITS && run <= OTP_MAX_DIGITS) return true;
+                run = 0;
+            }
+        }
+        return false;
+    }
+}
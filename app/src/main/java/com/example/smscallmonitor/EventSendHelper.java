@@ -1,483 +1,402 @@
 package com.example.smscallmonitor;
 
 import android.Manifest;
-import android.annotation.SuppressLint; // 需要SuppressLint
 import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
-import android.net.Network;
-import android.net.NetworkCapabilities;
 import android.net.wifi.WifiManager;
 import android.os.Build;
-import android.os.SystemClock; // 引入 SystemClock 用于计时
-import android.util.Log;
 
-import java.text.SimpleDateFormat;
-import java.util.Collections; // 引入 Collections
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors; // 需要 Java 8+
+import java.util.UUID;
 
 // 辅助类，封装合并发送的核心逻辑
 public class EventSendHelper {
 
     private static final String TAG = "EventSendHelper"; // 日志 TAG
-    // SIM 卡颜色数组
-    private static final String[] SIM_COLORS = {
-            "#1E90FF", // DodgerBlue
-            "#7d3c98", // SeaGreen
-            "#DAA520", // GoldenRod
-            "#9400D3", // DarkViolet
-            "#FF8C00", // DarkOrange
-            "#4682B4", // SteelBlue
-            "#f39c12", // SaddleBrown
-            "#DB7093", // PaleVioletRed
-            "#5F9EA0", // CadetBlue
-            "#708090"  // SlateGray
-    };
 
     // --- 发送状态枚举 ---
     public enum SendStatus {
         SEND_SUCCESS,          // 发送成功
         SEND_FAILED_NETWORK,   // 因网络问题失败 (包括无网络、连接超时)
-        SEND_FAILED_OTHER      // 因其他问题失败 (如认证、格式化、邮件服务器错误等)
+        SEND_FAILED_OTHER,     // 因其他问题失败 (如认证、格式化、邮件服务器错误等)
+        SEND_SKIPPED_CIRCUIT_OPEN // SMTP 熔断中，没有尝试 (不计入重试次数)
     }
     // --- 枚举结束 ---
 
 
-    // --- 尝试立即发送单个事件的方法 (带状态返回) ---
+    // --- 尝试立即发送新事件的方法 (带状态返回) ---
     /**
-     * 尝试立即发送单个新事件的邮件，并返回详细状态。
+     * 尝试立即把一批新事件合并成一封邮件发送 (由 EventBatcher 合并的突发事件)，并返回详细状态。
      * **此方法不操作数据库。**
      * @param context 应用上下文
-     * @param event 要尝试发送的新事件
+     * @param events 要尝试发送的新事件 (一个或多个)
      * @param wifiManager Wi-Fi 管理器
      * @param connManager 网络连接管理器
      * @return SendStatus 枚举，指示发送结果
      */
-    public static SendStatus trySendSingleEventImmediately(Context context, PendingEvent event, WifiManager wifiManager, ConnectivityManager connManager) {
-        Log.i(TAG, ">>> [Immediate Attempt] Starting for event: Type=" + event.eventType + ", From=" + event.senderNumber);
+    public static SendStatus trySendEventsImmediately(Context context, List<PendingEvent> events, WifiManager wifiManager, ConnectivityManager connManager) {
+        RadioManager radio = RadioManager.getDefault();
+        radio.beginWork(); // 发送期间 WifiOffReceiver 不会关闭 Wi-Fi
+        try {
+            return doTrySendEventsImmediately(context, events, wifiManager, connManager);
+        } finally {
+            radio.endWork();
+        }
+    }
+
+    private static SendStatus doTrySendEventsImmediately(Context context, List<PendingEvent> events, WifiManager wifiManager, ConnectivityManager connManager) {
+        AppLog.i(TAG, ">>> [Immediate Attempt] Starting for {} event(s). First: Type={}, From={#}", events.size(), events.get(0).eventType, events.get(0).senderNumber);
+
+        // 0. SMTP 熔断中 (认证失败或连续网络错误): 不打开网络，留给补发
+        if (EmailSender.isCircuitOpen(context)) {
+            AppLog.w(TAG, ">>> [Immediate Attempt] SMTP circuit is open. Returning SEND_SKIPPED_CIRCUIT_OPEN.");
+            return SendStatus.SEND_SKIPPED_CIRCUIT_OPEN;
+        }
 
-        // 1. 确保网络连接 (使用轮询等待)
+        // 1. 确保网络连接
         if (!isNetworkAvailable(connManager)) {
-            Log.w(TAG, ">>> [Immediate Attempt] Network initially unavailable. Attempting to enable Wi-Fi...");
+            AppLog.w(TAG, ">>> [Immediate Attempt] Network initially unavailable. Attempting to enable Wi-Fi...");
             if (!ensureWifiEnabled(context, wifiManager)) {
-                Log.e(TAG, ">>> [Immediate Attempt] Failed to enable Wi-Fi. Returning SEND_FAILED_NETWORK.");
+                AppLog.e(TAG, ">>> [Immediate Attempt] Failed to enable Wi-Fi. Returning SEND_FAILED_NETWORK.");
                 return SendStatus.SEND_FAILED_NETWORK; // 无法开启 Wi-Fi，网络失败
             }
-            // 轮询等待网络连接
-            Log.d(TAG, ">>> [Immediate Attempt] Waiting for network connection (up to " + IConstants.WIFI_CONNECT_TIMEOUT_MS + "ms)...");
-            long startTime = SystemClock.elapsedRealtime();
-            boolean connected = false;
-            while (SystemClock.elapsedRealtime() - startTime < IConstants.WIFI_CONNECT_TIMEOUT_MS) {
-                if (isNetworkAvailable(connManager)) {
-                    connected = true;
-                    Log.i(TAG, ">>> [Immediate Attempt] Network became available after " + (SystemClock.elapsedRealtime() - startTime) + "ms.");
-                    break;
-                }
-                try {
-                    Log.d(TAG, ">>> [Immediate Attempt] Network check pending, sleeping for " + IConstants.NETWORK_CHECK_INTERVAL_MS + "ms..."); // 添加等待日志
-                    Thread.sleep(IConstants.NETWORK_CHECK_INTERVAL_MS);
-                } catch (InterruptedException ignored) {
-                    Thread.currentThread().interrupt(); // 重新设置中断状态
-                    Log.w(TAG, ">>> [Immediate Attempt] Network wait loop interrupted. Returning SEND_FAILED_NETWORK.");
-                    return SendStatus.SEND_FAILED_NETWORK; // 等待被中断，网络失败
-                }
-            }
-            if (!connected) {
-                Log.e(TAG, ">>> [Immediate Attempt] Network did not become available within timeout. Returning SEND_FAILED_NETWORK.");
-                return SendStatus.SEND_FAILED_NETWORK; // 超时未连接，网络失败
+            // 等待网络连接 (NetworkCallback 回调驱动，网络验证通过即返回)
+            AppLog.d(TAG, ">>> [Immediate Attempt] Waiting for network connection (up to {}ms)...", IConstants.WIFI_CONNECT_TIMEOUT_MS);
+            NetworkAwaiter.Result waitResult = getNetworkAwaiter(connManager).await(IConstants.WIFI_CONNECT_TIMEOUT_MS);
+            if (!waitResult.connected) {
+                AppLog.e(TAG, ">>> [Immediate Attempt] Network did not become available (cancelled={}, waited {}ms). Returning SEND_FAILED_NETWORK.", waitResult.cancelled, waitResult.waitedMs);
+                return SendStatus.SEND_FAILED_NETWORK; // 超时未连接或等待被取消，网络失败
             }
+            AppLog.i(TAG, ">>> [Immediate Attempt] Network became available after {}ms.", waitResult.waitedMs);
         } else {
-            Log.i(TAG, ">>> [Immediate Attempt] Network already available.");
-        }
-
-        // 2. 格式化单个事件的邮件内容
-        //    - 复用多表格的格式化方法，传入只包含单个事件的列表
-        Log.d(TAG, ">>> [Immediate Attempt] Formatting single event email body...");
-        String singleEventBody = formatConsolidatedEmailBodyMultipleTablesInlineStyles(Collections.singletonList(event));
-        String singleEventPlainText = formatConsolidatedPlainText(Collections.singletonList(event));
-        if (singleEventBody == null || singleEventBody.contains("内部错误")) { // 检查是否为空或包含错误信息
-            Log.e(TAG, ">>> [Immediate Attempt] Failed to format single event email body. Returning SEND_FAILED_OTHER.");
-            return SendStatus.SEND_FAILED_OTHER; // 格式化失败
+            AppLog.i(TAG, ">>> [Immediate Attempt] Network already available.");
         }
 
-        // 3. 生成邮件主题
-        String subject = "短信/来电通知"; // 单个事件的主题
+        // 2. 生成邮件主题 (整批事件放进同一封邮件)
+        String subject = events.size() == 1 ? "短信/来电通知" : "短信/来电通知 (" + events.size() + "条)";
 
-        // 4. 尝试发送邮件
-        Log.d(TAG, ">>> [Immediate Attempt] Sending single event email...");
-        boolean sent;
+        // 3. 各渠道 (邮件、Google Voice) 并行发送，成功的渠道记入 event.deliveredChannels
+        AppLog.d(TAG, ">>> [Immediate Attempt] Delivering via all enabled channels...");
+        DeliveryDispatcher.Result result;
         try {
-            sent = EmailSender.sendEmail(context, subject, singleEventBody);
-            EmailSender.sendGv(context, singleEventPlainText);
+            result = deliverAdaptively(DeliveryDispatcher.getDefault(), context, subject, events, IConstants.FAST_RETRY_DELAY_MS);
         } catch (Exception e) {
-            // 捕获 EmailSender.send() 可能抛出的未明确处理的异常
-            Log.e(TAG, ">>> [Immediate Attempt] Exception during EmailSender.send(): " + e.getMessage(), e);
-            sent = false;
+            // 捕获分发过程中未明确处理的异常
+            AppLog.e(TAG, ">>> [Immediate Attempt] Exception during delivery.", e);
+            return SendStatus.SEND_FAILED_OTHER;
         }
 
-
-        // 5. 根据发送结果返回状态
-        if (sent) {
-            Log.i(TAG, ">>> [Immediate Attempt] Successfully sent single event email. Returning SEND_SUCCESS.");
+        // 4. 根据发送结果返回状态
+        if (result.isAllDelivered()) {
+            AppLog.i(TAG, ">>> [Immediate Attempt] Successfully delivered {} event(s). Returning SEND_SUCCESS.", events.size());
             return SendStatus.SEND_SUCCESS;
+        } else if (result.isOnlyCircuitOpen()) {
+            // 熔断半开时只放行一个试探，另一个渠道没有尝试: 已成功的渠道记录在 deliveredChannels 中，不计入尝试次数
+            AppLog.w(TAG, ">>> [Immediate Attempt] Channels {} skipped by the SMTP circuit. Returning SEND_SKIPPED_CIRCUIT_OPEN.", result.failedMask);
+            return SendStatus.SEND_SKIPPED_CIRCUIT_OPEN;
         } else {
-            Log.w(TAG, ">>> [Immediate Attempt] Failed to send single event email. Returning SEND_FAILED_OTHER.");
-            // 将所有 EmailSender 返回 false 的情况归为 SEND_FAILED_OTHER
-            // 周期性任务会处理这些失败
+            AppLog.w(TAG, ">>> [Immediate Attempt] Channels {} failed for {} event(s): {}. Returning SEND_FAILED_OTHER.", result.failedMask, events.size(), result.failures);
+            // 已成功的渠道记录在 deliveredChannels 中，补发任务只重发失败的渠道
             return SendStatus.SEND_FAILED_OTHER;
         }
     }
-    // --- 尝试立即发送单个事件的方法结束 ---
+    // --- 尝试立即发送新事件的方法结束 ---
 
 
     /**
-     * [周期性任务使用] 执行合并发送的核心逻辑。查询数据库中所有 PENDING 事件并合并发送。
+     * [周期性任务使用] 执行合并发送的核心逻辑。按时间顺序分页认领已到重试时间的 PENDING 事件，每页合并成一封邮件发送，
+     * 发送成功后立即删除该页，再认领下一页。积压再多，内存中也只有一页事件，单封邮件大小也有上限。
+     * 可以同时运行多个 (Worker 和服务内的补发)：被其他任务认领的事件不会重复发送；进程在发送中被杀时，认领过期后由下次补发重新认领。
+     * 失败的事件按 RetryPolicy 退避 (或转为死信)；SMTP 熔断中时不打开网络。
      * @param context 应用上下文
      * @param dao 数据库访问对象 (PendingEventDao)
      * @param wifiManager Wi-Fi 管理器
      * @param connManager 网络连接管理器
-     * @return true 如果发送成功或没有事件需要发送； false 如果发送失败需要重试
+     * @return true 如果全部发送成功或没有事件需要发送； false 如果有发送失败需要重试
      */
     public static boolean performConsolidatedSend(Context context, PendingEventDao dao, WifiManager wifiManager, ConnectivityManager connManager) {
-        // 这个方法用于周期性 Worker，查询并合并发送所有失败暂存的事件
-        List<PendingEvent> eventsToSend;
+        RadioManager radio = RadioManager.getDefault();
+        radio.beginWork(); // 补发期间 WifiOffReceiver 不会关闭 Wi-Fi
         try {
-            Log.d(TAG, ">>> [Periodic] Querying pending events from database..."); // 添加日志区分
-            eventsToSend = dao.getAllPendingEvents(PendingEvent.STATUS_PENDING);
+            return doPerformConsolidatedSend(context, dao, wifiManager, connManager);
+        } finally {
+            radio.endWork();
+        }
+    }
+
+    private static boolean doPerformConsolidatedSend(Context context, PendingEventDao dao, WifiManager wifiManager, ConnectivityManager connManager) {
+        // 这个方法用于周期性 Worker，分页合并发送所有失败暂存的事件
+        int pendingCount;
+        long now = System.currentTimeMillis(); // 本次只处理此刻已到重试时间的事件
+        try {
+            AppLog.d(TAG, ">>> [Periodic] Counting due pending events in database..."); // 添加日志区分
+            pendingCount = dao.getDuePendingEventCount(PendingEvent.STATUS_PENDING, now);
         } catch (Exception e) {
-            Log.e(TAG, ">>> [Periodic] Error querying pending events from DB: " + e.getMessage());
+            AppLog.e(TAG, ">>> [Periodic] Error counting pending events in DB: {}", e.getMessage());
             return false;
         }
 
-        if (eventsToSend == null || eventsToSend.isEmpty()) {
-            Log.i(TAG, ">>> [Periodic] No pending events found to send.");
-            return true; // 数据库为空，任务成功完成
+        if (pendingCount == 0) {
+            AppLog.i(TAG, ">>> [Periodic] No due pending events found to send.");
+            return true; // 没有到期的事件，任务成功完成
+        }
+        if (EmailSender.isCircuitOpen(context)) {
+            AppLog.w(TAG, ">>> [Periodic] SMTP circuit is open, leaving {} event(s) for a later run.", pendingCount);
+            return false;
         }
 
-        Log.i(TAG, ">>> [Periodic] Found " + eventsToSend.size() + " pending event(s) to consolidate and send.");
+        AppLog.i(TAG, ">>> [Periodic] Found {} pending event(s), sending in pages of up to {} events / {} bytes.", pendingCount, IConstants.DRAIN_MAX_EVENTS_PER_EMAIL, IConstants.DRAIN_MAX_BYTES_PER_EMAIL);
 
         // 步骤 1: 确保网络连接
         if (!isNetworkAvailable(connManager)) {
-            Log.w(TAG, ">>> [Periodic] Network not available. Attempting to enable Wi-Fi...");
+            AppLog.w(TAG, ">>> [Periodic] Network not available. Attempting to enable Wi-Fi...");
             if (!ensureWifiEnabled(context, wifiManager)) {
-                Log.e(TAG, ">>> [Periodic] Failed to enable Wi-Fi. Send attempt failed.");
+                AppLog.e(TAG, ">>> [Periodic] Failed to enable Wi-Fi. Send attempt failed.");
                 return false;
             }
-            Log.d(TAG, ">>> [Periodic] Waiting for network connection (up to " + IConstants.WIFI_CONNECT_TIMEOUT_MS + "ms)...");
-            long startTime = SystemClock.elapsedRealtime();
-            boolean connected = false;
-            while (SystemClock.elapsedRealtime() - startTime < IConstants.WIFI_CONNECT_TIMEOUT_MS) {
-                if (isNetworkAvailable(connManager)) { connected = true; Log.i(TAG, ">>> [Periodic] Network became available."); break; }
-                try { Thread.sleep(IConstants.NETWORK_CHECK_INTERVAL_MS); } catch (InterruptedException ignored) { Thread.currentThread().interrupt(); return false;}
-            }
-            if (!connected) { Log.e(TAG, ">>> [Periodic] Network did not become available within timeout. Send attempt failed."); return false; }
+            AppLog.d(TAG, ">>> [Periodic] Waiting for network connection (up to {}ms)...", IConstants.WIFI_CONNECT_TIMEOUT_MS);
+            NetworkAwaiter.Result waitResult = getNetworkAwaiter(connManager).await(IConstants.WIFI_CONNECT_TIMEOUT_MS);
+            if (!waitResult.connected) { AppLog.e(TAG, ">>> [Periodic] Network did not become available within timeout. Send attempt failed."); return false; }
+            AppLog.i(TAG, ">>> [Periodic] Network became available after {}ms.", waitResult.waitedMs);
         } else {
-            Log.i(TAG, ">>> [Periodic] Network is already available.");
+            AppLog.i(TAG, ">>> [Periodic] Network is already available.");
         }
 
-        // 步骤 2: 格式化合并邮件
+        // 步骤 2: 逐页认领并发送。每页在一个事务中认领 (写入本次的令牌和过期时间)，其他同时运行的补发任务不会取到同一批事件；
+        //         发送后删除或退避 (清除认领)，所以下一次认领自然从后面的事件开始
+        String leaseOwner = UUID.randomUUID().toString();
+        int sentPages = 0, sentEvents = 0;
+        boolean allDelivered = true;
         String subject = "短信/来电报告 (补发)"; // 周期性补发的邮件主题
-        Log.d(TAG, ">>> [Periodic] Formatting consolidated email body...");
-        String consolidatedBody = formatConsolidatedEmailBodyMultipleTablesInlineStyles(eventsToSend);
-        String singleEventPlainText = formatConsolidatedPlainText(eventsToSend);
-        if (consolidatedBody == null || consolidatedBody.contains("内部错误")) { // 检查格式化结果
-            Log.e(TAG, ">>> [Periodic] Failed to format consolidated email body.");
-            // 格式化失败通常是程序逻辑问题，可能需要更新重试计数但不是网络问题
-            // 这里简单返回 false，让 Worker 重试
-            try {
-                // 更新尝试信息，避免无限次因格式化失败而重试
-                List<Integer> eventIds = eventsToSend.stream().map(event -> event.id).collect(Collectors.toList());
-                dao.updateEventsAttemptInfoByIds(eventIds, System.currentTimeMillis());
-            } catch (Exception e) { Log.e(TAG, "[Periodic] Error updating attempt info after format failure: " + e); }
-            return false;
-        }
-
-        // 步骤 3: 尝试发送邮件
-        Log.d(TAG, ">>> [Periodic] Attempting to send consolidated email...");
-        boolean sent = EmailSender.sendEmail(context, subject, consolidatedBody);
-        EmailSender.sendGv(context, singleEventPlainText);
+        EventJournal journal = new EventJournal(dao); // 失败事件的退避 / 死信处理与立即发送路径相同
 
-        // 步骤 4: 根据发送结果更新数据库
-        List<Integer> eventIds = eventsToSend.stream().map(event -> event.id).collect(Collectors.toList());
-        if (sent) {
-            Log.i(TAG, ">>> [Periodic] Consolidated email sent successfully for " + eventIds.size() + " events.");
+        while (true) {
+            List<PendingEvent> page;
+            List<PendingEvent> eventsToSend;
             try {
-                Log.d(TAG, ">>> [Periodic] Deleting sent events from DB: IDs " + eventIds);
-                dao.deleteEventsByIds(eventIds); // 发送成功，删除
-            } catch (Exception e) { Log.e(TAG, ">>> [Periodic] Error deleting sent events from DB: " + e.getMessage()); }
-            return true; // 任务成功
-        } else {
-            Log.w(TAG, ">>> [Periodic] Failed to send consolidated email for " + eventIds.size() + " events.");
-            try {
-                Log.d(TAG, ">>> [Periodic] Updating attempt info for failed events in DB: IDs " + eventIds);
-                dao.updateEventsAttemptInfoByIds(eventIds, System.currentTimeMillis()); // 发送失败，更新尝试信息
-            } catch (Exception e) { Log.e(TAG, ">>> [Periodic] Error updating attempt info for failed events in DB: " + e.getMessage()); }
-            return false; // 任务失败，需要重试
-        }
-    } // performConsolidatedSend 方法结束
-
-
-    /**
-     * [最终内联样式版本 + SIM颜色] 将事件列表格式化为单个 HTML 邮件正文，每个事件一个独立的、两列的表格。
-     * @param events 待格式化的事件列表 (可以包含一个或多个事件)
-     * @return 格式化后的 HTML 字符串, 或包含错误信息的 HTML， 或在极少数情况下为 null
-     */
-    private static String formatConsolidatedEmailBodyMultipleTablesInlineStyles(List<PendingEvent> events) {
-        // (这个方法的内部逻辑保持不变)
-        if (events == null || events.isEmpty()) {
-            Log.w(TAG, ">>> formatConsolidatedEmailBodyMultipleTablesInlineStyles called with empty or null list.");
-            return "<h3>本次报告无待处理事件。</h3>";
-        }
-
-        try { // 添加 try-catch 块捕获格式化过程中的潜在异常
-            StringBuilder htmlBody = new StringBuilder();
-            htmlBody.append("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>事件报告</title></head>");
-            htmlBody.append("<body style=\"font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', Roboto, Oxygen, Ubuntu, Cantarell, 'Fira Sans', 'Droid Sans', 'Helvetica Neue', sans-serif; line-height: 1.5; color: #333333; margin: 0; padding: 10px; background-color: #f4f4f4;\">");
-
-            // 根据事件数量调整主标题
-            if (events.size() == 1) {
-                PendingEvent singleEvent = events.get(0);
-                String eventTypeDisplay = "SMS".equalsIgnoreCase(singleEvent.eventType) ? "短信" : ("CALL".equalsIgnoreCase(singleEvent.eventType) ? "未接来电" : "事件");
-                htmlBody.append("<h2 style=\"color: #222222; margin-bottom: 8px; font-size: 1.4em;\">").append(eventTypeDisplay).append(" 通知</h2>");
-            } else {
-                htmlBody.append("<h2 style=\"color: #222222; margin-bottom: 8px; font-size: 1.4em;\">短信/来电 事件报告 (").append(events.size()).append("条)</h2>"); // 在标题中显示事件数量
+                page = dao.claimPendingEvents(leaseOwner, now, System.currentTimeMillis(), IConstants.DRAIN_LEASE_MS, IConstants.DRAIN_MAX_EVENTS_PER_EMAIL);
+                if (page.isEmpty()) break; // 全部处理完 (或其余的都已被其他补发任务认领)
+                eventsToSend = limitToByteBudget(page, IConstants.DRAIN_MAX_BYTES_PER_EMAIL);
+                if (eventsToSend.size() < page.size()) {
+                    // 超出单封邮件大小的部分放弃认领，下一页重新认领
+                    dao.releaseLeases(IdArray.of(page.subList(eventsToSend.size(), page.size())), leaseOwner);
+                }
+            } catch (Exception e) {
+                AppLog.e(TAG, ">>> [Periodic] Error claiming pending events page from DB: {}", e.getMessage());
+                return false;
             }
-            htmlBody.append("<p style=\"color: #666666; font-size: 0.9em; margin-top: 0; margin-bottom: 15px;\">报告生成时间: ").append(TimeUtil.getCurrentFormattedTime()).append("</p>");
-            htmlBody.append("<hr style=\"border: none; border-top: 1px solid #cccccc; margin: 25px 0;\">");
-
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-
-            for (int i = 0; i < events.size(); i++) {
-                PendingEvent event = events.get(i);
-                Log.d(TAG, ">>> Formatting event " + (i+1) + "/" + events.size() + ": Type=" + event.eventType + ", From=" + event.senderNumber);
-
-                htmlBody.append("<table border=\"0\" cellpadding=\"0\" cellspacing=\"0\" style=\"border-collapse: collapse; width: 100%; max-width: 600px; margin-bottom: 25px; border: 1px solid #cccccc; background-color: #ffffff; border-radius: 5px; box-shadow: 0 1px 3px rgba(0,0,0,0.1); overflow: hidden;\">");
-                htmlBody.append("<tbody>");
-
-                addRowInlineStyle(htmlBody, "事件时间", sdf.format(new Date(event.eventTimestamp)), null);
-
-                String typeStr, typeStyle;
-                if ("SMS".equalsIgnoreCase(event.eventType)) { typeStr = "收到短信"; typeStyle = "color: #008000; font-weight: bold;"; }
-                else if ("CALL".equalsIgnoreCase(event.eventType)) { typeStr = "未接来电"; typeStyle = "color: #cc0000; font-weight: bold;"; }
-                else { typeStr = "未知类型"; typeStyle = "color: #555555; font-weight: bold;"; }
-                addRowInlineStyle(htmlBody, "类型", typeStr, typeStyle);
 
-                addRowInlineStyle(htmlBody, "号码", escapeHtml(event.senderNumber), null);
-
-                String contentStr;
-                if ("SMS".equalsIgnoreCase(event.eventType)) { contentStr = (event.messageContent != null) ? escapeHtml(event.messageContent) : "(内容为空)"; }
-                else { contentStr = "(此类型无内容)"; }
-                addRowInlineStyle(htmlBody, "内容/详情", contentStr, null);
+            // 2a: 各渠道并行发送本页 (每个渠道只发送本页中尚未通过它送达的事件)
+            AppLog.d(TAG, ">>> [Periodic] Delivering page {} ({} events)...", (sentPages + 1), eventsToSend.size());
+            DeliveryDispatcher.Result result = deliverAdaptively(DeliveryDispatcher.getDefault(), context, subject, eventsToSend, IConstants.FAST_RETRY_DELAY_MS);
+
+            // 2b: 根据发送结果更新数据库 (每页单独提交，已发送的进度不会因后续失败而丢失)
+            //     所有需要的渠道都已送达的事件删除，其余事件记录已送达的渠道并退避，下次只补发缺少的渠道
+            IdArray completedIds = new IdArray(eventsToSend.size());
+            List<PendingEvent> incomplete = new ArrayList<>();
+            for (PendingEvent event : eventsToSend) {
+                if (result.isComplete(event)) completedIds.add(event.id);
+                else incomplete.add(event);
+            }
+            try {
+                if (incomplete.isEmpty()) {
+                    // 整页都已送达 (常见情况): 按本页最后一个事件的 (eventTimestamp, id) 水位线删除本次认领的事件，不绑定 ID 列表
+                    PendingEvent last = eventsToSend.get(eventsToSend.size() - 1);
+                    AppLog.d(TAG, ">>> [Periodic] Deleting delivered page from DB through ID {}", last.id);
+                    dao.deleteLeasedEventsThrough(leaseOwner, PendingEvent.STATUS_PENDING, last.eventTimestamp, last.id);
+                } else if (!completedIds.isEmpty()) {
+                    AppLog.d(TAG, ">>> [Periodic] Deleting delivered events from DB: IDs {}", completedIds);
+                    dao.deleteEventsByIds(completedIds.toArray()); // 全部渠道已送达，删除
+                }
+            } catch (Exception e) { AppLog.e(TAG, ">>> [Periodic] Error updating delivered events in DB: {}", e.getMessage()); }
+            boolean circuitOpen = result.isOnlyCircuitOpen(); // 失败的渠道都是因熔断而没有尝试
+            if (!incomplete.isEmpty()) {
+                if (circuitOpen) journal.markDeferred(incomplete); // 记录进度，不计入尝试次数
+                else journal.markFailed(incomplete); // 部分渠道失败: 记录进度，按重试次数退避
+            }
+            sentPages++;
+            sentEvents += completedIds.size();
 
-                String simDisplay = (event.simInfo != null ? escapeHtml(event.simInfo) : "未知SIM") + " (ID:" + event.subId + ")";
-                int colorIndex = Math.abs(event.subId) % SIM_COLORS.length;
-                String simColor = SIM_COLORS[colorIndex];
-                String simDataStyle = "color: " + simColor + "; font-weight: bold;";
-                addRowInlineStyle(htmlBody, "SIM卡", simDisplay, simDataStyle);
+            if (circuitOpen) {
+                AppLog.w(TAG, ">>> [Periodic] SMTP circuit opened during the run, stopping. Delivered {} event(s) so far.", sentEvents);
+                return false; // 熔断结束后由下次补发继续
+            }
 
-                htmlBody.append("</tbody>");
-                htmlBody.append("</table>");
+            if (!result.isAllDelivered()) {
+                allDelivered = false;
+                if (!result.isAnyDelivered()) {
+                    // 所有渠道都失败多半是网络问题，后面的页也会失败，留给下次重试
+                    AppLog.w(TAG, ">>> [Periodic] All channels failed for page, stopping this run. Delivered {} event(s) before failure.", sentEvents);
+                    return false; // 任务失败，需要重试
+                }
+                AppLog.w(TAG, ">>> [Periodic] Channels {} failed for page, continuing with the other channels.", result.failedMask);
             }
+        }
 
-            htmlBody.append("</body></html>");
-            Log.d(TAG, ">>> Finished formatting email body with multiple tables (Inline Styles + SIM Colors).");
+        AppLog.i(TAG, ">>> [Periodic] Consolidated send finished: {} event(s) fully delivered in {} page(s).", sentEvents, sentPages);
+        return allDelivered; // 有渠道失败时返回 false，让 Worker 稍后重试
 
-            return htmlBody.toString();
+    } // performConsolidatedSend 方法结束
 
-        } catch (Exception e) {
-            Log.e(TAG, ">>> Exception during formatting email body: " + e.getMessage(), e);
-            return null; // 格式化异常返回 null
+    /**
+     * 按失败类型选择重试方式地发送一批事件 (网络已可用时调用):
+     *   FAST (连接超时、连接被重置、4xx): 等待 fastRetryDelayMs 后只重发失败的渠道，只重试一次，不重新等待网络；
+     *   SPLIT (邮件过大): 对半拆分后分别发送 (递归，直到单个事件)；
+     *   DEFERRED 等: 直接返回，由调用方按 RetryPolicy 退避。
+     */
+    static DeliveryDispatcher.Result deliverAdaptively(DeliveryDispatcher dispatcher, Context context, String subject,
+                                                       List<PendingEvent> events, long fastRetryDelayMs) {
+        DeliveryDispatcher.Result result = dispatcher.deliver(context, subject, events);
+        switch (result.retryAdvice()) {
+            case SPLIT:
+                if (events.size() < 2) return result; // 单个事件无法再拆分，按失败处理
+                int half = events.size() / 2;
+                AppLog.w(TAG, ">>> Message too large for {} event(s), splitting into {} + {}.", events.size(), half, events.size() - half);
+                return deliverAdaptively(dispatcher, context, subject, events.subList(0, half), fastRetryDelayMs)
+                        .combinedWith(deliverAdaptively(dispatcher, context, subject, events.subList(half, events.size()), fastRetryDelayMs));
+            case FAST:
+                AppLog.w(TAG, ">>> Transient send failure {}, retrying failed channel(s) in {}ms.", result.failures, fastRetryDelayMs);
+                try {
+                    Thread.sleep(fastRetryDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // 服务停止，不再重试
+                    return result;
+                }
+                return result.thenRetried(dispatcher.deliver(context, subject, events)); // 只重发尚未送达的渠道
+            default:
+                return result;
         }
     }
 
+    // 单个事件表格的固定开销 (内联样式、标签等) 的估算字节数
+    private static final int EVENT_HTML_OVERHEAD_BYTES = 2048;
 
     /**
-     * 格式化为文本内容
+     * 从一页事件的开头取出估算正文大小不超过 maxBytes 的部分 (至少一个，超大的单个事件单独成一封)
      */
-    private static String formatConsolidatedPlainText(List<PendingEvent> events) {
-        if (events == null || events.isEmpty()) {
-            Log.w(TAG, ">>> formatConsolidatedPlainText called with empty or null list.");
-            return "本次报告无待处理事件。";
-        }
-
-        try { // 添加 try-catch 块捕获格式化过程中的潜在异常
-            StringBuilder htmlBody = new StringBuilder();
-            String newMessage = "  ////  ";
-            String newLine = "  | ";
-
-            // 根据事件数量调整主标题
-            if (events.size() == 1) {
-                PendingEvent singleEvent = events.get(0);
-                String eventTypeDisplay = "SMS".equalsIgnoreCase(singleEvent.eventType) ? "短信" : ("CALL".equalsIgnoreCase(singleEvent.eventType) ? "未接来电" : "事件");
-                htmlBody.append("").append(eventTypeDisplay).append(newMessage);
-            } else {
-                htmlBody.append("短信/来电 事件报告 (").append(events.size()).append("条)").append(newMessage); // 在标题中显示事件数量
+    static List<PendingEvent> limitToByteBudget(List<PendingEvent> page, int maxBytes) {
+        long total = 0;
+        for (int i = 0; i < page.size(); i++) {
+            total += estimateHtmlBytes(page.get(i));
+            if (total > maxBytes && i > 0) {
+                return page.subList(0, i);
             }
-//            htmlBody.append("报告生成时间: ").append(TimeUtil.getCurrentFormattedTime()).append(newLine);
-
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-
-            for (int i = 0; i < events.size(); i++) {
-                PendingEvent event = events.get(i);
+        }
+        return page;
+    }
 
-                htmlBody.append(i + 1).append(".时间: ").append(sdf.format(new Date(event.eventTimestamp))).append(newLine);
+    // 估算一个事件在 HTML 正文中占用的 UTF-8 字节数 (不实际生成字符串)
+    static long estimateHtmlBytes(PendingEvent event) {
+        return EVENT_HTML_OVERHEAD_BYTES + utf8Length(event.senderNumber) + utf8Length(event.messageContent) + utf8Length(event.simLabel);
+    }
 
-                String typeStr;
-                if ("SMS".equalsIgnoreCase(event.eventType)) { typeStr = "收到短信"; }
-                else if ("CALL".equalsIgnoreCase(event.eventType)) { typeStr = "未接来电"; }
-                else { typeStr = "未知类型"; }
-                htmlBody.append("类型: ").append(typeStr).append(newLine);
+    private static long utf8Length(String s) {
+        if (s == null) return 0;
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) bytes += 1;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isSurrogate(c)) bytes += 2; // 代理对两个 char 共 4 字节
+            else bytes += 3;
+        }
+        return bytes;
+    }
 
-                htmlBody.append("号码: ").append(event.senderNumber).append(newLine);
 
-                String contentStr;
-                if ("SMS".equalsIgnoreCase(event.eventType)) { contentStr = (event.messageContent != null) ? escapeHtml(event.messageContent) : "(内容为空)"; }
-                else { contentStr = "(无)"; }
-//                addRowInlineStyle(htmlBody, "内容/详情", contentStr, null);
-                htmlBody.append("内容: ").append(contentStr).append(newLine);
+    // --- 网络检查辅助方法 ---
+    private static boolean isNetworkAvailable(ConnectivityManager cm) {
+        if (cm == null) { AppLog.e(TAG, "isNetworkAvailable: ConnectivityManager is null."); return false; }
+        return getNetworkAwaiter(cm).isNetworkAvailable();
+    }
 
-                String simDisplay = (event.simInfo != null ? escapeHtml(event.simInfo) : "未知SIM") + " (ID:" + event.subId + ")";
-//                int colorIndex = Math.abs(event.subId) % SIM_COLORS.length;
-//                String simColor = SIM_COLORS[colorIndex];
-//                String simDataStyle = "color: " + simColor + "; font-weight: bold;";
-//                addRowInlineStyle(htmlBody, "SIM卡", simDisplay, simDataStyle);
-                htmlBody.append("SIM卡: ").append(simDisplay).append(newMessage);
+    // 共享的网络等待组件 (所有发送路径共用，同时等待时只注册一个 NetworkCallback)
+    private static volatile NetworkAwaiter networkAwaiter;
 
+    private static NetworkAwaiter getNetworkAwaiter(ConnectivityManager cm) {
+        if (networkAwaiter == null) {
+            synchronized (EventSendHelper.class) {
+                if (networkAwaiter == null) {
+                    networkAwaiter = new NetworkAwaiter(new NetworkAwaiter.AndroidConnectivitySource(cm));
+                }
             }
-
-            return htmlBody.toString();
-
-        } catch (Exception e) {
-            Log.e(TAG, ">>> Exception during formatting email body: " + e.getMessage(), e);
-            return null; // 格式化异常返回 null
         }
+        return networkAwaiter;
     }
 
     /**
-     * [内联样式版本] 辅助方法，用于向 StringBuilder 添加表格行 (<tr><td>标题</td><td>数据</td></tr>)
-     * @param sb StringBuilder 对象
-     * @param header 标题文字
-     * @param data 数据文字
-     * @param dataInlineStyle 应用于数据单元格的内联样式字符串 (例如 "color: red; font-weight: bold;" 或 null)
+     * 取消所有正在进行的网络等待 (服务销毁时调用)，等待中的发送会以 SEND_FAILED_NETWORK 结束
      */
-    private static void addRowInlineStyle(StringBuilder sb, String header, String data, String dataInlineStyle) {
-        // (此方法保持不变)
-        sb.append("<tr>");
-        sb.append("<td style=\"padding: 10px 15px; font-weight: bold; background-color: #f9f9f9; width: 90px; border-bottom: 1px solid #eeeeee; border-right: 1px solid #eeeeee; color: #555555; vertical-align: top;\">").append(header).append("</td>");
-        String baseDataStyle = "padding: 10px 15px; vertical-align: top; border-bottom: 1px solid #eeeeee;";
-        String finalDataStyle = baseDataStyle + (dataInlineStyle != null ? dataInlineStyle : "");
-        sb.append("<td style=\"").append(finalDataStyle).append("\">").append(data).append("</td>");
-        sb.append("</tr>");
-    }
-
-
-    /**
-     * 对字符串进行 HTML 转义，替换特殊字符为 HTML 实体。
-     * @param text 需要转义的原始文本
-     * @return 转义后的 HTML 安全文本
-     */
-    private static String escapeHtml(String text) {
-        if (text == null) return ""; // 处理 null 输入
-        // 替换 HTML 特殊字符
-        // 注意替换顺序，先替换 & 符号
-        return text.replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&#39;");
-    }
-
-
-    // --- 网络检查辅助方法 (保持不变) ---
-    private static boolean isNetworkAvailable(ConnectivityManager cm) {
-        // (此方法保持不变)
-        if (cm == null) { Log.e(TAG, "isNetworkAvailable: ConnectivityManager is null."); return false; }
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                Network activeNetwork = cm.getActiveNetwork();
-                if (activeNetwork == null) {Log.d(TAG, "isNetworkAvailable (M+): No active network."); return false;}
-                NetworkCapabilities capabilities = cm.getNetworkCapabilities(activeNetwork);
-                boolean connected = capabilities != null &&
-                        (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) ||
-                         capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR) ||
-                         capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) &&
-                        capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
-                        capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
-                return connected;
-            } else {
-                @SuppressLint("MissingPermission")
-                android.net.NetworkInfo activeNetworkInfo = cm.getActiveNetworkInfo();
-                boolean connected = activeNetworkInfo != null && activeNetworkInfo.isConnected();
-                return connected;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "isNetworkAvailable: Error checking network state: " + e.getMessage());
-            return false;
+    protected static void cancelNetworkWait() {
+        NetworkAwaiter awaiter = networkAwaiter;
+        if (awaiter != null) {
+            awaiter.cancel();
         }
     }
 
-    // 确保 Wi-Fi 开启的辅助方法 (保持不变)
-    private static boolean ensureWifiEnabled(Context context, WifiManager wm) {
-        // (此方法保持不变)
-        if (wm == null) { Log.e(TAG, "ensureWifiEnabled: WifiManager is null."); return false; }
-        if (wm.isWifiEnabled()) { Log.d(TAG,"ensureWifiEnabled: Wi-Fi is already enabled."); return true; }
+    // 确保 Wi-Fi 开启的辅助方法 (NetworkWarmer 预热时也会调用)
+    static boolean ensureWifiEnabled(Context context, WifiManager wm) {
+        if (wm == null) { AppLog.e(TAG, "ensureWifiEnabled: WifiManager is null."); return false; }
+        if (wm.isWifiEnabled()) { AppLog.d(TAG,"ensureWifiEnabled: Wi-Fi is already enabled."); return true; }
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
             if (context.checkSelfPermission(Manifest.permission.CHANGE_WIFI_STATE) != PackageManager.PERMISSION_GRANTED) {
-                Log.e(TAG, "ensureWifiEnabled: CHANGE_WIFI_STATE permission not granted.");
+                AppLog.e(TAG, "ensureWifiEnabled: CHANGE_WIFI_STATE permission not granted.");
                 return false;
             }
-            Log.d(TAG, "ensureWifiEnabled: Attempting to enable Wi-Fi...");
+            AppLog.d(TAG, "ensureWifiEnabled: Attempting to enable Wi-Fi...");
             try {
                 boolean success = wm.setWifiEnabled(true);
-                Log.d(TAG, "ensureWifiEnabled: wifiManager.setWifiEnabled(true) returned: " + success);
+                AppLog.d(TAG, "ensureWifiEnabled: wifiManager.setWifiEnabled(true) returned: {}", success);
+                if (success) {
+                    RadioManager.getDefault().onRadioEnabled(RadioManager.now());
+                }
                 return success;
             } catch (SecurityException se){
-                 Log.e(TAG, "ensureWifiEnabled: SecurityException enabling Wi-Fi: " + se.getMessage());
+                 AppLog.e(TAG, "ensureWifiEnabled: SecurityException enabling Wi-Fi: {}", se.getMessage());
                  return false;
             } catch (Exception e) {
-                Log.e(TAG, "ensureWifiEnabled: Error enabling Wi-Fi: " + e.getMessage(), e);
+                AppLog.e(TAG, "ensureWifiEnabled: Error enabling Wi-Fi.", e);
                 return false;
             }
         } else {
-            Log.w(TAG, "ensureWifiEnabled: Cannot programmatically enable Wi-Fi on Android 10+.");
+            AppLog.w(TAG, "ensureWifiEnabled: Cannot programmatically enable Wi-Fi on Android 10+.");
             return false;
         }
     }
 
-    // --- resetWifiOffSchedule, scheduleWifiOffAlarm, cancelWifiOffAlarm 方法保持不变 ---
+    // --- resetWifiOffSchedule, scheduleWifiOffAlarm, cancelWifiOffAlarm (关闭延迟由 RadioManager 决定) ---
     protected static void resetWifiOffSchedule(AlarmManager alarmManager, PendingIntent wifiOffPendingIntent) {
-        Log.d(TAG, ">>> Resetting Wi-Fi turn-off schedule (Cancelling and rescheduling alarm).");
+        AppLog.d(TAG, ">>> Resetting Wi-Fi turn-off schedule (Cancelling and rescheduling alarm).");
         cancelWifiOffAlarm(alarmManager, wifiOffPendingIntent);
         scheduleWifiOffAlarm(alarmManager, wifiOffPendingIntent);
     }
     private static void scheduleWifiOffAlarm(AlarmManager alarmManager, PendingIntent wifiOffPendingIntent) {
         if (alarmManager != null && wifiOffPendingIntent != null) {
-            long triggerAtMillis = System.currentTimeMillis() + IConstants.WIFI_OFF_DELAY_MS;
+            long delayMs = RadioManager.getDefault().getOffDelayMs(); // 根据最近的事件到达间隔自适应
+            long triggerAtMillis = System.currentTimeMillis() + delayMs;
             try {
                 alarmManager.set(AlarmManager.RTC_WAKEUP, triggerAtMillis, wifiOffPendingIntent);
-                Log.i(TAG, ">>> Scheduled Wi-Fi off alarm for " + IConstants.WIFI_OFF_DELAY_MS + "ms from now.");
+                AppLog.i(TAG, ">>> Scheduled Wi-Fi off alarm for {}ms from now.", delayMs);
             } catch (SecurityException se) {
-                Log.e(TAG, ">>> SecurityException scheduling Wi-Fi off alarm: " + se.getMessage());
+                AppLog.e(TAG, ">>> SecurityException scheduling Wi-Fi off alarm: {}", se.getMessage());
             } catch (Exception e) {
-                Log.e(TAG, ">>> Error scheduling Wi-Fi off alarm: " + e.getMessage());
+                AppLog.e(TAG, ">>> Error scheduling Wi-Fi off alarm: {}", e.getMessage());
             }
         } else {
-            Log.e(TAG, ">>> Cannot schedule Wi-Fi off alarm: AlarmManager or PendingIntent is null.");
+            AppLog.e(TAG, ">>> Cannot schedule Wi-Fi off alarm: AlarmManager or PendingIntent is null.");
         }
     }
     protected static void cancelWifiOffAlarm(AlarmManager alarmManager, PendingIntent wifiOffPendingIntent) {
         if (alarmManager != null && wifiOffPendingIntent != null) {
-            Log.d(TAG, ">>> Cancelling scheduled Wi-Fi off alarm.");
+            AppLog.d(TAG, ">>> Cancelling scheduled Wi-Fi off alarm.");
             alarmManager.cancel(wifiOffPendingIntent);
         } else {
-            Log.w(TAG, ">>> Cannot cancel Wi-Fi off alarm: AlarmManager or PendingIntent is null.");
+            AppLog.w(TAG, ">>> Cannot cancel Wi-Fi off alarm: AlarmManager or PendingIntent is null.");
         }
     }
 
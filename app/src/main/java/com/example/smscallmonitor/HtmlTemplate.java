@@ -0,0 +1,143 @@
+package com.example.smscallmonitor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+// 通知邮件的 HTML 模板：所有静态片段 (页头、表格开头、每一行的内联样式、每张 SIM 卡的颜色样式)
+// 在类加载时拼好一次，渲染每个事件时只写入这些现成的片段和动态字段 (时间、号码、内容、SIM 名称)。
+final class HtmlTemplate {
+
+    private HtmlTemplate() {}
+
+    // SIM 卡颜色数组
+    static final String[] SIM_COLORS = {
+            "#1E90FF", // DodgerBlue
+            "#7d3c98", // SeaGreen
+            "#DAA520", // GoldenRod
+            "#9400D3", // DarkViolet
+            "#FF8C00", // DarkOrange
+            "#4682B4", // SteelBlue
+            "#f39c12", // SaddleBrown
+            "#DB7093", // PaleVioletRed
+            "#5F9EA0", // CadetBlue
+            "#708090"  // SlateGray
+    };
+
+    // --- 样式 ---
+    private static final String HEADER_CELL_STYLE = "padding: 10px 15px; font-weight: bold; background-color: #f9f9f9; width: 90px; border-bottom: 1px solid #eeeeee; border-right: 1px solid #eeeeee; color: #555555; vertical-align: top;";
+    private static final String DATA_CELL_STYLE = "padding: 10px 15px; vertical-align: top; border-bottom: 1px solid #eeeeee;";
+    private static final String BOLD = " font-weight: bold;";
+
+    // --- 页面 ---
+    static final String DOCUMENT_START = "<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>事件报告</title></head>"
+            + "<body style=\"font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', Roboto, Oxygen, Ubuntu, Cantarell, 'Fira Sans', 'Droid Sans', 'Helvetica Neue', sans-serif; line-height: 1.5; color: #333333; margin: 0; padding: 10px; background-color: #f4f4f4;\">";
+    static final String DOCUMENT_END = "</body></html>";
+    static final String EMPTY_DOCUMENT = "<h3>本次报告无待处理事件。</h3>";
+
+    private static final String TITLE_START = "<h2 style=\"color: #222222; margin-bottom: 8px; font-size: 1.4em;\">";
+    static final String TITLE_SMS = TITLE_START + "短信 通知</h2>";
+    static final String TITLE_CALL = TITLE_START + "未接来电 通知</h2>";
+    static final String TITLE_OTHER = TITLE_START + "事件 通知</h2>";
+    static final String TITLE_REPORT_START = TITLE_START + "短信/来电 事件报告 ("; // 之后写事件数量
+    static final String TITLE_REPORT_END = "条)</h2>";
+    static final String REPORT_TIME_START = "<p style=\"color: #666666; font-size: 0.9em; margin-top: 0; margin-bottom: 15px;\">报告生成时间: ";
+    static final String REPORT_TIME_END = "</p><hr style=\"border: none; border-top: 1px solid #cccccc; margin: 25px 0;\">";
+
+    // --- 每个事件的表格 ---
+    static final String TABLE_START = "<table border=\"0\" cellpadding=\"0\" cellspacing=\"0\" style=\"border-collapse: collapse; width: 100%; max-width: 600px; margin-bottom: 25px; border: 1px solid #cccccc; background-color: #ffffff; border-radius: 5px; box-shadow: 0 1px 3px rgba(0,0,0,0.1); overflow: hidden;\"><tbody>";
+    static final String TABLE_END = "</tbody></table>";
+
+    static final String ROW_END = "</td></tr>";
+    // 行的开头 (标题单元格 + 数据单元格的开始标签)，之后写入数据，再写 ROW_END
+    static final String ROW_TIME_START = rowStart("事件时间", null);
+    static final String ROW_NUMBER_START = rowStart("号码", null);
+    static final String ROW_CONTENT_START = rowStart("内容/详情", null);
+    // 数据固定的整行
+    static final String ROW_TYPE_SMS = rowStart("类型", "color: #008000;" + BOLD) + "收到短信" + ROW_END;
+    static final String ROW_TYPE_CALL = rowStart("类型", "color: #cc0000;" + BOLD) + "未接来电" + ROW_END;
+    static final String ROW_TYPE_OTHER = rowStart("类型", "color: #555555;" + BOLD) + "未知类型" + ROW_END;
+    static final String ROW_CONTENT_EMPTY = ROW_CONTENT_START + "(内容为空)" + ROW_END;
+    static final String ROW_CONTENT_NONE = ROW_CONTENT_START + "(此类型无内容)" + ROW_END;
+    // SIM 卡行: 每种颜色一个预先拼好的开头，下标与 SIM_COLORS 一致
+    static final String[] ROW_SIM_START = new String[SIM_COLORS.length];
+    static {
+        for (int i = 0; i < SIM_COLORS.length; i++) {
+            ROW_SIM_START[i] = rowStart("SIM卡", "color: " + SIM_COLORS[i] + ";" + BOLD);
+        }
+    }
+    static final String UNKNOWN_SIM = "未知SIM";
+    static final String SIM_ID_START = " (ID:";
+    static final String SIM_ID_END = ")";
+
+    private static String rowStart(String header, String dataInlineStyle) {
+        return "<tr><td style=\"" + HEADER_CELL_STYLE + "\">" + header + "</td>"
+                + "<td style=\"" + DATA_CELL_STYLE + (dataInlineStyle != null ? dataInlineStyle : "") + "\">";
+    }
+
+    /**
+     * SIM 卡行的开头 (按 subId 选颜色)
+     */
+    static String simRowStart(int subId) {
+        return ROW_SIM_START[Math.abs(subId % SIM_COLORS.length)];
+    }
+
+    // --- 动态字段 ---
+
+    /**
+     * 转义 HTML 特殊字符并直接写出：单次扫描，没有特殊字符的区段整段写出，不生成中间字符串
+     */
+    static void writeEscaped(Writer out, String text) throws IOException {
+        if (text == null) return; // 处理 null 输入
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '"': replacement = "&quot;"; break;
+                case '\'': replacement = "&#39;"; break;
+                default: continue;
+            }
+            if (i > start) out.write(text, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+        if (start < length) out.write(text, start, length - start);
+    }
+
+    /**
+     * 转义后的字符串 (没有特殊字符时返回原字符串)，用于同一文字在一封邮件中多次写出的情况 (只转义一次)
+     */
+    static String escape(String text) {
+        if (text == null) return null;
+        StringWriter out = new StringWriter(text.length() + 16);
+        try {
+            writeEscaped(out, text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter 不会抛出 IOException
+        }
+        String escaped = out.toString();
+        return escaped.length() == text.length() ? text : escaped;
+    }
+
+    /**
+     * 写出十进制整数 (不创建字符串)
+     */
+    static void writeInt(Writer out, int value) throws IOException {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) { out.write(Integer.toString(value)); return; }
+            out.write('-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        while (divisor > 0) {
+            out.write('0' + value / divisor);
+            value %= divisor;
+            divisor /= 10;
+        }
+    }
+}
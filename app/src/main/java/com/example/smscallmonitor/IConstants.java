@@ -6,13 +6,72 @@ public interface IConstants {
     static final int WIFI_OFF_ALARM_REQUEST_CODE = 99;
     static final int PERMISSION_REQUEST_CODE = 100;
     static final long WIFI_OFF_DELAY_MS = TimeUnit.MINUTES.toMillis(3); // 5分钟 Wi-Fi 关闭延迟
-    // 等待网络连接的超时和间隔
+    // 自适应 Wi-Fi 关闭延迟 (RadioManager): 最近事件到达间隔的 EWMA * 倍数，限制在上下限之间
+    static final long WIFI_OFF_MIN_DELAY_MS = TimeUnit.MINUTES.toMillis(1); // 事件稀疏时尽早关闭
+    static final long WIFI_OFF_MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(10); // 事件密集时最多保持 10 分钟
+    static final double WIFI_OFF_ARRIVAL_EWMA_ALPHA = 0.3;
+    static final double WIFI_OFF_GAP_MULTIPLIER = 2.0; // 预计下一个事件到来之前不关闭
+    // 等待网络连接的超时
     static final long WIFI_CONNECT_TIMEOUT_MS = 35000; // 总共等待 Wi-Fi 连接的最长时间 (35 秒)
-    static final long NETWORK_CHECK_INTERVAL_MS = 1500; // 每次检查网络状态的间隔 (1.5 秒)
+
+    // SMTP 连接池: 空闲关闭时间，以及复用前做 NOOP 健康检查的空闲阈值
+    static final long SMTP_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2); // 连接空闲 2 分钟后关闭
+    static final long SMTP_HEALTH_CHECK_INTERVAL_MS = 15000; // 空闲超过 15 秒，复用前先发 NOOP
+
+    // 微批处理: 满 N 条、安静 T 毫秒、或最早事件已等待最大延迟，三者任一满足即合并发送
+    static final int BATCH_MAX_EVENTS = 20; // 单批最多事件数
+    static final long BATCH_QUIET_WINDOW_MS = 3000; // 最后一个事件后安静 3 秒即发送
+    static final long BATCH_MAX_LATENCY_MS = 10000; // 批内最早事件最多等待 10 秒
+
+    // 写入数据库的分组提交: 几毫秒内到达的事件合并到一个事务中写入 (短信轰炸时不再每个事件一次提交)
+    static final int JOURNAL_GROUP_MAX_EVENTS = 50; // 单个事务最多事件数
+    static final long JOURNAL_GROUP_WINDOW_MS = 5; // 第一个事件最多等待 5 毫秒
+
+    // 补发 (分页): 每封补发邮件最多包含的事件数和 HTML 正文的估算字节数，积压再多也逐页发送、逐页删除
+    static final int DRAIN_MAX_EVENTS_PER_EMAIL = 200; // 每封补发邮件最多事件数 (也是每页查询的 LIMIT)
+    static final int DRAIN_MAX_BYTES_PER_EMAIL = 1024 * 1024; // 每封补发邮件正文最多约 1MB (远低于 Gmail 的 25MB 限制)
+    // 补发任务认领一页事件的有效期: 覆盖等待网络 (WIFI_CONNECT_TIMEOUT_MS) 和一次发送 (含快速重试)；进程被杀后过期，由其他补发任务重新认领
+    static final long DRAIN_LEASE_MS = TimeUnit.MINUTES.toMillis(5);
+    // 批量删除 / 更新时每条语句最多绑定的 ID 数: Android 9/10 自带的 SQLite (< 3.32) 每条语句最多 999 个绑定变量，留出其他参数的位置
+    static final int DB_MAX_IDS_PER_STATEMENT = 900;
+
+    // 多渠道发送: 每个渠道 (邮件、Google Voice) 独立的发送队列容量，以及等待单个渠道发送完成的最长时间
+    static final int DELIVERY_QUEUE_CAPACITY = 8; // 队列满时该渠道本次不发送，留给补发
+    static final long DELIVERY_SEND_TIMEOUT_MS = 90000; // 超时中止该渠道的发送并按失败处理
+
+    // 后台任务调度 (WorkScheduler): 数据库写入和网络发送分通道，各自的队列上限，超出后事件留在数据库等待补发
+    static final int JOURNAL_LANE_CAPACITY = 256; // 数据库写入通道: 满了交给备用写入线程
+    static final long JOURNAL_OVERFLOW_IDLE_MS = 10_000; // 备用写入线程空闲多久后结束
+    static final int NETWORK_LANE_THREADS = 2; // 网络通道线程数: 一个卡在等待 Wi-Fi 的发送不会挡住紧急事件
+    static final int NETWORK_LANE_CAPACITY = 16; // 网络通道: 满了的普通事件留给补发 (未接来电、验证码不受限制)
+
+    // 重试策略 (RetryPolicy): 失败后按 retryCount 指数退避 (带抖动)，达到最多尝试次数后转为死信，不再自动补发
+    static final long RETRY_BASE_DELAY_MS = TimeUnit.MINUTES.toMillis(1); // 第一次失败后约 1 分钟
+    static final long RETRY_MAX_DELAY_MS = TimeUnit.HOURS.toMillis(6); // 退避上限 6 小时
+    static final int RETRY_MAX_ATTEMPTS = 12; // 累计退避约 10-20 小时后放弃
+
+    // 可快速重试的失败 (连接超时、连接被重置、4xx): 网络已经可用，等待片刻后在同一次发送中再试一次
+    static final long FAST_RETRY_DELAY_MS = 2000;
+
+    // SMTP 熔断器 (SmtpCircuitBreaker): 认证失败立即熔断；网络等临时错误连续 N 次后熔断，熔断时间逐次加倍
+    static final int SMTP_CIRCUIT_FAILURE_THRESHOLD = 3;
+    static final long SMTP_CIRCUIT_OPEN_MS = TimeUnit.MINUTES.toMillis(2);
+    static final long SMTP_CIRCUIT_MAX_OPEN_MS = TimeUnit.MINUTES.toMillis(30);
+    static final long SMTP_CIRCUIT_AUTH_OPEN_MS = TimeUnit.HOURS.toMillis(6); // 或直到修改发件人/密码
+
+    // 网络预热 (NetworkWarmer): 来电响铃或收到短信时提前请求网络并建立 SMTP 连接，最后一次预热后保持这么久
+    static final long NETWORK_WARMUP_HOLD_MS = TimeUnit.SECONDS.toMillis(90); // 覆盖响铃 (约 30 秒) 和随后的发送
 
     static final long MISSED_CALL_DEBOUNCE_MS = 10000; // 未接来电去抖动时间
+    static final int PHONE_STATE_DIAGNOSTICS_CAPACITY = 32; // 诊断模式下保留最近多少个 PHONE_STATE 广播
+    static final int LOG_BUFFER_CAPACITY = 64; // AppLog 保留最近多少条 INFO 及以上的日志
+    static final int MISSED_CALL_DEDUP_CAPACITY = 32; // 去抖动缓存最多记录数 (10 秒内不会有这么多未接来电)
+    // 短信重复投递去重 (同一发件人、时间戳、内容): 有效期和最多记录数
+    static final long SMS_DEDUP_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    static final int SMS_DEDUP_CAPACITY = 128;
 
-    static final int SCHEDULED_WORK_INTERVAL_MINUTE = 30;// 每隔30分钟(最小为15分钟)尝试把之前没发送出去的任务发送一下
+    // 补发任务 (DrainScheduler) 失败后 WorkManager 指数退避的初始延迟
+    static final long DRAIN_BACKOFF_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
 
     // --- SharedPreferences 相关常量 ---
     String PREFS_NAME = "AppPreferences"; // SharedPreferences 文件名
@@ -23,6 +82,7 @@ public interface IConstants {
     String KEY_SERVICE_RUNNING_STATUS = "service_running_status"; // 运行状态标记
     String KEY_EMAIL_SENDER = "email_sender"; // 发送邮箱的地址
     String KEY_SEND_PASSWORD = "send_password"; // 发送邮箱的应用密码
+    String KEY_PHONE_STATE_DIAGNOSTICS = "phone_state_diagnostics"; // 来电广播诊断模式开关 (默认关闭)
 
     // 本地广播 Action
     String ACTION_SERVICE_STATUS_CHANGED = "com.example.smscallmonitor.SERVICE_STATUS_CHANGED";
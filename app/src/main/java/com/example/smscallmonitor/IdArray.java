@@ -0,0 +1,68 @@
+package com.example.smscallmonitor;
+
+import java.util.Arrays;
+import java.util.List;
+
+// 事件 ID 的可增长 int 数组：批量删除 / 更新时收集 ID 不装箱 (List<Integer> 每个 ID 一个 Integer 对象)，
+// 交给 PendingEventDao 的批量操作 (按 SQLite 绑定变量上限分块执行)。
+public final class IdArray {
+
+    private int[] ids;
+    private int size;
+
+    public IdArray() {
+        this(16);
+    }
+
+    public IdArray(int initialCapacity) {
+        ids = new int[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * 已写入数据库的事件 (id 不为 0) 的 ID
+     */
+    public static int[] of(List<PendingEvent> events) {
+        IdArray result = new IdArray(events.size());
+        for (PendingEvent event : events) {
+            if (event.id != 0) result.add(event.id);
+        }
+        return result.toArray();
+    }
+
+    public void add(int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size++] = id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * ids 中从 from 开始的最多 maxSize 个 ID (整个数组就是一块时不复制)
+     */
+    static int[] chunk(int[] ids, int from, int maxSize) {
+        if (from == 0 && ids.length <= maxSize) return ids;
+        return Arrays.copyOfRange(ids, from, Math.min(ids.length, from + maxSize));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(size * 6 + 2).append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(ids[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -9,7 +9,6 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.util.Log;
 import android.widget.Button;
 import android.widget.Toast;
 
@@ -38,7 +37,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        Log.d(TAG, "onCreate called");
+        AppLog.d(TAG, "onCreate called");
 
         requestRequiredPermissions();
 
@@ -47,10 +46,10 @@ public class MainActivity extends AppCompatActivity {
 
         toggleButton.setOnClickListener(v -> {
             boolean isActuallyRunning = isServiceRunningFromPrefs(this);
-            Log.d(TAG, "Toggle button clicked. Current serviceRunning state: " + isActuallyRunning);
+            AppLog.d(TAG, "Toggle button clicked. Current serviceRunning state: {}", isActuallyRunning);
             Intent intent = new Intent(this, MonitorService.class);
             if (!isActuallyRunning) {
-                Log.d(TAG, "Starting service with ACTION_START_MONITORING");
+                AppLog.d(TAG, "Starting service with ACTION_START_MONITORING");
                 intent.setAction(MonitorService.ACTION_START_MONITORING);
                 try {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -60,18 +59,18 @@ public class MainActivity extends AppCompatActivity {
                     }
                     Toast.makeText(this, "监控服务启动请求已发送", Toast.LENGTH_SHORT).show(); // 可以保留 Toast
                 } catch (Exception e) {
-                    Log.e(TAG, "Error starting MonitorService: " + e.getMessage(), e);
+                    AppLog.e(TAG, "Error starting MonitorService", e);
                     Toast.makeText(this, "启动监控服务失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 }
             } else {
-                Log.d(TAG, "Stopping service");
+                AppLog.d(TAG, "Stopping service");
                 try {
                     stopService(intent);
                     // 取消闹钟
                     cancelWifiOffAlarmFromActivity(this);
                     Toast.makeText(this, "监控服务停止请求已发送", Toast.LENGTH_SHORT).show(); // 可以保留 Toast
                 } catch (Exception e) {
-                    Log.e(TAG, "Error stopping MonitorService: " + e.getMessage(), e);
+                    AppLog.e(TAG, "Error stopping MonitorService", e);
                     Toast.makeText(this, "停止监控服务失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 }
             }
@@ -79,7 +78,7 @@ public class MainActivity extends AppCompatActivity {
 
         // --- 设置按钮的点击事件 ---
         settingsButton.setOnClickListener(v -> {
-            Log.d(TAG, "Settings button clicked.");
+            AppLog.d(TAG, "Settings button clicked.");
             Intent settingsIntent = new Intent(MainActivity.this, SettingsActivity.class);
             startActivity(settingsIntent);
         });
@@ -89,11 +88,11 @@ public class MainActivity extends AppCompatActivity {
         serviceStatusReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                Log.d(TAG, "Received local broadcast: " + intent.getAction());
+                AppLog.d(TAG, "Received local broadcast: {}", intent.getAction());
                 if (IConstants.ACTION_SERVICE_STATUS_CHANGED.equals(intent.getAction())) {
                     // 广播携带了最新的服务运行状态，但我们仍然选择从 Prefs 读取以保持一致性
                     updateButtonStateBasedOnPrefs(); // 从 Prefs 读取并更新
-                    Log.d(TAG, "Button state updated after receiving broadcast.");
+                    AppLog.d(TAG, "Button state updated after receiving broadcast.");
                 }
             }
         };
@@ -103,16 +102,16 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        Log.d(TAG, "onResume called - updating button state from Prefs and registering receiver.");
+        AppLog.d(TAG, "onResume called - updating button state from Prefs and registering receiver.");
         // 1. 每次 Activity 可见时，根据 SharedPreferences 更新按钮状态 (处理 Activity 生命周期变化)
         updateButtonStateBasedOnPrefs();
 
         // 2. 注册广播接收器，监听服务状态变化 (处理服务运行时状态变化)
         if (serviceStatusReceiver != null && serviceStatusFilter != null) {
             LocalBroadcastManager.getInstance(this).registerReceiver(serviceStatusReceiver, serviceStatusFilter);
-            Log.d(TAG, "Service status receiver registered.");
+            AppLog.d(TAG, "Service status receiver registered.");
         } else {
-            Log.e(TAG, "Service status receiver or filter is null in onResume!");
+            AppLog.e(TAG, "Service status receiver or filter is null in onResume!");
         }
     }
 
@@ -120,16 +119,16 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        Log.d(TAG, "onPause called - unregistering receiver.");
+        AppLog.d(TAG, "onPause called - unregistering receiver.");
         // 取消注册广播接收器，防止内存泄漏
         if (serviceStatusReceiver != null) {
             LocalBroadcastManager.getInstance(this).unregisterReceiver(serviceStatusReceiver);
-            Log.d(TAG, "Service status receiver unregistered.");
+            AppLog.d(TAG, "Service status receiver unregistered.");
         }
     }
 
     private void requestRequiredPermissions() {
-        Log.d(TAG, "Checking required permissions...");
+        AppLog.d(TAG, "Checking required permissions...");
         List<String> requiredPermissionsList = new ArrayList<>();
         requiredPermissionsList.add(Manifest.permission.RECEIVE_SMS);
         requiredPermissionsList.add(Manifest.permission.READ_SMS);
@@ -148,40 +147,40 @@ public class MainActivity extends AppCompatActivity {
         for (String permission : requiredPermissionsList) {
             if (permission != null && ContextCompat.checkSelfPermission(this, permission) != PackageManager.PERMISSION_GRANTED) {
                 permissionsToRequest.add(permission);
-                Log.w(TAG, "Permission needed: " + permission);
+                AppLog.w(TAG, "Permission needed: {}", permission);
             }
         }
 
         if (!permissionsToRequest.isEmpty()) {
-            Log.d(TAG, "Requesting permissions: " + permissionsToRequest);
+            AppLog.d(TAG, "Requesting permissions: {}", permissionsToRequest);
             ActivityCompat.requestPermissions(this, permissionsToRequest.toArray(new String[0]), IConstants.PERMISSION_REQUEST_CODE);
         } else {
-            Log.d(TAG, "All required permissions are already granted.");
+            AppLog.d(TAG, "All required permissions are already granted.");
         }
     }
 
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
-        Log.d(TAG, "onRequestPermissionsResult: requestCode=" + requestCode);
+        AppLog.d(TAG, "onRequestPermissionsResult: requestCode={}", requestCode);
         if (requestCode == IConstants.PERMISSION_REQUEST_CODE) {
             boolean allGranted = true;
             for (int i = 0; i < grantResults.length; i++) {
                 if (grantResults[i] != PackageManager.PERMISSION_GRANTED) {
                     allGranted = false;
-                    Log.w(TAG, "Permission denied: " + permissions[i]);
+                    AppLog.w(TAG, "Permission denied: {}", permissions[i]);
                 } else {
-                    Log.d(TAG, "Permission granted: " + permissions[i]);
+                    AppLog.d(TAG, "Permission granted: {}", permissions[i]);
                 }
             }
-            if (allGranted) { Log.d(TAG, "All requested permissions granted."); Toast.makeText(this, "所有权限已授予", Toast.LENGTH_SHORT).show(); }
-            else { Log.e(TAG, "Some permissions were denied."); Toast.makeText(this, "部分权限被拒绝，应用可能无法正常工作", Toast.LENGTH_LONG).show(); }
+            if (allGranted) { AppLog.d(TAG, "All requested permissions granted."); Toast.makeText(this, "所有权限已授予", Toast.LENGTH_SHORT).show(); }
+            else { AppLog.e(TAG, "Some permissions were denied."); Toast.makeText(this, "部分权限被拒绝，应用可能无法正常工作", Toast.LENGTH_LONG).show(); }
         }
     }
 
     // 修改方法：只取消闹钟
     private void cancelWifiOffAlarmFromActivity(Context context) {
-        Log.d(TAG, ">>> Cancelling Wi-Fi off alarm from Activity.");
+        AppLog.d(TAG, ">>> Cancelling Wi-Fi off alarm from Activity.");
         AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         Intent intent = new Intent(context, WifiOffReceiver.class);
         int flags = PendingIntent.FLAG_UPDATE_CURRENT;
@@ -202,7 +201,7 @@ public class MainActivity extends AppCompatActivity {
     private void updateButtonStateBasedOnPrefs() {
         if (toggleButton == null) return; // 防止在 onCreate 完成前调用时出错
         boolean isRunning = isServiceRunningFromPrefs(this);
-        Log.d(TAG, "Updating button text based on Prefs state: " + isRunning);
+        AppLog.d(TAG, "Updating button text based on Prefs state: {}", isRunning);
         if (isRunning) {
             toggleButton.setText("停止监控服务");
         } else {
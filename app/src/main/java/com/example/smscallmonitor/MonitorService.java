@@ -11,32 +11,31 @@ import android.os.*;
 // 移除 Handler 和 Looper
 import android.provider.Telephony; // 引入 Telephony 用于 Action
 import android.telephony.PhoneStateListener;
-import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
-import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
-import androidx.work.ExistingPeriodicWorkPolicy; // 引入 WorkManager 类
-import androidx.work.PeriodicWorkRequest;
-import androidx.work.WorkManager;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService; // 引入 ExecutorService
-import java.util.concurrent.Executors;     // 引入 Executors
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // 主要的服务类，负责监听短信、来电，管理 Wi-Fi 和触发邮件发送
 public class MonitorService extends Service {
     // --- 保留原始常量和 TAG ---
     private static final String TAG = "MonitorService";
     public static final String ACTION_START_MONITORING = "com.example.smscallmonitor.action.START_MONITORING";
+    // SmsReceiver 在服务未运行时先把短信写入数据库 (PENDING)，再用此 Action 启动服务发送
+    public static final String ACTION_INGEST_SMS = "com.example.smscallmonitor.action.INGEST_SMS";
 
     // --- 保留 AlarmManager 相关变量 ---
     private AlarmManager alarmManager;
@@ -46,44 +45,81 @@ public class MonitorService extends Service {
     private SubscriptionManager subscriptionManager;
     private Map<Integer, SimPhoneStateListener> phoneStateListeners = new HashMap<>();
     private Map<Integer, TelephonyManager> telephonyManagers = new HashMap<>();
+    private SimRegistry simRegistry; // SIM 卡信息缓存 (开始监听和 SIM 卡变化时刷新)
     private final Map<Integer, CallSession> activeCalls = new ConcurrentHashMap<>();
-    private final Map<String, Long> processedMissedCalls = new ConcurrentHashMap<>();
+    private final DedupCache processedMissedCalls = new DedupCache(IConstants.MISSED_CALL_DEBOUNCE_MS, IConstants.MISSED_CALL_DEDUP_CAPACITY); // 未接来电去抖动
+    private final DedupCache processedSms = new DedupCache(IConstants.SMS_DEDUP_TTL_MS, IConstants.SMS_DEDUP_CAPACITY); // 短信重复投递去重
     private static class CallSession { String incomingNumber; boolean isRinging = false; boolean isOffhook = false; long ringStartTime = 0; }
     // 移除主线程 Handler
 
     // --- 修改: 需要 WifiManager 和 ConnectivityManager 用于立即发送尝试 ---
     private PendingEventDao pendingEventDao;      // 数据库访问对象
-    private ExecutorService databaseExecutor;     // 后台数据库操作线程池
+    private SimCardDao simCardDao;                // sims 表 (补发时按 subId 连接查询 SIM 卡文字)
+    private WorkScheduler workScheduler;          // 后台任务调度: JOURNAL 通道写数据库，NETWORK 通道等网络和发送
+    private EventJournal eventJournal;            // 先写日志再发送 (write-ahead)
+    private EventBatcher journalBatcher;          // 分组提交: 几毫秒内到达的事件在一个事务中写入
+    // JOURNAL 通道满了或已关闭时的备用写入线程 (调用线程可能是主线程，不能在上面执行 Room 操作)。
+    // 队列不设上限 (宁可慢一点，也不能丢事件)，空闲后线程自行结束，因此服务停止后也无需关闭
+    private final ThreadPoolExecutor journalOverflowExecutor = createJournalOverflowExecutor();
     private WifiManager wifiManager;              // Wi-Fi 管理器实例
     private ConnectivityManager connectivityManager; // 网络连接管理器实例
     // --- 修改结束 ---
 
+    // --- 微批处理: 突发的多个事件合并成一封邮件 ---
+    private EventBatcher eventBatcher;
+    private final BatchMetrics batchMetrics = new BatchMetrics(); // 批大小和端到端延迟统计
+
+    // --- 补发: 同一时间最多排队一个 (与 Worker 或另一个补发同时执行是安全的: 每页事件先认领再发送，见 PendingEventDao.claimPendingEvents) ---
+    private final AtomicBoolean drainQueued = new AtomicBoolean(false);
+
+    private static volatile WorkScheduler runningScheduler; // 服务运行中的调度器 (供界面读取统计)
+
+    // --- 短信: SmsReceiver 在后台线程解析后通过 SmsIngestQueue 直接交给服务 ---
+    private final SmsIngestQueue.Consumer smsConsumer = this::handleIncomingSms;
+
 
     @SuppressLint("ForegroundServiceType")
     @Override
     public void onCreate() {
         super.onCreate();
         // 更新日志，指明当前使用的是混合发送逻辑
-        Log.d(TAG, ">>> MonitorService onCreate (Immediate Send Attempt + Periodic Retry - Final)"); // 更新日志
+        AppLog.d(TAG, ">>> MonitorService onCreate (Immediate Send Attempt + Periodic Retry - Final)"); // 更新日志
         subscriptionManager = (SubscriptionManager) getApplicationContext().getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
+        simRegistry = SimRegistry.getDefault(this);
 
         // --- 初始化 AlarmManager (保持不变) ---
         alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(this, WifiOffReceiver.class);
-        int flags = PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0);
-        wifiOffPendingIntent = PendingIntent.getBroadcast(this, IConstants.WIFI_OFF_ALARM_REQUEST_CODE, intent, flags);
-        Log.d(TAG, ">>> AlarmManager and PendingIntent initialized.");
+        wifiOffPendingIntent = WifiOffReceiver.createPendingIntent(this);
+        AppLog.d(TAG, ">>> AlarmManager and PendingIntent initialized.");
 
         // --- 修改: 初始化数据库、线程池、网络管理器和安排 Worker ---
-        Log.d(TAG, ">>> Initializing Database, Executor, Network Managers, and Scheduling Worker...");
+        AppLog.d(TAG, ">>> Initializing Database, Executor, Network Managers, and Scheduling Worker...");
         pendingEventDao = AppDatabase.getDatabase(this).pendingEventDao();
-        databaseExecutor = Executors.newSingleThreadExecutor();
+        simCardDao = AppDatabase.getDatabase(this).simCardDao();
+        workScheduler = new WorkScheduler(IConstants.JOURNAL_LANE_CAPACITY,
+                IConstants.NETWORK_LANE_THREADS, IConstants.NETWORK_LANE_CAPACITY);
+        runningScheduler = workScheduler;
+        eventJournal = new EventJournal(pendingEventDao);
+        // 崩溃恢复: 必须在任何新事件写入之前执行 (单线程的 JOURNAL 通道保证顺序)
+        // 之后按数据库中的积压安排补发任务 (没有积压时取消)
+        workScheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_HIGH, () -> {
+            if (eventJournal.recoverInFlight() > 0) {
+                scheduleConsolidatedSend();
+            }
+            DrainScheduler.schedule(getApplicationContext(), pendingEventDao);
+        }, null);
         // *** 需要初始化 WifiManager 和 ConnectivityManager ***
         wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
         connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
         // *** 初始化结束 ***
-        schedulePeriodicConsolidatedSendWork(); // 只安排周期性 Worker
-        Log.d(TAG, ">>> Database, Executor, Network Managers, and Worker Scheduling initialized.");
+        eventBatcher = new EventBatcher(IConstants.BATCH_MAX_EVENTS, IConstants.BATCH_QUIET_WINDOW_MS,
+                IConstants.BATCH_MAX_LATENCY_MS, this::sendBatch);
+        journalBatcher = new EventBatcher(IConstants.JOURNAL_GROUP_MAX_EVENTS, IConstants.JOURNAL_GROUP_WINDOW_MS,
+                IConstants.JOURNAL_GROUP_WINDOW_MS, this::journalBatch);
+        DrainScheduler.cancelLegacyPeriodicWork(this); // 补发改为有积压时才安排的一次性任务 (见 DrainScheduler)
+        // 开始接收短信 (服务启动前收到的短信已在数据库中)
+        SmsIngestQueue.getDefault().attach(smsConsumer);
+        AppLog.d(TAG, ">>> Database, Executor, Network Managers, and Worker Scheduling initialized.");
         // --- 修改结束 ---
 
         // --- 移除 Debounce Runnable 的初始化 ---
@@ -102,47 +138,51 @@ public class MonitorService extends Service {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.READ_PHONE_STATE) == PackageManager.PERMISSION_GRANTED) {
                 if (subscriptionManager != null) {
-                    Log.d(TAG, ">>> Adding OnSubscriptionsChangedListener");
+                    AppLog.d(TAG, ">>> Adding OnSubscriptionsChangedListener");
                     subscriptionManager.addOnSubscriptionsChangedListener(subscriptionsChangedListener);
                 } else {
-                    Log.e(TAG, ">>> SubscriptionManager is null in onCreate...");
+                    AppLog.e(TAG, ">>> SubscriptionManager is null in onCreate...");
                 }
             } else {
-                Log.w(TAG, ">>> READ_PHONE_STATE permission not granted in onCreate...");
+                AppLog.w(TAG, ">>> READ_PHONE_STATE permission not granted in onCreate...");
             }
         }
-        Log.d(TAG, ">>> MonitorService onCreate completed.");
+        AppLog.d(TAG, ">>> MonitorService onCreate completed.");
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, ">>> MonitorService onStartCommand");
+        AppLog.d(TAG, ">>> MonitorService onStartCommand");
         if (intent != null) {
             String action = intent.getAction();
-            Log.d(TAG, ">>> Action received: " + action);
+            AppLog.d(TAG, ">>> Action received: {}", action);
 
             if (ACTION_START_MONITORING.equals(action)) {
-                Log.i(TAG,">>> onStartCommand: Handling ACTION_START_MONITORING - Calling startMonitoring()...");
+                AppLog.i(TAG,">>> onStartCommand: Handling ACTION_START_MONITORING - Calling startMonitoring()...");
                 setServiceRunningStatus(this, true);
-                Log.d(TAG, ">>> Service status set to RUNNING in SharedPreferences.");
+                AppLog.d(TAG, ">>> Service status set to RUNNING in SharedPreferences.");
                 startMonitoring();
-                Log.d(TAG, ">>> Scheduling initial Wi-Fi off alarm on service start.");
+                AppLog.d(TAG, ">>> Scheduling initial Wi-Fi off alarm on service start.");
                 EventSendHelper.resetWifiOffSchedule(alarmManager, wifiOffPendingIntent);
+            } else if (ACTION_INGEST_SMS.equals(action)) {
+                // SmsReceiver 已把短信写入数据库，立即补发 (不等待补发任务的退避)
+                AppLog.d(TAG, ">>> onStartCommand: Started for journaled SMS. Ingest stats: {}", SmsIngestQueue.getDefault());
+                scheduleConsolidatedSend();
             } else if (Telephony.Sms.Intents.SMS_RECEIVED_ACTION.equals(action)) {
-                Log.d(TAG,">>> onStartCommand: Handling SMS_RECEIVED_ACTION (from SmsReceiver)");
+                AppLog.d(TAG,">>> onStartCommand: Handling SMS_RECEIVED_ACTION (legacy intent with SMS extras)");
                 handleSmsReceivedIntent(intent); // 处理短信事件
             } else {
-                Log.w(TAG, ">>> onStartCommand received unhandled action: " + action);
+                AppLog.w(TAG, ">>> onStartCommand received unhandled action: {}", action);
             }
         } else {
-            Log.d(TAG, ">>> Service restarted with null intent (flags=" + flags + ", startId=" + startId + ")");
+            AppLog.d(TAG, ">>> Service restarted with null intent (flags={}, startId={})", flags, startId);
             setServiceRunningStatus(this, true);
-            Log.d(TAG, ">>> Service restarted, status set to RUNNING in SharedPreferences.");
+            AppLog.d(TAG, ">>> Service restarted, status set to RUNNING in SharedPreferences.");
         }
         return START_STICKY;
     }
 
-    // --- 处理来自 SmsReceiver 的 Intent 的方法 (修改: 调用新的处理逻辑) ---
+    // --- 处理带短信数据的 Intent (旧版本 SmsReceiver 的投递方式，保留兼容) ---
     private void handleSmsReceivedIntent(Intent intent) {
         String sender = intent.getStringExtra("sender");
         String content = intent.getStringExtra("content");
@@ -150,75 +190,98 @@ public class MonitorService extends Service {
         long timestamp = intent.getLongExtra("timestamp", System.currentTimeMillis());
 
         if (sender != null && content != null) {
-            String simInfo = getSimInfo(this, subId);
-            Log.d(TAG, ">>> Processing SMS event on " + simInfo + " from " + sender);
-            PendingEvent newSmsEvent = new PendingEvent("SMS", sender, content, timestamp, simInfo, subId);
-            // 调用新的处理方法，尝试立即发送，失败则保存
-            handleNewEvent(newSmsEvent);
+            handleIncomingSms(new SmsIngestQueue.IncomingSms(sender, content, subId, timestamp, System.nanoTime()));
         } else {
-            Log.w(TAG, ">>> Received SMS intent with null sender or content. Cannot process.");
+            AppLog.w(TAG, ">>> Received SMS intent with null sender or content. Cannot process.");
         }
     }
 
-    // --- startMonitoring 方法保持不变 ---
+    /**
+     * 处理一条完整的短信 (在 SmsReceiver 的后台线程上调用，服务 attach 时也可能在主线程上调用)
+     */
+    private void handleIncomingSms(SmsIngestQueue.IncomingSms sms) {
+        if (!processedSms.firstSeen(DedupCache.smsKey(sms.sender, sms.timestamp, sms.body), System.currentTimeMillis())) {
+            AppLog.d(TAG, ">>> Ignoring redelivered SMS from {#} (timestamp {}).", sms.sender, sms.timestamp);
+            return;
+        }
+        String simLabel = simRegistry.describe(sms.subId);
+        AppLog.d(TAG, ">>> Processing SMS event on {} from {#}", simLabel, sms.sender);
+        PendingEvent newSmsEvent = new PendingEvent("SMS", sms.sender, sms.body, sms.timestamp, simLabel, sms.subId);
+        // 调用新的处理方法，尝试立即发送，失败则保存
+        handleNewEvent(newSmsEvent);
+    }
+
+    // --- startMonitoring 方法 (SIM 卡列表从 SimRegistry 刷新) ---
     private void startMonitoring() {
-        Log.i(TAG, ">>> startMonitoring called.");
+        AppLog.i(TAG, ">>> startMonitoring called.");
         stopMonitoring();
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
-            Log.e(TAG, ">>> READ_PHONE_STATE permission not granted in startMonitoring. Cannot monitor calls.");
+            AppLog.e(TAG, ">>> READ_PHONE_STATE permission not granted in startMonitoring. Cannot monitor calls.");
             return;
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1 && subscriptionManager != null) {
-            List<SubscriptionInfo> activeSubscriptions = null;
-            try {
-                activeSubscriptions = subscriptionManager.getActiveSubscriptionInfoList();
-                Log.d(TAG, ">>> Fetched active subscriptions.");
-            } catch (SecurityException e) { Log.e(TAG, ">>> SecurityException getting active subscriptions: " + e.getMessage()); return; }
-
-            if (activeSubscriptions != null && !activeSubscriptions.isEmpty()) {
-                Log.i(TAG, ">>> Found " + activeSubscriptions.size() + " active subscriptions.");
-                for (SubscriptionInfo subInfo : activeSubscriptions) {
-                    int subId = subInfo.getSubscriptionId();
-                    CharSequence displayNameCs = subInfo.getDisplayName();
-                    String displayName = (displayNameCs != null ? displayNameCs.toString() : "SIM Slot " + subInfo.getSimSlotIndex());
-                    Log.d(TAG, ">>> Setting up listener for SubId: " + subId + " (Name: " + displayName + ")");
+            // 重新读取 SIM 卡信息 (之后每个事件直接查缓存)
+            List<SimRegistry.Sim> activeSims = simRegistry.refresh();
+            AppLog.d(TAG, ">>> Fetched active subscriptions.");
+
+            if (!activeSims.isEmpty()) {
+                AppLog.i(TAG, ">>> Found {} active subscriptions.", activeSims.size());
+                saveSimCards(activeSims);
+                for (SimRegistry.Sim sim : activeSims) {
+                    int subId = sim.subId;
+                    String displayName = sim.displayName;
+                    AppLog.d(TAG, ">>> Setting up listener for SubId: {} (Name: {})", subId, displayName);
                     TelephonyManager tm = null;
                     try { tm = ((TelephonyManager) getApplicationContext().getSystemService(Context.TELEPHONY_SERVICE)).createForSubscriptionId(subId); }
-                    catch (Exception e) { Log.e(TAG, ">>> Exception creating TelephonyManager for subId " + subId + ": " + e.getMessage()); }
+                    catch (Exception e) { AppLog.e(TAG, ">>> Exception creating TelephonyManager for subId {}: {}", subId, e.getMessage()); }
                     if (tm != null) {
                         SimPhoneStateListener listener = new SimPhoneStateListener(subId, displayName); // **创建 Listener 实例**
                         try {
                             tm.listen(listener, PhoneStateListener.LISTEN_CALL_STATE);
                             phoneStateListeners.put(subId, listener);
                             telephonyManagers.put(subId, tm);
-                            Log.i(TAG, ">>> Successfully registered listener for SubId: " + subId);
-                        } catch (Exception e) { Log.e(TAG, ">>> Exception registering listener for subId " + subId + ": " + e.getMessage()); }
-                    } else { Log.e(TAG, ">>> Failed to create TelephonyManager for SubId: " + subId); }
+                            AppLog.i(TAG, ">>> Successfully registered listener for SubId: {}", subId);
+                        } catch (Exception e) { AppLog.e(TAG, ">>> Exception registering listener for subId {}: {}", subId, e.getMessage()); }
+                    } else { AppLog.e(TAG, ">>> Failed to create TelephonyManager for SubId: {}", subId); }
                 }
-            } else { Log.w(TAG, ">>> No active subscriptions found or accessible in startMonitoring."); }
-        } else { Log.w(TAG, ">>> SubscriptionManager not available or permission denied in startMonitoring."); }
+            } else { AppLog.w(TAG, ">>> No active subscriptions found or accessible in startMonitoring."); }
+        } else { AppLog.w(TAG, ">>> SubscriptionManager not available or permission denied in startMonitoring."); }
+    }
+
+    /**
+     * 把当前可用的 SIM 卡写入 sims 表 (补全卡槽、颜色，更新最后出现时间)，在 JOURNAL 通道执行
+     */
+    private void saveSimCards(List<SimRegistry.Sim> activeSims) {
+        List<SimCard> cards = SimCard.fromRegistry(activeSims, System.currentTimeMillis());
+        workScheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_LOW, () -> {
+            try {
+                simCardDao.upsertAll(cards);
+            } catch (Exception e) {
+                AppLog.e(TAG, ">>> Error saving SIM cards: {}", e.getMessage());
+            }
+        }, null); // 通道满了就跳过: 事件写入时也会记录 SIM 卡文字
     }
 
     // --- stopMonitoring 方法保持不变 ---
     private void stopMonitoring() {
-        Log.d(TAG, ">>> Stopping phone state monitoring...");
+        AppLog.d(TAG, ">>> Stopping phone state monitoring...");
         if (!telephonyManagers.isEmpty()) {
             for (Map.Entry<Integer, TelephonyManager> entry : telephonyManagers.entrySet()) {
                 int subId = entry.getKey();
                 TelephonyManager tm = entry.getValue();
                 SimPhoneStateListener listener = phoneStateListeners.get(subId);
                 if (tm != null && listener != null) {
-                    try { tm.listen(listener, PhoneStateListener.LISTEN_NONE); Log.d(TAG, ">>> Unregistered listener for SubId: " + subId); }
-                    catch (Exception e) { Log.e(TAG,">>> Exception unregistering listener for subId " + subId + ": " + e.getMessage());}
+                    try { tm.listen(listener, PhoneStateListener.LISTEN_NONE); AppLog.d(TAG, ">>> Unregistered listener for SubId: {}", subId); }
+                    catch (Exception e) { AppLog.e(TAG, ">>> Exception unregistering listener for subId {}: {}", subId, e.getMessage());}
                 }
             }
             telephonyManagers.clear();
             phoneStateListeners.clear();
             activeCalls.clear();
             processedMissedCalls.clear();
-            Log.d(TAG, ">>> Phone state monitoring stopped and resources cleared.");
+            AppLog.d(TAG, ">>> Phone state monitoring stopped and resources cleared.");
         } else {
-            Log.d(TAG, ">>> No active phone state listeners to stop.");
+            AppLog.d(TAG, ">>> No active phone state listeners to stop.");
         }
     }
 
@@ -226,31 +289,28 @@ public class MonitorService extends Service {
     private final SubscriptionManager.OnSubscriptionsChangedListener subscriptionsChangedListener =
             new SubscriptionManager.OnSubscriptionsChangedListener() {
                 @Override public void onSubscriptionsChanged() {
-                    Log.i(TAG, ">>> Subscription change detected! Restarting phone state monitoring.");
+                    AppLog.i(TAG, ">>> Subscription change detected! Restarting phone state monitoring.");
                     startMonitoring();
                 }
             };
 
     // --- handleMissedCall 方法修改 ---
     public void handleMissedCall(String incomingNumber, int subId, String simDisplayName) {
-        Log.i(TAG, ">>> handleMissedCall triggered for SubId: " + subId + ", Number: " + incomingNumber + ", Name: " + simDisplayName);
-        String callKey = subId + "_" + incomingNumber;
+        AppLog.i(TAG, ">>> handleMissedCall triggered for SubId: {}, Number: {#}, Name: {}", subId, incomingNumber, simDisplayName);
         long now = System.currentTimeMillis();
-        Long lastProcessedTime = processedMissedCalls.getOrDefault(callKey, 0L);
 
-        if (now - lastProcessedTime > IConstants.MISSED_CALL_DEBOUNCE_MS) {
-            processedMissedCalls.put(callKey, now);
-            Log.i(TAG, ">>> Confirmed Missed Call (passed debounce) on " + simDisplayName + " from: " + incomingNumber);
+        if (processedMissedCalls.firstSeen(DedupCache.callKey(subId, incomingNumber), now)) {
+            AppLog.i(TAG, ">>> Confirmed Missed Call (passed debounce) on {} from: {#}", simDisplayName, incomingNumber);
 
             // --- 修改: 调用新的处理逻辑 ---
-            String simInfo = getSimInfo(this, subId);
-            PendingEvent newCallEvent = new PendingEvent("CALL", incomingNumber, null, now, simInfo, subId);
+            String simLabel = simRegistry.describe(subId);
+            PendingEvent newCallEvent = new PendingEvent("CALL", incomingNumber, null, now, simLabel, subId);
             handleNewEvent(newCallEvent); // 调用新的处理方法
-            Log.d(TAG, ">>> Missed call event processed for " + incomingNumber); // 更新日志
+            AppLog.d(TAG, ">>> Missed call event processed for {#}", incomingNumber); // 更新日志
             // --- 修改结束 ---
 
         } else {
-            Log.d(TAG, ">>> Debounced duplicate missed call event for key: " + callKey);
+            AppLog.d(TAG, ">>> Debounced duplicate missed call event on SubId {} from: {#}", subId, incomingNumber);
         }
     }
 
@@ -265,25 +325,25 @@ public class MonitorService extends Service {
             this.subId = subId;
             this.simDisplayName = displayName; // **初始化成员变量**
             activeCalls.putIfAbsent(subId, new CallSession());
-            Log.d(TAG, ">>> SimPhoneStateListener created for SubId: " + this.subId + " Name: " + this.simDisplayName);
+            AppLog.d(TAG, ">>> SimPhoneStateListener created for SubId: {} Name: {}", this.subId, this.simDisplayName);
         }
 
         // 当通话状态改变时被系统调用
         @Override
         public void onCallStateChanged(int state, String number) {
             // **使用 this. 来引用成员变量，更清晰**
-            Log.i(TAG, ">>> SimPhoneStateListener.onCallStateChanged triggered! SubId: " + this.subId + " ("+ this.simDisplayName +"), State: " + stateToString(state) + ", Number: " + number);
+            AppLog.i(TAG, ">>> SimPhoneStateListener.onCallStateChanged triggered! {}, State: {}, Number: {#}", this.simDisplayName, stateToString(state), number);
             String incomingNumber = number;
-            Log.d(TAG, ">>> Listener for SubId: " + this.subId + " - State changed: " + stateToString(state) + ", Incoming Number: " + incomingNumber);
+            AppLog.d(TAG, ">>> Listener for SubId: {} - State changed: {}, Incoming Number: {#}", this.subId, stateToString(state), incomingNumber);
             CallSession session = activeCalls.get(this.subId);
             if (session == null) {
                 session = new CallSession();
                 activeCalls.put(this.subId, session);
-                Log.w(TAG, ">>> CallSession was null for subId " + this.subId + ", created new.");
+                AppLog.w(TAG, ">>> CallSession was null for subId {}, created new.", this.subId);
             }
             if (incomingNumber != null && !incomingNumber.isEmpty() && !incomingNumber.equals(session.incomingNumber)) {
                 session.incomingNumber = incomingNumber;
-                Log.d(TAG, ">>> Updating number for subId " + this.subId + " to: " + incomingNumber);
+                AppLog.d(TAG, ">>> Updating number for subId {} to: {#}", this.subId, incomingNumber);
             }
 
             switch (state) {
@@ -291,33 +351,43 @@ public class MonitorService extends Service {
                     session.isRinging = true;
                     session.isOffhook = false;
                     session.ringStartTime = System.currentTimeMillis();
-                    Log.d(TAG, ">>> RINGING on " + this.simDisplayName + ", Number known: " + session.incomingNumber);
+                    AppLog.d(TAG, ">>> RINGING on {}, Number known: {#}", this.simDisplayName, session.incomingNumber);
+                    // 响铃期间提前准备网络和 SMTP 连接，确认未接时通知可以立即发出
+                    NetworkWarmer.getDefault(MonitorService.this).warmUp(warmUpReason());
+                    EventSendHelper.resetWifiOffSchedule(alarmManager, wifiOffPendingIntent);
                     break;
                 case TelephonyManager.CALL_STATE_OFFHOOK:
                     if (session.isRinging || session.ringStartTime > 0) {
                         session.isOffhook = true;
-                        Log.d(TAG, ">>> OFFHOOK on " + this.simDisplayName + " - Call answered.");
+                        AppLog.d(TAG, ">>> OFFHOOK on {} - Call answered.", this.simDisplayName);
+                        NetworkWarmer.getDefault(MonitorService.this).release(warmUpReason()); // 电话已接听，不需要通知
                     } else {
-                        Log.d(TAG, ">>> OFFHOOK on " + this.simDisplayName + " - Not ringing on this SIM (Outgoing call or other state).");
+                        AppLog.d(TAG, ">>> OFFHOOK on {} - Not ringing on this SIM (Outgoing call or other state).", this.simDisplayName);
                     }
                     session.isRinging = false;
                     session.ringStartTime = 0;
                     break;
                 case TelephonyManager.CALL_STATE_IDLE:
-                    Log.d(TAG, ">>> IDLE on " + this.simDisplayName + " - Check Missed Call: RingingStarted=" + (session.ringStartTime > 0) + ", Offhook=" + session.isOffhook + ", Number=" + session.incomingNumber);
+                    AppLog.d(TAG, ">>> IDLE on {} - Check Missed Call: RingingStarted={}, Offhook={}", this.simDisplayName, session.ringStartTime > 0, session.isOffhook);
                     if (session.ringStartTime > 0 && !session.isOffhook && session.incomingNumber != null && !session.incomingNumber.isEmpty()) {
-                        Log.i(TAG, ">>> Missed call condition met for SubId: " + this.subId + ". Calling handleMissedCall...");
+                        AppLog.i(TAG, ">>> Missed call condition met for {#} on SubId: {}. Calling handleMissedCall...", session.incomingNumber, this.subId);
                         // **确保这里传递的是 this.simDisplayName**
                         handleMissedCall(session.incomingNumber, this.subId, this.simDisplayName); // *** 调用外部类的 handleMissedCall ***
                     } else {
-                        Log.d(TAG, ">>> IDLE on " + this.simDisplayName + " - Not a missed call.");
+                        AppLog.d(TAG, ">>> IDLE on {} - Not a missed call (Number={#}).", this.simDisplayName, session.incomingNumber);
+                        NetworkWarmer.getDefault(MonitorService.this).release(warmUpReason());
                     }
                     activeCalls.put(this.subId, new CallSession());
-                    Log.d(TAG,">>> Reset call session for subId: " + this.subId);
+                    AppLog.d(TAG, ">>> Reset call session for subId: {}", this.subId);
                     break;
             }
         }
 
+        // 每张 SIM 卡单独持有预热，一张卡上的电话被接听不会释放另一张卡正在响铃的预热
+        private String warmUpReason() {
+            return "call:" + this.subId;
+        }
+
         private String stateToString(int state) {
             switch (state) {
                 case TelephonyManager.CALL_STATE_IDLE: return "IDLE";
@@ -329,82 +399,140 @@ public class MonitorService extends Service {
     } // SimPhoneStateListener 内部类结束
 
 
-    // --- 修改: handleNewEvent 方法，实现立即发送失败后暂存逻辑 ---
+    // --- 修改: handleNewEvent 方法，事件先写入数据库，再进入微批处理尝试立即发送 ---
     /**
      * 处理新的事件（SMS 或 CALL）。
-     * 尝试立即发送，如果失败则保存到数据库。
+     * 事件先写入数据库 (write-ahead，进程被杀也不会丢失)，再交给 EventBatcher，
+     * 短时间内的突发事件会合并成一封邮件发送。
      * @param event 新的事件对象
      */
     private void handleNewEvent(PendingEvent event) {
-        Log.d(TAG, ">>> Handling new event: Type=" + event.eventType + ", From=" + event.senderNumber);
-        // 1. 重置 Wi-Fi 关闭计时器 (确保有时间尝试发送)
+        AppLog.d(TAG, ">>> Handling new event: Type={}, From={#}", event.eventType, event.senderNumber);
+        // 1. 记录到达间隔 (决定 Wi-Fi 保持多久)，重置 Wi-Fi 关闭计时器 (确保有时间尝试发送)
+        RadioManager.getDefault().onEventArrived(RadioManager.now());
         EventSendHelper.resetWifiOffSchedule(alarmManager, wifiOffPendingIntent);
-        Log.d(TAG, ">>> Wi-Fi off schedule reset for new event.");
+        AppLog.d(TAG, ">>> Wi-Fi off schedule reset for new event.");
+
+        // 2. 先写入数据库 (几毫秒内到达的事件分组提交，回调 journalBatch)，再交给批处理器，批次就绪后回调 sendBatch
+        //    未接来电、验证码不等分组窗口和批处理的安静窗口，立即写入并发出当前批次
+        if (!journalBatcher.add(event)) {
+            journalBatch(new EventBatcher.Batch(Collections.singletonList(event), new long[]{EventBatcher.now()}));
+        } else if (EventPriority.of(event) == WorkScheduler.PRIORITY_HIGH) {
+            journalBatcher.flushNow();
+        }
+    }
 
-        // 2. 使用后台线程尝试立即发送
-        databaseExecutor.execute(() -> { // 确保网络和邮件操作不在主线程
+    /**
+     * 分组提交的回调：在 JOURNAL 通道用一个事务写入这组事件，再逐个交给 EventBatcher。
+     * @param group 几毫秒内到达的一组新事件
+     */
+    private void journalBatch(EventBatcher.Batch group) {
+        List<PendingEvent> events = group.events;
+        int priority = EventPriority.of(events);
+        Runnable journalTask = () -> {
+            eventJournal.journalAll(events);
+            for (PendingEvent event : events) {
+                if (!eventBatcher.add(event)) {
+                    AppLog.w(TAG, ">>> EventBatcher already shut down. Leaving event in database for later retry.");
+                    eventJournal.release(Collections.singletonList(event));
+                }
+            }
+            if (priority == WorkScheduler.PRIORITY_HIGH) {
+                eventBatcher.flushNow();
+            }
+        };
+        // JOURNAL 通道满了 (或已关闭) 就交给备用写入线程
+        workScheduler.submit(WorkScheduler.Lane.JOURNAL, priority, journalTask, () -> journalOverflowExecutor.execute(journalTask));
+    }
+
+    private static ThreadPoolExecutor createJournalOverflowExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IConstants.JOURNAL_OVERFLOW_IDLE_MS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "journal-overflow");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * EventBatcher 的回调：一批事件就绪，在后台线程尝试立即发送，失败则保存到数据库。
+     * @param batch 就绪的事件批次
+     */
+    private void sendBatch(EventBatcher.Batch batch) {
+        List<PendingEvent> events = batch.events;
+        int priority = EventPriority.of(events);
+        AppLog.d(TAG, ">>> Batch ready with {} event(s), priority {}.", events.size(), priority);
+        // NETWORK 通道满了: 事件已在数据库中，转为 PENDING 交给补发
+        Runnable onOverflow = () -> {
+            AppLog.w(TAG, ">>> Network lane overflow, leaving {} event(s) in database for the next drain.", events.size());
+            Runnable release = () -> {
+                eventJournal.release(events);
+                DrainScheduler.schedule(getApplicationContext(), pendingEventDao);
+            };
+            workScheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_NORMAL, release, () -> journalOverflowExecutor.execute(release));
+        };
+        workScheduler.submit(WorkScheduler.Lane.NETWORK, priority, () -> { // 确保网络和邮件操作不在主线程
             EventSendHelper.SendStatus sendStatus = EventSendHelper.SendStatus.SEND_FAILED_OTHER; // 默认状态为失败
             try {
-                // 调用 EventSendHelper 尝试立即发送单个事件，并获取返回状态
-                Log.d(TAG, ">>> Attempting immediate send via EventSendHelper..."); // 添加日志
-                sendStatus = EventSendHelper.trySendSingleEventImmediately(
+                // 调用 EventSendHelper 尝试立即发送整批事件，并获取返回状态
+                AppLog.d(TAG, ">>> Attempting immediate send via EventSendHelper..."); // 添加日志
+                sendStatus = EventSendHelper.trySendEventsImmediately(
                         getApplicationContext(),
-                        event,
+                        events,
                         wifiManager, // 传递 MonitorService 的成员变量
                         connectivityManager // 传递 MonitorService 的成员变量
                 );
             } catch (Exception e) {
-                Log.e(TAG, ">>> Exception during immediate send attempt: " + e.getMessage(), e);
+                AppLog.e(TAG, ">>> Exception during immediate send attempt.", e);
                 // 即使发送尝试本身抛出异常，也视为发送失败 (状态保持默认的 SEND_FAILED_OTHER)
             }
 
-            // 3. 如果立即发送失败 (任何类型的失败)，则保存到数据库
-            if (sendStatus != EventSendHelper.SendStatus.SEND_SUCCESS) {
-                Log.w(TAG, ">>> Immediate send failed (Status: " + sendStatus + ") for event: Type=" + event.eventType + ", From=" + event.senderNumber + ". Saving to database for later retry.");
-                try {
-                    Log.d(TAG, ">>> Inserting failed event into database..."); // 添加日志
-                    pendingEventDao.insert(event); // 将事件插入数据库
-                    Log.i(TAG, ">>> Successfully saved failed event to DB.");
-                } catch (Exception dbException) {
-                    Log.e(TAG, ">>> CRITICAL: Failed to save event to DB after send failure: " + dbException.getMessage(), dbException);
-                    // 这种情况比较严重，事件可能会丢失，需要关注此日志
-                }
+            // 3. 根据发送结果更新数据库中已记录的事件
+            if (sendStatus == EventSendHelper.SendStatus.SEND_SKIPPED_CIRCUIT_OPEN) {
+                AppLog.w(TAG, ">>> SMTP circuit open, leaving {} event(s) pending without counting an attempt.", events.size());
+                eventJournal.markDeferred(events); // 熔断半开时可能已有一个渠道送达，记录下来
+                DrainScheduler.schedule(getApplicationContext(), pendingEventDao);
+            } else if (sendStatus != EventSendHelper.SendStatus.SEND_SUCCESS) {
+                AppLog.w(TAG, ">>> Immediate send failed (Status: {}) for {} event(s). Marking as pending with backoff.", sendStatus, events.size());
+                eventJournal.markFailed(events);
+                DrainScheduler.schedule(getApplicationContext(), pendingEventDao); // 网络恢复或退避结束后补发
             } else {
-                Log.i(TAG, ">>> Event sent immediately successfully: Type=" + event.eventType + ", From=" + event.senderNumber);
-                // 发送成功，不需要进行数据库插入操作
+                eventJournal.markSent(events); // 发送成功，删除记录
+                batchMetrics.recordSent(batch, EventBatcher.now());
+                AppLog.i(TAG, ">>> {} event(s) sent immediately. Batch metrics: {}. Scheduler: {}", events.size(), batchMetrics, workScheduler);
                 // 发送成功，则尝试把数据库里有的记录也发了
-                EventSendHelper.performConsolidatedSend(getApplicationContext(), pendingEventDao, wifiManager, connectivityManager);
+                scheduleConsolidatedSend();
             }
-        }); // databaseExecutor.execute 结束
+        }, onOverflow); // NETWORK 通道任务结束
     }
-    // --- 修改结束 ---
-
-
 
-    // --- WorkManager 相关方法 (保持不变 - 只安排周期性任务) ---
-    private void schedulePeriodicConsolidatedSendWork() {
-        Log.d(TAG, ">>> Scheduling Periodic Consolidated Send Work...");
-        int scheduledInterval = IConstants.SCHEDULED_WORK_INTERVAL_MINUTE;
-        PeriodicWorkRequest retryWorkRequest =
-                new PeriodicWorkRequest.Builder(ConsolidatedSendWorker.class, scheduledInterval, TimeUnit.MINUTES)
-                        .build();
-        WorkManager.getInstance(this).enqueueUniquePeriodicWork(
-                "ConsolidatedSendWork", // 周期性任务的唯一名称
-                ExistingPeriodicWorkPolicy.KEEP,
-                retryWorkRequest);
-        Log.i(TAG, ">>> Enqueued periodic consolidated send work (every " + scheduledInterval + " minutes).");
+    /**
+     * 在 NETWORK 通道以低优先级补发数据库中的事件。已有一个补发在排队时不再重复提交。
+     */
+    private void scheduleConsolidatedSend() {
+        if (!drainQueued.compareAndSet(false, true)) {
+            AppLog.d(TAG, ">>> Consolidated send already queued, skipping.");
+            return;
+        }
+        workScheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_LOW, () -> {
+            drainQueued.set(false);
+            EventSendHelper.performConsolidatedSend(getApplicationContext(), pendingEventDao, wifiManager, connectivityManager);
+        }, () -> drainQueued.set(false)); // 溢出时不补发: 事件仍在数据库中，由补发任务 (DrainScheduler) 处理
     }
 
-    private void cancelPeriodicConsolidatedSendWork() {
-        try {
-            WorkManager.getInstance(this).cancelUniqueWork("ConsolidatedSendWork");
-            Log.i(TAG, ">>> Cancelled periodic consolidated send work.");
-        } catch (Exception e) {
-            Log.e(TAG, ">>> Error cancelling periodic consolidated send work: " + e.getMessage());
-        }
+    /**
+     * 服务运行中的后台任务调度器 (用于显示队列深度、等待时间等统计)，服务未运行时为 null
+     */
+    public static WorkScheduler getRunningScheduler() {
+        return runningScheduler;
     }
+
     // --- 修改结束 ---
 
+
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -413,10 +541,14 @@ public class MonitorService extends Service {
     // --- onDestroy 方法修改 ---
     @Override
     public void onDestroy() {
-        Log.d(TAG, ">>> MonitorService onDestroy");
+        AppLog.d(TAG, ">>> MonitorService onDestroy");
+
+        // 停止接收短信: 之后到达的短信由 SmsReceiver 写入数据库并重新启动服务
+        SmsIngestQueue.getDefault().detach(smsConsumer);
+        AppLog.d(TAG, ">>> SMS ingest detached. Ingest stats: {}", SmsIngestQueue.getDefault());
 
         setServiceRunningStatus(this, false);
-        Log.d(TAG, ">>> Service status set to STOPPED in SharedPreferences.");
+        AppLog.d(TAG, ">>> Service status set to STOPPED in SharedPreferences.");
 
         stopMonitoring();
         EventSendHelper.cancelWifiOffAlarm(alarmManager, wifiOffPendingIntent);
@@ -425,81 +557,51 @@ public class MonitorService extends Service {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1 && subscriptionManager != null) {
             try {
                 subscriptionManager.removeOnSubscriptionsChangedListener(subscriptionsChangedListener);
-                Log.d(TAG,">>> Removed subscription listener.");
-            } catch (Exception e) { Log.e(TAG, ">>> Error removing subscription listener: " + e.getMessage()); }
+                AppLog.d(TAG,">>> Removed subscription listener.");
+            } catch (Exception e) { AppLog.e(TAG, ">>> Error removing subscription listener: {}", e.getMessage()); }
         }
 
-        // --- 关闭数据库操作的线程池 (保持不变) ---
-        if (databaseExecutor != null && !databaseExecutor.isShutdown()) {
-            try {
-                databaseExecutor.shutdown();
-                Log.d(TAG, ">>> Database executor shutdown requested.");
-            } catch (Exception e) {
-                Log.e(TAG, ">>> Error shutting down database executor: " + e.getMessage());
+        // --- 关闭批处理器: 尚未写入的事件先写入，尚未发送的事件 (已在数据库中) 转为 PENDING，由补发任务发送 ---
+        if (journalBatcher != null && eventBatcher != null && workScheduler != null) {
+            List<PendingEvent> unjournaled = journalBatcher.shutdown();
+            List<PendingEvent> unsent = eventBatcher.shutdown();
+            if (!unjournaled.isEmpty() || !unsent.isEmpty()) {
+                AppLog.d(TAG, ">>> Releasing {} unjournaled and {} batched but unsent event(s) before shutdown.", unjournaled.size(), unsent.size());
+                Context appContext = getApplicationContext();
+                workScheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_HIGH, () -> {
+                    eventJournal.journalAll(unjournaled);
+                    eventJournal.release(unjournaled);
+                    eventJournal.release(unsent);
+                    DrainScheduler.schedule(appContext, pendingEventDao); // 服务停止后由补发任务发送
+                }, null);
             }
         }
 
+        // --- 关闭调度器: 尚未开始的发送交还数据库，已提交的写入会继续完成 ---
+        if (workScheduler != null) {
+            workScheduler.shutdown();
+            AppLog.d(TAG, ">>> Work scheduler shutdown requested. {}", workScheduler);
+            runningScheduler = null;
+        }
+
+        // --- 取消正在进行的网络等待，让发送线程尽快结束 ---
+        EventSendHelper.cancelNetworkWait();
+
+        // --- 释放预热中的网络请求 ---
+        NetworkWarmer.getDefault(this).releaseAll();
+
+        // --- 关闭 SMTP 连接池中的连接 ---
+        SmtpConnectionPool.getGmailPool().closeAll();
+
         // --- 移除 Debounce Handler 的清理 ---
 
-        // --- 取消周期性任务 (保持不变) ---
-        cancelPeriodicConsolidatedSendWork();
+        // --- 不取消补发任务: 数据库中积压的事件在服务停止后仍会补发，发完后任务自行结束 ---
         // --- 移除取消一次性任务的代码 ---
 
 
         stopForeground(true);
         super.onDestroy();
-        Log.d(TAG, ">>> MonitorService onDestroy completed.");
-    }
-
-    // --- getSimInfo 方法保持不变 ---
-    private String getSimInfo(Context context, int subId) {
-        if (subId == SubscriptionManager.INVALID_SUBSCRIPTION_ID) return "未知SIM卡";
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
-            Log.w(TAG, ">>> getSimInfo: No READ_PHONE_STATE permission.");
-            SimPhoneStateListener l = phoneStateListeners.get(subId);
-            return (l != null) ? l.simDisplayName + " (ID: " + subId + ")" : "SIM ID " + subId;
-        }
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-                SubscriptionManager sm = this.subscriptionManager;
-                if (sm == null) {
-                    sm = (SubscriptionManager) context.getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
-                }
-                if (sm != null) {
-                    SubscriptionInfo si = null;
-                    try {
-                        si = sm.getActiveSubscriptionInfo(subId);
-                    } catch (SecurityException e) {
-                        Log.e(TAG,">>> SecEx getting SubInfo "+subId+": "+e.getMessage());
-                    }
-                    if (si != null) {
-                        CharSequence cs = si.getDisplayName();
-                        String dn = (cs!=null && cs.length() > 0 ? cs.toString() : "SIM "+(si.getSimSlotIndex()+1));
-                        return dn+" (ID: "+subId+")";
-                    } else {
-                        List<SubscriptionInfo> asl = null;
-                        try { asl = sm.getActiveSubscriptionInfoList(); } catch (SecurityException ignored) {}
-                        if (asl != null) {
-                            for(SubscriptionInfo i : asl) {
-                                if (i.getSubscriptionId() == subId){
-                                    CharSequence cs=i.getDisplayName();
-                                    String dn=(cs!=null && cs.length() > 0 ? cs.toString() : "SIM "+(i.getSimSlotIndex()+1));
-                                    return dn+" (ID: "+subId+")";
-                                }
-                            }
-                        }
-                        Log.w(TAG, ">>> Could not find active SubInfo for subId: " + subId + " using SubscriptionManager.");
-                    }
-                } else {
-                    Log.w(TAG, ">>> getSimInfo: SubscriptionManager instance is null.");
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, ">>> General exception in getSimInfo: " + e.getMessage());
-        }
-        SimPhoneStateListener l = phoneStateListeners.get(subId);
-        Log.w(TAG, ">>> Falling back to listener display name for subId: " + subId);
-        return (l != null) ? l.simDisplayName + " (ID: " + subId + ")" : "SIM ID " + subId;
+        AppLog.d(TAG, ">>> MonitorService onDestroy completed.");
     }
 
     /**
@@ -512,12 +614,12 @@ public class MonitorService extends Service {
         SharedPreferences prefs = context.getSharedPreferences(IConstants.PREFS_NAME, Context.MODE_PRIVATE);
         // 编辑并保存状态
         prefs.edit().putBoolean(IConstants.KEY_SERVICE_RUNNING_STATUS, isRunning).apply();
-        Log.d(TAG, "Service status in Prefs set to: " + isRunning); // 添加日志方便调试
+        AppLog.d(TAG, "Service status in Prefs set to: {}", isRunning); // 添加日志方便调试
 
         // *** 发送本地广播通知状态变化 ***
         Intent statusIntent = new Intent(IConstants.ACTION_SERVICE_STATUS_CHANGED);
         statusIntent.putExtra(IConstants.EXTRA_SERVICE_RUNNING_STATUS, isRunning);
         LocalBroadcastManager.getInstance(context).sendBroadcast(statusIntent);
-        Log.d(TAG, "Sent local broadcast: " + IConstants.ACTION_SERVICE_STATUS_CHANGED + " with status: " + isRunning);
+        AppLog.d(TAG, "Sent local broadcast: {} with status: {}", IConstants.ACTION_SERVICE_STATUS_CHANGED, isRunning);
     }
 } // MonitorService 类结束
\ No newline at end of file
@@ -0,0 +1,221 @@
+package com.example.smscallmonitor;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 等待"已验证可用"网络的组件：基于 NetworkCallback 回调，网络一验证通过就立即返回，
+// 取代 Thread.sleep 轮询。多个调用方同时等待时共享同一次等待 (只注册一个回调)。
+public class NetworkAwaiter {
+
+    private static final String TAG = "NetworkAwaiter"; // 日志 TAG
+
+    /**
+     * 网络状态来源。生产环境使用 {@link AndroidConnectivitySource}，测试中可替换为假实现。
+     */
+    public interface ConnectivitySource {
+        // 当前是否有已验证 (VALIDATED) 的可用网络
+        boolean isValidatedNetworkAvailable();
+        // 开始监听网络变化，变化时调用 onChanged
+        void register(Runnable onChanged);
+        // 停止监听
+        void unregister();
+    }
+
+    /**
+     * 一次等待的结果
+     */
+    public static final class Result {
+        public final boolean connected; // 是否拿到了可用网络
+        public final boolean cancelled; // 是否被取消 (或线程被中断)
+        public final long waitedMs; // 实际等待时长 (即 time-to-network，网络本就可用时为 0)
+
+        Result(boolean connected, boolean cancelled, long waitedMs) {
+            this.connected = connected;
+            this.cancelled = cancelled;
+            this.waitedMs = waitedMs;
+        }
+    }
+
+    private final ConnectivitySource source;
+    private CompletableFuture<Boolean> sharedWait; // 当前共享的等待，null 表示没有人在等
+    private int waiterCount; // 正在等待 sharedWait 的调用方数量
+    private volatile long lastTimeToNetworkMs = -1; // 最近一次等到网络所用的时间
+
+    public NetworkAwaiter(ConnectivitySource source) {
+        this.source = source;
+    }
+
+    /**
+     * 阻塞等待已验证的网络，网络可用时立即返回。
+     * @param timeoutMs 最长等待时间
+     * @return 等待结果 (含实际等待时长)
+     */
+    public Result await(long timeoutMs) {
+        long start = now();
+        if (source.isValidatedNetworkAvailable()) {
+            return new Result(true, false, 0);
+        }
+
+        CompletableFuture<Boolean> wait;
+        synchronized (this) {
+            if (sharedWait == null) {
+                sharedWait = new CompletableFuture<>();
+                source.register(this::onNetworkChanged);
+                AppLog.d(TAG, ">>> Registered network callback, waiting for validated network (up to {}ms)...", timeoutMs);
+            }
+            wait = sharedWait;
+            waiterCount++;
+        }
+        // 注册回调前网络可能刚好就绪，注册后再检查一次，避免错过
+        onNetworkChanged();
+
+        try {
+            boolean connected = wait.get(timeoutMs, TimeUnit.MILLISECONDS);
+            long waited = now() - start;
+            if (connected) {
+                lastTimeToNetworkMs = waited;
+                AppLog.i(TAG, ">>> Validated network became available after {}ms.", waited);
+            }
+            return new Result(connected, !connected, waited);
+        } catch (TimeoutException e) {
+            AppLog.w(TAG, ">>> No validated network within {}ms.", timeoutMs);
+            return new Result(false, false, now() - start);
+        } catch (CancellationException | ExecutionException e) {
+            AppLog.w(TAG, ">>> Network wait cancelled.");
+            return new Result(false, true, now() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // 重新设置中断状态
+            AppLog.w(TAG, ">>> Network wait interrupted.");
+            return new Result(false, true, now() - start);
+        } finally {
+            synchronized (this) {
+                waiterCount--;
+                if (waiterCount == 0 && sharedWait == wait) {
+                    // 最后一个等待者离开 (超时/中断)，停止监听
+                    sharedWait = null;
+                    source.unregister();
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前是否有已验证的可用网络 (不等待)
+     */
+    public boolean isNetworkAvailable() {
+        return source.isValidatedNetworkAvailable();
+    }
+
+    /**
+     * 取消当前所有等待，等待中的调用方立即返回 cancelled 结果。
+     */
+    public void cancel() {
+        finishSharedWait(false);
+    }
+
+    /**
+     * 最近一次等到网络所用的时间 (毫秒)，从未等到过时为 -1
+     */
+    public long getLastTimeToNetworkMs() {
+        return lastTimeToNetworkMs;
+    }
+
+    // 网络状态变化回调 (可能在任意线程)
+    private void onNetworkChanged() {
+        if (source.isValidatedNetworkAvailable()) {
+            finishSharedWait(true);
+        }
+    }
+
+    // 结束共享等待并通知所有等待者
+    private void finishSharedWait(boolean connected) {
+        CompletableFuture<Boolean> wait;
+        synchronized (this) {
+            wait = sharedWait;
+            if (wait == null) return;
+            sharedWait = null;
+            source.unregister();
+        }
+        wait.complete(connected);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    /**
+     * 基于 ConnectivityManager.NetworkCallback 的网络状态来源
+     */
+    public static class AndroidConnectivitySource implements ConnectivitySource {
+        private final ConnectivityManager connManager;
+        private ConnectivityManager.NetworkCallback callback;
+
+        public AndroidConnectivitySource(ConnectivityManager connManager) {
+            this.connManager = connManager;
+        }
+
+        @Override
+        public boolean isValidatedNetworkAvailable() {
+            if (connManager == null) return false;
+            try {
+                Network activeNetwork = connManager.getActiveNetwork();
+                return activeNetwork != null && isValidated(connManager.getNetworkCapabilities(activeNetwork));
+            } catch (Exception e) {
+                AppLog.e(TAG, "isValidatedNetworkAvailable: Error checking network state: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        public synchronized void register(Runnable onChanged) {
+            if (connManager == null || callback != null) return;
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    onChanged.run();
+                }
+
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                    if (isValidated(capabilities)) {
+                        onChanged.run();
+                    }
+                }
+            };
+            try {
+                connManager.registerDefaultNetworkCallback(callback);
+            } catch (Exception e) {
+                AppLog.e(TAG, "register: Failed to register network callback: {}", e.getMessage());
+                callback = null;
+            }
+        }
+
+        @Override
+        public synchronized void unregister() {
+            if (connManager == null || callback == null) return;
+            try {
+                connManager.unregisterNetworkCallback(callback);
+            } catch (Exception e) {
+                AppLog.w(TAG, "unregister: Failed to unregister network callback: {}", e.getMessage());
+            }
+            callback = null;
+        }
+
+        // 与原先 isNetworkAvailable 的判断条件一致
+        private static boolean isValidated(NetworkCapabilities capabilities) {
+            return capabilities != null &&
+                    (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) ||
+                     capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR) ||
+                     capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) &&
+                    capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
+                    capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.net.wifi.WifiManager;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 网络预热：来电响铃 (RINGING) 或收到短信时，提前打开 Wi-Fi、请求并保持网络，网络可用后预先建立 SMTP 连接。
+// 响铃通常持续 20-30 秒，等确认是未接来电 (IDLE) 时网络和 SMTP 连接已经就绪，通知几秒内就能发出。
+// 电话被接听时释放；否则保持 holdMs 后自动释放 (期间的发送会复用已就绪的网络和连接)。
+public class NetworkWarmer {
+
+    private static final String TAG = "NetworkWarmer"; // 日志 TAG
+
+    private static volatile NetworkWarmer defaultWarmer; // 进程内共享 (SmsReceiver 和 MonitorService 都会用到)
+
+    /**
+     * 请求并保持网络。生产环境使用 {@link AndroidNetworkHolder}，测试中可替换为假实现。
+     */
+    public interface NetworkHolder {
+        // 请求网络，网络已验证可用时调用 onReady (可能多次，可能在任意线程)
+        void request(Runnable onReady);
+        // 释放请求的网络
+        void release();
+    }
+
+    private final NetworkHolder holder;
+    private final Runnable prepareNetwork; // 开始预热时执行 (打开 Wi-Fi)
+    private final Runnable preOpenConnection; // 网络可用后执行 (预先建立 SMTP 连接)
+    private final long holdMs; // 最后一次预热后保持多久
+    private final ScheduledExecutorService executor; // 执行上面两个耗时操作和自动释放
+
+    private final Set<String> reasons = new HashSet<>(); // 当前持有预热的原因 (例如 "call:1")，全部释放后才释放网络
+    private ScheduledFuture<?> expiryFuture;
+    private boolean held; // 是否已请求网络
+    private boolean connectionOpened; // 本次持有期间是否已经预先建立过 SMTP 连接
+    private int warmUpCount; // 请求网络的次数 (统计和测试用)
+
+    /**
+     * 获取默认的预热器 (打开 Wi-Fi、ConnectivityManager.requestNetwork、预先连接 Gmail SMTP)
+     */
+    public static NetworkWarmer getDefault(Context context) {
+        if (defaultWarmer == null) {
+            synchronized (NetworkWarmer.class) {
+                if (defaultWarmer == null) {
+                    Context appContext = context.getApplicationContext();
+                    WifiManager wifiManager = (WifiManager) appContext.getSystemService(Context.WIFI_SERVICE);
+                    ConnectivityManager connManager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+                    defaultWarmer = new NetworkWarmer(new AndroidNetworkHolder(connManager),
+                            () -> EventSendHelper.ensureWifiEnabled(appContext, wifiManager),
+                            () -> EmailSender.warmUpConnection(appContext),
+                            IConstants.NETWORK_WARMUP_HOLD_MS);
+                }
+            }
+        }
+        return defaultWarmer;
+    }
+
+    /**
+     * @param holder 请求/释放网络
+     * @param prepareNetwork 开始预热时在后台线程执行 (可为 null)
+     * @param preOpenConnection 网络可用后在后台线程执行，每次持有期间最多一次 (可为 null)
+     * @param holdMs 最后一次预热后保持网络的时间
+     */
+    public NetworkWarmer(NetworkHolder holder, Runnable prepareNetwork, Runnable preOpenConnection, long holdMs) {
+        this.holder = holder;
+        this.prepareNetwork = prepareNetwork;
+        this.preOpenConnection = preOpenConnection;
+        this.holdMs = holdMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "network-warmer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 开始 (或延长) 预热。可在主线程调用，不阻塞。
+     * @param reason 预热原因，之后用同一个 reason 调用 release() 表示不再需要 (例如电话被接听)
+     */
+    public synchronized void warmUp(String reason) {
+        reasons.add(reason);
+        if (expiryFuture != null) {
+            expiryFuture.cancel(false);
+        }
+        expiryFuture = executor.schedule(this::expire, holdMs, TimeUnit.MILLISECONDS);
+        if (held) {
+            AppLog.d(TAG, ">>> Network already warming ({}), extended hold by {}ms.", reasons, holdMs);
+            return;
+        }
+        held = true;
+        connectionOpened = false;
+        warmUpCount++;
+        AppLog.i(TAG, ">>> Warming up network for {} (hold {}ms)...", reason, holdMs);
+        if (prepareNetwork != null) {
+            executor.execute(prepareNetwork);
+        }
+        holder.request(this::onNetworkReady);
+    }
+
+    /**
+     * 不再需要 reason 对应的预热 (例如电话被接听)。没有其他原因持有时立即释放网络。
+     */
+    public synchronized void release(String reason) {
+        if (!reasons.remove(reason) || !reasons.isEmpty()) return;
+        AppLog.i(TAG, ">>> Releasing warmed-up network ({} no longer needs it).", reason);
+        releaseLocked();
+    }
+
+    /**
+     * 立即释放所有预热 (服务销毁时调用)
+     */
+    public synchronized void releaseAll() {
+        reasons.clear();
+        releaseLocked();
+    }
+
+    public synchronized boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * 请求网络的次数 (同一持有期间的多次 warmUp 只算一次)
+     */
+    public synchronized int getWarmUpCount() {
+        return warmUpCount;
+    }
+
+    // 保持时间到，释放所有原因
+    private synchronized void expire() {
+        if (!held) return;
+        AppLog.d(TAG, ">>> Warm-up hold expired ({}), releasing network.", reasons);
+        reasons.clear();
+        releaseLocked();
+    }
+
+    // 调用方需持有 this 的锁
+    private void releaseLocked() {
+        if (expiryFuture != null) {
+            expiryFuture.cancel(false);
+            expiryFuture = null;
+        }
+        if (!held) return;
+        held = false;
+        holder.release();
+    }
+
+    // 网络已验证可用 (ConnectivityManager 的回调线程)：SMTP 握手在预热线程上执行，不阻塞回调
+    private void onNetworkReady() {
+        synchronized (this) {
+            if (!held || connectionOpened) return;
+            connectionOpened = true;
+        }
+        AppLog.i(TAG, ">>> Warmed-up network is ready, pre-opening SMTP connection...");
+        if (preOpenConnection != null) {
+            executor.execute(preOpenConnection);
+        }
+    }
+
+    /**
+     * 基于 ConnectivityManager.requestNetwork 的实现：请求期间系统会保持 (必要时接入) 一个可上网的网络
+     */
+    public static class AndroidNetworkHolder implements NetworkHolder {
+        private final ConnectivityManager connManager;
+        private ConnectivityManager.NetworkCallback callback;
+
+        public AndroidNetworkHolder(ConnectivityManager connManager) {
+            this.connManager = connManager;
+        }
+
+        @Override
+        public synchronized void request(Runnable onReady) {
+            if (connManager == null || callback != null) return;
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                    if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+                        onReady.run();
+                    }
+                }
+            };
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            try {
+                connManager.requestNetwork(request, callback);
+            } catch (Exception e) {
+                AppLog.e(TAG, "request: Failed to request network: {}", e.getMessage());
+                callback = null;
+            }
+        }
+
+        @Override
+        public synchronized void release() {
+            if (connManager == null || callback == null) return;
+            try {
+                connManager.unregisterNetworkCallback(callback);
+            } catch (Exception e) {
+                AppLog.w(TAG, "release: Failed to release network request: {}", e.getMessage());
+            }
+            callback = null;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.smscallmonitor;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "pending_events") // 表名: 待处理事件
+// 表名: 待处理事件
+// 复合索引 (status, eventTimestamp): 按状态过滤并按时间排序的查询直接走索引，无需全表扫描和排序
+@Entity(tableName = "pending_events",
+        indices = {@Index(value = {"status", "eventTimestamp"})})
 public class PendingEvent {
 
     @PrimaryKey(autoGenerate = true)
@@ -13,14 +19,25 @@ public class PendingEvent {
     public String senderNumber; // 发件人/来电号码
     public String messageContent; // 短信内容 (来电时为 null 或特定标记)
     public long eventTimestamp; // 事件发生的时间戳 (毫秒)
-    public String simInfo; // SIM 卡信息 (例如 "SIM1 (Operator, ID:1)")
-    public int subId; // Subscription ID
-    public String status; // 状态: "PENDING" (待发送)
+    public int subId; // Subscription ID，SIM 卡信息保存在 sims 表中 (版本 6 起不再保存 simInfo 文字)
+    public int status; // 状态: STATUS_PENDING (待补发)、STATUS_SENDING (已记录，立即发送中) 或 STATUS_DEAD (放弃)
     public long attemptTimestamp; // 上次尝试发送包含此事件的邮件的时间戳
     public int retryCount; // 包含此事件的邮件被尝试发送的次数
+    @ColumnInfo(defaultValue = "0")
+    public int deliveredChannels; // 已送达的渠道 (DeliveryChannel.bit() 的组合)，重试时只补发其余渠道 (版本 3 新增)
+    @ColumnInfo(defaultValue = "0")
+    public long nextAttemptAt; // 补发任务最早何时可以再次尝试 (毫秒时间戳，见 RetryPolicy，版本 4 新增)
+    public String leaseOwner; // 认领此事件的补发任务 (每次补发生成的令牌)，null 表示未被认领 (版本 5 新增)
+    @ColumnInfo(defaultValue = "0")
+    public long leaseExpiresAt; // 认领的过期时间 (毫秒时间戳)，过期后其他补发任务可以重新认领 (版本 5 新增)
+    @Ignore
+    public String simLabel; // SIM 卡在邮件中显示的文字 (不保存在本表: 新事件来自 SimRegistry，补发时连接 sims 表查询)
 
     // --- 状态常量 ---
-    public static final String STATUS_PENDING = "PENDING";
+    // 数据库版本 1 中 status 是文本 ("PENDING")，版本 2 起改为整数，见 AppDatabase.MIGRATION_1_2
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_SENDING = 1; // 已写入数据库，正由立即发送路径处理
+    public static final int STATUS_DEAD = 2; // 死信: 尝试次数达到上限，不再自动补发 (版本 4 新增)
     // public static final String STATUS_SENT = "SENT"; // 如果需要标记已发送而不是删除
 
     // --- 构造函数 (Room 需要一个无参构造) ---
@@ -28,15 +45,19 @@ public class PendingEvent {
 
     // --- 便捷构造函数 ---
     public PendingEvent(String eventType, String senderNumber, String messageContent,
-                        long eventTimestamp, String simInfo, int subId) {
+                        long eventTimestamp, String simLabel, int subId) {
         this.eventType = eventType;
         this.senderNumber = senderNumber;
         this.messageContent = messageContent;
         this.eventTimestamp = eventTimestamp;
-        this.simInfo = simInfo;
+        this.simLabel = simLabel;
         this.subId = subId;
         this.status = STATUS_PENDING; // 初始状态为待处理
         this.attemptTimestamp = 0;
         this.retryCount = 0;
+        this.deliveredChannels = 0;
+        this.nextAttemptAt = 0;
+        this.leaseOwner = null;
+        this.leaseExpiresAt = 0;
     }
 }
\ No newline at end of file
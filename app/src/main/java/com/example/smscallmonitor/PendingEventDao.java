@@ -3,29 +3,189 @@ package com.example.smscallmonitor;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
+import java.util.Collections;
 import java.util.List;
 
 @Dao
 public interface PendingEventDao {
 
     @Insert
-    void insert(PendingEvent event); // 插入新事件
+    long insert(PendingEvent event); // 插入新事件，返回自增主键
 
-    // 查询所有待处理的事件，按时间戳升序排列
-    @Query("SELECT * FROM pending_events WHERE status = :statusPending ORDER BY eventTimestamp ASC")
-    List<PendingEvent> getAllPendingEvents(String statusPending);
+    @Insert
+    long[] insertAll(List<PendingEvent> events); // 在一个事务中插入多个事件 (分组提交)，按顺序返回自增主键
+
+    // --- SIM 卡: 事件只保存 subId，SIM 卡文字保存在 sims 表 (每张卡一行) ---
+
+    // sims 中还没有这张卡时写入 (只有显示文字；卡槽、颜色等由 SimRegistry 刷新时补全)
+    @Query("INSERT OR IGNORE INTO sims (subId, label, displayName, slotIndex, color, lastSeenAt) VALUES (:subId, :label, NULL, -1, 0, :seenAt)")
+    void insertSimIfAbsent(int subId, String label, long seenAt);
+
+    // 已有这张卡时更新显示文字 (运营商名称可能变化) 和最后一次出现的时间；卡槽、颜色保持不变
+    // (minSdk 28 的 SQLite 3.22 还不支持 INSERT ... ON CONFLICT DO UPDATE，因此与 insertSimIfAbsent 分成两条语句)
+    @Query("UPDATE sims SET label = :label, lastSeenAt = MAX(lastSeenAt, :seenAt) WHERE subId = :subId")
+    void updateSimLabel(int subId, String label, long seenAt);
+
+    /**
+     * 写入一组新事件，并保证每个事件的 SIM 卡在 sims 表中都有一行且文字是最新的 (同一事务；同一张卡只写一次)
+     * @return 按顺序的自增主键
+     */
+    @Transaction
+    default long[] insertAllWithSims(List<PendingEvent> events, long now) {
+        int lastSubId = Integer.MIN_VALUE;
+        for (PendingEvent event : events) {
+            if (event.subId == lastSubId || event.simLabel == null) continue; // 同一组事件通常来自同一张卡
+            insertSimIfAbsent(event.subId, event.simLabel, now);
+            updateSimLabel(event.subId, event.simLabel, now);
+            lastSubId = event.subId;
+        }
+        return insertAll(events);
+    }
+
+    // 已到重试时间、且没有被其他补发任务认领的待处理事件数量 (补发任务据此决定要不要打开网络)
+    @Query("SELECT COUNT(*) FROM pending_events WHERE status = :statusPending AND nextAttemptAt <= :now AND leaseExpiresAt <= :now")
+    int getDuePendingEventCount(int statusPending, long now);
+
+    // --- 认领 (lease): 多个补发任务 (Worker、服务内的补发) 可以同时运行，每个事件同一时间只会被一个任务发送 ---
+
+    // 给最早的最多 limit 条可认领事件 (已到重试时间 nextAttemptAt <= :dueBefore，且未被认领或认领已过期) 写入认领信息。
+    // UPDATE ... WHERE id IN (SELECT ...) 是单条语句，选择和写入之间不会被其他连接插入
+    @Query("UPDATE pending_events SET leaseOwner = :owner, leaseExpiresAt = :leaseExpiresAt WHERE id IN ("
+            + "SELECT id FROM pending_events WHERE status = :status AND nextAttemptAt <= :dueBefore AND leaseExpiresAt <= :now "
+            + "ORDER BY eventTimestamp ASC, id ASC LIMIT :limit)")
+    int setLeases(int status, String owner, long dueBefore, long now, long leaseExpiresAt, int limit);
+
+    // 由 owner 认领的事件，按时间顺序；连接 sims 表取得 SIM 卡文字 (渲染邮件用)
+    @Query("SELECT pending_events.*, sims.label AS simLabel FROM pending_events LEFT JOIN sims ON sims.subId = pending_events.subId "
+            + "WHERE pending_events.leaseOwner = :owner AND pending_events.status = :status "
+            + "ORDER BY pending_events.eventTimestamp ASC, pending_events.id ASC")
+    List<PendingEventWithSim> getLeasedEvents(int status, String owner);
+
+    /**
+     * 认领最多 limit 条到期的待处理事件 (同一事务中写入认领信息并读回)。
+     * @param owner 本次补发的令牌 (每次补发都不同)
+     * @param dueBefore 只认领 nextAttemptAt 不晚于此时间的事件 (补发开始的时间)
+     * @param now 当前时间，认领过期时间早于此时间的事件可以被重新认领
+     * @param leaseMs 认领的有效期，应长于发送一页所需的时间
+     * @return 认领到的事件 (按时间顺序，simLabel 来自 sims 表)，没有可认领的事件时为空
+     */
+    @Transaction
+    default List<PendingEvent> claimPendingEvents(String owner, long dueBefore, long now, long leaseMs, int limit) {
+        if (setLeases(PendingEvent.STATUS_PENDING, owner, dueBefore, now, now + leaseMs, limit) == 0) {
+            return Collections.emptyList();
+        }
+        return PendingEventWithSim.toEvents(getLeasedEvents(PendingEvent.STATUS_PENDING, owner));
+    }
+
+    // 放弃认领 (本次不发送这些事件，例如超出单封邮件的大小)，只放弃仍由 owner 认领的事件
+    @Query("UPDATE pending_events SET leaseOwner = NULL, leaseExpiresAt = 0 WHERE id IN (:ids) AND leaseOwner = :owner")
+    int releaseLeaseChunk(int[] ids, String owner);
+
+    // 删除 owner 认领的、按 (eventTimestamp, id) 排在水位线 (含) 之前的事件 (补发时整页都已送达的常见情况)，
+    // 不绑定 ID 列表；只删除本次认领的事件，其他补发任务认领的、退避中的事件不受影响
+    @Query("DELETE FROM pending_events WHERE leaseOwner = :owner AND status = :status "
+            + "AND (eventTimestamp < :throughTimestamp OR (eventTimestamp = :throughTimestamp AND id <= :throughId))")
+    int deleteLeasedEventsThrough(String owner, int status, long throughTimestamp, int throughId);
+
+    // 待处理事件中最早的下次尝试时间，没有待处理事件时为 null (DrainScheduler 据此安排补发任务)
+    @Query("SELECT MIN(nextAttemptAt) FROM pending_events WHERE status = :statusPending")
+    Long getEarliestNextAttemptAt(int statusPending);
 
     // 获取待处理事件的数量 (用于 Wi-Fi 关闭逻辑)
     @Query("SELECT COUNT(*) FROM pending_events WHERE status = :statusPending")
-    int getPendingEventCount(String statusPending);
+    int getPendingEventCount(int statusPending);
+
+    // 把所有处于 oldStatus 的事件改为 newStatus (崩溃恢复: SENDING -> PENDING)，返回更新的行数
+    @Query("UPDATE pending_events SET status = :newStatus WHERE status = :oldStatus")
+    int updateStatus(int oldStatus, int newStatus);
 
-    // 通过 ID 列表删除事件 (发送成功后调用)
+    // --- 按 ID 的批量操作: 单条语句最多绑定 DB_MAX_IDS_PER_STATEMENT 个 ID，ID 再多也在同一事务中分块执行 ---
+
+    // 通过 ID 删除事件 (发送成功后调用)
     @Query("DELETE FROM pending_events WHERE id IN (:ids)")
-    void deleteEventsByIds(List<Integer> ids);
+    int deleteEventChunk(int[] ids);
+
+    // 修改指定 ID 事件的状态 (不计入尝试次数)
+    @Query("UPDATE pending_events SET status = :newStatus WHERE id IN (:ids)")
+    int updateStatusChunk(int[] ids, int newStatus);
+
+    // 发送失败 (或部分渠道失败): 修改状态 (PENDING 或 DEAD)、记录已送达的渠道、更新尝试信息和下次尝试时间
+    // 同时清除认领信息 (按 nextAttemptAt 退避后再由补发任务重新认领)
+    @Query("UPDATE pending_events SET status = :newStatus, deliveredChannels = :deliveredChannels, attemptTimestamp = :attemptTime, "
+            + "retryCount = retryCount + 1, nextAttemptAt = :nextAttemptAt, leaseOwner = NULL, leaseExpiresAt = 0 WHERE id IN (:ids)")
+    int markEventsFailedChunk(int[] ids, int newStatus, int deliveredChannels, long attemptTime, long nextAttemptAt);
+
+    // 没有真正尝试发送 (SMTP 熔断中): 转为 PENDING、记录已送达的渠道并清除认领信息，不计入尝试次数，下次尝试时间不变
+    @Query("UPDATE pending_events SET status = :newStatus, deliveredChannels = :deliveredChannels, leaseOwner = NULL, leaseExpiresAt = 0 WHERE id IN (:ids)")
+    int markEventsDeferredChunk(int[] ids, int newStatus, int deliveredChannels);
+
+    /**
+     * 通过 ID 删除事件 (发送成功后调用)
+     * @return 删除的行数
+     */
+    @Transaction
+    default int deleteEventsByIds(int[] ids) {
+        int deleted = 0;
+        for (int from = 0; from < ids.length; from += IConstants.DB_MAX_IDS_PER_STATEMENT) {
+            deleted += deleteEventChunk(IdArray.chunk(ids, from, IConstants.DB_MAX_IDS_PER_STATEMENT));
+        }
+        return deleted;
+    }
+
+    /**
+     * 修改指定 ID 事件的状态 (不计入尝试次数)
+     * @return 更新的行数
+     */
+    @Transaction
+    default int updateStatusByIds(int[] ids, int newStatus) {
+        int updated = 0;
+        for (int from = 0; from < ids.length; from += IConstants.DB_MAX_IDS_PER_STATEMENT) {
+            updated += updateStatusChunk(IdArray.chunk(ids, from, IConstants.DB_MAX_IDS_PER_STATEMENT), newStatus);
+        }
+        return updated;
+    }
+
+    /**
+     * 发送失败: 修改状态、记录已送达的渠道、更新尝试信息和下次尝试时间，并清除认领信息
+     * @return 更新的行数
+     */
+    @Transaction
+    default int markEventsFailedByIds(int[] ids, int newStatus, int deliveredChannels, long attemptTime, long nextAttemptAt) {
+        int updated = 0;
+        for (int from = 0; from < ids.length; from += IConstants.DB_MAX_IDS_PER_STATEMENT) {
+            updated += markEventsFailedChunk(IdArray.chunk(ids, from, IConstants.DB_MAX_IDS_PER_STATEMENT),
+                    newStatus, deliveredChannels, attemptTime, nextAttemptAt);
+        }
+        return updated;
+    }
+
+    /**
+     * 没有真正尝试发送: 转为 PENDING、记录已送达的渠道并清除认领信息，不计入尝试次数
+     * @return 更新的行数
+     */
+    @Transaction
+    default int markEventsDeferredByIds(int[] ids, int deliveredChannels) {
+        int updated = 0;
+        for (int from = 0; from < ids.length; from += IConstants.DB_MAX_IDS_PER_STATEMENT) {
+            updated += markEventsDeferredChunk(IdArray.chunk(ids, from, IConstants.DB_MAX_IDS_PER_STATEMENT),
+                    PendingEvent.STATUS_PENDING, deliveredChannels);
+        }
+        return updated;
+    }
 
-    // 更新指定 ID 事件的尝试信息 (发送失败后调用)
-    @Query("UPDATE pending_events SET attemptTimestamp = :attemptTime, retryCount = retryCount + 1 WHERE id IN (:ids)")
-    void updateEventsAttemptInfoByIds(List<Integer> ids, long attemptTime);
+    /**
+     * 放弃认领，只放弃仍由 owner 认领的事件
+     * @return 放弃认领的行数
+     */
+    @Transaction
+    default int releaseLeases(int[] ids, String owner) {
+        int released = 0;
+        for (int from = 0; from < ids.length; from += IConstants.DB_MAX_IDS_PER_STATEMENT) {
+            released += releaseLeaseChunk(IdArray.chunk(ids, from, IConstants.DB_MAX_IDS_PER_STATEMENT), owner);
+        }
+        return released;
+    }
 
 }
\ No newline at end of file
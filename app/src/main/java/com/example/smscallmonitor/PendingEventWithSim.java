@@ -0,0 +1,27 @@
+package com.example.smscallmonitor;
+
+import androidx.room.Embedded;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// pending_events 与 sims 的连接查询结果: 事件，以及它的 SIM 卡在邮件中显示的文字 (sims 中没有这张卡时为 null)
+public class PendingEventWithSim {
+
+    @Embedded
+    public PendingEvent event;
+
+    public String simLabel; // sims.label
+
+    /**
+     * 把 SIM 卡文字放进各个事件 (PendingEvent.simLabel，渲染时使用)，返回事件列表
+     */
+    static List<PendingEvent> toEvents(List<PendingEventWithSim> rows) {
+        List<PendingEvent> events = new ArrayList<>(rows.size());
+        for (PendingEventWithSim row : rows) {
+            row.event.simLabel = row.simLabel;
+            events.add(row.event);
+        }
+        return events;
+    }
+}
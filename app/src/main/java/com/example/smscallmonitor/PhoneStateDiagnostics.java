@@ -0,0 +1,111 @@
+package com.example.smscallmonitor;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// PhoneStateReceiver 的诊断数据：诊断模式下把每个 PHONE_STATE 广播的状态和 extras 记入固定大小的环形缓冲区，
+// 用于排查某些机型上 subId 放在哪个 extra 里等问题；同时统计两种模式下 onReceive 在主线程上的耗时。
+public class PhoneStateDiagnostics {
+
+    private static final PhoneStateDiagnostics DEFAULT = new PhoneStateDiagnostics(IConstants.PHONE_STATE_DIAGNOSTICS_CAPACITY);
+
+    // 一次广播的记录
+    public static final class Entry {
+        public final long timeMs; // 收到广播的时间 (System.currentTimeMillis)
+        public final String state; // EXTRA_STATE
+        public final String extras; // 所有 extras 的 key=value
+
+        Entry(long timeMs, String state, String extras) {
+            this.timeMs = timeMs;
+            this.state = state;
+            this.extras = extras;
+        }
+    }
+
+    // 主线程耗时统计
+    public static final class Timing {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public synchronized long getCount() { return count; }
+
+        public synchronized long getAverageMicros() { return count == 0 ? 0 : totalNanos / count / 1000; }
+
+        public synchronized long getMaxMicros() { return maxNanos / 1000; }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US, "n=%d, avg=%dus, max=%dus", count, getAverageMicros(), getMaxMicros());
+        }
+    }
+
+    private final Entry[] entries; // 环形缓冲区
+    private int count; // 缓冲区中的记录数
+    private int next; // 下一个写入位置
+    private final Timing fastPath = new Timing(); // 生产模式 (只判断开关就返回)
+    private final Timing diagnosticPath = new Timing(); // 诊断模式 (记录 extras)
+
+    public static PhoneStateDiagnostics getDefault() {
+        return DEFAULT;
+    }
+
+    public PhoneStateDiagnostics(int capacity) {
+        this.entries = new Entry[capacity];
+    }
+
+    /**
+     * 记录一次广播，写满后覆盖最旧的记录
+     */
+    public synchronized void capture(long timeMs, String state, String extras) {
+        entries[next] = new Entry(timeMs, state, extras);
+        next = (next + 1) % entries.length;
+        count = Math.min(count + 1, entries.length);
+    }
+
+    /**
+     * 缓冲区中的记录，从旧到新
+     */
+    public synchronized Entry[] getEntries() {
+        Entry[] result = new Entry[count];
+        int first = (next - count + entries.length) % entries.length;
+        for (int i = 0; i < count; i++) {
+            result[i] = entries[(first + i) % entries.length];
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        count = 0;
+        next = 0;
+        Arrays.fill(entries, null);
+    }
+
+    public Timing getFastPathTiming() {
+        return fastPath;
+    }
+
+    public Timing getDiagnosticPathTiming() {
+        return diagnosticPath;
+    }
+
+    /**
+     * 所有记录和耗时统计 (写入日志用)
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PHONE_STATE main-thread time: fast path [").append(fastPath)
+                .append("], diagnostic path [").append(diagnosticPath).append("]");
+        for (Entry entry : getEntries()) {
+            sb.append('\n').append(TimeUtil.formatMillis(entry.timeMs))
+                    .append(' ').append(entry.state).append(' ').append(entry.extras);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.smscallmonitor;
+
+import java.util.Locale;
+
+// Wi-Fi 开关的自适应管理：根据最近事件的到达间隔 (EWMA) 决定事件后保持 Wi-Fi 多久再关闭，
+// 有发送或补发正在进行时不关闭。事件密集时保持更久，避免反复开关 (每次重新打开都要等待最多 35 秒连接)；
+// 事件稀疏时尽早关闭。同时统计 Wi-Fi 开关次数和每小时开启时长。
+// 所有时间参数使用单调时钟 (毫秒)，与 SmtpCircuitBreaker 一样由调用方传入，便于测试。
+public class RadioManager {
+
+    private static volatile RadioManager defaultManager; // 进程内共享 (发送路径和 WifiOffReceiver 都会用到)
+
+    private static final long HOUR_MS = 3_600_000L;
+
+    private final long defaultOffDelayMs; // 还没有到达间隔数据时使用
+    private final long minOffDelayMs;
+    private final long maxOffDelayMs;
+    private final double alpha; // EWMA 平滑系数，越大越偏向最近的间隔
+    private final double gapMultiplier; // 关闭延迟 = 平均间隔 * 此倍数 (再限制在 [min, max] 之间)
+
+    private long lastArrivalAt = -1; // 上一个事件的到达时间
+    private double averageGapMs = -1; // 事件到达间隔的 EWMA，-1 表示还没有数据
+    private int inFlight; // 正在进行的发送/补发数量
+
+    private final long createdAt; // 统计开始时间
+    private long radioOnSince = -1; // 本次 Wi-Fi 开启的时间，-1 表示当前未开启 (或不是由本应用开启)
+    private long radioOnTotalMs; // 已结束的开启时段累计时长
+    private long radioCycles; // 由本应用开启后又关闭的次数
+    private long deferredOffCount; // 因有任务进行而推迟关闭的次数
+
+    public static RadioManager getDefault() {
+        if (defaultManager == null) {
+            synchronized (RadioManager.class) {
+                if (defaultManager == null) {
+                    defaultManager = new RadioManager(IConstants.WIFI_OFF_DELAY_MS, IConstants.WIFI_OFF_MIN_DELAY_MS,
+                            IConstants.WIFI_OFF_MAX_DELAY_MS, IConstants.WIFI_OFF_ARRIVAL_EWMA_ALPHA,
+                            IConstants.WIFI_OFF_GAP_MULTIPLIER, now());
+                }
+            }
+        }
+        return defaultManager;
+    }
+
+    /**
+     * @param defaultOffDelayMs 没有历史数据时的关闭延迟
+     * @param minOffDelayMs 关闭延迟下限
+     * @param maxOffDelayMs 关闭延迟上限 (也是单个到达间隔计入平均值的上限，一次长时间空闲不会把平均值拉得过大)
+     * @param alpha EWMA 平滑系数 (0, 1]
+     * @param gapMultiplier 关闭延迟相对平均到达间隔的倍数
+     * @param now 当前时间 (单调时钟，毫秒)
+     */
+    public RadioManager(long defaultOffDelayMs, long minOffDelayMs, long maxOffDelayMs, double alpha, double gapMultiplier, long now) {
+        this.defaultOffDelayMs = defaultOffDelayMs;
+        this.minOffDelayMs = minOffDelayMs;
+        this.maxOffDelayMs = maxOffDelayMs;
+        this.alpha = alpha;
+        this.gapMultiplier = gapMultiplier;
+        this.createdAt = now;
+    }
+
+    /**
+     * 记录一个新事件 (短信或未接来电) 的到达
+     */
+    public synchronized void onEventArrived(long now) {
+        if (lastArrivalAt >= 0) {
+            long gap = Math.min(now - lastArrivalAt, maxOffDelayMs);
+            averageGapMs = averageGapMs < 0 ? gap : alpha * gap + (1 - alpha) * averageGapMs;
+        }
+        lastArrivalAt = now;
+    }
+
+    /**
+     * 开始一次需要网络的工作 (立即发送或补发)，结束时必须调用 endWork()
+     */
+    public synchronized void beginWork() {
+        inFlight++;
+    }
+
+    public synchronized void endWork() {
+        if (inFlight > 0) inFlight--;
+    }
+
+    /**
+     * 是否有发送或补发正在进行 (此时不应关闭 Wi-Fi)
+     */
+    public synchronized boolean isBusy() {
+        return inFlight > 0;
+    }
+
+    /**
+     * 根据最近的到达间隔计算事件后保持 Wi-Fi 的时间
+     */
+    public synchronized long getOffDelayMs() {
+        if (averageGapMs < 0) return defaultOffDelayMs;
+        long delay = (long) (averageGapMs * gapMultiplier);
+        return Math.max(minOffDelayMs, Math.min(delay, maxOffDelayMs));
+    }
+
+    /**
+     * 关闭闹钟到达时是否应推迟关闭 (有任务进行中)。推迟时计入统计。
+     */
+    public synchronized boolean shouldDeferOff() {
+        if (inFlight > 0) {
+            deferredOffCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 本应用打开了 Wi-Fi
+     */
+    public synchronized void onRadioEnabled(long now) {
+        if (radioOnSince < 0) radioOnSince = now;
+    }
+
+    /**
+     * 本应用关闭了 Wi-Fi
+     */
+    public synchronized void onRadioDisabled(long now) {
+        if (radioOnSince < 0) return;
+        radioOnTotalMs += now - radioOnSince;
+        radioOnSince = -1;
+        radioCycles++;
+    }
+
+    public synchronized long getRadioCycles() { return radioCycles; }
+
+    public synchronized long getDeferredOffCount() { return deferredOffCount; }
+
+    /**
+     * 自统计开始以来 Wi-Fi (由本应用打开) 平均每小时开启的时长 (毫秒)，不足一小时按一小时计
+     */
+    public synchronized long getOnTimeMsPerHour(long now) {
+        long onTotal = radioOnTotalMs + (radioOnSince >= 0 ? now - radioOnSince : 0);
+        long elapsed = Math.max(HOUR_MS, now - createdAt);
+        return (long) (onTotal * (double) HOUR_MS / elapsed);
+    }
+
+    /**
+     * 开关次数平均到每小时 (不足一小时按一小时计)
+     */
+    public synchronized double getCyclesPerHour(long now) {
+        long elapsed = Math.max(HOUR_MS, now - createdAt);
+        return radioCycles * (double) HOUR_MS / elapsed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long now = now();
+        return String.format(Locale.US, "offDelay=%dms, avgGap=%dms, inFlight=%d, cycles=%d (%.2f/h), on=%ds/h, deferredOff=%d",
+                getOffDelayMs(), (long) averageGapMs, inFlight, radioCycles, getCyclesPerHour(now),
+                getOnTimeMsPerHour(now) / 1000, deferredOffCount);
+    }
+
+    static long now() {
+        return System.nanoTime() / 1_000_000L; // 单调时钟
+    }
+}
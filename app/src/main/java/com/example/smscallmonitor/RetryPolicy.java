@@ -0,0 +1,102 @@
+package com.example.smscallmonitor;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// 发送失败后的重试策略 (按事件的 retryCount)：指数退避 + 随机抖动，计算下次允许尝试的时间 (nextAttemptAt)；
+// 尝试次数达到上限的事件转为 STATUS_DEAD (死信)，不再自动补发。
+public class RetryPolicy {
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int maxAttempts;
+    private final Random random; // java.util.Random 是线程安全的
+
+    /**
+     * @param baseDelayMs 第一次失败后的退避时间
+     * @param maxDelayMs 退避时间上限
+     * @param maxAttempts 最多尝试次数 (达到后转为死信)
+     * @param random 抖动用的随机数 (测试可传入固定种子，null 使用新的 Random)
+     */
+    public RetryPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts, Random random) {
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxAttempts = maxAttempts;
+        this.random = random != null ? random : new Random();
+    }
+
+    private static final RetryPolicy DEFAULT = new RetryPolicy(IConstants.RETRY_BASE_DELAY_MS,
+            IConstants.RETRY_MAX_DELAY_MS, IConstants.RETRY_MAX_ATTEMPTS, null);
+
+    /**
+     * 应用使用的默认策略
+     */
+    public static RetryPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 第 attempts 次尝试失败后的退避时间 (不含抖动): base * 2^(attempts-1)，不超过上限
+     */
+    public long backoffMs(int attempts) {
+        if (attempts <= 0) return 0;
+        int shift = Math.min(attempts - 1, 30); // 防止溢出
+        long delay = baseDelayMs << shift;
+        return (delay <= 0 || delay > maxDelayMs) ? maxDelayMs : delay;
+    }
+
+    /**
+     * 第 attempts 次尝试失败后，下次允许尝试的时间。
+     * 抖动取退避时间的 [50%, 100%]: 不同时间失败的批次不会被对齐到同一时刻一起重试 (同一组事件仍一起重试，合并成一封邮件)。
+     */
+    public long nextAttemptAt(int attempts, long now) {
+        long backoff = backoffMs(attempts);
+        long half = backoff / 2;
+        long jitter = (long) (random.nextDouble() * half);
+        return now + (backoff - half) + jitter;
+    }
+
+    /**
+     * 已尝试 attempts 次后是否应放弃 (转为死信)
+     */
+    public boolean isExhausted(int attempts) {
+        return attempts >= maxAttempts;
+    }
+
+    /**
+     * 一组失败处理方式相同的事件 (已送达的渠道相同、失败后的尝试次数相同)
+     */
+    public static final class FailureGroup {
+        public final int deliveredChannels;
+        public final int attempts; // 计入本次失败后的尝试次数
+        public final IdArray ids = new IdArray(8);
+
+        FailureGroup(int deliveredChannels, int attempts) {
+            this.deliveredChannels = deliveredChannels;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * 把发送失败的事件 (只包括已写入数据库的) 按 (deliveredChannels, 失败后的尝试次数) 分组，每组一条 UPDATE。
+     * 同一批事件通常 retryCount 相同，分组数很少。
+     */
+    public static Collection<FailureGroup> groupFailures(List<PendingEvent> events) {
+        Map<Long, FailureGroup> groups = new LinkedHashMap<>();
+        for (PendingEvent event : events) {
+            if (event.id == 0) continue;
+            int attempts = event.retryCount + 1;
+            long key = ((long) attempts << 32) | (event.deliveredChannels & 0xFFFFFFFFL);
+            FailureGroup group = groups.get(key);
+            if (group == null) {
+                group = new FailureGroup(event.deliveredChannels, attempts);
+                groups.put(key, group);
+            }
+            group.ids.add(event.id);
+        }
+        return groups.values();
+    }
+}
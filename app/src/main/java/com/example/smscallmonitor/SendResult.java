@@ -0,0 +1,150 @@
+package com.example.smscallmonitor;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.SendFailedException;
+import javax.net.ssl.SSLException;
+
+// 一次 SMTP 发送的结构化结果：失败的类型 (连接超时、DNS、TLS、认证、4xx、5xx、邮件过大 ...)、
+// SMTP 返回码，以及各阶段耗时。调用方据此选择重试方式 (RetryAdvice)，而不是一律等下一次补发。
+public final class SendResult {
+
+    public enum Kind {
+        SUCCESS,
+        SKIPPED,           // 没有发送 (渠道关闭、未配置收件人/凭证)，视为成功
+        CIRCUIT_OPEN,      // SMTP 熔断中，没有尝试
+        CONNECT_TIMEOUT,   // 连接或读写超时
+        DNS_FAILURE,       // 域名解析失败 (常见于刚连上、尚未真正通网的 Wi-Fi)
+        TLS_FAILURE,       // STARTTLS / 证书失败 (常见于需要网页登录的 Wi-Fi)
+        NETWORK_ERROR,     // 其他网络错误 (连接被拒绝、连接被重置 ...)
+        AUTH_FAILURE,      // 认证失败
+        TRANSIENT_4XX,     // 服务器返回 4xx，稍后重试即可
+        PERMANENT_5XX,     // 服务器返回 5xx (包括收件人被拒绝)
+        MESSAGE_TOO_LARGE, // 邮件过大 (552 / 5.3.4)，拆分后重发
+        UNKNOWN
+    }
+
+    /**
+     * 失败后建议的重试方式
+     */
+    public enum RetryAdvice {
+        NONE,     // 不需要重试
+        FAST,     // 网络已经可用，短暂等待后在当前连接上再试 (不必重新等待网络)
+        DEFERRED, // 按退避策略稍后重试
+        SPLIT     // 把事件拆成更小的邮件重发
+    }
+
+    /**
+     * 各 SMTP 阶段的耗时 (毫秒)，-1 表示本次没有经过该阶段 (例如复用连接时没有握手)。
+     * JavaMail 的 connect() 把 TCP 连接、EHLO、STARTTLS 和 AUTH 放在一次调用里，只能整体计时。
+     */
+    public static final class Timings {
+        public long healthCheckMs = -1; // 复用空闲连接前的 NOOP
+        public long connectMs = -1;     // TCP + STARTTLS + AUTH
+        public long sendMs = -1;        // MAIL FROM / RCPT TO / DATA
+        public long totalMs = -1;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "noop=%dms, connect=%dms, send=%dms, total=%dms",
+                    healthCheckMs, connectMs, sendMs, totalMs);
+        }
+    }
+
+    private static final Timings NO_TIMINGS = new Timings();
+    private static final SendResult SUCCESS_RESULT = new SendResult(Kind.SUCCESS, -1, null, NO_TIMINGS);
+    private static final SendResult SKIPPED_RESULT = new SendResult(Kind.SKIPPED, -1, null, NO_TIMINGS);
+    private static final SendResult CIRCUIT_OPEN_RESULT = new SendResult(Kind.CIRCUIT_OPEN, -1, "SMTP circuit open", NO_TIMINGS);
+
+    public final Kind kind;
+    public final int smtpCode; // SMTP 返回码，未知时为 -1
+    public final String detail; // 错误信息 (日志用)
+    public final Timings timings;
+
+    private SendResult(Kind kind, int smtpCode, String detail, Timings timings) {
+        this.kind = kind;
+        this.smtpCode = smtpCode;
+        this.detail = detail;
+        this.timings = timings;
+    }
+
+    public static SendResult success(Timings timings) {
+        return timings != null ? new SendResult(Kind.SUCCESS, -1, null, timings) : SUCCESS_RESULT;
+    }
+
+    public static SendResult skipped() {
+        return SKIPPED_RESULT;
+    }
+
+    public static SendResult circuitOpen() {
+        return CIRCUIT_OPEN_RESULT;
+    }
+
+    public static SendResult failure(Kind kind, String detail) {
+        return new SendResult(kind, -1, detail, NO_TIMINGS);
+    }
+
+    public boolean isSuccess() {
+        return kind == Kind.SUCCESS || kind == Kind.SKIPPED;
+    }
+
+    public RetryAdvice retryAdvice() {
+        switch (kind) {
+            case SUCCESS:
+            case SKIPPED:
+                return RetryAdvice.NONE;
+            case CONNECT_TIMEOUT:
+            case NETWORK_ERROR:
+            case TRANSIENT_4XX:
+                return RetryAdvice.FAST;
+            case MESSAGE_TOO_LARGE:
+                return RetryAdvice.SPLIT;
+            default: // DNS/TLS (网络还不能真正上网)、认证、5xx、熔断、未知
+                return RetryAdvice.DEFERRED;
+        }
+    }
+
+    /**
+     * 把发送时的异常归类。异常链上任意一层匹配即可 (JavaMail 常把底层的 IOException 包在 MessagingException 里)。
+     */
+    public static SendResult classify(Exception e, Timings timings) {
+        Kind kind = Kind.UNKNOWN;
+        int code = -1;
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof AuthenticationFailedException) { kind = Kind.AUTH_FAILURE; break; }
+            if (t instanceof SMTPSendFailedException || t instanceof SMTPAddressFailedException) {
+                code = t instanceof SMTPSendFailedException
+                        ? ((SMTPSendFailedException) t).getReturnCode() : ((SMTPAddressFailedException) t).getReturnCode();
+                kind = kindForCode(code, t.getMessage());
+                break;
+            }
+            if (t instanceof UnknownHostException) { kind = Kind.DNS_FAILURE; break; }
+            if (t instanceof SSLException) { kind = Kind.TLS_FAILURE; break; }
+            if (t instanceof SocketTimeoutException) { kind = Kind.CONNECT_TIMEOUT; break; }
+            if (t instanceof IOException) { kind = Kind.NETWORK_ERROR; break; } // 连接被拒绝、被重置、无路由 ...
+            if (t instanceof SendFailedException) { kind = Kind.PERMANENT_5XX; } // 没有返回码的收件人错误，继续看底层原因
+        }
+        return new SendResult(kind, code, e.getMessage(), timings != null ? timings : NO_TIMINGS);
+    }
+
+    // 按 SMTP 返回码归类。552 (以及增强状态码 5.3.4) 表示邮件超过服务器允许的大小
+    static Kind kindForCode(int code, String message) {
+        if (code == 552 || (message != null && message.contains("5.3.4"))) return Kind.MESSAGE_TOO_LARGE;
+        if (code >= 400 && code < 500) return Kind.TRANSIENT_4XX;
+        if (code >= 500 && code < 600) return Kind.PERMANENT_5XX;
+        return Kind.UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return kind + (smtpCode > 0 ? " (" + smtpCode + ")" : "") + " [" + timings + "]"
+                + (detail != null ? ": " + detail : "");
+    }
+}
@@ -5,7 +5,6 @@ import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
-import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
@@ -30,13 +29,15 @@ public class SettingsActivity extends AppCompatActivity {
     private TextInputEditText passwordEditText;
     private TextInputLayout passwordInputLayout;
 
+    private SwitchCompat phoneStateDiagnosticsSwitch;
+
     private Button saveSettingsButton;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_settings);
-        Log.d(TAG, "onCreate called");
+        AppLog.d(TAG, "onCreate called");
 
         // 初始化视图
         recipientEditText = findViewById(R.id.recipientEditText);
@@ -47,6 +48,7 @@ public class SettingsActivity extends AppCompatActivity {
         senderEditText = findViewById(R.id.senderEditText);
         passwordEditText = findViewById(R.id.passwordEditText);
         passwordInputLayout = findViewById(R.id.passwordInputLayout);
+        phoneStateDiagnosticsSwitch = findViewById(R.id.phoneStateDiagnosticsSwitch);
 
         // *** 为密码输入框添加文本变化监听器 ***
         passwordEditText.addTextChangedListener(new TextWatcher() {
@@ -78,7 +80,7 @@ public class SettingsActivity extends AppCompatActivity {
             // 在点击保存时调用验证方法
             if(validateAndSaveSettings()) {
                 Toast.makeText(SettingsActivity.this, "设置已保存", Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Settings saved by user.");
+                AppLog.d(TAG, "Settings saved by user.");
                 finish(); // 保存后关闭设置页面
             }
             // 如果验证失败，validateAndSaveSettings 会返回 false，Toast 和 finish 不会执行
@@ -94,6 +96,7 @@ public class SettingsActivity extends AppCompatActivity {
         googleVoiceEditText.setText(prefs.getString(IConstants.KEY_GV_RECIPIENT, ""));
         googleVoiceNotificationSwitch.setChecked(prefs.getBoolean(IConstants.KEY_GV_ENABLED, false));
         senderEditText.setText(prefs.getString(IConstants.KEY_EMAIL_SENDER, ""));
+        phoneStateDiagnosticsSwitch.setChecked(prefs.getBoolean(IConstants.KEY_PHONE_STATE_DIAGNOSTICS, false));
         // passwordEditText.setText(prefs.getString(IConstants.KEY_SEND_PASSWORD, ""));
         passwordEditText.setText(""); // 清空输入框
         passwordEditText.setHint("留空表示不修改密码"); // 可以设置一个提示
@@ -117,7 +120,7 @@ public class SettingsActivity extends AppCompatActivity {
             recipientEditText.setError("接收邮件地址不能为空");
             // 需要获取父级的 TextInputLayout 来设置错误
             // ((TextInputLayout) passwordEditText.getParent().getParent()).setError("密码不能为空"); // 示例，可能需要根据实际布局调整
-            Log.w(TAG, "Validation failed: Email recipient is empty.");
+            AppLog.w(TAG, "Validation failed: Email recipient is empty.");
             return false; // 验证失败
         }
 
@@ -127,7 +130,7 @@ public class SettingsActivity extends AppCompatActivity {
             // Google Voice 收件箱为空，提示用户
             Toast.makeText(this, "GV电话地址不能为空", Toast.LENGTH_SHORT).show();
             googleVoiceEditText.setError("GV电话地址不能为空");
-            Log.w(TAG, "Validation failed: Google Voice recipient is empty.");
+            AppLog.w(TAG, "Validation failed: Google Voice recipient is empty.");
             return false; // 验证失败
         }
 
@@ -148,7 +151,7 @@ public class SettingsActivity extends AppCompatActivity {
                 // 发件箱为空，提示用户
                 Toast.makeText(this, "发送邮箱不能为空！", Toast.LENGTH_SHORT).show();
                 senderEditText.setError("发送邮箱不能为空");
-                Log.w(TAG, "Validation failed: Email sender is empty.");
+                AppLog.w(TAG, "Validation failed: Email sender is empty.");
                 return false; // 验证失败
             }
             // 验证密码是否为空
@@ -162,7 +165,7 @@ public class SettingsActivity extends AppCompatActivity {
                         passwordInputLayout.setError("密码不能为空");
                         passwordInputLayout.setErrorEnabled(true); // 确保错误提示是启用的
                     }
-                    Log.w(TAG, "Validation failed: Password is empty.");
+                    AppLog.w(TAG, "Validation failed: Password is empty.");
                     return false; // 验证失败
                 }
             } else {
@@ -182,10 +185,24 @@ public class SettingsActivity extends AppCompatActivity {
         if(passwdChanged) {
             editor.putString(IConstants.KEY_SEND_PASSWORD, enteredPassword);
         }
+        boolean diagnosticsEnabled = phoneStateDiagnosticsSwitch.isChecked();
+        boolean diagnosticsChanged = diagnosticsEnabled != prefs.getBoolean(IConstants.KEY_PHONE_STATE_DIAGNOSTICS, false);
+        editor.putBoolean(IConstants.KEY_PHONE_STATE_DIAGNOSTICS, diagnosticsEnabled);
 
         editor.apply(); // apply() 是异步的，比 commit() 更推荐
 
-        Log.d(TAG, "Settings validated and saved.");
+        // 诊断模式开关变化: 启用/禁用 PhoneStateReceiver (关闭时系统不再投递 PHONE_STATE 广播)，关闭前把记录写入日志
+        if (diagnosticsChanged) {
+            if (!diagnosticsEnabled) {
+                String recentEvents = AppLog.dump(); // 同一时间段内的发送、网络等事件，便于对照 (先取出，不包含下面两行)
+                AppLog.i(TAG, "Phone state diagnostics:\n{}", PhoneStateDiagnostics.getDefault().dump());
+                AppLog.i(TAG, "Recent events:\n{}", recentEvents);
+                PhoneStateDiagnostics.getDefault().clear();
+            }
+            PhoneStateReceiver.setEnabled(this, diagnosticsEnabled);
+        }
+
+        AppLog.d(TAG, "Settings validated and saved.");
         return true; // 验证通过并保存成功
     }
 }
\ No newline at end of file
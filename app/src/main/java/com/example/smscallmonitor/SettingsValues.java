@@ -42,6 +42,13 @@ public class SettingsValues {
         return prefs.getString(IConstants.KEY_EMAIL_SENDER, "");
     }
 
+    // 获取来电广播诊断模式是否启用
+    public static boolean isPhoneStateDiagnosticsEnabled(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(IConstants.PREFS_NAME, Context.MODE_PRIVATE);
+        // 提供 false 作为默认值
+        return prefs.getBoolean(IConstants.KEY_PHONE_STATE_DIAGNOSTICS, false);
+    }
+
     // 获取发送邮件的地址
     public static String getSenderPasswd(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(IConstants.PREFS_NAME, Context.MODE_PRIVATE);
@@ -0,0 +1,47 @@
+package com.example.smscallmonitor;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 表名: SIM 卡 (版本 6 新增)
+// 每个 subId 一行，pending_events 只保存 subId，SIM 卡文字不再在每个事件中重复保存 (渲染时按 subId 连接查询)
+@Entity(tableName = "sims")
+public class SimCard {
+
+    @PrimaryKey
+    public int subId; // Subscription ID
+
+    public String label; // 邮件中显示的文字 (SimRegistry.describe)，例如 "中国移动 (ID: 1)"
+    public String displayName; // 系统设置中的名称，从旧版本数据回填的行为 null
+    public int slotIndex; // 卡槽 (从 0 开始)，未知时为 -1
+    public int color; // 系统为该卡设置的颜色 (ARGB)，未知时为 0
+    public long lastSeenAt; // 最后一次看到这张卡 (处于可用状态或有新事件) 的时间 (毫秒时间戳)
+
+    // --- 构造函数 (Room 需要一个无参构造) ---
+    public SimCard() {}
+
+    public SimCard(int subId, String label, String displayName, int slotIndex, int color, long lastSeenAt) {
+        this.subId = subId;
+        this.label = label;
+        this.displayName = displayName;
+        this.slotIndex = slotIndex;
+        this.color = color;
+        this.lastSeenAt = lastSeenAt;
+    }
+
+    /**
+     * SimRegistry 中当前可用的 SIM 卡对应的行
+     */
+    @NonNull
+    public static List<SimCard> fromRegistry(List<SimRegistry.Sim> sims, long now) {
+        List<SimCard> cards = new ArrayList<>(sims.size());
+        for (SimRegistry.Sim sim : sims) {
+            cards.add(new SimCard(sim.subId, sim.label, sim.displayName, sim.slotIndex, sim.color, now));
+        }
+        return cards;
+    }
+}
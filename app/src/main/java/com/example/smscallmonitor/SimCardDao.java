@@ -0,0 +1,24 @@
+package com.example.smscallmonitor;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface SimCardDao {
+
+    // 写入 SimRegistry 刷新得到的 SIM 卡 (已有的行整行替换为最新信息)
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(List<SimCard> cards);
+
+    // 所有 SIM 卡，按卡槽顺序 (未知卡槽的排在最后)
+    @Query("SELECT * FROM sims ORDER BY slotIndex < 0, slotIndex ASC, subId ASC")
+    List<SimCard> getAll();
+
+    // 按 subId 查找，没有时返回 null
+    @Query("SELECT * FROM sims WHERE subId = :subId")
+    SimCard get(int subId);
+}
@@ -0,0 +1,165 @@
+package com.example.smscallmonitor;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+
+import androidx.core.app.ActivityCompat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// SIM 卡信息缓存：只在服务开始监听时和 SIM 卡变化时 (OnSubscriptionsChangedListener) 从 SubscriptionManager 读取一次，
+// 每个事件按 subId 直接查内存，不再做权限检查和 getActiveSubscriptionInfo / getActiveSubscriptionInfoList 等跨进程调用。
+public class SimRegistry {
+
+    private static final String TAG = "SimRegistry"; // 日志 TAG
+
+    private static volatile SimRegistry defaultRegistry; // 进程内共享 (MonitorService 和 PhoneStateReceiver)
+
+    /**
+     * SIM 卡信息来源。生产环境使用 {@link AndroidSubscriptionSource}，测试中可替换为假实现。
+     */
+    public interface SubscriptionSource {
+        // 读取当前所有可用的 SIM 卡 (一次跨进程调用)，失败时返回 null
+        List<Sim> loadActiveSims();
+    }
+
+    /**
+     * 一张 SIM 卡的信息 (不可变)
+     */
+    public static final class Sim {
+        public final int subId;
+        public final int slotIndex; // 卡槽 (从 0 开始)
+        public final String displayName; // 系统设置中的名称，为空时使用 "SIM 卡槽号"
+        public final int color; // 系统为该卡设置的颜色 (ARGB)
+        public final String label; // 邮件中显示的文字，例如 "中国移动 (ID: 1)"
+
+        public Sim(int subId, int slotIndex, CharSequence displayName, int color) {
+            this.subId = subId;
+            this.slotIndex = slotIndex;
+            this.displayName = displayName != null && displayName.length() > 0 ? displayName.toString() : "SIM " + (slotIndex + 1);
+            this.color = color;
+            this.label = this.displayName + " (ID: " + subId + ")";
+        }
+    }
+
+    private final SubscriptionSource source;
+    private volatile Map<Integer, Sim> sims = Collections.emptyMap(); // 每次刷新整体替换，读取不加锁
+    private volatile List<Sim> simList = Collections.emptyList(); // 按卡槽顺序
+    private volatile boolean refreshed; // 是否已经读取过 (服务被系统重启时可能还没有调用 startMonitoring)
+
+    public static SimRegistry getDefault(Context context) {
+        if (defaultRegistry == null) {
+            synchronized (SimRegistry.class) {
+                if (defaultRegistry == null) {
+                    defaultRegistry = new SimRegistry(new AndroidSubscriptionSource(context.getApplicationContext()));
+                }
+            }
+        }
+        return defaultRegistry;
+    }
+
+    public SimRegistry(SubscriptionSource source) {
+        this.source = source;
+    }
+
+    /**
+     * 重新读取 SIM 卡信息 (服务开始监听时、SIM 卡变化时调用)
+     * @return 当前可用的 SIM 卡 (按卡槽顺序)；读取失败时保留之前的缓存并返回空列表
+     */
+    public List<Sim> refresh() {
+        refreshed = true;
+        List<Sim> loaded = source.loadActiveSims();
+        if (loaded == null) {
+            AppLog.w(TAG, ">>> Could not load active subscriptions, keeping {} cached SIM(s).", simList.size());
+            return Collections.emptyList();
+        }
+        List<Sim> sorted = new ArrayList<>(loaded);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.slotIndex, b.slotIndex));
+        Map<Integer, Sim> byId = new HashMap<>();
+        for (Sim sim : sorted) {
+            byId.put(sim.subId, sim);
+        }
+        simList = Collections.unmodifiableList(sorted);
+        sims = byId;
+        AppLog.i(TAG, ">>> SIM registry refreshed: {} active SIM(s).", sorted.size());
+        return simList;
+    }
+
+    /**
+     * 按 subId 查找 SIM 卡，未知时返回 null
+     */
+    public Sim get(int subId) {
+        ensureRefreshed();
+        return sims.get(subId);
+    }
+
+    /**
+     * 当前缓存的所有 SIM 卡 (按卡槽顺序)
+     */
+    public List<Sim> getAll() {
+        ensureRefreshed();
+        return simList;
+    }
+
+    /**
+     * 邮件中显示的 SIM 卡文字
+     */
+    public String describe(int subId) {
+        if (subId == SubscriptionManager.INVALID_SUBSCRIPTION_ID) return "未知SIM卡";
+        Sim sim = get(subId);
+        return sim != null ? sim.label : "SIM ID " + subId;
+    }
+
+    // 第一次查询时还没有读取过就读取一次 (之后只在 refresh() 时更新)
+    private void ensureRefreshed() {
+        if (!refreshed) {
+            synchronized (this) {
+                if (!refreshed) refresh();
+            }
+        }
+    }
+
+    /**
+     * 基于 SubscriptionManager 的 SIM 卡信息来源
+     */
+    public static class AndroidSubscriptionSource implements SubscriptionSource {
+        private final Context context;
+
+        public AndroidSubscriptionSource(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public List<Sim> loadActiveSims() {
+            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
+                AppLog.w(TAG, "loadActiveSims: No READ_PHONE_STATE permission.");
+                return null;
+            }
+            SubscriptionManager sm = (SubscriptionManager) context.getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
+            if (sm == null) {
+                AppLog.w(TAG, "loadActiveSims: SubscriptionManager is null.");
+                return null;
+            }
+            try {
+                List<SubscriptionInfo> infos = sm.getActiveSubscriptionInfoList();
+                List<Sim> result = new ArrayList<>();
+                if (infos != null) {
+                    for (SubscriptionInfo info : infos) {
+                        result.add(new Sim(info.getSubscriptionId(), info.getSimSlotIndex(), info.getDisplayName(), info.getIconTint()));
+                    }
+                }
+                return result;
+            } catch (SecurityException e) {
+                AppLog.e(TAG, "loadActiveSims: SecurityException getting active subscriptions: {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.smscallmonitor;
+
+import java.util.Locale;
+
+// SmsReceiver 和 MonitorService 之间的进程内交接：服务运行时 (已 attach) 短信直接交给服务处理，
+// 不再为每条短信发送一个 Intent 走 startForegroundService -> onStartCommand；
+// 服务没有运行时不在内存中暂存 (进程被杀会丢失)，由 SmsReceiver 先写入数据库再启动服务。
+// 同时统计接收器在主线程上的耗时和从收到广播到交给服务的延迟。
+public class SmsIngestQueue {
+
+    private static final SmsIngestQueue DEFAULT = new SmsIngestQueue();
+
+    /**
+     * 短信的处理方 (MonitorService)，在投递短信的线程上调用，应尽快返回
+     */
+    public interface Consumer {
+        void onSms(IncomingSms sms);
+    }
+
+    /**
+     * 一条完整的短信 (多段短信已合并)
+     */
+    public static final class IncomingSms {
+        public final String sender;
+        public final String body;
+        public final int subId;
+        public final long timestamp; // 短信中心时间戳 (毫秒)
+        public final long receivedAtNanos; // 收到广播的时间 (System.nanoTime)，用于统计延迟
+
+        public IncomingSms(String sender, String body, int subId, long timestamp, long receivedAtNanos) {
+            this.sender = sender;
+            this.body = body;
+            this.subId = subId;
+            this.timestamp = timestamp;
+            this.receivedAtNanos = receivedAtNanos;
+        }
+    }
+
+    private Consumer consumer;
+    private int rejected; // 服务未运行、由 SmsReceiver 写入数据库的短信数
+    private final PhoneStateDiagnostics.Timing receiverMainThread = new PhoneStateDiagnostics.Timing(); // onReceive 在主线程上的耗时
+    private final PhoneStateDiagnostics.Timing receiveToEnqueue = new PhoneStateDiagnostics.Timing(); // 收到广播到交给服务的延迟
+
+    public static SmsIngestQueue getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 投递一条短信。
+     * @return true 如果已交给运行中的服务；false 如果服务未运行，短信没有被接收 (调用方需要写入数据库并启动服务)
+     */
+    public synchronized boolean offer(IncomingSms sms) {
+        if (consumer == null) {
+            rejected++;
+            return false;
+        }
+        deliver(sms);
+        return true;
+    }
+
+    /**
+     * 服务开始接收短信
+     */
+    public synchronized void attach(Consumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * 服务停止接收短信 (只有当前的处理方才能解除)
+     */
+    public synchronized void detach(Consumer consumer) {
+        if (this.consumer == consumer) {
+            this.consumer = null;
+        }
+    }
+
+    public synchronized int getRejectedCount() {
+        return rejected;
+    }
+
+    // 在锁内调用，保证短信按到达顺序交给服务
+    private void deliver(IncomingSms sms) {
+        receiveToEnqueue.record(System.nanoTime() - sms.receivedAtNanos);
+        consumer.onSms(sms);
+    }
+
+    public PhoneStateDiagnostics.Timing getReceiverMainThreadTiming() {
+        return receiverMainThread;
+    }
+
+    public PhoneStateDiagnostics.Timing getReceiveToEnqueueTiming() {
+        return receiveToEnqueue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "main thread [%s], receive-to-enqueue [%s], journaled while stopped=%d",
+                receiverMainThread, receiveToEnqueue, getRejectedCount());
+    }
+}
@@ -2,34 +2,65 @@ package com.example.smscallmonitor;
 import android.content.*;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.provider.Telephony; // Import Telephony for Actions
 import android.telephony.SmsMessage;
 // import android.telephony.SubscriptionInfo; // 不再需要
 import android.telephony.SubscriptionManager;
-import android.util.Log; // Import Log
 import androidx.core.content.ContextCompat;
 
-// 广播接收器，负责监听系统发出的短信接收广播
+// 广播接收器，负责监听系统发出的短信接收广播。
+// 主线程上只调用 goAsync() 并把广播交给后台线程；PDU 解析、多段短信合并都在后台线程完成，
+// 完整的短信通过 SmsIngestQueue 交给运行中的 MonitorService (服务未运行时先写入数据库再启动服务)。
 public class SmsReceiver extends BroadcastReceiver {
     private static final String TAG = "SmsReceiver"; // 日志 TAG
 
+    private static Handler ingestHandler; // 解析短信的后台线程 (进程内共享，第一次收到短信时创建)
+
     @Override
     public void onReceive(Context context, Intent intent) {
+        long receivedAt = System.nanoTime();
         // 首先检查接收到的 Intent 的 Action 是否是短信接收 Action
         if (!Telephony.Sms.Intents.SMS_RECEIVED_ACTION.equals(intent.getAction())) {
             // 如果不是，记录警告并直接返回，不处理
-            Log.w(TAG,"Received intent with unexpected action: " + intent.getAction());
+            AppLog.w(TAG, "Received intent with unexpected action: {}", intent.getAction());
             return;
         }
 
-        Log.d(TAG, "SMS Received"); // 记录收到短信事件
+        // 延长广播的生命周期，在后台线程处理完后调用 finish()
+        PendingResult pendingResult = goAsync();
+        Context appContext = context.getApplicationContext();
+        getIngestHandler().post(() -> {
+            try {
+                ingest(appContext, intent, receivedAt);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+        SmsIngestQueue.getDefault().getReceiverMainThreadTiming().record(System.nanoTime() - receivedAt);
+    }
+
+    private static synchronized Handler getIngestHandler() {
+        if (ingestHandler == null) {
+            HandlerThread thread = new HandlerThread("SmsIngest", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            ingestHandler = new Handler(thread.getLooper());
+        }
+        return ingestHandler;
+    }
+
+    // 在后台线程解析短信并交给 MonitorService
+    private static void ingest(Context context, Intent intent, long receivedAt) {
+        AppLog.d(TAG, "SMS Received"); // 记录收到短信事件
         Bundle bundle = intent.getExtras(); // 获取 Intent 中的 Bundle 数据
         if (bundle != null) {
             // 从 Bundle 中提取 PDU (Protocol Data Unit) 数据，这是短信的原始格式
             Object[] pdus = (Object[]) bundle.get("pdus");
             // 显式检查 pdus 数组是否为 null，防止 NullPointerException
             if (pdus == null) {
-                Log.e(TAG, "pdus array is null in received SMS intent.");
+                AppLog.e(TAG, "pdus array is null in received SMS intent.");
                 return; // 如果为 null，无法处理，直接返回
             }
 
@@ -46,16 +77,16 @@ public class SmsReceiver extends BroadcastReceiver {
             // 如果主 key 不存在，尝试备用 key (适用于某些旧设备或系统)
             if (subId == SubscriptionManager.INVALID_SUBSCRIPTION_ID && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
                 subId = bundle.getInt("android.telephony.extra.SUBSCRIPTION_INDEX", SubscriptionManager.INVALID_SUBSCRIPTION_ID);
-                Log.d(TAG, "Used fallback 'android.telephony.extra.SUBSCRIPTION_INDEX' for subId: " + subId); // 记录使用了备用 key
+                AppLog.d(TAG, "Used fallback 'android.telephony.extra.SUBSCRIPTION_INDEX' for subId: {}", subId); // 记录使用了备用 key
             }
-            Log.d(TAG, "Received SMS on SubId: " + subId); // 记录获取到的 SubId
+            AppLog.d(TAG, "Received SMS on SubId: {}", subId); // 记录获取到的 SubId
 
 
             // 遍历所有的 PDU 数据 (一条长短信可能包含多个 PDU)
             for (Object pdu : pdus) {
                 byte[] pduBytes = (byte[]) pdu; // 将 PDU 对象转换为字节数组
                 if (pduBytes == null) {
-                    Log.w(TAG, "Skipping null PDU byte array."); // 跳过空的 PDU
+                    AppLog.w(TAG, "Skipping null PDU byte array."); // 跳过空的 PDU
                     continue;
                 }
 
@@ -69,7 +100,7 @@ public class SmsReceiver extends BroadcastReceiver {
                     }
                 } catch (Exception e) {
                     // 处理解析 PDU 时可能发生的异常
-                    Log.e(TAG, "Error creating SmsMessage from PDU: " + e.getMessage());
+                    AppLog.e(TAG, "Error creating SmsMessage from PDU: {}", e.getMessage());
                     continue; // 跳过这个无法解析的 PDU
                 }
 
@@ -80,7 +111,7 @@ public class SmsReceiver extends BroadcastReceiver {
                     message = currentMessage; // 保存第一个消息对象
                     sender = message.getDisplayOriginatingAddress(); // 获取显示的发件人号码
                     timestamp = message.getTimestampMillis(); // 获取短信中心的时间戳
-                    Log.d(TAG,"Extracted sender: " + sender + ", timestamp: " + timestamp); // 记录提取到的信息
+                    AppLog.d(TAG, "Extracted sender: {#}, timestamp: {}", sender, timestamp); // 记录提取到的信息
                 }
 
                 // 拼接短信内容
@@ -90,7 +121,7 @@ public class SmsReceiver extends BroadcastReceiver {
                     if (bodyPart != null) {
                         fullMessageContent.append(bodyPart); // 追加到完整内容中
                     } else {
-                        Log.w(TAG,"SMS message body part is null for a PDU."); // 记录某个 PDU 的消息体为空
+                        AppLog.w(TAG,"SMS message body part is null for a PDU."); // 记录某个 PDU 的消息体为空
                     }
                 }
             } // PDU 循环结束
@@ -98,37 +129,57 @@ public class SmsReceiver extends BroadcastReceiver {
             // 只有在成功获取到发件人号码并且有短信内容时，才继续处理
             if (sender != null && fullMessageContent.length() > 0) {
                 // 记录将要处理的完整短信信息
-                Log.d(TAG, "Processing complete SMS from: " + sender + " on SubId: " + subId + " with content length: " + fullMessageContent.length());
-
-                // --- 修改: 构建启动 MonitorService 的 Intent ---
-                Intent serviceIntent = new Intent(context, MonitorService.class);
-                // 设置 Action 为短信接收 Action，让 MonitorService 知道事件类型
-                serviceIntent.setAction(Telephony.Sms.Intents.SMS_RECEIVED_ACTION);
-                // 将提取到的短信数据放入 Intent 的 extras 中，传递给 Service
-                serviceIntent.putExtra("sender", sender); // 发件人
-                serviceIntent.putExtra("content", fullMessageContent.toString()); // 完整内容
-                serviceIntent.putExtra("subId", subId); // SIM 卡 ID
-                serviceIntent.putExtra("timestamp", timestamp); // 短信时间戳
-                // 不再需要传递 simInfo 字符串，MonitorService 会根据 subId 自行获取
-                Log.d(TAG,"Prepared service intent with SMS data to start MonitorService."); // 记录 Intent 准备完成
-                // --- 修改结束 ---
-
-                // 根据 Android 版本选择合适的启动服务方式
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) { // Android 8.0 (API 26) 及以上
-                    Log.d(TAG,"Starting foreground service for SMS processing."); // 记录启动前台服务
-                    // 使用 startForegroundService 启动，Service 内部需要在 5 秒内调用 startForeground
-                    ContextCompat.startForegroundService(context, serviceIntent);
-                } else { // Android 8.0 以下
-                    Log.d(TAG,"Starting background service for SMS processing."); // 记录启动后台服务
-                    context.startService(serviceIntent); // 直接启动服务
+                AppLog.d(TAG, "Processing complete SMS from: {#} on SubId: {} with content length: {}", sender, subId, fullMessageContent.length());
+
+                // 服务写入数据库、批处理的同时提前准备网络和 SMTP 连接
+                NetworkWarmer.getDefault(context).warmUp("sms");
+
+                SmsIngestQueue queue = SmsIngestQueue.getDefault();
+                SmsIngestQueue.IncomingSms sms = new SmsIngestQueue.IncomingSms(
+                        sender, fullMessageContent.toString(), subId, timestamp, receivedAt);
+                if (queue.offer(sms)) {
+                    AppLog.d(TAG, "SMS handed to running MonitorService. Ingest stats: {}", queue);
+                } else {
+                    startServiceFor(context, sms);
                 }
             } else {
                 // 如果遍历完所有 PDU 后，仍然缺少发件人或内容，则记录警告并不处理
-                Log.w(TAG, "SMS sender or message content is null/empty after processing all PDUs. Cannot process.");
+                AppLog.w(TAG, "SMS sender or message content is null/empty after processing all PDUs. Cannot process.");
             }
         } else {
             // 如果 Intent 中的 Bundle 为 null，记录警告
-            Log.w(TAG, "SMS received intent bundle is null.");
+            AppLog.w(TAG, "SMS received intent bundle is null.");
+        }
+    } // ingest 方法结束
+
+    // 服务未运行: 在 finish() 之前先把短信写入数据库 (进程被杀或服务启动失败也不会丢)，再启动服务补发
+    private static void startServiceFor(Context context, SmsIngestQueue.IncomingSms sms) {
+        PendingEventDao dao = AppDatabase.getDatabase(context).pendingEventDao();
+        PendingEvent event = new PendingEvent("SMS", sms.sender, sms.body, sms.timestamp,
+                SimRegistry.getDefault(context).describe(sms.subId), sms.subId);
+        boolean journaled = new EventJournal(dao).journalPending(event);
+
+        Intent serviceIntent = new Intent(context, MonitorService.class);
+        if (journaled) {
+            AppLog.d(TAG, "MonitorService not running, SMS journaled as event {}. Starting service to send it.", event.id);
+            serviceIntent.setAction(MonitorService.ACTION_INGEST_SMS);
+        } else {
+            // 写入数据库失败: 把短信放在 Intent 中交给服务 (handleSmsReceivedIntent)
+            AppLog.w(TAG, "MonitorService not running and SMS could not be journaled, passing it in the start intent.");
+            serviceIntent.setAction(Telephony.Sms.Intents.SMS_RECEIVED_ACTION);
+            serviceIntent.putExtra("sender", sms.sender);
+            serviceIntent.putExtra("content", sms.body);
+            serviceIntent.putExtra("subId", sms.subId);
+            serviceIntent.putExtra("timestamp", sms.timestamp);
+        }
+        try {
+            // 使用 startForegroundService 启动，Service 内部需要在 5 秒内调用 startForeground
+            ContextCompat.startForegroundService(context, serviceIntent);
+        } catch (RuntimeException e) {
+            AppLog.e(TAG, "Failed to start MonitorService for incoming SMS.", e);
+            if (journaled) {
+                DrainScheduler.schedule(context, dao); // 短信已在数据库中，由补发任务发送
+            }
         }
-    } // onReceive 方法结束
+    }
 } // SmsReceiver 类结束
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.example.smscallmonitor;
+
+
+// SMTP 熔断器：SMTP 明显不可用时暂停发送，不再为注定失败的尝试打开 Wi-Fi、握手、消耗电量。
+//   认证失败 (AuthenticationFailedException): 重试没有意义，立即熔断较长时间；用户修改了发件人或密码后立即恢复。
+//   网络等临时错误: 连续失败达到阈值后熔断，熔断时间逐次加倍 (有上限)。
+// 熔断时间到后进入半开状态，只放行一次试探发送，成功则关闭熔断器，失败则重新熔断。
+public class SmtpCircuitBreaker {
+
+    private static final String TAG = "SmtpCircuitBreaker"; // 日志 TAG
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long baseOpenMs;
+    private final long maxOpenMs;
+    private final long authOpenMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int openCount; // 连续熔断的次数 (用于加倍熔断时间)
+    private long openUntil; // 单调时钟毫秒
+    private String authFailedCredentials; // 认证失败时的凭证 (凭证变化后不再熔断)
+    private boolean probeInFlight; // 半开状态下是否已放行了试探发送
+
+    /**
+     * @param failureThreshold 连续多少次临时错误后熔断
+     * @param baseOpenMs 第一次熔断的时间 (之后逐次加倍)
+     * @param maxOpenMs 临时错误熔断时间的上限
+     * @param authOpenMs 认证失败后的熔断时间
+     */
+    public SmtpCircuitBreaker(int failureThreshold, long baseOpenMs, long maxOpenMs, long authOpenMs) {
+        this.failureThreshold = failureThreshold;
+        this.baseOpenMs = baseOpenMs;
+        this.maxOpenMs = maxOpenMs;
+        this.authOpenMs = authOpenMs;
+    }
+
+    /**
+     * 是否允许用这个凭证发送。半开状态下只放行一次试探。
+     * @param credentials 发件人凭证的标识 (发件人 + 密码)
+     * @param now 单调时钟毫秒
+     */
+    public synchronized boolean allowRequest(String credentials, long now) {
+        if (state == State.CLOSED) return true;
+        if (authFailedCredentials != null && !authFailedCredentials.equals(credentials)) {
+            AppLog.i(TAG, ">>> Sender credentials changed since authentication failure, closing circuit.");
+            reset();
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (now < openUntil) return false;
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+            AppLog.i(TAG, ">>> Circuit half-open, allowing one probe send.");
+        }
+        if (probeInFlight) return false;
+        probeInFlight = true;
+        return true;
+    }
+
+    /**
+     * 是否处于熔断中 (不改变状态，用于发送前决定要不要打开网络)
+     */
+    public synchronized boolean isOpen(String credentials, long now) {
+        if (state == State.CLOSED) return false;
+        if (authFailedCredentials != null && !authFailedCredentials.equals(credentials)) return false;
+        if (state == State.OPEN) return now < openUntil;
+        return probeInFlight; // 半开: 试探发送进行中
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) AppLog.i(TAG, ">>> Probe send succeeded, closing circuit.");
+        reset();
+    }
+
+    /**
+     * 认证失败: 立即熔断 authOpenMs，直到凭证改变
+     */
+    public synchronized void recordAuthFailure(String credentials, long now) {
+        authFailedCredentials = credentials;
+        open(authOpenMs, now);
+        AppLog.w(TAG, ">>> Authentication failed, circuit open for {}ms or until credentials change.", authOpenMs);
+    }
+
+    /**
+     * 临时错误 (网络、超时、服务器暂时不可用): 连续达到阈值后熔断；半开状态下的试探失败立即重新熔断
+     */
+    public synchronized void recordTransientFailure(long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            int shift = Math.min(openCount, 20);
+            long openMs = Math.min(maxOpenMs, baseOpenMs << shift);
+            openCount++;
+            open(openMs, now);
+            AppLog.w(TAG, ">>> {} consecutive transient failure(s), circuit open for {}ms.", consecutiveFailures, openMs);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long openMs, long now) {
+        state = State.OPEN;
+        openUntil = now + openMs;
+        probeInFlight = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openCount = 0;
+        openUntil = 0;
+        authFailedCredentials = null;
+        probeInFlight = false;
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.smscallmonitor;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.net.SocketFactory;
+
+// SMTP 连接池：按 (渠道, 发件人凭证) 复用已认证的 Transport，
+// 避免每封邮件都重新走一遍 TCP 连接 + STARTTLS 握手 + AUTH。
+// 同一个 Transport 不能并发发送，因此每个渠道 (邮件、Google Voice) 各用一个连接，一个渠道卡住不会挡住另一个。
+public class SmtpConnectionPool {
+
+    private static final String TAG = "SmtpConnectionPool"; // 日志 TAG
+
+    private static volatile SmtpConnectionPool gmailPool; // 默认的 Gmail 连接池 (EmailSender 使用)
+
+    private final Properties baseProps; // SMTP 服务器配置 (所有凭证共用)
+    private final long idleTimeoutMs; // 连接空闲多久后主动关闭
+    private final long healthCheckIntervalMs; // 连接空闲超过此时间，复用前先发 NOOP 检查
+    private final Map<String, Session> sessions = new HashMap<>(); // key: 发件人凭证
+    private final Map<String, PooledConnection> connections = new HashMap<>(); // key: 渠道 + 发件人凭证
+    private final ScheduledExecutorService idleReaper; // 负责关闭空闲连接的后台线程
+    private final AtomicInteger handshakeCount = new AtomicInteger(); // 完整握手 (connect) 的次数
+
+    // 单个 (渠道, 凭证) 对应的连接
+    private static class PooledConnection {
+        final String channel;
+        final Session session; // 连接自己的 Session (socket 由 sockets 创建)
+        final TrackingSocketFactory sockets;
+        Transport transport;
+        long lastUsedAt; // 上次使用的时间 (elapsed 毫秒)
+        ScheduledFuture<?> idleCloseFuture;
+
+        PooledConnection(String channel, Session session, TrackingSocketFactory sockets) {
+            this.channel = channel;
+            this.session = session;
+            this.sockets = sockets;
+        }
+    }
+
+    // 记录最近创建的 socket，abort() 时在其他线程上直接关闭它。
+    // 发送卡住时不能用 Transport.close() (它与 sendMessage() 使用同一把锁)，关闭 socket 后阻塞的读写立即抛出异常。
+    private static final class TrackingSocketFactory extends SocketFactory {
+        private final SocketFactory delegate = SocketFactory.getDefault();
+        private volatile Socket socket;
+
+        private Socket track(Socket s) {
+            socket = s;
+            return s;
+        }
+
+        @Override public Socket createSocket() throws IOException { return track(delegate.createSocket()); }
+        @Override public Socket createSocket(String host, int port) throws IOException { return track(delegate.createSocket(host, port)); }
+        @Override public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return track(delegate.createSocket(host, port, localHost, localPort));
+        }
+        @Override public Socket createSocket(InetAddress host, int port) throws IOException { return track(delegate.createSocket(host, port)); }
+        @Override public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return track(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        void closeSocket() {
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    AppLog.d(TAG, ">>> Ignoring error while aborting SMTP socket: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取 Gmail 的默认连接池 (smtp.gmail.com:587, STARTTLS + AUTH)
+     */
+    public static SmtpConnectionPool getGmailPool() {
+        if (gmailPool == null) {
+            synchronized (SmtpConnectionPool.class) {
+                if (gmailPool == null) {
+                    Properties props = new Properties();
+                    props.put("mail.smtp.auth", "true"); // 需要认证
+                    props.put("mail.smtp.starttls.enable", "true"); // 启用 STARTTLS 加密
+                    props.put("mail.smtp.host", "smtp.gmail.com"); // Gmail SMTP 服务器地址
+                    props.put("mail.smtp.port", "587"); // Gmail SMTP TLS 端口
+                    // 添加超时设置，防止长时间阻塞 (单位：毫秒)
+                    props.put("mail.smtp.connectiontimeout", "20000"); // 连接超时 20 秒
+                    props.put("mail.smtp.timeout", "20000");           // 读取/写入超时 20 秒
+                    gmailPool = new SmtpConnectionPool(props, IConstants.SMTP_IDLE_TIMEOUT_MS, IConstants.SMTP_HEALTH_CHECK_INTERVAL_MS);
+                }
+            }
+        }
+        return gmailPool;
+    }
+
+    /**
+     * @param baseProps SMTP 配置 (host/port/auth/starttls/超时等)
+     * @param idleTimeoutMs 连接空闲多久后关闭
+     * @param healthCheckIntervalMs 连接空闲超过此时间时，复用前先用 NOOP 检查连接是否还活着
+     */
+    public SmtpConnectionPool(Properties baseProps, long idleTimeoutMs, long healthCheckIntervalMs) {
+        this.baseProps = baseProps;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        this.idleReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "smtp-idle-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 获取凭证对应的 Session，用于构建 MimeMessage。同一凭证始终返回同一个 Session。
+     */
+    public synchronized Session getSession(String sender, String passwd) {
+        return sessionFor(sender, passwd);
+    }
+
+    /**
+     * 使用渠道自己的连接发送邮件。连接不存在或已失效时才会重新握手。
+     * 复用的连接发送失败时，会关闭并重连一次后重发。
+     * @param channel 渠道名称 (DeliveryChannel.name())，不同渠道使用不同的连接，可以同时发送
+     * @throws MessagingException 连接/认证/发送失败
+     */
+    public void send(Message message, String channel, String sender, String passwd) throws MessagingException {
+        send(message, channel, sender, passwd, null);
+    }
+
+    /**
+     * 同 send，并记录各阶段耗时
+     * @param timings 各阶段耗时写入这里 (可为 null)；连接失败时也会记录连接耗时
+     */
+    public void send(Message message, String channel, String sender, String passwd, SendResult.Timings timings) throws MessagingException {
+        if (timings == null) timings = new SendResult.Timings();
+        message.saveChanges(); // Transport.send() 会自动调用，直接 sendMessage() 时需要手动调用
+        PooledConnection conn;
+        synchronized (this) {
+            conn = getOrCreate(channel, sender, passwd);
+        }
+        synchronized (conn) { // 同一个 Transport 不能并发发送
+            boolean fresh = ensureConnected(conn, timings);
+            long sendStart = now();
+            try {
+                checkNotCancelled();
+                conn.transport.sendMessage(message, message.getAllRecipients());
+            } catch (MessagingException e) {
+                if (e instanceof SendFailedException && !isConnectionLost(e)) {
+                    throw e; // 收件人被拒绝等，与连接状态无关，不重连
+                }
+                if (fresh || Thread.currentThread().isInterrupted()) {
+                    closeQuietly(conn); // 新建的连接也失败，或发送已被取消 (abort)，不再重试，交给调用方处理
+                    throw e;
+                }
+                // 复用的连接可能已被服务器断开，重连一次再发
+                AppLog.w(TAG, ">>> Send on reused SMTP connection failed ({}), reconnecting once...", e.getMessage());
+                closeQuietly(conn);
+                ensureConnected(conn, timings);
+                sendStart = now();
+                try {
+                    checkNotCancelled();
+                    conn.transport.sendMessage(message, message.getAllRecipients());
+                } catch (MessagingException retryException) {
+                    closeQuietly(conn);
+                    throw retryException;
+                }
+            }
+            conn.lastUsedAt = now();
+            timings.sendMs = conn.lastUsedAt - sendStart;
+            scheduleIdleClose(conn);
+        }
+    }
+
+    /**
+     * 预先建立 (或检查) 渠道对应的连接，之后的 send 直接复用，不再握手。失败时只记录日志。
+     * @return true 如果连接已就绪
+     */
+    public boolean warmUp(String channel, String sender, String passwd) {
+        PooledConnection conn;
+        synchronized (this) {
+            conn = getOrCreate(channel, sender, passwd);
+        }
+        synchronized (conn) {
+            try {
+                ensureConnected(conn, new SendResult.Timings());
+                scheduleIdleClose(conn);
+                return true;
+            } catch (MessagingException e) {
+                AppLog.w(TAG, ">>> SMTP warm-up failed: {}", e.getMessage());
+                closeQuietly(conn);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 中止渠道上正在进行的发送 (在其他线程上调用，不等待发送线程释放连接)。
+     * 调用方应先中断发送线程: 被中断的发送不会重连重发，尚未开始写出的邮件也不会再发送。
+     */
+    public void abort(String channel) {
+        List<PooledConnection> aborted = new ArrayList<>();
+        synchronized (this) {
+            for (PooledConnection conn : connections.values()) {
+                if (conn.channel.equals(channel)) aborted.add(conn);
+            }
+        }
+        for (PooledConnection conn : aborted) {
+            conn.sockets.closeSocket();
+        }
+        AppLog.w(TAG, ">>> Aborted SMTP send on channel {}.", channel);
+    }
+
+    /**
+     * 关闭所有连接 (服务销毁时调用)
+     */
+    public void closeAll() {
+        Map<String, PooledConnection> snapshot;
+        synchronized (this) {
+            snapshot = new HashMap<>(connections);
+        }
+        for (PooledConnection conn : snapshot.values()) {
+            synchronized (conn) {
+                closeQuietly(conn);
+            }
+        }
+        AppLog.d(TAG, ">>> All pooled SMTP connections closed.");
+    }
+
+    /**
+     * 已经进行的完整握手 (TCP + STARTTLS + AUTH) 次数，用于统计和测试
+     */
+    public int getHandshakeCount() {
+        return handshakeCount.get();
+    }
+
+    // 获取或创建凭证对应的 Session (构建邮件用)，同一凭证的各渠道共用 (调用方需持有 this 的锁)
+    private Session sessionFor(String sender, String passwd) {
+        String key = sender + "\n" + passwd;
+        Session session = sessions.get(key);
+        if (session == null) {
+            session = newSession(baseProps, sender, passwd);
+            sessions.put(key, session);
+        }
+        return session;
+    }
+
+    private static Session newSession(Properties props, String sender, String passwd) {
+        return Session.getInstance(props,
+                new javax.mail.Authenticator() { // 匿名内部类实现认证器
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return new PasswordAuthentication(sender, passwd);
+                    }
+                });
+    }
+
+    // 获取或创建 (渠道, 凭证) 对应的连接记录 (调用方需持有 this 的锁)
+    // 每个连接使用自己的 socket 工厂，abort() 只关闭该渠道的 socket
+    private PooledConnection getOrCreate(String channel, String sender, String passwd) {
+        String key = channel + "\n" + sender + "\n" + passwd;
+        PooledConnection conn = connections.get(key);
+        if (conn == null) {
+            TrackingSocketFactory sockets = new TrackingSocketFactory();
+            Properties props = new Properties();
+            props.putAll(baseProps);
+            props.put("mail.smtp.socketFactory", sockets); // STARTTLS 在这个 socket 之上建立 TLS
+            conn = new PooledConnection(channel, newSession(props, sender, passwd), sockets);
+            connections.put(key, conn);
+        }
+        return conn;
+    }
+
+    // 服务器在回复命令前断开了连接 (JavaMail 读到 EOF 时返回码为 -1，同样以 SendFailedException 抛出)
+    private static boolean isConnectionLost(MessagingException e) {
+        return e instanceof SMTPSendFailedException && ((SMTPSendFailedException) e).getReturnCode() < 0;
+    }
+
+    // 发送线程已被中断 (DeliveryDispatcher 超时取消) 时不再开始写出邮件
+    private static void checkNotCancelled() throws MessagingException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new MessagingException("SMTP send cancelled");
+        }
+    }
+
+    /**
+     * 确保连接可用 (调用方需持有 conn 的锁)
+     * @return true 如果本次新建了连接，false 如果复用了已有连接
+     */
+    private boolean ensureConnected(PooledConnection conn, SendResult.Timings timings) throws MessagingException {
+        if (conn.transport != null) {
+            if (now() - conn.lastUsedAt < healthCheckIntervalMs) {
+                return false; // 刚用过，直接复用
+            }
+            // 空闲了一段时间，SMTPTransport.isConnected() 会发送 NOOP 确认服务器还在
+            long checkStart = now();
+            boolean alive = conn.transport.isConnected();
+            timings.healthCheckMs = now() - checkStart;
+            if (alive) {
+                AppLog.d(TAG, ">>> Reusing pooled SMTP connection (NOOP health check passed).");
+                return false;
+            }
+            AppLog.d(TAG, ">>> Pooled SMTP connection failed NOOP health check, reconnecting...");
+        }
+        closeQuietly(conn);
+        Transport transport = conn.session.getTransport("smtp");
+        long start = now();
+        try {
+            transport.connect(); // 使用 Session 的 Authenticator 认证
+        } finally {
+            timings.connectMs = now() - start; // 失败时也记录 (用于区分连接超时和立即被拒绝)
+        }
+        handshakeCount.incrementAndGet();
+        conn.transport = transport;
+        conn.lastUsedAt = now();
+        AppLog.d(TAG, ">>> SMTP connection established in {}ms.", timings.connectMs);
+        return true;
+    }
+
+    // 安排空闲关闭任务，每次使用后重新计时 (调用方需持有 conn 的锁)
+    private void scheduleIdleClose(PooledConnection conn) {
+        if (conn.idleCloseFuture != null) {
+            conn.idleCloseFuture.cancel(false);
+        }
+        conn.idleCloseFuture = idleReaper.schedule(() -> {
+            synchronized (conn) {
+                if (conn.transport != null && now() - conn.lastUsedAt >= idleTimeoutMs) {
+                    AppLog.d(TAG, ">>> Closing idle SMTP connection.");
+                    closeQuietly(conn);
+                }
+            }
+        }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    // 关闭连接并忽略异常 (调用方需持有 conn 的锁)
+    private static void closeQuietly(PooledConnection conn) {
+        if (conn.transport != null) {
+            try {
+                conn.transport.close();
+            } catch (Exception e) {
+                AppLog.d(TAG, ">>> Ignoring error while closing SMTP connection: {}", e.getMessage());
+            }
+            conn.transport = null;
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000L; // 单调时钟，测试中也可用
+    }
+}
@@ -1,15 +1,73 @@
 package com.example.smscallmonitor;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DecimalStyle;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// 时间格式化工具: "yyyy-MM-dd HH:mm:ss"，按当前默认时区和语言区域 (与之前每次 new SimpleDateFormat 的输出一致)。
+// DateTimeFormatter 不可变、线程安全，每个语言区域只创建一次 (FORMATTERS)；另外缓存最近格式化的那一秒，
+// 同一秒内的多个事件 (突发短信、同一封报告里的报告时间) 直接复用结果。
 public class TimeUtil {
+
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    // 语言区域 -> 格式化器 (设备上通常只会出现一两个语言区域)
+    private static final ConcurrentMap<Locale, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>(4);
+
+    // 最近一次格式化的结果 (整体替换，读写都无需加锁)
+    private static final class CachedSecond {
+        final long epochSecond;
+        final Locale locale;
+        final String text;
+
+        CachedSecond(long epochSecond, Locale locale, String text) {
+            this.epochSecond = epochSecond;
+            this.locale = locale;
+            this.text = text;
+        }
+    }
+
+    private static volatile CachedSecond lastFormatted;
+
     public static String getCurrentFormattedTime() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        Date now = new Date();
-        return sdf.format(now);
+        return formatMillis(System.currentTimeMillis());
     }
     public static String getFormattedTimeFromDate(Date datetime) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        return sdf.format(datetime);
+        return formatMillis(datetime.getTime());
+    }
+
+    /**
+     * 把毫秒时间戳格式化为 "yyyy-MM-dd HH:mm:ss" (线程安全)
+     */
+    public static String formatMillis(long epochMillis) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000L);
+        Locale locale = Locale.getDefault();
+        CachedSecond cached = lastFormatted;
+        if (cached != null && cached.epochSecond == epochSecond && cached.locale.equals(locale)) {
+            return cached.text; // 同一秒: 直接复用
+        }
+        // 时区只在换秒时检查 (ZoneId.systemDefault() 每次都会复制 TimeZone)，用户切换时区后下一秒起生效
+        ZoneId zone = ZoneId.systemDefault();
+        String text = formatterFor(locale).format(Instant.ofEpochSecond(epochSecond).atZone(zone));
+        lastFormatted = new CachedSecond(epochSecond, locale, text);
+        return text;
+    }
+
+    // 该语言区域的格式化器，第一次用到时创建
+    static DateTimeFormatter formatterFor(Locale locale) {
+        DateTimeFormatter formatter = FORMATTERS.get(locale);
+        if (formatter == null) {
+            formatter = FORMATTERS.computeIfAbsent(locale, TimeUtil::createFormatter);
+        }
+        return formatter;
+    }
+
+    // 与 SimpleDateFormat(PATTERN, locale) 一致: 数字使用该语言区域的数字字符
+    private static DateTimeFormatter createFormatter(Locale locale) {
+        return DateTimeFormatter.ofPattern(PATTERN, locale).withDecimalStyle(DecimalStyle.of(locale));
     }
 }
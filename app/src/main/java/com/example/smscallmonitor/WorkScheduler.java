@@ -0,0 +1,225 @@
+package com.example.smscallmonitor;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 后台任务调度器：按任务性质分成两条互不阻塞的通道 (lane)
+//   JOURNAL: 快速的数据库写入 (单线程，保证写入顺序)
+//   NETWORK: 可能很慢的网络 I/O (等待 Wi-Fi、SMTP 发送、补发)
+// 每条通道的队列有上限，按优先级出队 (未接来电、验证码优先)，队列满时交给调用方的溢出处理
+// (事件已写入数据库，溢出的发送任务只需把事件交给补发任务)。并统计队列深度和排队等待时间。
+public class WorkScheduler {
+
+    private static final String TAG = "WorkScheduler"; // 日志 TAG
+
+    public enum Lane {
+        JOURNAL("journal"),
+        NETWORK("network");
+
+        final String threadName;
+
+        Lane(String threadName) {
+            this.threadName = threadName;
+        }
+    }
+
+    // --- 优先级 (数值越小越先执行) ---
+    public static final int PRIORITY_HIGH = 0;   // 未接来电、验证码短信: 不受队列上限限制
+    public static final int PRIORITY_NORMAL = 1; // 普通事件
+    public static final int PRIORITY_LOW = 2;    // 补发等后台任务
+
+    /**
+     * 一条通道的统计 (线程安全的快照)
+     */
+    public static final class LaneMetrics {
+        private static final int WAIT_SAMPLES = 256; // 保留最近多少个排队等待时间样本
+
+        private final AtomicInteger depth = new AtomicInteger(); // 当前排队中的任务数
+        private final AtomicInteger maxDepth = new AtomicInteger();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong overflowed = new AtomicLong();
+        private final long[] waitSamples = new long[WAIT_SAMPLES]; // 环形缓冲区 (毫秒)
+        private int waitSampleCount;
+        private int waitNext;
+
+        public int getDepth() { return depth.get(); }
+        public int getMaxDepth() { return maxDepth.get(); }
+        public long getSubmitted() { return submitted.get(); }
+        public long getOverflowed() { return overflowed.get(); }
+
+        /**
+         * 最近样本中排队等待时间的分位数 (毫秒)，没有样本时返回 -1
+         * @param percentile 0-100
+         */
+        public synchronized long getWaitPercentileMs(int percentile) {
+            if (waitSampleCount == 0) return -1;
+            long[] sorted = Arrays.copyOf(waitSamples, waitSampleCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        synchronized void recordWait(long waitMs) {
+            waitSamples[waitNext] = waitMs;
+            waitNext = (waitNext + 1) % WAIT_SAMPLES;
+            waitSampleCount = Math.min(waitSampleCount + 1, WAIT_SAMPLES);
+        }
+
+        void onEnqueued() {
+            submitted.incrementAndGet();
+            int d = depth.incrementAndGet();
+            maxDepth.accumulateAndGet(d, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "depth=%d, maxDepth=%d, submitted=%d, overflowed=%d, wait p50=%dms p95=%dms",
+                    getDepth(), getMaxDepth(), getSubmitted(), getOverflowed(),
+                    getWaitPercentileMs(50), getWaitPercentileMs(95));
+        }
+    }
+
+    // 带优先级的任务: 先按优先级，同优先级按提交顺序
+    private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        final int priority;
+        final long sequence;
+        final long enqueuedAtNanos = System.nanoTime();
+        final Runnable task;
+        final Runnable onOverflow;
+        final LaneMetrics metrics;
+
+        PrioritizedTask(int priority, long sequence, Runnable task, Runnable onOverflow, LaneMetrics metrics) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+            this.onOverflow = onOverflow;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void run() {
+            metrics.depth.decrementAndGet();
+            metrics.recordWait((System.nanoTime() - enqueuedAtNanos) / 1_000_000L);
+            try {
+                task.run();
+            } catch (Exception e) {
+                AppLog.e(TAG, ">>> Uncaught exception in scheduled task.", e);
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) return Integer.compare(priority, other.priority);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Lane.values().length];
+    private final int[] capacities = new int[Lane.values().length];
+    private final LaneMetrics[] metrics = new LaneMetrics[Lane.values().length];
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param journalCapacity JOURNAL 通道的队列上限
+     * @param networkThreads NETWORK 通道的线程数 (多于 1 个时，一个卡住的发送不会挡住后面的紧急事件)
+     * @param networkCapacity NETWORK 通道的队列上限
+     */
+    public WorkScheduler(int journalCapacity, int networkThreads, int networkCapacity) {
+        createLane(Lane.JOURNAL, 1, journalCapacity);
+        createLane(Lane.NETWORK, networkThreads, networkCapacity);
+    }
+
+    private void createLane(Lane lane, int threads, int capacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executors[lane.ordinal()] = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, lane.threadName + "-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        capacities[lane.ordinal()] = capacity;
+        metrics[lane.ordinal()] = new LaneMetrics();
+    }
+
+    /**
+     * 提交任务。通道队列已满 (PRIORITY_HIGH 除外) 或调度器已关闭时，不执行 task，改为在调用线程上执行 onOverflow。
+     * @param lane 通道
+     * @param priority PRIORITY_HIGH / PRIORITY_NORMAL / PRIORITY_LOW
+     * @param task 任务
+     * @param onOverflow 溢出处理 (可为 null)；关闭时仍在排队的任务也会调用它
+     * @return true 如果任务已进入队列
+     */
+    public boolean submit(Lane lane, int priority, Runnable task, Runnable onOverflow) {
+        LaneMetrics laneMetrics = metrics[lane.ordinal()];
+        ThreadPoolExecutor executor = executors[lane.ordinal()];
+        if (priority != PRIORITY_HIGH && laneMetrics.getDepth() >= capacities[lane.ordinal()]) {
+            AppLog.w(TAG, ">>> {} lane is full ({} queued), overflowing task.", lane, laneMetrics.getDepth());
+            overflow(laneMetrics, onOverflow);
+            return false;
+        }
+        PrioritizedTask prioritized = new PrioritizedTask(priority, sequence.incrementAndGet(), task, onOverflow, laneMetrics);
+        laneMetrics.onEnqueued();
+        try {
+            executor.execute(prioritized);
+            return true;
+        } catch (RejectedExecutionException e) {
+            laneMetrics.depth.decrementAndGet();
+            AppLog.w(TAG, ">>> {} lane is shut down, overflowing task.", lane);
+            overflow(laneMetrics, onOverflow);
+            return false;
+        }
+    }
+
+    private static void overflow(LaneMetrics laneMetrics, Runnable onOverflow) {
+        laneMetrics.overflowed.incrementAndGet();
+        if (onOverflow != null) {
+            try {
+                onOverflow.run();
+            } catch (Exception e) {
+                AppLog.e(TAG, ">>> Exception in overflow handler.", e);
+            }
+        }
+    }
+
+    /**
+     * 通道统计 (队列深度、溢出次数、排队等待时间)
+     */
+    public LaneMetrics getMetrics(Lane lane) {
+        return metrics[lane.ordinal()];
+    }
+
+    /**
+     * 关闭调度器：NETWORK 通道中尚未开始的任务不再执行，改为调用各自的 onOverflow
+     * (可以把事件交给 JOURNAL 通道写回数据库)；之后 JOURNAL 通道执行完已排队的写入再结束。
+     * 正在执行的任务不会被中断。
+     */
+    public void shutdown() {
+        ThreadPoolExecutor network = executors[Lane.NETWORK.ordinal()];
+        network.shutdown(); // 不用 shutdownNow: 不中断正在进行的发送
+        List<Runnable> notStarted = new ArrayList<>();
+        network.getQueue().drainTo(notStarted);
+        for (Runnable runnable : notStarted) {
+            PrioritizedTask task = (PrioritizedTask) runnable;
+            task.metrics.depth.decrementAndGet();
+            overflow(task.metrics, task.onOverflow);
+        }
+        if (!notStarted.isEmpty()) {
+            AppLog.i(TAG, ">>> Handed {} queued network task(s) to their overflow handlers.", notStarted.size());
+        }
+        executors[Lane.JOURNAL.ordinal()].shutdown(); // 已提交的写入会继续完成
+    }
+
+    @Override
+    public String toString() {
+        return "journal[" + getMetrics(Lane.JOURNAL) + "], network[" + getMetrics(Lane.NETWORK) + "]";
+    }
+}
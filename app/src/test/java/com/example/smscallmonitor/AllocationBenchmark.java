@@ -0,0 +1,61 @@
+package com.example.smscallmonitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * 本地基准测试的小工具 (JMH 风格: 预热若干轮，再测量多轮取中位数)：测量一段代码的耗时和当前线程分配的字节数。
+ */
+final class AllocationBenchmark {
+
+    interface Body {
+        long run() throws Exception; // 返回值会被累加，防止 JIT 把整段代码优化掉
+    }
+
+    static final class Result {
+        final long nanos; // 中位数耗时
+        final long allocatedBytes; // 中位数分配字节数，不支持时为 -1
+
+        Result(long nanos, long allocatedBytes) {
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 9;
+
+    private AllocationBenchmark() {}
+
+    // 当前 JVM 是否支持按线程统计分配量
+    static boolean isAllocationCounterSupported() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+    }
+
+    static Result measure(Body body) throws Exception {
+        com.sun.management.ThreadMXBean mx = null;
+        if (isAllocationCounterSupported()) {
+            mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            mx.setThreadAllocatedMemoryEnabled(true);
+        }
+        long tid = Thread.currentThread().getId();
+        long blackhole = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) blackhole += body.run();
+
+        long[] nanos = new long[MEASURE_ROUNDS];
+        long[] bytes = new long[MEASURE_ROUNDS];
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long allocBefore = mx != null ? mx.getThreadAllocatedBytes(tid) : 0;
+            long start = System.nanoTime();
+            blackhole += body.run();
+            nanos[i] = System.nanoTime() - start;
+            bytes[i] = mx != null ? mx.getThreadAllocatedBytes(tid) - allocBefore : -1;
+        }
+        if (blackhole == 42) System.out.print(""); // 使用结果
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        return new Result(nanos[MEASURE_ROUNDS / 2], bytes[MEASURE_ROUNDS / 2]);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.smscallmonitor;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * AppLog 的本地测试：占位符替换、号码打码、级别过滤、最近事件缓冲区，以及每个事件的日志开销 (改造前后对比)。
+ */
+public class AppLogTest {
+
+    private static final int EVENTS = 10_000;
+
+    @After
+    public void restoreDefaults() {
+        AppLog.setMinLevel(Log.DEBUG);
+        AppLog.clearRecent();
+    }
+
+    @Test
+    public void formatReplacesPlaceholdersInOrder() {
+        assertEquals("a=1, b=x", AppLog.format("a={}, b={}", 1, "x", null, 2));
+        assertEquals("from 138****5678 on 2", AppLog.format("from {#} on {}", "13812345678", 2, null, 2));
+        assertEquals("only 1 {} and {#}", AppLog.format("only {} {} and {#}", 1, null, null, 1));
+        assertEquals("{not a placeholder} null", AppLog.format("{not a placeholder} {}", null, null, null, 1));
+    }
+
+    @Test
+    public void maskNumberKeepsOnlyHeadAndTail() {
+        assertEquals("138****5678", AppLog.maskNumber("13812345678"));
+        assertEquals("+86*******5678", AppLog.maskNumber("+8613812345678"));
+        assertEquals("****5678", AppLog.maskNumber("12345678"));
+        assertEquals("10086", AppLog.maskNumber("10086")); // 服务号码不打码
+        assertNull(AppLog.maskNumber(null));
+    }
+
+    @Test
+    public void filteredLevelsAreNotRecorded() {
+        AppLog.setMinLevel(Log.WARN);
+        assertFalse(AppLog.isDebugEnabled());
+        assertFalse(AppLog.isLoggable(Log.INFO));
+        AppLog.i("Test", "sent {} event(s)", 3);
+        AppLog.w("Test", "circuit open, {} pending", 5);
+        AppLog.Entry[] recent = AppLog.getRecent();
+        assertEquals(1, recent.length);
+        assertEquals(Log.WARN, recent[0].level);
+        assertEquals("circuit open, 5 pending", recent[0].message);
+    }
+
+    @Test
+    public void warnAndErrorAcceptUpToThreeArguments() {
+        AppLog.w("Test", "channels {} failed for {} event(s): {}", 2, 3, "timeout");
+        AppLog.e("Test", "subId {}: {}", 1, "boom");
+        AppLog.e("Test", "call from {#} on {} ({})", "13812345678", 2, "idle");
+        AppLog.e("Test", "failed to journal {} event(s)", 4, new RuntimeException("x")); // 最后一个参数是异常时不作为占位符参数
+        AppLog.Entry[] recent = AppLog.getRecent();
+        assertEquals(4, recent.length);
+        assertEquals("channels 2 failed for 3 event(s): timeout", recent[0].message);
+        assertEquals("subId 1: boom", recent[1].message);
+        assertEquals("call from 138****5678 on 2 (idle)", recent[2].message);
+        assertEquals("failed to journal 4 event(s): java.lang.RuntimeException: x", recent[3].message);
+    }
+
+    @Test
+    public void recentBufferKeepsInfoAndAboveOnly() {
+        AppLog.d("Test", "debug {}", 1);
+        for (int i = 0; i < IConstants.LOG_BUFFER_CAPACITY + 5; i++) {
+            AppLog.i("Test", "event {}", i);
+        }
+        AppLog.Entry[] recent = AppLog.getRecent();
+        assertEquals(IConstants.LOG_BUFFER_CAPACITY, recent.length);
+        assertEquals("event 5", recent[0].message);
+        assertEquals("event " + (IConstants.LOG_BUFFER_CAPACITY + 4), recent[recent.length - 1].message);
+        assertTrue(AppLog.dump().contains(" I/Test: event 5"));
+    }
+
+    @Test
+    public void benchmark_nsAndBytesPerEvent() throws Exception {
+        boolean countAllocations = AllocationBenchmark.isAllocationCounterSupported();
+        String sender = "+8613800138000";
+        Integer subId = 2;
+        AppLog.setMinLevel(Log.INFO); // 与 release 构建相同: DEBUG 级别关闭
+
+        // 改造前: 无论级别是否开启都先拼接字符串
+        AllocationBenchmark.Result before = AllocationBenchmark.measure(() -> {
+            long total = 0;
+            for (int i = 0; i < EVENTS; i++) {
+                total += Log.d("Test", ">>> Processing SMS event on SIM ID " + subId + " from " + sender);
+                total += Log.d("Test", ">>> Handling new event: Type=" + "SMS" + ", From=" + sender);
+            }
+            return total;
+        });
+        // 改造后: 级别关闭时只做一次比较
+        AllocationBenchmark.Result after = AllocationBenchmark.measure(() -> {
+            for (int i = 0; i < EVENTS; i++) {
+                AppLog.d("Test", ">>> Processing SMS event on SIM ID {} from {#}", subId, sender);
+                AppLog.d("Test", ">>> Handling new event: Type={}, From={#}", "SMS", sender);
+            }
+            return EVENTS;
+        });
+        // 级别开启时的格式化开销 (调试构建)
+        AppLog.setMinLevel(Log.DEBUG);
+        AllocationBenchmark.Result enabled = AllocationBenchmark.measure(() -> {
+            for (int i = 0; i < EVENTS; i++) {
+                AppLog.d("Test", ">>> Processing SMS event on SIM ID {} from {#}", subId, sender);
+                AppLog.d("Test", ">>> Handling new event: Type={}, From={#}", "SMS", sender);
+            }
+            return EVENTS;
+        });
+
+        for (Object[] row : new Object[][]{{"concat", before}, {"gated-off", after}, {"gated-on", enabled}}) {
+            AllocationBenchmark.Result result = (AllocationBenchmark.Result) row[1];
+            System.out.println(String.format(Locale.US, "%-10s %6d ns/event %6d bytes allocated/event", row[0],
+                    result.nanos / EVENTS, countAllocations ? result.allocatedBytes / EVENTS : -1));
+        }
+        if (countAllocations) {
+            // 级别关闭时不拼接、不装箱 (参数已经是对象)，每个事件不分配内存
+            assertTrue("gated-off: " + after.allocatedBytes + " bytes", after.allocatedBytes / EVENTS < 8);
+            assertTrue("concat: " + before.allocatedBytes + " bytes", before.allocatedBytes / EVENTS > 64);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * DedupCache 的本地测试：有效期内去重、过期后重新接受、容量上限，以及来电/短信键的规范化。
+ */
+public class DedupCacheTest {
+
+    @Test
+    public void duplicateWithinTtl_isRejected() {
+        DedupCache cache = new DedupCache(10_000, 8);
+        long key = DedupCache.callKey(1, "13800138000");
+        assertTrue(cache.firstSeen(key, 1_000));
+        assertFalse(cache.firstSeen(key, 5_000));
+        assertFalse(cache.firstSeen(key, 11_000)); // 正好 10 秒，仍在有效期内
+        assertTrue(cache.firstSeen(DedupCache.callKey(2, "13800138000"), 5_000)); // 另一张 SIM 卡
+    }
+
+    @Test
+    public void entriesExpireAfterTtl() {
+        DedupCache cache = new DedupCache(10_000, 8);
+        long key = DedupCache.callKey(1, "10086");
+        assertTrue(cache.firstSeen(key, 0));
+        assertEquals(1, cache.size(5_000));
+        assertEquals(0, cache.size(10_001));
+        assertFalse(cache.contains(key, 10_001));
+        assertTrue(cache.firstSeen(key, 10_001)); // 过期后重新接受
+    }
+
+    @Test
+    public void capacityBoundsMemory_oldestEntriesAreOverwritten() {
+        DedupCache cache = new DedupCache(Long.MAX_VALUE / 2, 16);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(cache.firstSeen(DedupCache.callKey(1, String.valueOf(1_000_000 + i)), i));
+        }
+        assertEquals(16, cache.capacity());
+        assertEquals(16, cache.size(10_000));
+        assertTrue(cache.contains(DedupCache.callKey(1, String.valueOf(1_000_000 + 9_999)), 10_000));
+        assertFalse(cache.contains(DedupCache.callKey(1, String.valueOf(1_000_000)), 10_000)); // 已被覆盖
+    }
+
+    @Test
+    public void clear_forgetsEverything() {
+        DedupCache cache = new DedupCache(10_000, 4);
+        long key = DedupCache.callKey(1, "10086");
+        cache.firstSeen(key, 0);
+        cache.clear();
+        assertEquals(0, cache.size(0));
+        assertTrue(cache.firstSeen(key, 1));
+    }
+
+    @Test
+    public void callKey_ignoresNumberFormatting() {
+        assertEquals(DedupCache.callKey(1, "+86 138-0013-8000"), DedupCache.callKey(1, "8613800138000"));
+        assertNotEquals(DedupCache.callKey(1, "13800138000"), DedupCache.callKey(1, "13800138001"));
+        assertEquals(DedupCache.callKey(1, null), DedupCache.callKey(1, ""));
+    }
+
+    @Test
+    public void smsKey_identifiesRedeliveries() {
+        long key = DedupCache.smsKey("+1 650-555-0100", 1_700_000_000_000L, "Your code is 123456");
+        assertEquals(key, DedupCache.smsKey("16505550100", 1_700_000_000_000L, "Your code is 123456"));
+        assertNotEquals(key, DedupCache.smsKey("16505550100", 1_700_000_000_001L, "Your code is 123456"));
+        assertNotEquals(key, DedupCache.smsKey("16505550100", 1_700_000_000_000L, "Your code is 123457"));
+    }
+
+    @Test
+    public void keysDoNotCollideForSequentialNumbers() {
+        Set<Long> seen = new HashSet<>();
+        for (int sub = 0; sub < 4; sub++) {
+            for (int i = 0; i < 25_000; i++) {
+                assertTrue(seen.add(DedupCache.callKey(sub, "138" + (10_000_000 + i))));
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.smscallmonitor;
+
+import android.content.Context;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * DeliveryDispatcher 的本地测试：各渠道并行发送、互不拖慢，已送达的渠道不重发；以及按失败类型的快速重试、拆分重发。
+ */
+public class DeliveryDispatcherTest {
+
+    // 可控的假渠道
+    private static class FakeChannel implements DeliveryChannel {
+        final int bit;
+        final String name;
+        volatile boolean enabled = true;
+        volatile boolean succeed = true;
+        volatile SendResult.Kind failureKind = SendResult.Kind.UNKNOWN; // succeed 为 false 时返回的失败类型
+        volatile int failuresBeforeSuccess; // 先失败几次 (failureKind) 再按 succeed 返回
+        volatile int maxEventsPerMessage = Integer.MAX_VALUE; // 超过时返回 MESSAGE_TOO_LARGE
+        volatile CountDownLatch rendezvous; // 不为 null 时，先到的渠道等其他渠道也进入 deliver 再返回
+        volatile CountDownLatch blockUntil; // 不为 null 时，阻塞直到计数归零 (模拟很慢的渠道)
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger aborts = new AtomicInteger();
+        final List<List<PendingEvent>> delivered = new ArrayList<>();
+
+        FakeChannel(int bit, String name) {
+            this.bit = bit;
+            this.name = name;
+        }
+
+        @Override public int bit() { return bit; }
+        @Override public String name() { return name; }
+        @Override public boolean isEnabled(Context context) { return enabled; }
+
+        @Override
+        public SendResult deliver(Context context, String subject, List<PendingEvent> events) {
+            calls.incrementAndGet();
+            try {
+                if (rendezvous != null) {
+                    rendezvous.countDown();
+                    if (!rendezvous.await(5, TimeUnit.SECONDS)) return SendResult.failure(SendResult.Kind.UNKNOWN, "channels not concurrent");
+                }
+                if (blockUntil != null) blockUntil.await();
+            } catch (InterruptedException e) {
+                return SendResult.failure(SendResult.Kind.UNKNOWN, "interrupted");
+            }
+            if (events.size() > maxEventsPerMessage) return SendResult.failure(SendResult.Kind.MESSAGE_TOO_LARGE, "552 5.3.4");
+            synchronized (delivered) { delivered.add(new ArrayList<>(events)); }
+            if (failuresBeforeSuccess > 0) {
+                failuresBeforeSuccess--;
+                return SendResult.failure(failureKind, "fake");
+            }
+            return succeed ? SendResult.success(null) : SendResult.failure(failureKind, "fake");
+        }
+
+        @Override public void abort() { aborts.incrementAndGet(); }
+    }
+
+    private final FakeChannel email = new FakeChannel(DeliveryChannel.BIT_EMAIL, "email");
+    private final FakeChannel gv = new FakeChannel(DeliveryChannel.BIT_GOOGLE_VOICE, "gv");
+
+    private DeliveryDispatcher dispatcher(long timeoutMs) {
+        return new DeliveryDispatcher(Arrays.asList(email, gv), 4, timeoutMs);
+    }
+
+    private static PendingEvent sms(int id) {
+        PendingEvent event = new PendingEvent("SMS", "10086", "msg " + id, 1_700_000_000_000L + id, "SIM1", 1);
+        event.id = id;
+        return event;
+    }
+
+    @Test
+    public void channelsRunConcurrently() {
+        CountDownLatch bothInside = new CountDownLatch(2); // 两个渠道同时处于 deliver 中才能都成功
+        email.rendezvous = bothInside;
+        gv.rendezvous = bothInside;
+        DeliveryDispatcher.Result result = dispatcher(10_000).deliver(null, "s", Arrays.asList(sms(1), sms(2)));
+
+        assertTrue(result.isAllDelivered());
+        assertEquals(DeliveryChannel.BIT_EMAIL | DeliveryChannel.BIT_GOOGLE_VOICE, result.requiredMask);
+    }
+
+    @Test
+    public void failedChannelIsRecordedSeparately() {
+        gv.succeed = false;
+        PendingEvent event = sms(1);
+        DeliveryDispatcher.Result result = dispatcher(5_000).deliver(null, "s", Arrays.asList(event));
+
+        assertFalse(result.isAllDelivered());
+        assertTrue(result.isAnyDelivered());
+        assertEquals(DeliveryChannel.BIT_GOOGLE_VOICE, result.failedMask);
+        assertEquals(DeliveryChannel.BIT_EMAIL, event.deliveredChannels);
+        assertFalse(result.isComplete(event));
+    }
+
+    @Test
+    public void retryOnlyResendsMissingChannels() {
+        DeliveryDispatcher dispatcher = dispatcher(5_000);
+        PendingEvent done = sms(1);
+        done.deliveredChannels = DeliveryChannel.BIT_EMAIL;
+        PendingEvent fresh = sms(2);
+
+        DeliveryDispatcher.Result result = dispatcher.deliver(null, "s", Arrays.asList(done, fresh));
+
+        assertTrue(result.isAllDelivered());
+        assertEquals(1, email.delivered.size());
+        assertEquals(Arrays.asList(fresh), email.delivered.get(0)); // 邮件只补发新事件
+        assertEquals(2, gv.delivered.get(0).size());
+        assertTrue(result.isComplete(done));
+        assertTrue(result.isComplete(fresh));
+    }
+
+    @Test
+    public void disabledChannelIsNeitherSentNorRequired() {
+        gv.enabled = false;
+        PendingEvent event = sms(1);
+        DeliveryDispatcher.Result result = dispatcher(5_000).deliver(null, "s", Arrays.asList(event));
+
+        assertEquals(0, gv.calls.get());
+        assertEquals(DeliveryChannel.BIT_EMAIL, result.requiredMask);
+        assertTrue(result.isComplete(event));
+    }
+
+    @Test
+    public void circuitOpenOnlyFailureIsRecognised() {
+        gv.succeed = false;
+        gv.failureKind = SendResult.Kind.CIRCUIT_OPEN; // 熔断半开: 邮件在试探，GV 被拒绝
+        PendingEvent event = sms(1);
+        DeliveryDispatcher.Result result = dispatcher(5_000).deliver(null, "s", Arrays.asList(event));
+
+        assertTrue(result.isOnlyCircuitOpen());
+        assertEquals(DeliveryChannel.BIT_EMAIL, event.deliveredChannels);
+
+        email.succeed = false; // 另一个渠道真正失败了，要计入尝试次数
+        assertFalse(dispatcher(5_000).deliver(null, "s", Arrays.asList(sms(2))).isOnlyCircuitOpen());
+        assertFalse(dispatcher(5_000).deliver(null, "s", Arrays.asList(sms(3))).isAllDelivered());
+    }
+
+    @Test
+    public void slowChannelTimesOutWithoutBlockingTheOther() {
+        CountDownLatch release = new CountDownLatch(1);
+        gv.blockUntil = release; // 在超时之前不会完成
+        PendingEvent event = sms(1);
+        try {
+            DeliveryDispatcher.Result result = dispatcher(1_000).deliver(null, "s", Arrays.asList(event));
+
+            assertEquals(DeliveryChannel.BIT_GOOGLE_VOICE, result.failedMask);
+            assertEquals(DeliveryChannel.BIT_EMAIL, result.succeededMask);
+            assertEquals(DeliveryChannel.BIT_EMAIL, event.deliveredChannels);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void timedOutChannelIsCancelledAndAborted() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FakeChannel stuck = new FakeChannel(DeliveryChannel.BIT_GOOGLE_VOICE, "gv") {
+            @Override
+            public SendResult deliver(Context context, String subject, List<PendingEvent> events) {
+                try {
+                    new CountDownLatch(1).await(); // 模拟卡在 SMTP DATA 阶段
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return SendResult.failure(SendResult.Kind.UNKNOWN, "aborted");
+            }
+        };
+        email.enabled = false; // 只看卡住的渠道
+        DeliveryDispatcher.Result result = new DeliveryDispatcher(Arrays.asList(email, stuck), 4, 50)
+                .deliver(null, "s", Arrays.asList(sms(1)));
+
+        assertEquals(DeliveryChannel.BIT_GOOGLE_VOICE, result.failedMask);
+        assertEquals(1, stuck.aborts.get()); // 超时后中止该渠道的连接
+        assertEquals(0, email.aborts.get());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS)); // 发送线程被中断，不会在之后把邮件发出去
+    }
+
+    @Test
+    public void fullQueueFailsOnlyThatChannel() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DeliveryChannel blocking = new FakeChannel(DeliveryChannel.BIT_GOOGLE_VOICE, "gv") {
+            @Override
+            public SendResult deliver(Context context, String subject, List<PendingEvent> events) {
+                try {
+                    return release.await(5, TimeUnit.SECONDS) ? SendResult.success(null) : SendResult.failure(SendResult.Kind.UNKNOWN, "timeout");
+                } catch (InterruptedException e) {
+                    return SendResult.failure(SendResult.Kind.UNKNOWN, "interrupted");
+                }
+            }
+        };
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(Arrays.asList(email, blocking), 1, 50);
+        dispatcher.deliver(null, "s", Arrays.asList(sms(1))); // 占住 GV 线程
+        dispatcher.deliver(null, "s", Arrays.asList(sms(2))); // 占住 GV 队列
+        PendingEvent event = sms(3);
+        DeliveryDispatcher.Result result = dispatcher.deliver(null, "s", Arrays.asList(event));
+        release.countDown();
+
+        assertEquals(DeliveryChannel.BIT_GOOGLE_VOICE, result.failedMask);
+        assertEquals(DeliveryChannel.BIT_EMAIL, event.deliveredChannels);
+    }
+
+    // --- 按失败类型重试 (EventSendHelper.deliverAdaptively) ---
+
+    @Test
+    public void fastRetry_resendsOnlyFailedChannelOnce() {
+        gv.failureKind = SendResult.Kind.CONNECT_TIMEOUT;
+        gv.failuresBeforeSuccess = 1;
+        PendingEvent event = sms(1);
+        DeliveryDispatcher.Result result = EventSendHelper.deliverAdaptively(dispatcher(5_000), null, "s", Arrays.asList(event), 10);
+
+        assertTrue(result.isAllDelivered());
+        assertTrue(result.isComplete(event));
+        assertEquals(1, email.calls.get());
+        assertEquals(2, gv.calls.get());
+    }
+
+    @Test
+    public void deferredFailure_isNotRetriedInline() {
+        gv.succeed = false;
+        gv.failureKind = SendResult.Kind.DNS_FAILURE;
+        DeliveryDispatcher.Result result = EventSendHelper.deliverAdaptively(dispatcher(5_000), null, "s", Arrays.asList(sms(1)), 10);
+
+        assertEquals(DeliveryChannel.BIT_GOOGLE_VOICE, result.failedMask);
+        assertEquals(SendResult.RetryAdvice.DEFERRED, result.retryAdvice());
+        assertTrue(result.isAnyDelivered());
+        assertEquals(1, gv.calls.get());
+    }
+
+    @Test
+    public void messageTooLarge_isSplitUntilItFits() {
+        email.maxEventsPerMessage = 3;
+        List<PendingEvent> events = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) events.add(sms(i));
+        DeliveryDispatcher.Result result = EventSendHelper.deliverAdaptively(dispatcher(5_000), null, "s", events, 10);
+
+        assertTrue(result.isAllDelivered());
+        int sent = 0;
+        for (List<PendingEvent> part : email.delivered) {
+            assertTrue(part.size() <= 3);
+            sent += part.size();
+        }
+        assertEquals(10, sent);
+        assertEquals(1, gv.delivered.size()); // GV 没有大小问题，第一次就发完
+        for (PendingEvent event : events) assertTrue(result.isComplete(event));
+    }
+
+    @Test
+    public void classifiesSmtpReplyCodes() {
+        assertEquals(SendResult.Kind.MESSAGE_TOO_LARGE, SendResult.kindForCode(552, "552-5.3.4 Your message exceeded Google's message size limits"));
+        assertEquals(SendResult.Kind.TRANSIENT_4XX, SendResult.kindForCode(421, "421 4.7.0 Try again later"));
+        assertEquals(SendResult.Kind.PERMANENT_5XX, SendResult.kindForCode(550, "550 5.4.5 Daily user sending quota exceeded"));
+        assertEquals(SendResult.RetryAdvice.FAST, SendResult.failure(SendResult.Kind.TRANSIENT_4XX, null).retryAdvice());
+        assertEquals(SendResult.Kind.DNS_FAILURE,
+                SendResult.classify(new javax.mail.MessagingException("connect", new java.net.UnknownHostException("smtp.gmail.com")), null).kind);
+        assertEquals(SendResult.Kind.TLS_FAILURE,
+                SendResult.classify(new javax.mail.MessagingException("STARTTLS", new javax.net.ssl.SSLHandshakeException("bad cert")), null).kind);
+        assertEquals(SendResult.Kind.CONNECT_TIMEOUT,
+                SendResult.classify(new javax.mail.MessagingException("connect", new java.net.SocketTimeoutException()), null).kind);
+        assertEquals(SendResult.Kind.AUTH_FAILURE,
+                SendResult.classify(new javax.mail.AuthenticationFailedException("535"), null).kind);
+    }
+}
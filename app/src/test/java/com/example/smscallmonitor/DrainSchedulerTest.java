@@ -0,0 +1,48 @@
+package com.example.smscallmonitor;
+
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.WorkInfo;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * DrainScheduler 的本地测试：根据最早的 nextAttemptAt 计算补发任务的延迟，以及按已有任务的状态选择安排方式。
+ */
+public class DrainSchedulerTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void initialDelay_noBacklogMeansNoWork() {
+        assertEquals(-1, DrainScheduler.initialDelayMs(null, NOW));
+    }
+
+    @Test
+    public void initialDelay_dueEventsRunImmediately() {
+        assertEquals(0, DrainScheduler.initialDelayMs(0L, NOW)); // 新事件 nextAttemptAt 为 0
+        assertEquals(0, DrainScheduler.initialDelayMs(NOW - 1_000, NOW));
+        assertEquals(0, DrainScheduler.initialDelayMs(NOW, NOW));
+    }
+
+    @Test
+    public void initialDelay_backoffOnlyWaitsForEarliestAttempt() {
+        assertEquals(90_000, DrainScheduler.initialDelayMs(NOW + 90_000, NOW));
+    }
+
+    @Test
+    public void policy_replacesOnlyWorkThatHasNotStarted() {
+        assertEquals(ExistingWorkPolicy.REPLACE, DrainScheduler.policyFor(EnumSet.noneOf(WorkInfo.State.class)));
+        assertEquals(ExistingWorkPolicy.REPLACE, DrainScheduler.policyFor(EnumSet.of(WorkInfo.State.ENQUEUED)));
+    }
+
+    @Test
+    public void policy_neverCancelsRunningDrain() {
+        assertEquals(ExistingWorkPolicy.APPEND_OR_REPLACE, DrainScheduler.policyFor(EnumSet.of(WorkInfo.State.RUNNING)));
+        assertEquals(ExistingWorkPolicy.KEEP,
+                DrainScheduler.policyFor(EnumSet.of(WorkInfo.State.RUNNING, WorkInfo.State.BLOCKED)));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventBatcher 的本地测试：按数量、安静窗口和最大延迟三种条件触发发送。
+ */
+public class EventBatcherTest {
+
+    private final List<EventBatcher.Batch> flushed = new CopyOnWriteArrayList<>();
+
+    private static PendingEvent sms(int i) {
+        return new PendingEvent("SMS", "10086", "part " + i, 1_700_000_000_000L + i, "SIM1", 1);
+    }
+
+    @Test
+    public void flushesImmediatelyWhenBatchIsFull() {
+        EventBatcher batcher = new EventBatcher(3, 10_000, 60_000, flushed::add);
+        for (int i = 0; i < 7; i++) {
+            batcher.add(sms(i));
+        }
+        assertEquals(2, flushed.size());
+        assertEquals(3, flushed.get(0).events.size());
+        assertEquals(3, flushed.get(1).events.size());
+        assertEquals(1, batcher.shutdown().size()); // 剩余 1 个未满批次
+    }
+
+    @Test
+    public void burstIsCoalescedAfterQuietWindow() throws Exception {
+        EventBatcher batcher = new EventBatcher(100, 150, 5_000, flushed::add);
+        for (int i = 0; i < 10; i++) {
+            batcher.add(sms(i));
+            Thread.sleep(10);
+        }
+        assertTrue(flushed.isEmpty());
+        Thread.sleep(400);
+        assertEquals(1, flushed.size());
+        assertEquals(10, flushed.get(0).events.size());
+        assertEquals(10, flushed.get(0).enqueuedAtMs.length);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void steadyStreamIsFlushedByMaxLatency() throws Exception {
+        EventBatcher batcher = new EventBatcher(1000, 100, 300, flushed::add);
+        long start = EventBatcher.now();
+        // 每 50ms 一个事件，安静窗口永远不会到期，只能靠最大延迟触发
+        while (flushed.isEmpty() && EventBatcher.now() - start < 2000) {
+            batcher.add(sms(0));
+            Thread.sleep(50);
+        }
+        assertFalse(flushed.isEmpty());
+        EventBatcher.Batch first = flushed.get(0);
+        long waited = EventBatcher.now() - first.enqueuedAtMs[0];
+        assertTrue("oldest event waited " + waited + "ms", waited < 600);
+        batcher.shutdown();
+    }
+
+    @Test
+    public void metricsTrackBatchSizeAndLatency() {
+        EventBatcher batcher = new EventBatcher(2, 10_000, 60_000, flushed::add);
+        batcher.add(sms(0));
+        batcher.add(sms(1));
+        BatchMetrics metrics = new BatchMetrics();
+        EventBatcher.Batch batch = flushed.get(0);
+        metrics.recordSent(batch, batch.enqueuedAtMs[0] + 500);
+        assertEquals(1, metrics.getBatchCount());
+        assertEquals(2, metrics.getEventCount());
+        assertEquals(2.0, metrics.getAverageBatchSize(), 0.001);
+        assertTrue(metrics.getLatencyPercentileMs(95) <= 500);
+        assertTrue(metrics.getLatencyPercentileMs(50) >= 0);
+        batcher.shutdown();
+    }
+}
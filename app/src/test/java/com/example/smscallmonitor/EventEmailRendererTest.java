@@ -0,0 +1,161 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventEmailRenderer 的本地测试：渲染结果，以及流式写出与"先拼字符串再编码"两种方式每 1000 个事件的内存分配对比。
+ */
+public class EventEmailRendererTest {
+
+    private static PendingEvent sms(int i, String content) {
+        return new PendingEvent("SMS", "1380000" + i, content, 1_700_000_000_000L + i * 1000L, "SIM1 (Operator, ID:1)", 1);
+    }
+
+    private static List<PendingEvent> events(int n) {
+        List<PendingEvent> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(i % 5 == 0
+                    ? new PendingEvent("CALL", "1390000" + i, null, 1_700_000_000_000L + i * 1000L, "SIM2 (Other, ID:2)", 2)
+                    : sms(i, "您的验证码是 " + (100000 + i) + "，5分钟内有效。<请勿泄露> & 'ok'"));
+        }
+        return list;
+    }
+
+    // 报告生成时间取的是当前时间，比较前去掉
+    private static String withoutReportTime(String html) {
+        return html.replaceAll("报告生成时间: [^<]*", "报告生成时间: ");
+    }
+
+    @Test
+    public void escapesHtmlSpecialCharacters() throws IOException {
+        StringWriter out = new StringWriter();
+        HtmlTemplate.writeEscaped(out, "a<b>&\"c\"'d'");
+        assertEquals("a&lt;b&gt;&amp;&quot;c&quot;&#39;d&#39;", out.toString());
+
+        out = new StringWriter();
+        HtmlTemplate.writeEscaped(out, "没有特殊字符");
+        assertEquals("没有特殊字符", out.toString());
+    }
+
+    @Test
+    public void htmlContainsEveryEventEscaped() {
+        String html = EventEmailRenderer.renderHtml(events(3));
+        assertTrue(html.startsWith("<!DOCTYPE html>"));
+        assertTrue(html.endsWith("</body></html>"));
+        assertTrue(html.contains("短信/来电 事件报告 (3条)"));
+        assertTrue(html.contains("&lt;请勿泄露&gt; &amp; &#39;ok&#39;"));
+        assertFalse(html.contains("<请勿泄露>"));
+        assertTrue(html.contains("未接来电"));
+        assertTrue(html.contains("SIM2 (Other, ID:2) (ID:2)"));
+    }
+
+    @Test
+    public void plainTextMatchesLegacyFormat() {
+        List<PendingEvent> one = new ArrayList<>();
+        one.add(new PendingEvent("CALL", "10086", null, 0L, null, 3));
+        String text = EventEmailRenderer.renderPlainText(one);
+        assertTrue(text.startsWith("未接来电  ////  1.时间: "));
+        assertTrue(text.endsWith("  | 类型: 未接来电  | 号码: 10086  | 内容: (无)  | SIM卡: 未知SIM (ID:3)  ////  "));
+    }
+
+    @Test
+    public void plainTextIsNotHtmlEscaped() {
+        List<PendingEvent> one = new ArrayList<>();
+        one.add(new PendingEvent("SMS", "10086", "a&b <c> \"d\" 'e'", 0L, "AT&T <eSIM>", 1));
+        String text = EventEmailRenderer.renderPlainText(one);
+        assertTrue(text.contains("内容: a&b <c> \"d\" 'e'  | "));
+        assertTrue(text.contains("SIM卡: AT&T <eSIM> (ID:1)"));
+        assertFalse(text.contains("&amp;"));
+        assertFalse(text.contains("&lt;"));
+
+        String html = EventEmailRenderer.renderHtml(one);
+        assertTrue(html.contains("a&amp;b &lt;c&gt; &quot;d&quot; &#39;e&#39;"));
+        assertTrue(html.contains("AT&amp;T &lt;eSIM&gt; (ID:1)"));
+    }
+
+    @Test
+    public void simLabels_escapedOncePerSimPerEmail() {
+        EventEmailRenderer.SimLabels simLabels = new EventEmailRenderer.SimLabels(true);
+        String first = null;
+        for (int i = 0; i < 100; i++) {
+            String label = simLabels.get(new PendingEvent("SMS", "10086", "msg", 0L, "AT&T <eSIM> (ID: 1)", 1));
+            if (first == null) first = label;
+            assertSame(first, label); // 同一张卡复用第一次生成的文字
+        }
+        assertEquals("AT&amp;T &lt;eSIM&gt; (ID: 1) (ID:1)", first);
+        assertEquals("未知SIM (ID:3)", simLabels.get(new PendingEvent("CALL", "10086", null, 0L, null, 3)));
+        assertEquals(2, simLabels.size());
+
+        String html = EventEmailRenderer.renderHtml(events(4));
+        assertTrue(html.contains("SIM1 (Operator, ID:1) (ID:1)"));
+    }
+
+    @Test
+    public void streamingBodyWritesSameBytesAsRenderedString() throws IOException {
+        List<PendingEvent> list = events(50);
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        EventEmailRenderer.plainTextBody(list).writeTo(streamed);
+        assertEquals(EventEmailRenderer.renderPlainText(list), new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+
+        streamed = new ByteArrayOutputStream();
+        EventEmailRenderer.htmlBody(list).writeTo(streamed);
+        assertEquals(withoutReportTime(EventEmailRenderer.renderHtml(list)),
+                withoutReportTime(new String(streamed.toByteArray(), StandardCharsets.UTF_8)));
+        assertEquals(EventEmailRenderer.HTML_CONTENT_TYPE, EventEmailRenderer.htmlBody(list).getContentType());
+    }
+
+    // --- 分配量对比 ---
+
+    private static final int EVENTS = 1000;
+
+    // 丢弃写入内容的输出流，只统计字节数
+    static final class CountingSink extends OutputStream {
+        long count;
+        @Override public void write(int b) { count++; }
+        @Override public void write(byte[] b, int off, int len) { count += len; }
+    }
+
+    // 原方式: 拼成完整字符串 -> 转成字节 -> base64 编码 (对应 setContent(String) 后 JavaMail 的编码)
+    private static long legacyRender(List<PendingEvent> list) {
+        String body = EventEmailRenderer.renderHtml(list);
+        byte[] utf8 = body.getBytes(StandardCharsets.UTF_8);
+        return Base64.getMimeEncoder().encode(utf8).length;
+    }
+
+    // 流式: 直接渲染进 base64 编码流
+    private static long streamingRender(List<PendingEvent> list) throws IOException {
+        CountingSink sink = new CountingSink();
+        OutputStream encoder = Base64.getMimeEncoder().wrap(sink);
+        EventEmailRenderer.htmlBody(list).writeTo(encoder);
+        encoder.close();
+        return sink.count;
+    }
+
+    @Test
+    public void benchmark_allocationPerThousandEvents() throws Exception {
+        if (!AllocationBenchmark.isAllocationCounterSupported()) {
+            System.out.println("Thread allocation counters not supported, skipping benchmark.");
+            return;
+        }
+        List<PendingEvent> list = events(EVENTS);
+        long legacy = AllocationBenchmark.measure(() -> legacyRender(list)).allocatedBytes;
+        long streaming = AllocationBenchmark.measure(() -> streamingRender(list)).allocatedBytes;
+
+        System.out.println("Allocation per " + EVENTS + " events: legacy (String + encode) " + legacy
+                + " bytes, streaming " + streaming + " bytes");
+        // 原方式至少要分配正文的几份完整拷贝，流式只分配每个事件的小对象
+        assertTrue("streaming=" + streaming + " legacy=" + legacy, streaming * 3 < legacy);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventSendHelper 的本地测试：补发时按字节预算切分每封邮件。
+ */
+public class EventSendHelperTest {
+
+    private static PendingEvent sms(int i, String content) {
+        return new PendingEvent("SMS", "10086", content, 1_700_000_000_000L + i, "SIM1", 1);
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append(c);
+        return sb.toString();
+    }
+
+    @Test
+    public void smallEventsFitInOnePage() {
+        List<PendingEvent> page = new ArrayList<>();
+        for (int i = 0; i < 50; i++) page.add(sms(i, "验证码 " + i));
+        assertEquals(50, EventSendHelper.limitToByteBudget(page, 1024 * 1024).size());
+    }
+
+    @Test
+    public void pageIsCutAtByteBudget() {
+        List<PendingEvent> page = new ArrayList<>();
+        for (int i = 0; i < 10; i++) page.add(sms(i, repeat('a', 8 * 1024)));
+        long perEvent = EventSendHelper.estimateHtmlBytes(page.get(0));
+        List<PendingEvent> limited = EventSendHelper.limitToByteBudget(page, (int) (perEvent * 3 + perEvent / 2));
+        assertEquals(3, limited.size());
+        assertSame(page.get(0), limited.get(0));
+    }
+
+    @Test
+    public void oversizedSingleEventIsStillSentAlone() {
+        List<PendingEvent> page = new ArrayList<>();
+        page.add(sms(0, repeat('a', 64 * 1024)));
+        page.add(sms(1, "short"));
+        assertEquals(1, EventSendHelper.limitToByteBudget(page, 1024).size());
+    }
+
+    @Test
+    public void estimateCountsUtf8Bytes() {
+        long ascii = EventSendHelper.estimateHtmlBytes(sms(0, "abc"));
+        long cjk = EventSendHelper.estimateHtmlBytes(sms(0, "验证码"));
+        long emoji = EventSendHelper.estimateHtmlBytes(sms(0, "😀"));
+        assertEquals(6, cjk - ascii);
+        assertEquals(1, emoji - ascii); // 4 字节 vs 3 字节
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.smscallmonitor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的最小 SMTP 服务器 (无 TLS/AUTH)，用于测试连接复用。
+ * 统计建立的连接数 (即握手次数) 和收到的邮件数。
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger messageCount = new AtomicInteger();
+    private final AtomicInteger noopCount = new AtomicInteger();
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private volatile String stallMarker; // 正文包含此文字的邮件在回复 DATA 前卡住，直到 releaseStalled()
+    private final CountDownLatch stallReleased = new CountDownLatch(1);
+    private final CountDownLatch stallReached = new CountDownLatch(1); // 第一封邮件卡住时计数
+
+    FakeSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptThread = new Thread(this::acceptLoop, "fake-smtp-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    int getPort() { return serverSocket.getLocalPort(); }
+    int getConnectionCount() { return connectionCount.get(); }
+    int getMessageCount() { return messageCount.get(); }
+    int getNoopCount() { return noopCount.get(); }
+    List<String> getMessages() { return messages; }
+
+    // 模拟服务器处理某些邮件时卡住 (例如一个渠道的连接很慢)
+    void stallMessagesContaining(String marker) {
+        stallMarker = marker;
+    }
+
+    // 等待有邮件卡住 (客户端已写完 DATA，正在等服务器回复)
+    boolean awaitStalled(long timeout, TimeUnit unit) throws InterruptedException {
+        return stallReached.await(timeout, unit);
+    }
+
+    void releaseStalled() {
+        stallReleased.countDown();
+    }
+
+    // 模拟服务器主动断开所有连接 (例如服务器端空闲超时)
+    void dropAllConnections() {
+        for (Socket client : clients) {
+            try { client.close(); } catch (IOException ignored) {}
+        }
+        clients.clear();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                clients.add(client);
+                Thread t = new Thread(() -> serve(client), "fake-smtp-client");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                return; // 服务器已关闭
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            OutputStream out = socket.getOutputStream();
+            reply(out, "220 localhost ESMTP fake");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String cmd = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (cmd) {
+                    case "EHLO":
+                        reply(out, "250-localhost\r\n250 8BITMIME");
+                        break;
+                    case "HELO":
+                        reply(out, "250 localhost");
+                        break;
+                    case "NOOP":
+                        noopCount.incrementAndGet();
+                        reply(out, "250 OK");
+                        break;
+                    case "DATA":
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        StringBuilder data = new StringBuilder();
+                        String dataLine;
+                        while ((dataLine = in.readLine()) != null && !".".equals(dataLine)) {
+                            data.append(dataLine).append('\n');
+                        }
+                        String marker = stallMarker;
+                        if (marker != null && data.indexOf(marker) >= 0) {
+                            try {
+                                stallReached.countDown();
+                                stallReleased.await();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        messages.add(data.toString());
+                        messageCount.incrementAndGet();
+                        reply(out, "250 OK queued");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 Bye");
+                        return;
+                    default: // MAIL / RCPT / RSET 等
+                        reply(out, "250 OK");
+                        break;
+                }
+            }
+        } catch (IOException ignored) {
+            // 客户端或测试主动断开
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private static void reply(OutputStream out, String text) throws IOException {
+        out.write((text + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        releaseStalled();
+        serverSocket.close();
+        dropAllConnections();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * HTML 模板的基准测试：不同类型的真实短信正文 (中文、emoji、长的分段短信、大量需转义字符) 每个事件的耗时和分配字节数。
+ */
+public class HtmlTemplateBenchmarkTest {
+
+    private static final int EVENTS = 1000;
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder(s.length() * n);
+        for (int i = 0; i < n; i++) sb.append(s);
+        return sb.toString();
+    }
+
+    private static final String[][] BODIES = {
+            {"ascii-otp", "Your verification code is 483920. It expires in 10 minutes."},
+            {"cjk-otp", "【某某银行】您的验证码为 483920，5分钟内有效，请勿泄露给他人。"},
+            {"emoji", "生日快乐🎂🎉！今晚7点老地方见😀👍 Happy birthday!"},
+            {"long-multipart", repeat("【运营商】尊敬的客户，您本月套餐内流量已使用80%，超出部分按5元/GB计费。回复TD退订。", 12)},
+            {"escape-heavy", repeat("<a href=\"https://x.y/?a=1&b='2'\">link</a> ", 20)},
+    };
+
+    private static List<PendingEvent> events(String body) {
+        List<PendingEvent> list = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            list.add(new PendingEvent("SMS", "+86 1380013" + (8000 + i), body,
+                    1_700_000_000_000L + i * 1000L, "中国移动 (SIM" + (i % 2 + 1) + ")", i % 2 + 1));
+        }
+        return list;
+    }
+
+    @Test
+    public void escapeMatchesChainedReplace() throws IOException {
+        for (String[] body : BODIES) {
+            StringWriter out = new StringWriter();
+            HtmlTemplate.writeEscaped(out, body[1]);
+            String expected = body[1].replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                    .replace("\"", "&quot;").replace("'", "&#39;");
+            assertEquals(body[0], expected, out.toString());
+        }
+    }
+
+    @Test
+    public void writeIntMatchesToString() throws IOException {
+        for (int value : new int[]{0, 7, 10, 99, 100, 12345, -1, -20, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            StringWriter out = new StringWriter();
+            HtmlTemplate.writeInt(out, value);
+            assertEquals(Integer.toString(value), out.toString());
+        }
+    }
+
+    @Test
+    public void simRowsArePrecomputedPerColor() {
+        assertSame(HtmlTemplate.simRowStart(1), HtmlTemplate.simRowStart(1 + HtmlTemplate.SIM_COLORS.length));
+        assertSame(HtmlTemplate.simRowStart(3), HtmlTemplate.simRowStart(-3));
+        assertNotNull(HtmlTemplate.simRowStart(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void benchmark_nsAndBytesPerEvent() throws Exception {
+        boolean countAllocations = AllocationBenchmark.isAllocationCounterSupported();
+        for (String[] body : BODIES) {
+            List<PendingEvent> list = events(body[1]);
+            AllocationBenchmark.Result result = AllocationBenchmark.measure(() -> {
+                EventEmailRendererTest.CountingSink sink = new EventEmailRendererTest.CountingSink();
+                EventEmailRenderer.htmlBody(list).writeTo(sink);
+                return sink.count;
+            });
+            long bytesPerEvent = countAllocations ? result.allocatedBytes / EVENTS : -1;
+            System.out.println(String.format(Locale.US, "%-15s %8d ns/event %6d bytes allocated/event (body %d chars)",
+                    body[0], result.nanos / EVENTS, bytesPerEvent, body[1].length()));
+            if (countAllocations) {
+                // 每个事件只分配日期格式化等少量对象，与正文长度无关
+                assertTrue(body[0] + ": " + bytesPerEvent + " bytes/event", bytesPerEvent < 2048);
+            }
+        }
+    }
+}
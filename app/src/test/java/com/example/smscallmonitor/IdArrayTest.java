@@ -0,0 +1,51 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * IdArray 的本地测试：增长、只收集已写入数据库的事件，以及按绑定变量上限分块。
+ */
+public class IdArrayTest {
+
+    @Test
+    public void growsPastInitialCapacity() {
+        IdArray ids = new IdArray(2);
+        for (int i = 1; i <= 5; i++) ids.add(i);
+        assertEquals(5, ids.size());
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, ids.toArray());
+        assertEquals("[1, 2, 3, 4, 5]", ids.toString());
+        assertTrue(new IdArray().isEmpty());
+    }
+
+    @Test
+    public void of_skipsUnsavedEvents() {
+        PendingEvent saved = new PendingEvent("SMS", "10086", "a", 1_000L, "SIM1", 1);
+        saved.id = 7;
+        PendingEvent unsaved = new PendingEvent("SMS", "10086", "b", 2_000L, "SIM1", 1);
+        assertArrayEquals(new int[]{7}, IdArray.of(Arrays.asList(saved, unsaved)));
+    }
+
+    @Test
+    public void chunk_coversEveryIdOnceWithinLimit() {
+        int[] ids = new int[2_000];
+        for (int i = 0; i < ids.length; i++) ids[i] = i + 1;
+
+        int covered = 0, chunks = 0;
+        for (int from = 0; from < ids.length; from += 900) {
+            int[] chunk = IdArray.chunk(ids, from, 900);
+            assertTrue(chunk.length <= 900);
+            assertEquals(from + 1, chunk[0]);
+            covered += chunk.length;
+            chunks++;
+        }
+        assertEquals(ids.length, covered);
+        assertEquals(3, chunks);
+
+        int[] small = {1, 2, 3};
+        assertSame(small, IdArray.chunk(small, 0, 900)); // 只有一块时不复制
+    }
+}
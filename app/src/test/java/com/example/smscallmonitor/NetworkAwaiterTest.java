@@ -0,0 +1,110 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetworkAwaiter 的本地测试，使用可手动切换状态的假网络来源。
+ */
+public class NetworkAwaiterTest {
+
+    // 假网络来源：测试中调用 setAvailable() 模拟网络变化
+    private static class FakeConnectivitySource implements NetworkAwaiter.ConnectivitySource {
+        volatile boolean available;
+        volatile Runnable listener;
+        int registerCount;
+        int unregisterCount;
+
+        @Override public boolean isValidatedNetworkAvailable() { return available; }
+        @Override public synchronized void register(Runnable onChanged) { registerCount++; listener = onChanged; }
+        @Override public synchronized void unregister() { unregisterCount++; listener = null; }
+
+        void setAvailable(boolean value) {
+            available = value;
+            Runnable l = listener;
+            if (l != null) l.run();
+        }
+    }
+
+    @Test
+    public void alreadyAvailable_returnsImmediatelyWithoutRegistering() {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        source.available = true;
+        NetworkAwaiter.Result result = new NetworkAwaiter(source).await(5000);
+        assertTrue(result.connected);
+        assertEquals(0, result.waitedMs);
+        assertEquals(0, source.registerCount);
+    }
+
+    @Test
+    public void completesAsSoonAsNetworkAppears() throws Exception {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        NetworkAwaiter awaiter = new NetworkAwaiter(source);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<NetworkAwaiter.Result> future = executor.submit(() -> awaiter.await(10_000));
+            Thread.sleep(200);
+            source.setAvailable(true);
+            NetworkAwaiter.Result result = future.get(2, TimeUnit.SECONDS);
+            assertTrue(result.connected);
+            assertTrue("waited " + result.waitedMs + "ms", result.waitedMs >= 150 && result.waitedMs < 2000);
+            assertEquals(result.waitedMs, awaiter.getLastTimeToNetworkMs());
+            assertEquals(1, source.unregisterCount);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentCallers_shareOneRegistration() throws Exception {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        NetworkAwaiter awaiter = new NetworkAwaiter(source);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<NetworkAwaiter.Result> a = executor.submit(() -> awaiter.await(10_000));
+            Future<NetworkAwaiter.Result> b = executor.submit(() -> awaiter.await(10_000));
+            Future<NetworkAwaiter.Result> c = executor.submit(() -> awaiter.await(10_000));
+            Thread.sleep(200);
+            source.setAvailable(true);
+            assertTrue(a.get(2, TimeUnit.SECONDS).connected);
+            assertTrue(b.get(2, TimeUnit.SECONDS).connected);
+            assertTrue(c.get(2, TimeUnit.SECONDS).connected);
+            assertEquals(1, source.registerCount);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timeout_returnsNotConnectedAndUnregisters() {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        NetworkAwaiter.Result result = new NetworkAwaiter(source).await(100);
+        assertFalse(result.connected);
+        assertFalse(result.cancelled);
+        assertTrue(result.waitedMs >= 100);
+        assertEquals(1, source.unregisterCount);
+    }
+
+    @Test
+    public void cancel_releasesWaiters() throws Exception {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        NetworkAwaiter awaiter = new NetworkAwaiter(source);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<NetworkAwaiter.Result> future = executor.submit(() -> awaiter.await(10_000));
+            Thread.sleep(100);
+            awaiter.cancel();
+            NetworkAwaiter.Result result = future.get(2, TimeUnit.SECONDS);
+            assertFalse(result.connected);
+            assertTrue(result.cancelled);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
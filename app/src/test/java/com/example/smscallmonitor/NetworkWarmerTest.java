@@ -0,0 +1,118 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * NetworkWarmer 的本地测试：多次预热只请求一次网络，网络就绪后只预连一次 SMTP，接听或超时后释放。
+ */
+public class NetworkWarmerTest {
+
+    // 假的网络请求：测试中调用 ready() 模拟网络验证通过
+    private static class FakeHolder implements NetworkWarmer.NetworkHolder {
+        volatile Runnable onReady;
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+
+        @Override public void request(Runnable onReady) { requests.incrementAndGet(); this.onReady = onReady; }
+        @Override public void release() { releases.incrementAndGet(); onReady = null; }
+
+        void ready() {
+            Runnable r = onReady;
+            if (r != null) r.run();
+        }
+    }
+
+    private final FakeHolder holder = new FakeHolder();
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final AtomicInteger preOpened = new AtomicInteger();
+
+    private NetworkWarmer warmer(long holdMs) {
+        return new NetworkWarmer(holder, prepared::incrementAndGet, preOpened::incrementAndGet, holdMs);
+    }
+
+    @Test
+    public void repeatedWarmUps_requestNetworkOnce() throws Exception {
+        NetworkWarmer warmer = warmer(10_000);
+        warmer.warmUp("call:1");
+        warmer.warmUp("call:1");
+        warmer.warmUp("sms");
+
+        assertEquals(1, holder.requests.get());
+        assertEquals(1, warmer.getWarmUpCount());
+        assertTrue(warmer.isHeld());
+        waitFor(() -> prepared.get() == 1);
+    }
+
+    @Test
+    public void networkReady_preOpensConnectionOncePerHold() throws Exception {
+        NetworkWarmer warmer = warmer(10_000);
+        warmer.warmUp("call:1");
+        holder.ready();
+        holder.ready(); // 能力变化会多次回调
+        waitFor(() -> preOpened.get() == 1);
+        Thread.sleep(100);
+        assertEquals(1, preOpened.get());
+
+        warmer.releaseAll();
+        warmer.warmUp("call:1");
+        holder.ready();
+        waitFor(() -> preOpened.get() == 2);
+    }
+
+    @Test
+    public void answeredCall_releasesOnlyWhenNoOtherReasonHolds() {
+        NetworkWarmer warmer = warmer(10_000);
+        warmer.warmUp("call:1");
+        warmer.warmUp("call:2");
+
+        warmer.release("call:1"); // SIM1 接听，SIM2 仍在响铃
+        assertTrue(warmer.isHeld());
+        assertEquals(0, holder.releases.get());
+
+        warmer.release("call:2");
+        assertFalse(warmer.isHeld());
+        assertEquals(1, holder.releases.get());
+
+        warmer.release("call:2"); // 重复释放无影响
+        assertEquals(1, holder.releases.get());
+    }
+
+    @Test
+    public void releasedBeforeReady_doesNotPreOpen() throws Exception {
+        NetworkWarmer warmer = warmer(10_000);
+        warmer.warmUp("call:1");
+        Runnable lateCallback = holder.onReady;
+        warmer.release("call:1");
+        lateCallback.run(); // 释放后才到达的回调
+        Thread.sleep(100);
+        assertEquals(0, preOpened.get());
+    }
+
+    @Test
+    public void holdExpires_releasesNetwork() throws Exception {
+        NetworkWarmer warmer = warmer(200);
+        warmer.warmUp("sms");
+        Thread.sleep(120);
+        warmer.warmUp("sms"); // 延长保持时间
+        Thread.sleep(120);
+        assertTrue("hold should have been extended", warmer.isHeld());
+        waitFor(() -> !warmer.isHeld());
+        assertEquals(1, holder.releases.get());
+    }
+
+    private interface Condition { boolean met(); }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.met()) {
+            assertTrue("condition not met within 2s", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * PhoneStateDiagnostics 的本地测试：环形缓冲区只保留最近的记录，耗时统计按模式分开。
+ */
+public class PhoneStateDiagnosticsTest {
+
+    @Test
+    public void ringBufferKeepsMostRecentEntriesInOrder() {
+        PhoneStateDiagnostics diagnostics = new PhoneStateDiagnostics(3);
+        for (int i = 1; i <= 5; i++) {
+            diagnostics.capture(i, "RINGING", "{subscription=" + i + "}");
+        }
+        PhoneStateDiagnostics.Entry[] entries = diagnostics.getEntries();
+        assertEquals(3, entries.length);
+        assertEquals(3, entries[0].timeMs);
+        assertEquals(5, entries[2].timeMs);
+        assertEquals("{subscription=5}", entries[2].extras);
+
+        diagnostics.clear();
+        assertEquals(0, diagnostics.getEntries().length);
+    }
+
+    @Test
+    public void timingsAreTrackedPerPath() {
+        PhoneStateDiagnostics diagnostics = new PhoneStateDiagnostics(4);
+        diagnostics.getFastPathTiming().record(2_000);
+        diagnostics.getFastPathTiming().record(4_000);
+        diagnostics.getDiagnosticPathTiming().record(900_000);
+
+        assertEquals(2, diagnostics.getFastPathTiming().getCount());
+        assertEquals(3, diagnostics.getFastPathTiming().getAverageMicros());
+        assertEquals(4, diagnostics.getFastPathTiming().getMaxMicros());
+        assertEquals(900, diagnostics.getDiagnosticPathTiming().getMaxMicros());
+        assertTrue(diagnostics.dump().startsWith("PHONE_STATE main-thread time: fast path [n=2, avg=3us, max=4us]"));
+    }
+}
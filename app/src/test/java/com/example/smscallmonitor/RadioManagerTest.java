@@ -0,0 +1,84 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * RadioManager 的本地测试：关闭延迟随事件到达间隔自适应、进行中的任务推迟关闭、开关次数和开启时长统计。
+ */
+public class RadioManagerTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private RadioManager manager() {
+        return new RadioManager(3 * MINUTE, MINUTE, 10 * MINUTE, 0.5, 2.0, 0);
+    }
+
+    @Test
+    public void noHistory_usesDefaultDelay() {
+        RadioManager radio = manager();
+        assertEquals(3 * MINUTE, radio.getOffDelayMs());
+        radio.onEventArrived(0); // 只有一个事件，还没有间隔
+        assertEquals(3 * MINUTE, radio.getOffDelayMs());
+    }
+
+    @Test
+    public void steadyArrivals_keepRadioUpUntilNextExpectedEvent() {
+        RadioManager radio = manager();
+        for (int i = 0; i < 10; i++) radio.onEventArrived(i * 4 * MINUTE);
+        assertEquals(8 * MINUTE, radio.getOffDelayMs()); // 平均间隔 4 分钟 * 2
+    }
+
+    @Test
+    public void delayIsClampedAndLongIdleDoesNotDominate() {
+        RadioManager radio = manager();
+        radio.onEventArrived(0);
+        radio.onEventArrived(5_000);
+        radio.onEventArrived(10_000);
+        assertEquals(MINUTE, radio.getOffDelayMs()); // 突发: 下限
+
+        radio.onEventArrived(10_000 + 24 * HOUR); // 一整天没有事件，只按上限计入
+        assertEquals(10 * MINUTE, radio.getOffDelayMs());
+        radio.onEventArrived(10_000 + 24 * HOUR + 30_000);
+        radio.onEventArrived(10_000 + 24 * HOUR + 60_000);
+        assertTrue("recent burst should shrink the delay again", radio.getOffDelayMs() < 5 * MINUTE);
+    }
+
+    @Test
+    public void inFlightWork_defersOff() {
+        RadioManager radio = manager();
+        assertFalse(radio.shouldDeferOff());
+        radio.beginWork();
+        radio.beginWork();
+        radio.endWork();
+        assertTrue(radio.isBusy());
+        assertTrue(radio.shouldDeferOff());
+        radio.endWork();
+        radio.endWork(); // 多余的 endWork 不会变成负数
+        assertFalse(radio.shouldDeferOff());
+        radio.beginWork();
+        assertTrue(radio.isBusy());
+        assertEquals(1, radio.getDeferredOffCount());
+    }
+
+    @Test
+    public void countsCyclesAndOnTimePerHour() {
+        RadioManager radio = manager();
+        radio.onRadioEnabled(0);
+        radio.onRadioEnabled(MINUTE); // 已经开着，不重新计时
+        radio.onRadioDisabled(6 * MINUTE);
+        radio.onRadioDisabled(7 * MINUTE); // 已经关了，不重复计数
+        radio.onRadioEnabled(HOUR);
+        radio.onRadioDisabled(HOUR + 4 * MINUTE);
+
+        assertEquals(2, radio.getRadioCycles());
+        assertEquals(5 * MINUTE, radio.getOnTimeMsPerHour(2 * HOUR)); // 2 小时内共开启 10 分钟
+        assertEquals(1.0, radio.getCyclesPerHour(2 * HOUR), 1e-9);
+
+        radio.onRadioEnabled(2 * HOUR);
+        // 正在开启的时段也计入
+        assertEquals(20 * MINUTE * HOUR / (2 * HOUR + 10 * MINUTE), radio.getOnTimeMsPerHour(2 * HOUR + 10 * MINUTE));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RetryPolicy 和 SmtpCircuitBreaker 的本地测试：指数退避、抖动范围、死信上限、失败分组，以及熔断器的状态变化。
+ */
+public class RetryPolicyTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private final RetryPolicy policy = new RetryPolicy(MINUTE, 60 * MINUTE, 5, new Random(42));
+
+    @Test
+    public void backoffDoublesUpToTheCap() {
+        assertEquals(0, policy.backoffMs(0));
+        assertEquals(MINUTE, policy.backoffMs(1));
+        assertEquals(2 * MINUTE, policy.backoffMs(2));
+        assertEquals(32 * MINUTE, policy.backoffMs(6));
+        assertEquals(60 * MINUTE, policy.backoffMs(7));
+        assertEquals(60 * MINUTE, policy.backoffMs(1000)); // 不溢出
+    }
+
+    @Test
+    public void jitterStaysWithinUpperHalfOfBackoff() {
+        long now = 1_000_000L;
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.nextAttemptAt(3, now) - now;
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue("min " + min, min >= 2 * MINUTE);
+        assertTrue("max " + max, max <= 4 * MINUTE);
+        assertTrue("jitter should spread retries", max - min > MINUTE);
+    }
+
+    @Test
+    public void exhaustedAfterMaxAttempts() {
+        assertFalse(policy.isExhausted(4));
+        assertTrue(policy.isExhausted(5));
+    }
+
+    @Test
+    public void groupsFailuresByDeliveredChannelsAndAttempts() {
+        PendingEvent a = event(1, 0, DeliveryChannel.BIT_EMAIL);
+        PendingEvent b = event(2, 0, 0);
+        PendingEvent c = event(3, 0, DeliveryChannel.BIT_EMAIL);
+        PendingEvent d = event(4, 2, DeliveryChannel.BIT_EMAIL);
+        PendingEvent unsaved = event(0, 0, 0);
+
+        List<RetryPolicy.FailureGroup> groups = new ArrayList<>(RetryPolicy.groupFailures(Arrays.asList(a, b, c, d, unsaved)));
+        assertEquals(3, groups.size());
+        assertArrayEquals(new int[]{1, 3}, groups.get(0).ids.toArray());
+        assertEquals(1, groups.get(0).attempts);
+        assertEquals(DeliveryChannel.BIT_EMAIL, groups.get(0).deliveredChannels);
+        assertArrayEquals(new int[]{2}, groups.get(1).ids.toArray());
+        assertArrayEquals(new int[]{4}, groups.get(2).ids.toArray());
+        assertEquals(3, groups.get(2).attempts);
+    }
+
+    private static PendingEvent event(int id, int retryCount, int deliveredChannels) {
+        PendingEvent event = new PendingEvent("SMS", "10086", "msg " + id, 1_700_000_000_000L + id, "SIM1", 1);
+        event.id = id;
+        event.retryCount = retryCount;
+        event.deliveredChannels = deliveredChannels;
+        return event;
+    }
+
+    // --- 熔断器 ---
+
+    @Test
+    public void transientFailuresOpenCircuitAfterThresholdAndProbeCloses() {
+        SmtpCircuitBreaker breaker = new SmtpCircuitBreaker(3, 1000, 8000, 60_000);
+        long now = 0;
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest("user", now));
+            breaker.recordTransientFailure(now);
+        }
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.recordTransientFailure(now);
+        assertTrue(breaker.isOpen("user", now));
+        assertFalse(breaker.allowRequest("user", now + 999));
+
+        // 熔断时间到: 只放行一次试探
+        assertTrue(breaker.allowRequest("user", now + 1000));
+        assertFalse(breaker.allowRequest("user", now + 1000));
+        breaker.recordSuccess();
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest("user", now + 1001));
+    }
+
+    @Test
+    public void failedProbeReopensWithDoubledDuration() {
+        SmtpCircuitBreaker breaker = new SmtpCircuitBreaker(1, 1000, 3000, 60_000);
+        breaker.recordTransientFailure(0); // 熔断 1s
+        assertTrue(breaker.allowRequest("user", 1000));
+        breaker.recordTransientFailure(1000); // 试探失败: 熔断 2s
+        assertFalse(breaker.allowRequest("user", 2999));
+        assertTrue(breaker.allowRequest("user", 3000));
+        breaker.recordTransientFailure(3000); // 熔断时间上限 3s
+        assertFalse(breaker.allowRequest("user", 5999));
+        assertTrue(breaker.allowRequest("user", 6000));
+    }
+
+    @Test
+    public void authFailureOpensUntilCredentialsChange() {
+        SmtpCircuitBreaker breaker = new SmtpCircuitBreaker(3, 1000, 8000, 60_000);
+        breaker.recordAuthFailure("user\nwrong", 0);
+        assertTrue(breaker.isOpen("user\nwrong", 59_999));
+        assertFalse(breaker.allowRequest("user\nwrong", 30_000));
+        // 用户修改了密码: 立即恢复
+        assertFalse(breaker.isOpen("user\nfixed", 1));
+        assertTrue(breaker.allowRequest("user\nfixed", 1));
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * SimRegistry 的本地测试：只在刷新时读取 SubscriptionManager，每个事件的查询不再有跨进程调用。
+ */
+public class SimRegistryTest {
+
+    // 假的 SIM 卡信息来源：记录读取次数 (对应一次 getActiveSubscriptionInfoList 跨进程调用)
+    private static class CountingSource implements SimRegistry.SubscriptionSource {
+        volatile List<SimRegistry.Sim> sims = new ArrayList<>();
+        int loads;
+
+        @Override
+        public synchronized List<SimRegistry.Sim> loadActiveSims() {
+            loads++;
+            return sims;
+        }
+    }
+
+    @Test
+    public void perEventLookups_makeNoBinderCalls() {
+        CountingSource source = new CountingSource();
+        source.sims = Arrays.asList(new SimRegistry.Sim(3, 0, "中国移动", 0xff1e90ff), new SimRegistry.Sim(7, 1, "", 0));
+        SimRegistry registry = new SimRegistry(source);
+        registry.refresh(); // startMonitoring
+        assertEquals(1, source.loads);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("中国移动 (ID: 3)", registry.describe(3));
+            assertEquals("SIM 2 (ID: 7)", registry.describe(7)); // 没有名称时使用卡槽号
+            assertEquals(1, registry.get(7).slotIndex);
+        }
+        assertEquals("SIM ID 9", registry.describe(9)); // 未知的 subId 也不触发重新读取
+        assertEquals("未知SIM卡", registry.describe(-1));
+        assertEquals(1, source.loads);
+    }
+
+    @Test
+    public void subscriptionChange_refreshReplacesCache() {
+        CountingSource source = new CountingSource();
+        source.sims = Arrays.asList(new SimRegistry.Sim(3, 0, "A", 0));
+        SimRegistry registry = new SimRegistry(source);
+        registry.refresh();
+
+        source.sims = Arrays.asList(new SimRegistry.Sim(8, 1, "C", 0), new SimRegistry.Sim(4, 0, "B", 0));
+        registry.refresh(); // OnSubscriptionsChangedListener
+        assertNull(registry.get(3));
+        assertEquals("B (ID: 4)", registry.describe(4));
+        assertEquals(4, registry.getAll().get(0).subId); // 按卡槽排序
+        assertEquals(2, source.loads);
+    }
+
+    @Test
+    public void firstLookupBeforeRefresh_loadsOnce() {
+        CountingSource source = new CountingSource();
+        source.sims = Arrays.asList(new SimRegistry.Sim(3, 0, "A", 0));
+        SimRegistry registry = new SimRegistry(source);
+        assertEquals("A (ID: 3)", registry.describe(3)); // 服务被系统重启，尚未调用 startMonitoring
+        registry.describe(3);
+        registry.getAll();
+        assertEquals(1, source.loads);
+    }
+
+    @Test
+    public void failedRefresh_keepsPreviousCache() {
+        CountingSource source = new CountingSource();
+        source.sims = Arrays.asList(new SimRegistry.Sim(3, 0, "A", 0));
+        SimRegistry registry = new SimRegistry(source);
+        registry.refresh();
+        source.sims = null; // 权限被撤销等
+        assertTrue(registry.refresh().isEmpty());
+        assertEquals("A (ID: 3)", registry.describe(3));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * SmsIngestQueue 的本地测试：服务未运行时不接收 (不在内存中暂存)、运行中按顺序直接投递，以及延迟统计。
+ */
+public class SmsIngestQueueTest {
+
+    private static SmsIngestQueue.IncomingSms sms(String body) {
+        return new SmsIngestQueue.IncomingSms("+8613800138000", body, 1, 1_700_000_000_000L, System.nanoTime());
+    }
+
+    @Test
+    public void rejectedWhileDetached_notDeliveredOnAttach() {
+        SmsIngestQueue queue = new SmsIngestQueue();
+        assertFalse(queue.offer(sms("first"))); // 调用方写入数据库
+        assertFalse(queue.offer(sms("second")));
+        assertEquals(2, queue.getRejectedCount());
+
+        List<String> received = new ArrayList<>();
+        queue.attach(sms -> received.add(sms.body));
+        assertTrue(queue.offer(sms("third")));
+        assertTrue(queue.offer(sms("fourth")));
+
+        assertEquals(List.of("third", "fourth"), received);
+        assertEquals(2, queue.getReceiveToEnqueueTiming().getCount());
+    }
+
+    @Test
+    public void detach_onlyByCurrentConsumer() {
+        SmsIngestQueue queue = new SmsIngestQueue();
+        List<String> received = new ArrayList<>();
+        SmsIngestQueue.Consumer current = sms -> received.add(sms.body);
+        queue.attach(current);
+
+        queue.detach(sms -> { }); // 旧的服务实例不能解除新实例
+        assertTrue(queue.offer(sms("kept")));
+
+        queue.detach(current);
+        assertFalse(queue.offer(sms("rejected")));
+        assertEquals(List.of("kept"), received);
+        assertEquals(1, queue.getRejectedCount());
+    }
+}
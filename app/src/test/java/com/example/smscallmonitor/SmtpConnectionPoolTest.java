@@ -0,0 +1,192 @@
+package com.example.smscallmonitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import static org.junit.Assert.*;
+
+/**
+ * SmtpConnectionPool 的本地测试：使用进程内的 FakeSmtpServer 统计 N 封邮件需要的握手次数；
+ * 各渠道使用自己的连接，一个渠道卡住时另一个渠道照常发送；中止卡住的发送后不会重连重发。
+ */
+public class SmtpConnectionPoolTest {
+
+    private static final String SENDER = "sender@example.com";
+    private static final String PASSWD = "app-password";
+
+    private FakeSmtpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSmtpServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    private Properties localProps() {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "127.0.0.1");
+        props.put("mail.smtp.port", String.valueOf(server.getPort()));
+        props.put("mail.smtp.auth", "false");
+        props.put("mail.smtp.connectiontimeout", "5000");
+        props.put("mail.smtp.timeout", "5000");
+        return props;
+    }
+
+    private void sendOne(SmtpConnectionPool pool, int index) throws Exception {
+        sendOne(pool, EmailSender.CHANNEL_EMAIL, "test " + index, index);
+    }
+
+    private void sendOne(SmtpConnectionPool pool, String channel, String subject, int index) throws Exception {
+        Session session = pool.getSession(SENDER, PASSWD);
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(SENDER));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse("to@example.com"));
+        message.setSubject(subject);
+        message.setContent("<p>body " + index + "</p>", "text/html;charset=UTF-8");
+        pool.send(message, channel, SENDER, PASSWD);
+    }
+
+    @Test
+    public void manyMessages_singleHandshake() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(localProps(), 60_000, 60_000);
+        int n = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            sendOne(pool, i);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        pool.closeAll();
+
+        System.out.println("Pooled: " + n + " messages, " + server.getConnectionCount() + " handshake(s), " + elapsedMs + "ms");
+        assertEquals(n, server.getMessageCount());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(1, pool.getHandshakeCount());
+    }
+
+    @Test
+    public void idleTimeout_closesConnection() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(localProps(), 100, 60_000);
+        sendOne(pool, 0);
+        Thread.sleep(400); // 超过空闲时间，连接应被关闭
+        sendOne(pool, 1);
+        pool.closeAll();
+
+        assertEquals(2, server.getMessageCount());
+        assertEquals(2, pool.getHandshakeCount());
+    }
+
+    @Test
+    public void droppedConnection_reconnectsOnce() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(localProps(), 60_000, 60_000);
+        sendOne(pool, 0);
+        server.dropAllConnections(); // 服务器断开，连接池并不知道
+        sendOne(pool, 1);
+        pool.closeAll();
+
+        assertEquals(2, server.getMessageCount());
+        assertEquals(2, pool.getHandshakeCount());
+    }
+
+    @Test
+    public void idleConnection_healthCheckedWithNoop() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(localProps(), 60_000, 50);
+        sendOne(pool, 0);
+        Thread.sleep(150); // 超过健康检查阈值
+        sendOne(pool, 1);
+        pool.closeAll();
+
+        assertTrue(server.getNoopCount() >= 1);
+        assertEquals(1, pool.getHandshakeCount());
+    }
+
+    @Test
+    public void stalledChannel_doesNotBlockOtherChannel() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(localProps(), 60_000, 60_000);
+        server.stallMessagesContaining("Subject: stalled");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> stalled = executor.submit(() -> {
+                sendOne(pool, EmailSender.CHANNEL_EMAIL, "stalled", 0);
+                return null;
+            });
+            assertTrue(server.awaitStalled(5, TimeUnit.SECONDS)); // 邮件渠道已进入 DATA 并卡住
+
+            // 使用另一个连接，不等邮件渠道 (共用连接时会一直等到 releaseStalled)
+            executor.submit(() -> {
+                sendOne(pool, EmailSender.CHANNEL_GV, "gv", 1);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+
+            assertFalse(stalled.isDone());
+            assertEquals(1, server.getMessageCount());
+            try {
+                stalled.get(100, TimeUnit.MILLISECONDS);
+                fail("email channel should still be stalled");
+            } catch (TimeoutException expected) {
+                // 仍在等待服务器
+            }
+
+            server.releaseStalled();
+            stalled.get(5, TimeUnit.SECONDS);
+            assertEquals(2, server.getMessageCount());
+            assertEquals(2, pool.getHandshakeCount()); // 每个渠道一个连接
+        } finally {
+            server.releaseStalled();
+            executor.shutdownNow();
+            pool.closeAll();
+        }
+    }
+
+    @Test
+    public void abort_failsStalledSendWithoutResending() throws Exception {
+        SmtpConnectionPool pool = new SmtpConnectionPool(localProps(), 60_000, 60_000);
+        server.stallMessagesContaining("Subject: stalled");
+        sendOne(pool, EmailSender.CHANNEL_EMAIL, "first", 0); // 之后复用这个连接 (复用的连接失败时通常会重连重发一次)
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread sender = new Thread(() -> {
+            try {
+                sendOne(pool, EmailSender.CHANNEL_EMAIL, "stalled", 1);
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        try {
+            sender.start();
+            assertTrue(server.awaitStalled(5, TimeUnit.SECONDS));
+
+            // 与 DeliveryDispatcher 超时时相同: 先中断发送线程，再关闭该渠道的连接
+            sender.interrupt();
+            pool.abort(EmailSender.CHANNEL_EMAIL);
+            sender.join(5_000);
+
+            assertFalse(sender.isAlive());
+            assertTrue(String.valueOf(failure.get()), failure.get() instanceof MessagingException);
+            assertEquals(1, server.getMessageCount()); // 只有第一封
+            assertEquals(1, pool.getHandshakeCount()); // 没有重连重发
+            assertEquals(1, server.getConnectionCount());
+        } finally {
+            server.releaseStalled();
+            pool.closeAll();
+        }
+    }
+}
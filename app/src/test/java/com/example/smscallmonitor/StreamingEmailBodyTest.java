@@ -0,0 +1,42 @@
+package com.example.smscallmonitor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import static org.junit.Assert.*;
+
+/**
+ * 流式正文经过真实的 JavaMail 写出后，解析回来的内容与直接渲染的一致。
+ */
+public class StreamingEmailBodyTest {
+
+    @Test
+    public void mimeRoundTrip_preservesPlainTextBody() throws Exception {
+        List<PendingEvent> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            events.add(new PendingEvent("SMS", "10086", "验证码 " + i + " <&>", 1_700_000_000_000L + i, "SIM1", 1));
+        }
+        Session session = Session.getInstance(new Properties());
+        MimeMessage message = new MimeMessage(session);
+        message.setSubject("test", "UTF-8");
+        message.setDataHandler(EventEmailRenderer.plainTextBody(events));
+        message.setHeader("Content-Transfer-Encoding", "base64");
+        message.saveChanges();
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        message.writeTo(raw);
+        assertEquals("base64", message.getEncoding());
+
+        MimeMessage parsed = new MimeMessage(session, new ByteArrayInputStream(raw.toByteArray()));
+        assertTrue(parsed.isMimeType("text/plain"));
+        assertEquals(EventEmailRenderer.renderPlainText(events), parsed.getContent());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.smscallmonitor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * TimeUtil 的本地测试：输出与每次 new SimpleDateFormat("yyyy-MM-dd HH:mm:ss") 逐字节一致，以及格式化耗时对比。
+ */
+public class TimeUtilTest {
+
+    private final Locale originalLocale = Locale.getDefault();
+    private final TimeZone originalZone = TimeZone.getDefault();
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(originalLocale);
+        TimeZone.setDefault(originalZone);
+    }
+
+    private static String legacyFormat(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date(millis));
+    }
+
+    @Test
+    public void matchesSimpleDateFormatAcrossLocalesAndZones() {
+        Locale[] locales = {Locale.US, Locale.CHINA, Locale.GERMANY, new Locale("ar", "EG"), new Locale("hi", "IN")};
+        String[] zones = {"Asia/Shanghai", "America/Los_Angeles", "UTC", "Asia/Kolkata"};
+        Random random = new Random(42);
+        for (Locale locale : locales) {
+            Locale.setDefault(locale);
+            for (String zone : zones) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                for (int i = 0; i < 500; i++) {
+                    // 2000 年到 2040 年之间的随机时间，含夏令时切换
+                    long millis = 946_684_800_000L + (long) (random.nextDouble() * 1_262_304_000_000L);
+                    // 换秒时才检查时区，这里先格式化另一秒，确保读到新的时区
+                    TimeUtil.formatMillis(millis - 5000);
+                    assertEquals(locale + " " + zone, legacyFormat(millis), TimeUtil.formatMillis(millis));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameSecondReusesCachedString() {
+        long base = 1_700_000_000_000L;
+        String first = TimeUtil.formatMillis(base);
+        assertSame(first, TimeUtil.formatMillis(base + 999));
+        assertNotEquals(first, TimeUtil.formatMillis(base + 1000));
+        assertEquals(legacyFormat(base - 1), TimeUtil.formatMillis(base - 1)); // 前一秒
+    }
+
+    @Test
+    public void negativeMillisRoundDown() {
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        TimeUtil.formatMillis(0);
+        assertEquals("1969-12-31 23:59:59", TimeUtil.formatMillis(-1));
+    }
+
+    @Test
+    public void followsLocaleChange() {
+        long millis = 1_700_000_000_000L;
+        Locale.setDefault(Locale.US);
+        String western = TimeUtil.formatMillis(millis);
+        Locale.setDefault(new Locale("ar", "EG"));
+        assertEquals(legacyFormat(millis), TimeUtil.formatMillis(millis));
+        Locale.setDefault(Locale.US);
+        assertEquals(western, TimeUtil.formatMillis(millis));
+    }
+
+    @Test
+    public void formatterIsCreatedOncePerLocale() {
+        Locale arabic = new Locale("ar", "EG");
+        assertSame(TimeUtil.formatterFor(Locale.US), TimeUtil.formatterFor(Locale.US));
+        assertSame(TimeUtil.formatterFor(arabic), TimeUtil.formatterFor(arabic));
+        assertNotSame(TimeUtil.formatterFor(Locale.US), TimeUtil.formatterFor(arabic));
+    }
+
+    // --- 微基准: 每次格式化的耗时 ---
+
+    private static final int OPS = 20_000;
+
+    @Test
+    public void benchmark_formatNsPerCall() throws Exception {
+        long base = 1_700_000_000_000L;
+        DateTimeFormatter shared = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+        ZoneId zone = ZoneId.systemDefault();
+
+        AllocationBenchmark.Result legacy = AllocationBenchmark.measure(() -> {
+            long n = 0;
+            for (int i = 0; i < OPS; i++) n += legacyFormat(base + i * 1000L).length();
+            return n;
+        });
+        AllocationBenchmark.Result sharedFormatter = AllocationBenchmark.measure(() -> {
+            long n = 0;
+            for (int i = 0; i < OPS; i++) n += shared.format(Instant.ofEpochMilli(base + i * 1000L).atZone(zone)).length();
+            return n;
+        });
+        // 每秒一个事件: 每次都换秒，只复用格式化器
+        AllocationBenchmark.Result distinctSeconds = AllocationBenchmark.measure(() -> {
+            long n = 0;
+            for (int i = 0; i < OPS; i++) n += TimeUtil.formatMillis(base + i * 1000L).length();
+            return n;
+        });
+        // 突发: 每 10 个事件在同一秒内
+        AllocationBenchmark.Result burst = AllocationBenchmark.measure(() -> {
+            long n = 0;
+            for (int i = 0; i < OPS; i++) n += TimeUtil.formatMillis(base + (i / 10) * 1000L + i % 10).length();
+            return n;
+        });
+
+        System.out.println("ns/call: new SimpleDateFormat " + legacy.nanos / OPS
+                + ", shared DateTimeFormatter " + sharedFormatter.nanos / OPS
+                + ", TimeUtil (distinct seconds) " + distinctSeconds.nanos / OPS
+                + ", TimeUtil (10 per second) " + burst.nanos / OPS);
+        if (legacy.allocatedBytes >= 0) {
+            System.out.println("bytes/call: new SimpleDateFormat " + legacy.allocatedBytes / OPS
+                    + ", TimeUtil (distinct seconds) " + distinctSeconds.allocatedBytes / OPS
+                    + ", TimeUtil (10 per second) " + burst.allocatedBytes / OPS);
+            assertTrue(distinctSeconds.allocatedBytes < legacy.allocatedBytes);
+            assertTrue(burst.allocatedBytes < distinctSeconds.allocatedBytes);
+        }
+        assertTrue(distinctSeconds.nanos < legacy.nanos);
+    }
+}
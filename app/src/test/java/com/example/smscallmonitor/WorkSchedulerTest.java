@@ -0,0 +1,152 @@
+package com.example.smscallmonitor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * WorkScheduler 的本地测试：通道互不阻塞、按优先级出队、队列上限与溢出、统计，以及事件优先级的判定。
+ */
+public class WorkSchedulerTest {
+
+    private WorkScheduler scheduler;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (scheduler != null) scheduler.shutdown();
+    }
+
+    // 占住一个线程直到测试结束 (模拟卡住的 35 秒 Wi-Fi 等待)
+    private Runnable blocker(CountDownLatch started) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    @Test
+    public void stuckNetworkTaskDoesNotBlockJournalLane() throws Exception {
+        scheduler = new WorkScheduler(16, 1, 16);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, blocker(started), null);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        CountDownLatch journaled = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_NORMAL, journaled::countDown, null);
+        assertTrue(journaled.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void secondNetworkThreadServesUrgentTaskWhileFirstIsStuck() throws Exception {
+        scheduler = new WorkScheduler(16, 2, 16);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, blocker(started), null);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        CountDownLatch urgentSent = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_HIGH, urgentSent::countDown, null);
+        assertTrue(urgentSent.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void queuedTasksRunInPriorityOrder() throws Exception {
+        scheduler = new WorkScheduler(16, 1, 16);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, blocker(started), null);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_LOW, () -> { order.add("drain"); done.countDown(); }, null);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, () -> { order.add("sms1"); done.countDown(); }, null);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_HIGH, () -> { order.add("call"); done.countDown(); }, null);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, () -> { order.add("sms2"); done.countDown(); }, null);
+        assertEquals(4, scheduler.getMetrics(WorkScheduler.Lane.NETWORK).getDepth());
+
+        release.countDown();
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("call", "sms1", "sms2", "drain"), order);
+    }
+
+    @Test
+    public void fullLaneOverflowsNormalTasksButAcceptsUrgentOnes() throws Exception {
+        scheduler = new WorkScheduler(16, 1, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, blocker(started), null);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger overflowed = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL,
+                    ran::incrementAndGet, overflowed::incrementAndGet);
+        }
+        assertEquals(3, overflowed.get()); // 上限 2，其余 3 个交给溢出处理
+        assertTrue(scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_HIGH, ran::incrementAndGet, overflowed::incrementAndGet));
+
+        WorkScheduler.LaneMetrics metrics = scheduler.getMetrics(WorkScheduler.Lane.NETWORK);
+        assertEquals(3, metrics.getDepth());
+        assertEquals(3, metrics.getMaxDepth());
+        assertEquals(3, metrics.getOverflowed());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (ran.get() < 3 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(3, ran.get());
+        assertEquals(0, metrics.getDepth());
+        assertTrue(metrics.getWaitPercentileMs(95) >= 0);
+    }
+
+    @Test
+    public void shutdownHandsQueuedNetworkTasksToOverflowAndFinishesJournalWrites() throws Exception {
+        scheduler = new WorkScheduler(16, 1, 16);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, blocker(started), null);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        AtomicInteger sent = new AtomicInteger();
+        CountDownLatch releasedToDb = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(WorkScheduler.Lane.NETWORK, WorkScheduler.PRIORITY_NORMAL, sent::incrementAndGet,
+                    () -> scheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_NORMAL, releasedToDb::countDown, null));
+        }
+        scheduler.shutdown();
+        assertTrue(releasedToDb.await(2, TimeUnit.SECONDS));
+        assertEquals(0, sent.get());
+
+        AtomicInteger inline = new AtomicInteger();
+        assertFalse(scheduler.submit(WorkScheduler.Lane.JOURNAL, WorkScheduler.PRIORITY_NORMAL, () -> {}, inline::incrementAndGet));
+        assertEquals(1, inline.get()); // 关闭后提交的任务走溢出处理
+    }
+
+    // --- 事件优先级 ---
+
+    @Test
+    public void missedCallsAndOneTimePasswordsAreUrgent() {
+        assertEquals(WorkScheduler.PRIORITY_HIGH, EventPriority.of(new PendingEvent("CALL", "13800000000", null, 0L, "SIM1", 1)));
+        assertEquals(WorkScheduler.PRIORITY_HIGH, EventPriority.of(sms("【某银行】您的验证码为 482913，5分钟内有效。")));
+        assertEquals(WorkScheduler.PRIORITY_HIGH, EventPriority.of(sms("Your login code is 5521")));
+        assertEquals(WorkScheduler.PRIORITY_NORMAL, EventPriority.of(sms("本月账单 128 元，请按时缴纳")));
+        assertEquals(WorkScheduler.PRIORITY_NORMAL, EventPriority.of(sms("promo code: SPRING")));
+        assertEquals(WorkScheduler.PRIORITY_NORMAL, EventPriority.of(sms("验证码已失效，请致电 4008123123123")));
+        assertEquals(WorkScheduler.PRIORITY_HIGH,
+                EventPriority.of(List.of(sms("hello"), new PendingEvent("CALL", "10086", null, 0L, "SIM1", 1))));
+    }
+
+    private static PendingEvent sms(String content) {
+        return new PendingEvent("SMS", "10086", content, 1_700_000_000_000L, "SIM1", 1);
+    }
+}